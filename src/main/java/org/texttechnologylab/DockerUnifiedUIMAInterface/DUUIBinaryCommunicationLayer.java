@@ -0,0 +1,245 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.CASException;
+import org.apache.uima.cas.SerialFormat;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.util.CasIOUtils;
+import org.apache.uima.util.CasLoadMode;
+import org.xml.sax.SAXException;
+
+import java.io.*;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Communication layer exchanging the CAS in UIMA's compressed binary form 6 instead of XMI.
+ * <p>
+ * The CAS is written together with its type system, so the receiving side maps the types by name and both sides may
+ * use different, compatible type systems. Optionally the CAS is compressed with zstd. A component asks for this layer
+ * by answering the request to /v1/communication_layer with a descriptor instead of a Lua script, see
+ * {@link #fromDescriptor(String)}. Components written in Java then exchange documents without producing or parsing
+ * any XML.
+ * <p>
+ * A message consists of the magic number, the version, the compression, the name of the view to process, the
+ * parameters of the component and the CAS. Responses have the same format and replace the whole CAS, like responses
+ * of the fallback communication layer. Components read a message with {@link #decode(InputStream)}.
+ * <p>
+ * Form 6 always contains every view of the CAS and a response replaces all of them, so the layer cannot send a single
+ * view or write the response into another one. Components using this layer therefore only work on the initial view,
+ * other source or target views are rejected.
+ */
+public class DUUIBinaryCommunicationLayer implements IDUUICommunicationLayer {
+    /**
+     * First line of the descriptor a component returns to select this layer.
+     */
+    public static final String DESCRIPTOR = "duui-binary-cas/1";
+    public static final String DESCRIPTOR_ZSTD = "compression=zstd";
+
+    static final int MAGIC = 0x44554942; // "DUIB"
+    static final byte VERSION = 1;
+    static final byte COMPRESSION_NONE = 0;
+    static final byte COMPRESSION_ZSTD = 1;
+
+    private static final int ZSTD_LEVEL = 3;
+
+    private final boolean _zstd;
+
+    /**
+     * Header and CAS of a message in the binary CAS format.
+     */
+    public static class Message {
+        private final String _view;
+        private final Map<String, String> _parameters;
+        private final InputStream _cas;
+
+        Message(String view, Map<String, String> parameters, InputStream cas) {
+            _view = view;
+            _parameters = parameters;
+            _cas = cas;
+        }
+
+        /**
+         * @return Name of the view to process.
+         */
+        public String getView() {
+            return _view;
+        }
+
+        /**
+         * @return Parameters of the component, in the order they were written.
+         */
+        public Map<String, String> getParameters() {
+            return _parameters;
+        }
+
+        /**
+         * @return The CAS in form 6 with its type system, already decompressed, to be loaded with CasIOUtils.
+         */
+        public InputStream getCas() {
+            return _cas;
+        }
+    }
+
+    /**
+     * @param zstd Whether to compress the CAS with zstd
+     */
+    public DUUIBinaryCommunicationLayer(boolean zstd) {
+        _zstd = zstd;
+    }
+
+    /**
+     * Selects the layer from the answer of a component to /v1/communication_layer. The descriptor is
+     * "duui-binary-cas/1", optionally followed by "compression=zstd" on the same or the next line.
+     *
+     * @param descriptor Answer of the component
+     * @return The layer, or null if the answer is not a descriptor of this layer, e.g. a Lua script
+     */
+    public static DUUIBinaryCommunicationLayer fromDescriptor(String descriptor) {
+        String trimmed = descriptor.trim();
+        if (!trimmed.startsWith(DESCRIPTOR)) {
+            return null;
+        }
+        return new DUUIBinaryCommunicationLayer(trimmed.substring(DESCRIPTOR.length()).contains(DESCRIPTOR_ZSTD));
+    }
+
+    /**
+     * Reads the header of a message, the CAS follows in the returned stream.
+     *
+     * @param input Request or response body
+     * @return View, parameters and CAS of the message
+     * @throws InvalidObjectException If the body is not in the binary CAS format
+     */
+    public static Message decode(InputStream input) throws IOException {
+        DataInputStream header = new DataInputStream(input);
+        if (header.readInt() != MAGIC) {
+            throw new InvalidObjectException("Message is not in the binary CAS format!");
+        }
+        byte version = header.readByte();
+        if (version != VERSION) {
+            throw new InvalidObjectException(String.format("Unsupported binary CAS format version %d!", version));
+        }
+        byte compression = header.readByte();
+        if (compression != COMPRESSION_NONE && compression != COMPRESSION_ZSTD) {
+            throw new InvalidObjectException(String.format("Unsupported binary CAS compression %d!", compression));
+        }
+        String view = header.readUTF();
+        int count = header.readInt();
+        if (count < 0) {
+            throw new InvalidObjectException(String.format("Invalid number of parameters %d!", count));
+        }
+        Map<String, String> parameters = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            parameters.put(header.readUTF(), header.readUTF());
+        }
+
+        InputStream cas = compression == COMPRESSION_ZSTD ? new ZstdInputStream(input) : input;
+        return new Message(view, Collections.unmodifiableMap(parameters), new BufferedInputStream(cas));
+    }
+
+    private static void requireInitialView(String view, String role) {
+        if (view != null && !view.equals(CAS.NAME_DEFAULT_SOFA)) {
+            throw new IllegalArgumentException(String.format(
+                    "The binary CAS communication layer only supports the initial view, not the %s view %s!", role, view));
+        }
+    }
+
+    public void serialize(JCas jc, OutputStream out, Map<String, String> parameters, String sourceView) throws CompressorException, IOException, SAXException, CASException {
+        // Form 6 always sends every view, so the header cannot select a single one
+        requireInitialView(sourceView, "source");
+        requireInitialView(jc.getViewName(), "component");
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeByte(VERSION);
+        header.writeByte(_zstd ? COMPRESSION_ZSTD : COMPRESSION_NONE);
+        header.writeUTF(CAS.NAME_DEFAULT_SOFA);
+        header.writeInt(parameters == null ? 0 : parameters.size());
+        if (parameters != null) {
+            for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+                header.writeUTF(parameter.getKey());
+                header.writeUTF(parameter.getValue());
+            }
+        }
+        header.flush();
+
+        if (_zstd) {
+            // Closing the zstd stream ends its frame, the stream of the caller has to stay open
+            try (ZstdOutputStream compressed = new ZstdOutputStream(new KeepOpenOutputStream(out), ZSTD_LEVEL)) {
+                CasIOUtils.save(jc.getCas(), compressed, SerialFormat.COMPRESSED_FILTERED_TSI);
+            }
+        } else {
+            CasIOUtils.save(jc.getCas(), out, SerialFormat.COMPRESSED_FILTERED_TSI);
+        }
+    }
+
+    public void deserialize(JCas jc, InputStream input, String targetView) throws IOException, SAXException, CASException {
+        requireInitialView(targetView, "target");
+        requireInitialView(jc.getViewName(), "component");
+        Message response = decode(input);
+        if (!CAS.NAME_DEFAULT_SOFA.equals(response.getView())) {
+            throw new InvalidObjectException(String.format("Response names the view %s, expected the initial view!", response.getView()));
+        }
+        // The embedded type system maps the types of the component onto the types of this CAS
+        CasIOUtils.load(response.getCas(), null, jc.getCas(), CasLoadMode.DEFAULT);
+    }
+
+    @Override
+    public void serialize(JCas jc, OutputStream out, Map<String, String> parameters) throws CompressorException, IOException, SAXException, CASException {
+        serialize(jc, out, parameters, CAS.NAME_DEFAULT_SOFA);
+    }
+
+    @Override
+    public void deserialize(JCas jc, InputStream input) throws IOException, SAXException, CASException {
+        deserialize(jc, input, CAS.NAME_DEFAULT_SOFA);
+    }
+
+    /**
+     * @return False, the response replaces the whole CAS.
+     */
+    @Override
+    public boolean isAdditive() {
+        return false;
+    }
+
+    public IDUUICommunicationLayer copy() {
+        return new DUUIBinaryCommunicationLayer(_zstd);
+    }
+
+    @Override
+    public ByteArrayInputStream merge(List<ByteArrayInputStream> results) {
+        return null;
+    }
+
+    @Override
+    public String myLuaTestMerging() {
+        return "DUUIBinaryCommunicationLayer";
+    }
+
+    /**
+     * @return True if the CAS is compressed with zstd.
+     */
+    public boolean isZstd() {
+        return _zstd;
+    }
+
+    private static class KeepOpenOutputStream extends FilterOutputStream {
+        KeepOpenOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of growable byte buffers for serialized documents.
+ * <p>
+ * Serializing a CAS for a component call used to allocate a new buffer of 1 MiB, grow it by copying, copy it once more
+ * to get the request body and copy the response into yet another array. A pooled buffer keeps the capacity it has
+ * grown to, communication layers write into and read from it directly, and the HTTP client sends slices wrapping its
+ * array instead of a copy. A buffer is taken from any thread and returned from any other, e.g. after the response
+ * arrived. Only a limited number of buffers up to a limited capacity and a limited number of bytes in total are kept,
+ * others are left to the garbage collector so a single huge document or a burst of them does not pin memory forever.
+ */
+public class DUUIByteBufferPool {
+    public static final int DEFAULT_INITIAL_CAPACITY = 1024 * 1024;
+    public static final int DEFAULT_MAX_POOLED = 32;
+    public static final int DEFAULT_MAX_POOLED_CAPACITY = 16 * 1024 * 1024;
+    // At most 256 MiB, and at most an eighth of the heap
+    public static final long DEFAULT_MAX_POOLED_BYTES = Math.min(256L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 8);
+
+    /**
+     * Pool shared by all component calls.
+     */
+    public static final DUUIByteBufferPool SHARED = new DUUIByteBufferPool(DEFAULT_INITIAL_CAPACITY, DEFAULT_MAX_POOLED, DEFAULT_MAX_POOLED_CAPACITY, DEFAULT_MAX_POOLED_BYTES);
+
+    private final int _initialCapacity;
+    private final int _maxPooled;
+    private final int _maxPooledCapacity;
+    private final long _maxPooledBytes;
+    private final ConcurrentLinkedDeque<Buffer> _free = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger _pooled = new AtomicInteger(0);
+    private final AtomicLong _pooledBytes = new AtomicLong(0);
+    private final AtomicLong _allocated = new AtomicLong(0);
+    private final AtomicLong _reused = new AtomicLong(0);
+
+    /**
+     * Growable byte buffer whose content can be read without copying it.
+     */
+    public static class Buffer extends ByteArrayOutputStream {
+        Buffer(int capacity) {
+            super(capacity);
+        }
+
+        /**
+         * @return Backing array, only the first size() bytes are valid
+         */
+        public synchronized byte[] array() {
+            return buf;
+        }
+
+        /**
+         * @return Number of bytes the buffer can hold without growing.
+         */
+        public synchronized int capacity() {
+            return buf.length;
+        }
+
+        /**
+         * Makes sure the buffer can hold the given number of bytes in total without growing again.
+         *
+         * @param capacity Expected size of the content
+         */
+        public synchronized void ensureCapacity(int capacity) {
+            if (capacity > buf.length) {
+                byte[] grown = new byte[capacity];
+                System.arraycopy(buf, 0, grown, 0, count);
+                buf = grown;
+            }
+        }
+
+        /**
+         * Appends the remaining bytes of a buffer, e.g. a chunk of a response body.
+         *
+         * @param src Bytes to append
+         */
+        public synchronized void write(ByteBuffer src) {
+            int length = src.remaining();
+            if (count + length > buf.length) {
+                ensureCapacity(Math.max(count + length, buf.length * 2));
+            }
+            src.get(buf, count, length);
+            count += length;
+        }
+
+        /**
+         * @return Stream reading the content without copying it, only valid until the buffer is returned to its pool
+         */
+        public synchronized ByteArrayInputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+
+    /**
+     * @param initialCapacity   Capacity of newly allocated buffers
+     * @param maxPooled         Maximum number of buffers kept for reuse
+     * @param maxPooledCapacity Buffers that have grown beyond this capacity are not kept
+     */
+    public DUUIByteBufferPool(int initialCapacity, int maxPooled, int maxPooledCapacity) {
+        this(initialCapacity, maxPooled, maxPooledCapacity, (long) maxPooled * maxPooledCapacity);
+    }
+
+    /**
+     * @param initialCapacity   Capacity of newly allocated buffers
+     * @param maxPooled         Maximum number of buffers kept for reuse
+     * @param maxPooledCapacity Buffers that have grown beyond this capacity are not kept
+     * @param maxPooledBytes    Maximum capacity of all buffers kept for reuse together
+     */
+    public DUUIByteBufferPool(int initialCapacity, int maxPooled, int maxPooledCapacity, long maxPooledBytes) {
+        _initialCapacity = initialCapacity;
+        _maxPooled = maxPooled;
+        _maxPooledCapacity = maxPooledCapacity;
+        _maxPooledBytes = maxPooledBytes;
+    }
+
+    /**
+     * Takes an empty buffer from the pool, or allocates one if none is free.
+     *
+     * @return Buffer, has to be returned with release after use
+     */
+    public Buffer acquire() {
+        Buffer buffer = _free.poll();
+        if (buffer != null) {
+            _pooled.decrementAndGet();
+            _pooledBytes.addAndGet(-buffer.capacity());
+            _reused.incrementAndGet();
+            return buffer;
+        }
+        _allocated.incrementAndGet();
+        return new Buffer(_initialCapacity);
+    }
+
+    /**
+     * Returns a buffer to the pool. The buffer and everything read from it must not be used afterwards.
+     *
+     * @param buffer Buffer to return, ignored if null
+     */
+    public void release(Buffer buffer) {
+        if (buffer == null || buffer.capacity() > _maxPooledCapacity) {
+            return;
+        }
+        buffer.reset();
+        int capacity = buffer.capacity();
+        if (_pooled.incrementAndGet() <= _maxPooled) {
+            if (_pooledBytes.addAndGet(capacity) <= _maxPooledBytes) {
+                _free.push(buffer);
+                return;
+            }
+            _pooledBytes.addAndGet(-capacity);
+        }
+        _pooled.decrementAndGet();
+    }
+
+    /**
+     * @return Number of buffers currently kept for reuse.
+     */
+    public int getPooled() {
+        return _pooled.get();
+    }
+
+    /**
+     * @return Capacity of all buffers currently kept for reuse together.
+     */
+    public long getPooledBytes() {
+        return _pooledBytes.get();
+    }
+
+    /**
+     * @return Number of buffers allocated because none was free.
+     */
+    public long getAllocated() {
+        return _allocated.get();
+    }
+
+    /**
+     * @return Number of buffers taken from the pool instead of allocating them.
+     */
+    public long getReused() {
+        return _reused.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pooled=%d pooledBytes=%d allocated=%d reused=%d", _pooled.get(), _pooledBytes.get(), _allocated.get(), _reused.get());
+    }
+}
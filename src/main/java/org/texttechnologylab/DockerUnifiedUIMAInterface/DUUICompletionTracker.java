@@ -0,0 +1,175 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface;
+
+import java.time.Instant;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the documents of a single run and signals the moment the last one has left the pipeline.
+ * <p>
+ * Every document in flight holds a party of a phaser, and one additional party stands for the input that may still
+ * deliver documents. The run is complete as soon as the input is finished and the last document has ended, at which
+ * point the phaser terminates and wakes up every thread waiting for the completion. A document has to be begun
+ * before it is taken from the input, otherwise the input could look finished while the document is not yet counted.
+ */
+public class DUUICompletionTracker {
+    private final Phaser _phaser;
+    private final AtomicBoolean _inputFinished = new AtomicBoolean(false);
+    private final AtomicBoolean _cancelled = new AtomicBoolean(false);
+    private final AtomicLong _processed = new AtomicLong(0);
+    private volatile Instant _completedAt = null;
+    // Whether the current thread holds a begun document, so a dying worker only ends a document it actually holds
+    private final ThreadLocal<Boolean> _holding = ThreadLocal.withInitial(() -> false);
+
+    public DUUICompletionTracker() {
+        // The initial party is the input, released by inputFinished
+        _phaser = new Phaser(1) {
+            @Override
+            protected boolean onAdvance(int phase, int registeredParties) {
+                _completedAt = Instant.now();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Registers a document that is about to be taken from the input. The current thread holds it until it is ended.
+     *
+     * @return False if the run is already complete and the document was not registered
+     */
+    public boolean begin() {
+        if (_phaser.register() < 0) {
+            return false;
+        }
+        _holding.set(true);
+        return true;
+    }
+
+    /**
+     * Marks the current thread as holding a document that was begun on another thread, e.g. by the thread reading
+     * the input, so the document is ended if the current thread dies.
+     */
+    public void hold() {
+        _holding.set(true);
+    }
+
+    /**
+     * Marks a begun document as done, whether it was processed, failed or turned out not to exist.
+     */
+    public void end() {
+        _holding.remove();
+        if (!_phaser.isTerminated()) {
+            _phaser.arriveAndDeregister();
+        }
+    }
+
+    /**
+     * Marks a begun document as processed and done.
+     */
+    public void endProcessed() {
+        _processed.incrementAndGet();
+        end();
+    }
+
+    /**
+     * Signals that the input will not deliver any further documents. Only the first call has an effect.
+     */
+    public void inputFinished() {
+        if (_inputFinished.compareAndSet(false, true) && !_phaser.isTerminated()) {
+            _phaser.arriveAndDeregister();
+        }
+    }
+
+    /**
+     * Completes the run immediately without waiting for documents in flight, e.g. when the composer is interrupted.
+     */
+    public void cancel() {
+        if (!_phaser.isTerminated() && _cancelled.compareAndSet(false, true)) {
+            _phaser.forceTermination();
+            if (_completedAt == null) _completedAt = Instant.now();
+        }
+    }
+
+    /**
+     * Handler for worker threads. A worker holds at most one begun document, so if it dies of an uncaught exception
+     * while holding one, that document is ended here and the run can still complete. A worker dying between two
+     * documents must not end anything, it would deregister the party of another document or of the input.
+     *
+     * @return Handler that ends the document of the dying worker and prints the exception
+     */
+    public Thread.UncaughtExceptionHandler endOnFailure() {
+        return (thread, e) -> {
+            if (_holding.get()) {
+                end();
+            }
+            System.err.printf("Exception in thread \"%s\" ", thread.getName());
+            e.printStackTrace();
+        };
+    }
+
+    /**
+     * Waits until the run is complete.
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public void awaitCompletion() throws InterruptedException {
+        _phaser.awaitAdvanceInterruptibly(0);
+    }
+
+    /**
+     * Waits at most the given time for the run to complete. Workers use this as back-off when the input is
+     * temporarily empty, so they return at once when the run completes instead of sleeping for the full time.
+     *
+     * @param timeout Maximum time to wait
+     * @param unit    Unit of timeout
+     * @return True if the run is complete
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            _phaser.awaitAdvanceInterruptibly(0, timeout, unit);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return True if the input is finished and all documents are done, or the run was cancelled.
+     */
+    public boolean isCompleted() {
+        return _phaser.isTerminated();
+    }
+
+    /**
+     * @return True if the run was cancelled before all documents were done.
+     */
+    public boolean isCancelled() {
+        return _cancelled.get();
+    }
+
+    /**
+     * @return Time the last document left the pipeline, or null if the run is not complete yet.
+     */
+    public Instant getCompletedAt() {
+        return _completedAt;
+    }
+
+    /**
+     * @return Number of documents currently in flight.
+     */
+    public int getInFlight() {
+        if (_phaser.isTerminated()) return 0;
+        return Math.max(0, _phaser.getRegisteredParties() - (_inputFinished.get() ? 0 : 1));
+    }
+
+    /**
+     * @return Number of documents that have been processed so far.
+     */
+    public long getProcessed() {
+        return _processed.get();
+    }
+}
@@ -29,9 +29,15 @@ import org.texttechnologylab.DockerUnifiedUIMAInterface.io.DUUICollectionDBReade
 import org.texttechnologylab.DockerUnifiedUIMAInterface.io.reader.DUUIDocumentReader;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.lua.DUUILuaContext;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUIEvent;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUILatencyHistogram;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUILatencyHistograms;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUIMetricsServer;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUIMetricsWriter;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUIMonitor;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUIStatus;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.IDUUIMetricsSource;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.pipeline_storage.DUUIPipelineDocumentPerformance;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.pipeline_storage.DUUIPipelinePerformanceLayout;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.pipeline_storage.IDUUIStorageBackend;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.segmentation.DUUISegmentationStrategy;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.segmentation.DUUISegmentationStrategyByDelemiter;
@@ -42,18 +48,24 @@ import org.xml.sax.SAXException;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.reflect.Method;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidParameterException;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static java.lang.String.format;
@@ -62,15 +74,20 @@ import static java.lang.String.format;
  * Worker thread processing a CAS following an execution plan.
  */
 class DUUIWorker extends Thread {
+    // Maximum time a waiting worker sleeps before it checks for a shutdown
+    static final long SHUTDOWN_CHECK_INTERVAL_MS = 100;
     Vector<DUUIComposer.PipelinePart> _flow;
-    ConcurrentLinkedQueue<JCas> _instancesToBeLoaded;
-    ConcurrentLinkedQueue<JCas> _loadedInstances;
+    DUUIResourcePool<JCas> _instancesToBeLoaded;
+    DUUIResourcePool<JCas> _loadedInstances;
     AtomicInteger _threadsAlive;
     AtomicBoolean _shutdown;
     IDUUIStorageBackend _backend;
     String _runKey;
     AsyncCollectionReader _reader;
     IDUUIExecutionPlanGenerator _generator;
+    DUUICompletionTracker _tracker;
+    // Threads running the parallel branches of execution plans, shared by all workers of a run
+    ExecutorService _branches;
 
     DUUIComposer composer;
 
@@ -86,10 +103,13 @@ class DUUIWorker extends Thread {
      * @param runKey Key identifying this run
      * @param reader CAS collection reader
      * @param generator Execution plan generator
+     * @param tracker Completion tracker of the run
+     * @param branches Threads running parallel branches, null if the plans have none
      * @param composer Reference to the composer instance
      */
-    DUUIWorker(Vector<DUUIComposer.PipelinePart> engineFlow, ConcurrentLinkedQueue<JCas> emptyInstance, ConcurrentLinkedQueue<JCas> loadedInstances, AtomicBoolean shutdown, AtomicInteger error,
-               IDUUIStorageBackend backend, String runKey, AsyncCollectionReader reader, IDUUIExecutionPlanGenerator generator, DUUIComposer composer) {
+    DUUIWorker(Vector<DUUIComposer.PipelinePart> engineFlow, DUUIResourcePool<JCas> emptyInstance, DUUIResourcePool<JCas> loadedInstances, AtomicBoolean shutdown, AtomicInteger error,
+               IDUUIStorageBackend backend, String runKey, AsyncCollectionReader reader, IDUUIExecutionPlanGenerator generator,
+               DUUICompletionTracker tracker, ExecutorService branches, DUUIComposer composer) {
         super();
         _flow = engineFlow;
         _instancesToBeLoaded = emptyInstance;
@@ -100,7 +120,10 @@ class DUUIWorker extends Thread {
         _runKey = runKey;
         _reader = reader;
         _generator = generator;
+        _tracker = tracker;
+        _branches = branches;
         this.composer = composer;
+        setUncaughtExceptionHandler(tracker.endOnFailure());
     }
 
     /**
@@ -116,24 +139,42 @@ class DUUIWorker extends Thread {
             long waitTimeStart = System.nanoTime();
             long waitTimeEnd = 0;
             while (object == null) {
-                object = _loadedInstances.poll();
+                try {
+                    // Park until a loaded CAS arrives, waking up regularly to notice a shutdown
+                    object = _reader == null
+                        ? _loadedInstances.poll(SHUTDOWN_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS)
+                        : _loadedInstances.poll();
+                    // The document was begun by the thread that loaded it, it is ours from now on
+                    if (object != null) _tracker.hold();
+                } catch (InterruptedException e) {
+                    _threadsAlive.getAndDecrement();
+                    return;
+                }
 
-                if (_shutdown.get() && object == null) {
+                if ((_shutdown.get() || _tracker.isCompleted()) && object == null) {
                     _threadsAlive.getAndDecrement();
                     return;
                 }
 
                 if (object == null && _reader != null) {
-                    object = _instancesToBeLoaded.poll();
-                    if (object == null)
-                        continue;
                     try {
+                        object = _instancesToBeLoaded.poll(SHUTDOWN_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                        if (object == null)
+                            continue;
                         waitTimeEnd = System.nanoTime();
+                        if (!_tracker.begin()) {
+                            // The run is complete, the next iteration returns
+                            _instancesToBeLoaded.add(object);
+                            object = null;
+                            continue;
+                        }
                         if (!_reader.getNextCAS(object)) {
                             _threadsAlive.getAndDecrement();
                             _instancesToBeLoaded.add(object);
-                            //Give the main IO Thread time to finish work
-                            Thread.sleep(300);
+                            if (_reader.isEmpty()) _tracker.inputFinished();
+                            _tracker.end();
+                            //Give the main IO Thread time to finish work, returns at once when the run completes
+                            _tracker.awaitCompletion(300, TimeUnit.MILLISECONDS);
                             object = null;
                         }
                     } catch (IOException e) {
@@ -162,68 +203,53 @@ class DUUIWorker extends Thread {
             DUUIPipelineDocumentPerformance perf = new DUUIPipelineDocumentPerformance(_runKey,
                 waitTimeEnd - waitTimeStart,
                 object,
-                trackErrorDocs);
-            // f32, 64d, e57
+                trackErrorDocs,
+                composer.getPerformanceLayout(),
+                composer.getLatencyHistograms());
             // DAG, Directed Acyclic Graph
-            boolean done = false;
-            List<Future<IDUUIExecutionPlan>> pendingFutures = new LinkedList<>();
-            // await entry
-            pendingFutures.add(execPlan.awaitMerge());
-            //pendingFutures = [exec(entry)]
-
-            while (!pendingFutures.isEmpty()) {
-                List<Future<IDUUIExecutionPlan>> newFutures = new LinkedList<>();
-                pendingFutures.removeIf(pending -> {
-                    if (pending.isDone()) {
-                        IDUUIExecutionPlan mergedPlan = null;
-                        try {
-                            mergedPlan = pending.get();
-                            //0: exec(entry)
-                            //1: exec(a)
-                            //2: exec(b)
-                            //3: exec(c)
-
-                            DUUIComposer.PipelinePart i = mergedPlan.getPipelinePart();
-                            if (i != null) {
-                                i.getDriver().run(i.getUUID(), mergedPlan.getJCas(), perf, composer);
-                            }
-                            //0: a,b,c
-                            //1: exec(a) : d
-                            //2: exec(b) : d
-                            //3: exec(c) : d
-                            for (IDUUIExecutionPlan plan : mergedPlan.getNextExecutionPlans()) {
-                                //0: newFutures = [fut(exec(a)), fut(exec(b)), future(exec(c))]
-                                newFutures.add(plan.awaitMerge());
-                            }
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        } catch (ExecutionException e) {
-                            e.printStackTrace();
-                        } catch (CompressorException e) {
-                            e.printStackTrace();
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                        } catch (CASException e) {
-                            e.printStackTrace();
-                        } catch (AnalysisEngineProcessException e) {
-                            e.printStackTrace();
-                        } catch (SAXException e) {
-                            e.printStackTrace();
-                        }
-                        return true;
-                    }
-                    return false;
-                });
-                pendingFutures.addAll(newFutures);
-                //0: pendingFutures = [fut(exec(a)), fut(exec(b)), future(exec(c))]
-                //4: pendingFutures = [fut(exec(d)), fut(exec(d)), fut(exec(d))]
-            }
+            execute(execPlan.awaitMerge(), perf);
 
             object.reset();
             _instancesToBeLoaded.add(object);
             if (_backend != null) {
                 _backend.addMetricsForDocument(perf);
             }
+            _tracker.endProcessed();
+        }
+    }
+
+    /**
+     * Runs a plan and all plans following it. Where a plan is followed by several plans, all but the first are run
+     * on branch threads while this thread runs the first one, and the method returns once every branch is done.
+     * Errors are printed and do not stop the remaining plans.
+     *
+     * @param pending Plan, as returned by awaitMerge
+     * @param perf Performance record of the document
+     */
+    private void execute(Future<IDUUIExecutionPlan> pending, DUUIPipelineDocumentPerformance perf) {
+        List<IDUUIExecutionPlan> next;
+        try {
+            IDUUIExecutionPlan mergedPlan = pending.get();
+            mergedPlan.run(perf, composer);
+            next = mergedPlan.getNextExecutionPlans();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return;
+        }
+        if (next.isEmpty()) return;
+
+        List<Future<?>> branches = new LinkedList<>();
+        for (IDUUIExecutionPlan plan : next.subList(1, next.size())) {
+            Future<IDUUIExecutionPlan> merge = plan.awaitMerge();
+            branches.add(_branches.submit(() -> execute(merge, perf)));
+        }
+        execute(next.get(0).awaitMerge(), perf);
+        for (Future<?> branch : branches) {
+            try {
+                branch.get();
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+            }
         }
     }
 }
@@ -239,6 +265,7 @@ class DUUIWorkerAsyncReader extends Thread {
     JCas _jc;
     String _runKey;
     AsyncCollectionReader _reader;
+    DUUICompletionTracker _tracker;
     DUUIComposer composer;
 
     /**
@@ -251,10 +278,12 @@ class DUUIWorkerAsyncReader extends Thread {
      * @param backend Storage backend used for statistics and error reporting
      * @param runKey Key identifying this run
      * @param reader CAS collection reader
+     * @param tracker Completion tracker of the run
      * @param composer Reference to the composer instance
      */
     DUUIWorkerAsyncReader(Vector<DUUIComposer.PipelinePart> engineFlow, JCas jc, AtomicBoolean shutdown, AtomicInteger error,
-                          IDUUIStorageBackend backend, String runKey, AsyncCollectionReader reader, DUUIComposer composer) {
+                          IDUUIStorageBackend backend, String runKey, AsyncCollectionReader reader, DUUICompletionTracker tracker,
+                          DUUIComposer composer) {
         super();
         _flow = engineFlow;
         _jc = jc;
@@ -263,7 +292,9 @@ class DUUIWorkerAsyncReader extends Thread {
         _backend = backend;
         _runKey = runKey;
         _reader = reader;
+        _tracker = tracker;
         this.composer = composer;
+        setUncaughtExceptionHandler(tracker.endOnFailure());
     }
 
     /**
@@ -276,24 +307,27 @@ class DUUIWorkerAsyncReader extends Thread {
             long waitTimeStart = System.nanoTime();
             long waitTimeEnd = 0;
             while (true) {
-                if (_shutdown.get()) {
+                if (_shutdown.get() || _tracker.isCompleted()) {
                     _threadsAlive.getAndDecrement();
                     return;
                 }
+                if (!_tracker.begin()) continue;
                 try {
-                    if (!_reader.getNextCAS(_jc)) {
-                        //Give the main IO Thread time to finish work
-                        Thread.sleep(300);
-                    } else {
+                    if (_reader.getNextCAS(_jc)) {
                         break;
                     }
-
                 } catch (IOException e) {
                     e.printStackTrace();
                 } catch (CompressorException e) {
                     e.printStackTrace();
                 } catch (SAXException e) {
                     e.printStackTrace();
+                }
+                if (_reader.isEmpty()) _tracker.inputFinished();
+                _tracker.end();
+                try {
+                    //Give the main IO Thread time to finish work, returns at once when the run completes
+                    _tracker.awaitCompletion(300, TimeUnit.MILLISECONDS);
                 } catch (InterruptedException e) {
                     e.printStackTrace();
                 }
@@ -310,7 +344,9 @@ class DUUIWorkerAsyncReader extends Thread {
             DUUIPipelineDocumentPerformance perf = new DUUIPipelineDocumentPerformance(_runKey,
                 waitTimeEnd - waitTimeStart,
                 _jc,
-                trackErrorDocs);
+                trackErrorDocs,
+                composer.getPerformanceLayout(),
+                composer.getLatencyHistograms());
             for (DUUIComposer.PipelinePart i : _flow) {
                 try {
                     // Segment document for each item in the pipeline separately
@@ -361,6 +397,7 @@ class DUUIWorkerAsyncReader extends Thread {
             if (_backend != null) {
                 _backend.addMetricsForDocument(perf);
             }
+            _tracker.endProcessed();
         }
     }
 }
@@ -376,6 +413,7 @@ class DUUIWorkerAsyncProcessor extends Thread {
     JCas _jc;
     String _runKey;
     DUUIAsynchronousProcessor _processor;
+    DUUICompletionTracker _tracker;
     DUUIComposer composer;
 
     /**
@@ -388,10 +426,12 @@ class DUUIWorkerAsyncProcessor extends Thread {
      * @param backend Storage backend used for statistics and error reporting
      * @param runKey Key identifying this run
      * @param processor CAS async reader
+     * @param tracker Completion tracker of the run
      * @param composer Reference to the composer instance
      */
     DUUIWorkerAsyncProcessor(Vector<DUUIComposer.PipelinePart> engineFlow, JCas jc, AtomicBoolean shutdown, AtomicInteger error,
-                             IDUUIStorageBackend backend, String runKey, DUUIAsynchronousProcessor processor, DUUIComposer composer) {
+                             IDUUIStorageBackend backend, String runKey, DUUIAsynchronousProcessor processor,
+                             DUUICompletionTracker tracker, DUUIComposer composer) {
         super();
         _flow = engineFlow;
         _jc = jc;
@@ -400,7 +440,9 @@ class DUUIWorkerAsyncProcessor extends Thread {
         _backend = backend;
         _runKey = runKey;
         _processor = processor;
+        _tracker = tracker;
         this.composer = composer;
+        setUncaughtExceptionHandler(tracker.endOnFailure());
     }
 
     /**
@@ -413,19 +455,20 @@ class DUUIWorkerAsyncProcessor extends Thread {
             long waitTimeStart = System.nanoTime();
             long waitTimeEnd = 0;
             while (true) {
-                if (_shutdown.get()) {
+                if (_shutdown.get() || _tracker.isCompleted()) {
                     _threadsAlive.getAndDecrement();
                     return;
                 }
+                if (!_tracker.begin()) continue;
+                _jc.reset();
+                if (_processor.getNextCAS(_jc)) {
+                    break;
+                }
+                if (_processor.isFinish()) _tracker.inputFinished();
+                _tracker.end();
                 try {
-                    _jc.reset();
-                    if (!_processor.getNextCAS(_jc)) {
-                        //Give the main IO Thread time to finish work
-                        Thread.sleep(300);
-                    } else {
-                        break;
-                    }
-
+                    //Give the main IO Thread time to finish work, returns at once when the run completes
+                    _tracker.awaitCompletion(300, TimeUnit.MILLISECONDS);
                 } catch (InterruptedException e) {
                     e.printStackTrace();
                 }
@@ -442,7 +485,9 @@ class DUUIWorkerAsyncProcessor extends Thread {
             DUUIPipelineDocumentPerformance perf = new DUUIPipelineDocumentPerformance(_runKey,
                 waitTimeEnd - waitTimeStart,
                 _jc,
-                trackErrorDocs);
+                trackErrorDocs,
+                composer.getPerformanceLayout(),
+                composer.getLatencyHistograms());
             for (DUUIComposer.PipelinePart i : _flow) {
                 try {
                     // Segment document for each item in the pipeline separately
@@ -498,6 +543,8 @@ class DUUIWorkerAsyncProcessor extends Thread {
             if (_backend != null) {
                 _backend.addMetricsForDocument(perf);
             }
+            if (_processor.isFinish()) _tracker.inputFinished();
+            _tracker.endProcessed();
         }
         while (!_processor.isFinish());
 
@@ -515,6 +562,7 @@ class DUUIWorkerDocumentReader extends Thread {
     JCas cas;
     String runKey;
     DUUIDocumentReader reader;
+    DUUICompletionTracker tracker;
     DUUIComposer composer;
 
     /**
@@ -527,6 +575,7 @@ class DUUIWorkerDocumentReader extends Thread {
      * @param backend Storage backend used for statistics and error reporting
      * @param runKey Key identifying this run
      * @param reader CAS collection reader
+     * @param tracker Completion tracker of the run
      * @param composer Reference to the composer instance
      */
     DUUIWorkerDocumentReader(
@@ -537,6 +586,7 @@ class DUUIWorkerDocumentReader extends Thread {
         IDUUIStorageBackend backend,
         String runKey,
         DUUIDocumentReader reader,
+        DUUICompletionTracker tracker,
         DUUIComposer composer
     ) {
         super();
@@ -548,7 +598,9 @@ class DUUIWorkerDocumentReader extends Thread {
         this.backend = backend;
         this.runKey = runKey;
         this.reader = reader;
+        this.tracker = tracker;
         this.composer = composer;
+        setUncaughtExceptionHandler(tracker.endOnFailure());
     }
 
     /**
@@ -569,17 +621,23 @@ class DUUIWorkerDocumentReader extends Thread {
             timer.start();
 
             while (true) {
-                if (composer.shouldShutdown()) {
+                if (composer.shouldShutdown() || tracker.isCompleted()) {
                     threadsAlive.getAndDecrement();
                     return;
                 }
 
+                if (!tracker.begin()) continue;
                 try {
                     document = reader.getNextDocument(cas);
                     if (document != null && !document.isFinished()) break;
-
-                    Thread.sleep(300);
                 } catch (IllegalArgumentException ignored) {
+                }
+                if (!reader.hasNext()) tracker.inputFinished();
+                tracker.end();
+
+                try {
+                    // Returns at once when the run completes
+                    tracker.awaitCompletion(300, TimeUnit.MILLISECONDS);
                 } catch (InterruptedException e) {
                     composer.addEvent(
                         DUUIEvent.Sender.COMPOSER,
@@ -599,7 +657,9 @@ class DUUIWorkerDocumentReader extends Thread {
             DUUIPipelineDocumentPerformance perf = new DUUIPipelineDocumentPerformance(runKey,
                 timer.getDuration(),
                 cas,
-                trackErrorDocs);
+                trackErrorDocs,
+                composer.getPerformanceLayout(),
+                composer.getLatencyHistograms());
 
             document.setDurationWait(timer.getDuration());
             composer.addEvent(
@@ -744,6 +804,7 @@ class DUUIWorkerDocumentReader extends Thread {
             document.setDurationProcess(timer.getDuration());
             document.setFinished(true);
             document.setFinishedAt();
+            tracker.endProcessed();
         }
     }
 
@@ -754,11 +815,36 @@ class DUUIWorkerDocumentReader extends Thread {
  * <p>
  * This is the main class used to control and use DUUI.
  */
-public class DUUIComposer {
+public class DUUIComposer implements IDUUIMetricsSource {
     private final Map<String, IDUUIDriverInterface> _drivers;
     private final Vector<DUUIPipelineComponent> _pipeline;
     private int _workers;
     public Integer _cas_poolsize;
+    private boolean _virtualThreads;
+    // Creates the virtual worker threads, null if they are not available on this runtime
+    private ThreadFactory _virtualThreadFactory;
+    // Stage threads of the pipelined execution, 0 if documents are processed by worker threads
+    private int _serializerThreads;
+    private int _deserializerThreads;
+    // Run independent components of a document at the same time, see DUUIDAGExecutionPlanGenerator
+    private boolean _parallelBranches;
+    // Threads running the parallel branches of the current run, null if there are none
+    private ExecutorService _branches;
+    // Segment once for consecutive components sharing a segmentation strategy
+    private boolean _pipelineSegmentation;
+    // Processes the segments of segmented components in parallel, null to process them one after another
+    private DUUIParallelSegmentProcessor _segmentProcessor;
+    // Records the performance of documents in arrays indexed by component, see DUUIPipelinePerformanceLayout
+    private boolean _compactPerformance;
+    // Layout of the instantiated pipeline, null unless performance is recorded compactly
+    private volatile DUUIPipelinePerformanceLayout _performanceLayout;
+    // Live latency histograms of the components, null if they are not kept
+    private volatile DUUILatencyHistograms _latencyHistograms;
+    // Endpoint exposing the metrics of the composer, null if it is not started
+    private DUUIMetricsServer _metricsServer;
+    // CAS pools of the current run, only read by the metrics endpoint
+    private volatile DUUIResourcePool<JCas> _casPool;
+    private volatile DUUIResourcePool<JCas> _loadedCasPool;
     private DUUILuaContext _context;
     private DUUIMonitor _monitor;
     private IDUUIStorageBackend _storage;
@@ -766,6 +852,8 @@ public class DUUIComposer {
     private Vector<PipelinePart> _instantiatedPipeline;
     private Thread _shutdownHook;
     private AtomicBoolean _shutdownAtomic;
+    // Completion tracker of the current run, cancelled on interrupt
+    private volatile DUUICompletionTracker _completion;
     private boolean _hasShutdown;
 
     private static final String DRIVER_OPTION_NAME = "duuid.composer.driver";
@@ -811,6 +899,15 @@ public class DUUIComposer {
         _pipeline = new Vector<>();
         _workers = 1;
         _cas_poolsize = null;
+        _virtualThreads = false;
+        _virtualThreadFactory = null;
+        _serializerThreads = 0;
+        _deserializerThreads = 0;
+        _parallelBranches = false;
+        _branches = null;
+        _segmentProcessor = null;
+        _pipelineSegmentation = false;
+        _compactPerformance = false;
         Globals globals = JsePlatform.standardGlobals();
         _context = new DUUILuaContext();
         _monitor = null;
@@ -916,6 +1013,271 @@ public class DUUIComposer {
         return this;
     }
 
+    /**
+     * Runs one worker per CAS of the pool on virtual threads instead of the platform threads set by withWorkers. A
+     * worker blocked on a component request then no longer occupies an OS thread, so the number of documents in flight
+     * is only limited by the CAS pool size and the capacity of the components.
+     * <p>
+     * Virtual threads need a Java 21 runtime. On older runtimes one platform thread per CAS is started instead.
+     * @return this, for method chaining
+     */
+    public DUUIComposer withVirtualThreads() {
+        _virtualThreads = true;
+        _virtualThreadFactory = createVirtualThreadFactory();
+        if (_virtualThreadFactory == null) {
+            System.err.println("[Composer] WARNING: Virtual threads are not available on this Java runtime, starting one platform thread per CAS instead.");
+        }
+        return this;
+    }
+
+    /**
+     * Processes the documents of a collection reader run in stages instead of by worker threads: serializing a request,
+     * waiting for the component and deserializing its response are separate steps, so the documents in flight are
+     * spread over all components and no thread waits for a response, see {@link DUUIPipelinedExecutor}. The number of
+     * documents in flight is set by withCasPoolsize.
+     * @param serializerThreads Threads serializing requests and running components not called over HTTP
+     * @param deserializerThreads Threads deserializing responses
+     * @return this, for method chaining
+     */
+    public DUUIComposer withPipelinedExecution(int serializerThreads, int deserializerThreads) {
+        if (serializerThreads < 1 || deserializerThreads < 1) {
+            throw new IllegalArgumentException("[Composer] Pipelined execution needs at least one serializer and one deserializer thread");
+        }
+        if (_parallelBranches) {
+            throw new IllegalStateException("[Composer] Pipelined execution runs the components one after another, it cannot be combined with parallel branches");
+        }
+        _serializerThreads = serializerThreads;
+        _deserializerThreads = deserializerThreads;
+        return this;
+    }
+
+    /**
+     * Runs components of a document at the same time if they do not depend on each other, see
+     * {@link DUUIDAGExecutionPlanGenerator}. Dependencies are derived from the types declared with withInputs and
+     * withOutputs, a component without declared types waits for all components before it and is waited for by all
+     * components after it. The components have to add annotations to the CAS without removing or replacing others.
+     * Running a pipeline is refused if a component whose communication layer replaces the whole CAS, like the XMI
+     * fallback or the binary layer, would run in parallel to another component.
+     * <p>
+     * This only applies to run with a collection reader description, which then always uses worker threads. Running a
+     * single document, an AsyncCollectionReader, a DUUIAsynchronousProcessor or a DUUIDocumentReader runs the
+     * components one after another. Pipelined execution cannot be combined with parallel branches.
+     * @param parallelBranches Whether independent components run at the same time
+     * @return this, for method chaining
+     * @throws IllegalStateException If pipelined execution is enabled
+     */
+    public DUUIComposer withParallelBranches(boolean parallelBranches) {
+        if (parallelBranches && _serializerThreads > 0) {
+            throw new IllegalStateException("[Composer] Pipelined execution runs the components one after another, it cannot be combined with parallel branches");
+        }
+        _parallelBranches = parallelBranches;
+        return this;
+    }
+
+    /**
+     * Segments a document only once for consecutive components that were given the same segmentation strategy
+     * instance: every segment is processed by all of these components before it is merged, instead of splitting and
+     * merging the whole document for each of them. The later components only see the annotations of the earlier ones
+     * within the same segment.
+     * @param pipelineSegmentation Whether consecutive components share their segments
+     * @return this, for method chaining
+     */
+    public DUUIComposer withPipelineSegmentation(boolean pipelineSegmentation) {
+        _pipelineSegmentation = pipelineSegmentation;
+        return this;
+    }
+
+    /**
+     * Sends the segments of components with a segmentation strategy to the component in parallel instead of one after
+     * another, so a single large document can keep all instances of a component busy. The results are merged in the
+     * order of the segments, see {@link DUUIParallelSegmentProcessor}. This only applies to run_pipeline, i.e. the
+     * synchronous run with a single worker and run with a single document. The worker threads, e.g.
+     * DUUIWorkerAsyncReader and DUUIWorkerAsyncProcessor, still process segments one after another.
+     * @param segmentsInFlight Maximum number of segments of a document processed at once, usually the number of
+     *                         instances of the segmented components
+     * @return this, for method chaining
+     */
+    public DUUIComposer withParallelSegments(int segmentsInFlight) {
+        if (_segmentProcessor != null) {
+            _segmentProcessor.close();
+        }
+        _segmentProcessor = new DUUIParallelSegmentProcessor(segmentsInFlight);
+        return this;
+    }
+
+    /**
+     * Records the performance of a document in primitive arrays indexed by the position of the component instead of
+     * creating an object per component call, see {@link DUUIPipelinePerformanceLayout}. The calls of a component for
+     * the segments of a document are added up to one entry. The annotations are only counted after each component if
+     * the storage backend asks for them.
+     * @param compactPerformance Whether to record the performance compactly
+     * @return this, for method chaining
+     */
+    public DUUIComposer withCompactPerformanceRecording(boolean compactPerformance) {
+        _compactPerformance = compactPerformance;
+        return this;
+    }
+
+    /**
+     * @return Layout to record the performance of documents with, null unless it is recorded compactly
+     */
+    public DUUIPipelinePerformanceLayout getPerformanceLayout() {
+        return _performanceLayout;
+    }
+
+    /**
+     * Keeps latency histograms of every component and phase of a call in memory while documents are processed, as well
+     * as of every instance of a component, see {@link DUUILatencyHistograms}. They are independent of the storage
+     * backend and can be queried with {@link #getLatencyHistograms()} during a run.
+     * @param latencyHistograms Whether to keep latency histograms
+     * @return this, for method chaining
+     */
+    public DUUIComposer withLatencyHistograms(boolean latencyHistograms) {
+        if (latencyHistograms && _latencyHistograms == null) {
+            _latencyHistograms = new DUUILatencyHistograms();
+        } else if (!latencyHistograms && _latencyHistograms != null) {
+            _latencyHistograms.close();
+            _latencyHistograms = null;
+        }
+        return this;
+    }
+
+    /**
+     * Keeps latency histograms like {@link #withLatencyHistograms(boolean)} and passes them to the exporter in a fixed
+     * interval until the composer is shut down.
+     * @param interval Time between two exports
+     * @param exporter Exporter, e.g. writing the percentiles to a log
+     * @return this, for method chaining
+     */
+    public DUUIComposer withLatencyExport(Duration interval, Consumer<DUUILatencyHistograms> exporter) {
+        withLatencyHistograms(true);
+        _latencyHistograms.exportEvery(interval, exporter);
+        return this;
+    }
+
+    /**
+     * @return Latency histograms of the components, null unless they are kept
+     */
+    public DUUILatencyHistograms getLatencyHistograms() {
+        return _latencyHistograms;
+    }
+
+    /**
+     * Starts an endpoint for Prometheus to scrape the metrics of the composer from, see {@link DUUIMetricsServer}. It
+     * exposes the progress of the current run, the CAS pools, the idle instances of every component, the storage
+     * backend and the latency histograms if they are kept. Further sources, e.g. the collection reader, are added with
+     * getMetricsServer().withSource. The endpoint is stopped when the composer shuts down.
+     * @param port Port to serve /metrics on, 0 to pick a free one
+     * @return this, for method chaining
+     * @throws IOException If the port cannot be bound
+     */
+    public DUUIComposer withMetricsServer(int port) throws IOException {
+        if (_metricsServer != null) {
+            _metricsServer.close();
+        }
+        _metricsServer = new DUUIMetricsServer(port).withSource(this);
+        return this;
+    }
+
+    /**
+     * @return Endpoint exposing the metrics of the composer, null if it is not started
+     */
+    public DUUIMetricsServer getMetricsServer() {
+        return _metricsServer;
+    }
+
+    @Override
+    public void collectMetrics(DUUIMetricsWriter metrics) {
+        metrics.gauge("duui_workers", "Worker threads of the composer", _workers);
+
+        DUUICompletionTracker tracker = _completion;
+        if (tracker != null) {
+            metrics.counter("duui_documents_processed", "Documents processed in the current run", tracker.getProcessed())
+                    .gauge("duui_documents_in_flight", "Documents being processed", tracker.getInFlight());
+        }
+
+        collectPoolMetrics(metrics, "duui_cas_pool", "empty CAS objects", _casPool);
+        collectPoolMetrics(metrics, "duui_loaded_cas_pool", "loaded documents waiting for a worker", _loadedCasPool);
+
+        // Copied under the lock of the vector, parts are added and removed while a run starts or shuts down
+        for (PipelinePart part : new ArrayList<>(_instantiatedPipeline)) {
+            collectPoolMetrics(metrics, "duui_component_instances", "idle instances of a component",
+                    part.getDriver().getInstancePool(part.getUUID()), "component", part.getName());
+        }
+
+        metrics.counter("duui_buffers_allocated", "Serialization buffers allocated", DUUIByteBufferPool.SHARED.getAllocated())
+                .counter("duui_buffers_reused", "Serialization buffers taken from the pool", DUUIByteBufferPool.SHARED.getReused());
+
+        if (_storage instanceof IDUUIMetricsSource) {
+            ((IDUUIMetricsSource) _storage).collectMetrics(metrics);
+        }
+
+        DUUILatencyHistograms histograms = _latencyHistograms;
+        if (histograms != null) {
+            for (DUUILatencyHistograms.Component component : histograms.getComponents()) {
+                for (DUUILatencyHistograms.Phase phase : DUUILatencyHistograms.Phase.values()) {
+                    metrics.summary("duui_component_latency_seconds", "Latency of the calls of a component by phase",
+                            component.getHistogram(phase), "component", component.getName(), "phase", phase.name().toLowerCase());
+                }
+                for (Map.Entry<String, DUUILatencyHistogram> instance : component.getInstances().entrySet()) {
+                    metrics.summary("duui_instance_latency_seconds", "Time an instance of a component took to answer",
+                            instance.getValue(), "component", component.getName(), "instance", instance.getKey());
+                }
+            }
+        }
+    }
+
+    private static void collectPoolMetrics(DUUIMetricsWriter metrics, String name, String description,
+                                           DUUIResourcePool<?> pool, String... labels) {
+        if (pool == null) {
+            return;
+        }
+        metrics.gauge(name + "_idle", "Number of " + description, pool.size(), labels)
+                .gauge(name + "_waiting", "Threads waiting for " + description, pool.getWaiting(), labels)
+                .counter(name + "_acquired", "Times one of the " + description + " was taken", pool.getAcquired(), labels)
+                .counter(name + "_contended", "Times a thread had to wait for " + description, pool.getContended(), labels)
+                .counter(name + "_wait_seconds", "Time threads waited for " + description, pool.getTotalWaitNanos() / 1e9, labels);
+    }
+
+    /**
+     * Looks up Thread.ofVirtual by reflection, so the composer still runs on Java 17.
+     * @return Factory for virtual threads, or null if the runtime does not support them
+     */
+    private static ThreadFactory createVirtualThreadFactory() {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method name = builderClass.getMethod("name", String.class, long.class);
+            builder = name.invoke(builder, "DUUIWorker-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return Number of worker threads of an asynchronous run, one per CAS with withVirtualThreads.
+     */
+    private int workerCount() {
+        return _virtualThreads ? _cas_poolsize : _workers;
+    }
+
+    /**
+     * Starts a worker on its own platform thread or, with withVirtualThreads, on a virtual thread.
+     * @param worker Worker to run
+     * @return Thread running the worker, to be joined or interrupted instead of the worker
+     */
+    private Thread startWorker(Thread worker) {
+        if (_virtualThreadFactory == null) {
+            worker.start();
+            return worker;
+        }
+        Thread thread = _virtualThreadFactory.newThread(worker);
+        thread.setUncaughtExceptionHandler(worker.getUncaughtExceptionHandler());
+        thread.start();
+        return thread;
+    }
+
     /**
      *
      * @param open
@@ -1069,6 +1431,9 @@ public class DUUIComposer {
         private final String _uuid;
         private final String name;
         private final DUUISegmentationStrategy segmentationStrategy;
+        // Declared input and output types, null if the component does not declare them
+        private final List<String> inputs;
+        private final List<String> outputs;
 
         /**
          * Construct pipeline part.
@@ -1078,10 +1443,26 @@ public class DUUIComposer {
          * @param segmentationStrategy Segmentation strategy to use
          */
         PipelinePart(IDUUIDriverInterface driver, String uuid, String name, DUUISegmentationStrategy segmentationStrategy) {
+            this(driver, uuid, name, segmentationStrategy, null, null);
+        }
+
+        /**
+         * Construct pipeline part.
+         * @param driver DUUI driver to use
+         * @param uuid Unique ID of this part
+         * @param name Part name
+         * @param segmentationStrategy Segmentation strategy to use
+         * @param inputs Declared input types, null if unknown
+         * @param outputs Declared output types, null if unknown
+         */
+        PipelinePart(IDUUIDriverInterface driver, String uuid, String name, DUUISegmentationStrategy segmentationStrategy,
+                     List<String> inputs, List<String> outputs) {
             _driver = driver;
             _uuid = uuid;
             this.name = name;
             this.segmentationStrategy = segmentationStrategy;
+            this.inputs = inputs;
+            this.outputs = outputs;
         }
 
         public IDUUIDriverInterface getDriver() {
@@ -1096,6 +1477,22 @@ public class DUUIComposer {
             return name;
         }
 
+        public List<String> getInputs() {
+            return inputs;
+        }
+
+        public List<String> getOutputs() {
+            return outputs;
+        }
+
+        /**
+         * @param other Other pipeline part
+         * @return True if both parts were given the same segmentation strategy instance
+         */
+        public boolean sharesSegmentationStrategy(PipelinePart other) {
+            return segmentationStrategy != null && segmentationStrategy == other.segmentationStrategy;
+        }
+
         public DUUISegmentationStrategy getSegmentationStrategy() {
             if (segmentationStrategy == null) {
                 // Use default strategy with no segmentation
@@ -1128,8 +1525,11 @@ public class DUUIComposer {
      * @throws Exception
      */
     public void run(DUUIAsynchronousProcessor collectionReader, String name) throws Exception {
-        ConcurrentLinkedQueue<JCas> emptyCasDocuments = new ConcurrentLinkedQueue<>();
+        DUUIResourcePool<JCas> emptyCasDocuments = new DUUIResourcePool<>();
+        _casPool = emptyCasDocuments;
         AtomicInteger aliveThreads = new AtomicInteger(0);
+        DUUICompletionTracker tracker = new DUUICompletionTracker();
+        _completion = tracker;
         _shutdownAtomic.set(false);
 
         Exception catched = null;
@@ -1154,28 +1554,19 @@ public class DUUIComposer {
                 emptyCasDocuments.add(JCasFactory.createJCas(desc));
             }
 
-            Thread[] arr = new Thread[_workers];
-            for (int i = 0; i < _workers; i++) {
-                System.out.printf("[Composer] Starting worker thread [%d/%d]\n", i + 1, _workers);
-                arr[i] = new DUUIWorkerAsyncProcessor(_instantiatedPipeline, emptyCasDocuments.poll(), _shutdownAtomic, aliveThreads, _storage, name, collectionReader, this);
-                arr[i].start();
+            int workers = workerCount();
+            Thread[] arr = new Thread[workers];
+            for (int i = 0; i < workers; i++) {
+                System.out.printf("[Composer] Starting worker thread [%d/%d]\n", i + 1, workers);
+                arr[i] = new DUUIWorkerAsyncProcessor(_instantiatedPipeline, emptyCasDocuments.poll(), _shutdownAtomic, aliveThreads, _storage, name, collectionReader, tracker, this);
+                arr[i] = startWorker(arr[i]);
             }
             Instant starttime = Instant.now();
-//            while (!_shutdownAtomic.get()) {
-//
-//            }
-
-            AtomicInteger waitCount = new AtomicInteger();
-            waitCount.set(0);
-            // Wartet, bis die Dokumente fertig verarbeitet wurden.
-            while (emptyCasDocuments.size() != _cas_poolsize && !collectionReader.isFinish()) {
-                if (waitCount.incrementAndGet() % 500 == 0) {
-                    System.out.println("[Composer] Waiting for threads to finish document processing...");
-                }
-                Thread.sleep(1000 * _workers); // to fast or in relation with threads?
 
-            }
-            System.out.println("[Composer] All documents have been processed. Signaling threads to shut down now...");
+            // Wartet, bis das letzte Dokument die Pipeline verlassen hat.
+            System.out.println("[Composer] Waiting for threads to finish document processing...");
+            tracker.awaitCompletion();
+            System.out.printf("[Composer] All %d documents have been processed. Signaling threads to shut down now...\n", tracker.getProcessed());
             _shutdownAtomic.set(true);
 
             for (int i = 0; i < arr.length; i++) {
@@ -1184,7 +1575,7 @@ public class DUUIComposer {
                 System.out.printf("[Composer] Thread %d returned.\n", i);
             }
             if (_storage != null) {
-                _storage.finalizeRun(name, starttime, Instant.now());
+                _storage.finalizeRun(name, starttime, tracker.getCompletedAt());
             }
             System.out.println("[Composer] All threads returned.");
             shutdown_pipeline();
@@ -1281,9 +1672,13 @@ public class DUUIComposer {
      * @throws Exception
      */
     public void run(AsyncCollectionReader collectionReader, String name) throws Exception {
-        ConcurrentLinkedQueue<JCas> emptyCasDocuments = new ConcurrentLinkedQueue<>();
-        ConcurrentLinkedQueue<JCas> loadedCasDocuments = new ConcurrentLinkedQueue<>();
+        DUUIResourcePool<JCas> emptyCasDocuments = new DUUIResourcePool<>();
+        _casPool = emptyCasDocuments;
+        DUUIResourcePool<JCas> loadedCasDocuments = new DUUIResourcePool<>();
+        _loadedCasPool = loadedCasDocuments;
         AtomicInteger aliveThreads = new AtomicInteger(0);
+        DUUICompletionTracker tracker = new DUUICompletionTracker();
+        _completion = tracker;
         _shutdownAtomic.set(false);
 
         Exception catched = null;
@@ -1308,11 +1703,12 @@ public class DUUIComposer {
                 emptyCasDocuments.add(JCasFactory.createJCas(desc));
             }
 
-            Thread[] arr = new Thread[_workers];
-            for (int i = 0; i < _workers; i++) {
-                System.out.printf("[Composer] Starting worker thread [%d/%d]\n", i + 1, _workers);
-                arr[i] = new DUUIWorkerAsyncReader(_instantiatedPipeline, emptyCasDocuments.poll(), _shutdownAtomic, aliveThreads, _storage, name, collectionReader, this);
-                arr[i].start();
+            int workers = workerCount();
+            Thread[] arr = new Thread[workers];
+            for (int i = 0; i < workers; i++) {
+                System.out.printf("[Composer] Starting worker thread [%d/%d]\n", i + 1, workers);
+                arr[i] = new DUUIWorkerAsyncReader(_instantiatedPipeline, emptyCasDocuments.poll(), _shutdownAtomic, aliveThreads, _storage, name, collectionReader, tracker, this);
+                arr[i] = startWorker(arr[i]);
             }
             Instant starttime = Instant.now();
             final int maxNumberOfFutures = 20;
@@ -1335,17 +1731,10 @@ public class DUUIComposer {
                 if (breakit) break;
             }
 
-            AtomicInteger waitCount = new AtomicInteger();
-            waitCount.set(0);
-            // Wartet, bis die Dokumente fertig verarbeitet wurden.
-            while (emptyCasDocuments.size() != _cas_poolsize && !collectionReader.isEmpty()) {
-                if (waitCount.incrementAndGet() % 500 == 0) {
-                    System.out.println("[Composer] Waiting for threads to finish document processing...");
-                }
-                Thread.sleep(1000 * _workers); // to fast or in relation with threads?
-
-            }
-            System.out.println("[Composer] All documents have been processed. Signaling threads to shut down now...");
+            // Wartet, bis das letzte Dokument die Pipeline verlassen hat.
+            System.out.println("[Composer] Waiting for threads to finish document processing...");
+            tracker.awaitCompletion();
+            System.out.printf("[Composer] All %d documents have been processed. Signaling threads to shut down now...\n", tracker.getProcessed());
             _shutdownAtomic.set(true);
 
             for (int i = 0; i < arr.length; i++) {
@@ -1354,7 +1743,7 @@ public class DUUIComposer {
                 System.out.printf("[Composer] Thread %d returned.\n", i);
             }
             if (_storage != null) {
-                _storage.finalizeRun(name, starttime, Instant.now());
+                _storage.finalizeRun(name, starttime, tracker.getCompletedAt());
             }
             System.out.println("[Composer] All threads returned.");
             shutdown_pipeline();
@@ -1373,9 +1762,13 @@ public class DUUIComposer {
      * @throws Exception
      */
     private void run_async(CollectionReader collectionReader, String name) throws Exception {
-        ConcurrentLinkedQueue<JCas> emptyCasDocuments = new ConcurrentLinkedQueue<>();
-        ConcurrentLinkedQueue<JCas> loadedCasDocuments = new ConcurrentLinkedQueue<>();
+        DUUIResourcePool<JCas> emptyCasDocuments = new DUUIResourcePool<>();
+        _casPool = emptyCasDocuments;
+        DUUIResourcePool<JCas> loadedCasDocuments = new DUUIResourcePool<>();
+        _loadedCasPool = loadedCasDocuments;
         AtomicInteger aliveThreads = new AtomicInteger(0);
+        DUUICompletionTracker tracker = new DUUICompletionTracker();
+        _completion = tracker;
         _shutdownAtomic.set(false);
 
         Exception catched = null;
@@ -1400,45 +1793,132 @@ public class DUUIComposer {
                 emptyCasDocuments.add(JCasFactory.createJCas(desc));
             }
 
-            Thread[] arr = new Thread[_workers];
-            for (int i = 0; i < _workers; i++) {
-                System.out.printf("[Composer] Starting worker thread [%d/%d]\n", i + 1, _workers);
-                //TODO: Use Inputs and Outputs to create paralel execution plan
-                //Implement new ExecutionPlanGenerator & ExecutionPlan
+            int workers = workerCount();
+            IDUUIExecutionPlanGenerator generator;
+            shutdownBranches();
+            if (_parallelBranches) {
+                DUUIDAGExecutionPlanGenerator dag = new DUUIDAGExecutionPlanGenerator(_instantiatedPipeline);
+                // A thread for every branch of every worker, so a worker waiting for its branches never starves them
+                _branches = Executors.newFixedThreadPool(Math.max(1, workers * dag.getMaxBranches()), runnable -> {
+                    Thread thread = new Thread(runnable, "DUUIBranch");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                generator = dag;
+            } else {
+                generator = new DUUILinearExecutionPlanGenerator(_instantiatedPipeline);
+            }
+
+            Thread[] arr = new Thread[workers];
+            for (int i = 0; i < workers; i++) {
+                System.out.printf("[Composer] Starting worker thread [%d/%d]\n", i + 1, workers);
                 arr[i] = new DUUIWorker(_instantiatedPipeline, emptyCasDocuments, loadedCasDocuments, _shutdownAtomic, aliveThreads, _storage, name, null,
-                    new DUUILinearExecutionPlanGenerator(_instantiatedPipeline), this);
-                arr[i].start();
+                    generator, tracker, _branches, this);
+                arr[i] = startWorker(arr[i]);
             }
             Instant starttime = Instant.now();
             while (collectionReader.hasNext()) {
-                JCas jc = emptyCasDocuments.poll();
-                while (jc == null) {
-                    jc = emptyCasDocuments.poll();
-                }
+                JCas jc = emptyCasDocuments.take();
+                tracker.begin();
                 collectionReader.getNext(jc.getCas());
                 loadedCasDocuments.add(jc);
             }
-            AtomicInteger waitCount = new AtomicInteger();
-            waitCount.set(0);
-            while (emptyCasDocuments.size() != _cas_poolsize) {
-                if (waitCount.getAndIncrement() % 500 == 0) {
-                    System.out.println("[Composer] Waiting for threads to finish document processing...");
-                }
-                Thread.sleep(1000);
-            }
-            System.out.println("[Composer] All documents have been processed. Signaling threads to shut down now...");
+            tracker.inputFinished();
+            System.out.println("[Composer] Waiting for threads to finish document processing...");
+            tracker.awaitCompletion();
+            System.out.printf("[Composer] All %d documents have been processed. Signaling threads to shut down now...\n", tracker.getProcessed());
             _shutdownAtomic.set(true);
+            // The workers are idle now, wake them up instead of waiting for their next shutdown check
+            for (Thread thread : arr) {
+                thread.interrupt();
+            }
 
             for (int i = 0; i < arr.length; i++) {
                 System.out.printf("[Composer] Waiting for thread [%d/%d] to shut down\n", i + 1, arr.length);
                 arr[i].join();
                 System.out.printf("[Composer] Thread %d returned.\n", i);
             }
+            shutdownBranches();
             if (_storage != null) {
-                _storage.finalizeRun(name, starttime, Instant.now());
+                _storage.finalizeRun(name, starttime, tracker.getCompletedAt());
             }
             System.out.println("[Composer] All threads returned.");
             shutdown_pipeline();
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.out.println("[Composer] Something went wrong, shutting down remaining components...");
+            shutdownBranches();
+            shutdown_pipeline();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs the DUUI pipeline with the staged {@link DUUIPipelinedExecutor} instead of worker threads.
+     * @param collectionReader CAS collection reader
+     * @param name Run name
+     * @throws Exception
+     */
+    private void run_pipelined(CollectionReader collectionReader, String name) throws Exception {
+        DUUIResourcePool<JCas> emptyCasDocuments = new DUUIResourcePool<>();
+        _casPool = emptyCasDocuments;
+        DUUICompletionTracker tracker = new DUUICompletionTracker();
+        _completion = tracker;
+        _shutdownAtomic.set(false);
+
+        System.out.printf("[Composer] Running in pipelined mode, %d serializer and %d deserializer threads!\n", _serializerThreads, _deserializerThreads);
+
+        try {
+            if (_storage != null) {
+                _storage.addNewRun(name, this);
+            }
+            TypeSystemDescription desc = instantiate_pipeline();
+            if (_cas_poolsize == null) {
+                _cas_poolsize = (int) Math.ceil(_workers * 1.5);
+                System.out.printf("[Composer] Calculated CAS poolsize of %d!\n", _cas_poolsize);
+            }
+
+            for (int i = 0; i < _cas_poolsize; i++) {
+                emptyCasDocuments.add(JCasFactory.createJCas(desc));
+            }
+
+            boolean trackErrorDocs = _storage != null && _storage.shouldTrackErrorDocs();
+            Instant starttime = Instant.now();
+            try (DUUIPipelinedExecutor executor = new DUUIPipelinedExecutor(_instantiatedPipeline, this, _serializerThreads, _deserializerThreads, _cas_poolsize)) {
+                while (collectionReader.hasNext() && !_shutdownAtomic.get()) {
+                    long waitTimeStart = System.nanoTime();
+                    JCas jc = emptyCasDocuments.take();
+                    tracker.begin();
+                    collectionReader.getNext(jc.getCas());
+                    DUUIPipelineDocumentPerformance perf = new DUUIPipelineDocumentPerformance(name, System.nanoTime() - waitTimeStart, jc, trackErrorDocs, _performanceLayout, _latencyHistograms);
+
+                    executor.submit(jc, perf).whenComplete((result, e) -> {
+                        try {
+                            if (e != null) {
+                                //Ignore errors at the moment
+                                e.printStackTrace();
+                                System.out.println("Pipeline continues work with next document!");
+                            }
+                            if (_storage != null) {
+                                _storage.addMetricsForDocument(perf);
+                            }
+                        } finally {
+                            jc.reset();
+                            emptyCasDocuments.add(jc);
+                            tracker.endProcessed();
+                        }
+                    });
+                }
+                tracker.inputFinished();
+
+                System.out.println("[Composer] Waiting for the pipeline to finish document processing...");
+                tracker.awaitCompletion();
+                System.out.printf("[Composer] All %d documents have been processed.\n", tracker.getProcessed());
+            }
+            if (_storage != null) {
+                _storage.finalizeRun(name, starttime, tracker.getCompletedAt());
+            }
+            shutdown_pipeline();
         } catch (Exception e) {
             e.printStackTrace();
             System.out.println("[Composer] Something went wrong, shutting down remaining components...");
@@ -1483,7 +1963,12 @@ public class DUUIComposer {
             "Instantiated the collection reader"
         );
 
-        if (_workers == 1) {
+        if (_serializerThreads > 0) {
+            run_pipelined(collectionReader, name);
+            return;
+        }
+
+        if (_workers == 1 && !_virtualThreads && !_parallelBranches) {
             addEvent(
                 DUUIEvent.Sender.COMPOSER,
                 "Running in synchronous mode, 1 thread at most!");
@@ -1553,6 +2038,15 @@ public class DUUIComposer {
         if (isServiceStarted)
             return fromInstantiatedPipeline();
 
+        _performanceLayout = _compactPerformance
+            ? new DUUIPipelinePerformanceLayout(_pipeline, _storage != null && _storage.shouldCountAnnotations())
+            : null;
+        if (_latencyHistograms != null) {
+            for (DUUIPipelineComponent comp : _pipeline) {
+                _latencyHistograms.register(comp.getFinalizedRepresentationHash(), comp.getName());
+            }
+        }
+
         Timer timer = new Timer();
         timer.start();
 
@@ -1616,8 +2110,7 @@ public class DUUIComposer {
                     if (desc != null) {
                         descriptions.add(desc);
                     }
-                    //TODO: get input output of every annotator
-                    _instantiatedPipeline.add(new PipelinePart(driver, uuid, comp.getName(), segmentationStrategy));
+                    _instantiatedPipeline.add(new PipelinePart(driver, uuid, comp.getName(), segmentationStrategy, comp.getInputs(), comp.getOutputs()));
                 }
 
                 index++;
@@ -1669,6 +2162,24 @@ public class DUUIComposer {
         return instantiatedTypeSystem;
     }
 
+    /**
+     * Returns the pipeline parts segmented together with the part at the given index: with withPipelineSegmentation
+     * all directly following parts sharing its segmentation strategy, otherwise only the part itself.
+     * @param pipeline Component pipeline
+     * @param index Index of the first part of the group
+     * @return Parts of the group in pipeline order
+     */
+    private List<PipelinePart> segmentationGroup(Vector<PipelinePart> pipeline, int index) {
+        PipelinePart first = pipeline.get(index);
+        int end = index + 1;
+        if (_pipelineSegmentation) {
+            while (end < pipeline.size() && pipeline.get(end).sharesSegmentationStrategy(first)) {
+                end++;
+            }
+        }
+        return pipeline.subList(index, end);
+    }
+
     /**
      * Runs the pipeline for a single CAS object.
      * @param name Run name
@@ -1697,39 +2208,45 @@ public class DUUIComposer {
             trackErrorDocs = _storage.shouldTrackErrorDocs();
         }
 
-        DUUIPipelineDocumentPerformance perf = new DUUIPipelineDocumentPerformance(name, documentWaitTime, jc, trackErrorDocs);
+        DUUIPipelineDocumentPerformance perf = new DUUIPipelineDocumentPerformance(name, documentWaitTime, jc, trackErrorDocs, _performanceLayout, _latencyHistograms);
         document.setStartedAt();
         document.setStatus(DUUIStatus.ACTIVE);
 
         Exception error = null;
         try {
-            for (PipelinePart comp : pipeline) {
+            for (int index = 0; index < pipeline.size(); ) {
                 if (shouldShutdown()) break;
-                pipelineStatus.put(comp.getName(), DUUIStatus.ACTIVE);
 
-                // Segment document for each item in the pipeline separately
-                // TODO support "complete pipeline" segmentation to only segment once
-                DUUISegmentationStrategy segmentationStrategy = comp.getSegmentationStrategy();
+                // Segment document for each item in the pipeline separately, or once for a group of items sharing
+                // their segmentation strategy, see withPipelineSegmentation
+                List<PipelinePart> group = segmentationGroup(pipeline, index);
+                DUUISegmentationStrategy segmentationStrategy = group.get(0).getSegmentationStrategy();
 
-                addEvent(
-                    DUUIEvent.Sender.DOCUMENT,
-                    String.format(
-                        "%s is being processed by component %s",
-                        document.getPath(),
-                        comp.getName())
-                );
+                for (PipelinePart comp : group) {
+                    pipelineStatus.put(comp.getName(), DUUIStatus.ACTIVE);
+                    addEvent(
+                        DUUIEvent.Sender.DOCUMENT,
+                        String.format(
+                            "%s is being processed by component %s",
+                            document.getPath(),
+                            comp.getName())
+                    );
+                }
 
                 if (segmentationStrategy instanceof DUUISegmentationStrategyNone) {
+                    PipelinePart comp = group.get(0);
                     comp.getDriver().run(comp.getUUID(), jc, perf, this);
+                } else if (_segmentProcessor != null) {
+                    _segmentProcessor.process(group, segmentationStrategy, jc, perf, this);
                 } else {
                     segmentationStrategy.initialize(jc);
 
                     JCas jCasSegmented = segmentationStrategy.getNextSegment();
                     while (jCasSegmented != null) {
-                        // Process each cas sequentially
-                        // TODO add parallel variant later
-
-                        comp.getDriver().run(comp.getUUID(), jCasSegmented, perf, this);
+                        // Process each cas sequentially, see withParallelSegments for the parallel variant
+                        for (PipelinePart comp : group) {
+                            comp.getDriver().run(comp.getUUID(), jCasSegmented, perf, this);
+                        }
 
                         segmentationStrategy.merge(jCasSegmented);
                         jCasSegmented = segmentationStrategy.getNextSegment();
@@ -1737,14 +2254,17 @@ public class DUUIComposer {
 
                     segmentationStrategy.finalize(jc);
                 }
-                addEvent(
-                    DUUIEvent.Sender.DOCUMENT,
-                    String.format(
-                        "%s has been processed by component %s",
-                        document.getPath(),
-                        comp.getName())
-                );
-                document.incrementProgress();
+                for (PipelinePart comp : group) {
+                    addEvent(
+                        DUUIEvent.Sender.DOCUMENT,
+                        String.format(
+                            "%s has been processed by component %s",
+                            document.getPath(),
+                            comp.getName())
+                    );
+                    document.incrementProgress();
+                }
+                index += group.size();
             }
 
             addEvent(
@@ -1921,6 +2441,16 @@ public class DUUIComposer {
         }
     }
 
+    /**
+     * Stops the threads running parallel branches, they are idle once every worker of the run has returned.
+     */
+    private void shutdownBranches() {
+        if (_branches != null) {
+            _branches.shutdown();
+            _branches = null;
+        }
+    }
+
     public int getWorkerCount() {
         return _workers;
     }
@@ -1949,6 +2479,7 @@ public class DUUIComposer {
             "Starting shutdown.");
 
         _shutdownAtomic.set(true);
+        if (_completion != null) _completion.cancel();
 
         if (_monitor != null) {
             addEvent(DUUIEvent.Sender.COMPOSER, "Shutting down monitor.");
@@ -1969,6 +2500,19 @@ public class DUUIComposer {
             _storage.shutdown();
         }
 
+        if (_segmentProcessor != null) {
+            _segmentProcessor.close();
+        }
+
+        shutdownBranches();
+
+        if (_latencyHistograms != null) {
+            _latencyHistograms.close();
+        }
+
+        if (_metricsServer != null) {
+            _metricsServer.close();
+        }
 
         if (!_connection_open) {
             _clients.forEach(IDUUIConnectionHandler::close);
@@ -2002,8 +2546,11 @@ public class DUUIComposer {
      * @throws Exception
      */
     public void run(DUUIDocumentReader documentReader, String identifier) throws Exception {
-        ConcurrentLinkedQueue<JCas> emptyCasDocuments = new ConcurrentLinkedQueue<>();
+        DUUIResourcePool<JCas> emptyCasDocuments = new DUUIResourcePool<>();
+        _casPool = emptyCasDocuments;
         AtomicInteger aliveThreads = new AtomicInteger(0);
+        DUUICompletionTracker tracker = new DUUICompletionTracker();
+        _completion = tracker;
         _shutdownAtomic.set(false);
 
         addEvent(
@@ -2050,8 +2597,9 @@ public class DUUIComposer {
                 emptyCasDocuments.add(JCasFactory.createJCas(desc));
             }
 
-            Thread[] arr = new Thread[_workers];
-            for (int i = 0; i < _workers; i++) {
+            int workers = workerCount();
+            Thread[] arr = new Thread[workers];
+            for (int i = 0; i < workers; i++) {
                 if (shouldShutdown()) {
                     shutdown();
                     return;
@@ -2059,7 +2607,7 @@ public class DUUIComposer {
 
                 addEvent(
                     DUUIEvent.Sender.COMPOSER,
-                    String.format("Starting Thread %d / %d", i + 1, _workers));
+                    String.format("Starting Thread %d / %d", i + 1, workers));
 
                 arr[i] = new DUUIWorkerDocumentReader(
                     _instantiatedPipeline,
@@ -2069,10 +2617,11 @@ public class DUUIComposer {
                     _storage,
                     identifier,
                     documentReader,
+                    tracker,
                     this
                 );
 
-                arr[i].start();
+                arr[i] = startWorker(arr[i]);
             }
 
             Instant starttime = Instant.now();
@@ -2100,15 +2649,10 @@ public class DUUIComposer {
                     break;
             }
 
-            while (emptyCasDocuments.size() != _cas_poolsize && documentReader.hasNext()) {
-                try {
-                    if (shouldShutdown())
-                        break;
-                    addEvent(DUUIEvent.Sender.COMPOSER, "Waiting for threads to finish");
-                    Thread.sleep(1000L * _workers); // to fast or in relation with threads?
-                } catch (InterruptedException e) {
-                    break;
-                }
+            try {
+                addEvent(DUUIEvent.Sender.COMPOSER, "Waiting for threads to finish");
+                tracker.awaitCompletion();
+            } catch (InterruptedException ignored) {
             }
 
             if (shouldShutdown()) {
@@ -2124,7 +2668,7 @@ public class DUUIComposer {
             }
 
             if (_storage != null) {
-                _storage.finalizeRun(identifier, starttime, Instant.now());
+                _storage.finalizeRun(identifier, starttime, tracker.getCompletedAt() == null ? Instant.now() : tracker.getCompletedAt());
             }
 
             addEvent(DUUIEvent.Sender.COMPOSER, "Process finished");
@@ -2342,6 +2886,7 @@ public class DUUIComposer {
      */
     public void interrupt(String reason) {
         _shutdownAtomic.set(true);
+        if (_completion != null) _completion.cancel();
         addEvent(DUUIEvent.Sender.COMPOSER, String.format("Execution has been interrupted. Reason: %s.", reason));
     }
 
@@ -0,0 +1,293 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface;
+
+import org.apache.uima.jcas.JCas;
+import org.javatuples.Triplet;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.driver.DUUIHttpProcessCall;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.driver.IDUUIInstantiatedPipelineComponent;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.driver.IDUUIUrlAccessible;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.pipeline_storage.DUUIPipelineDocumentPerformance;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.segmentation.DUUISegmentationStrategyNone;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Generates execution plans that run independent components of the pipeline at the same time.
+ * <p>
+ * A component depends on an earlier one if it reads a type the earlier one writes, writes a type the earlier one
+ * reads or writes, or if either of them does not declare its input and output types. Components without such a
+ * dependency, e.g. two components that only read tokens, form parallel branches, so the time per document is the
+ * longest chain of dependent components instead of the sum of all of them.
+ * <p>
+ * The branches work on the same CAS. For components called over HTTP only serialization and deserialization hold the
+ * lock of the CAS, the requests of parallel branches are in flight at the same time. Other components hold the lock
+ * while they run.
+ * <p>
+ * A component called over HTTP whose communication layer replaces the CAS instead of adding to it, like the XMI
+ * fallback or the binary layer, would drop whatever a parallel branch added while its request was in flight. Such a
+ * component therefore must not run in parallel to any other component, otherwise the plan is refused when it is
+ * generated, see {@link IDUUICommunicationLayer#isAdditive()}.
+ */
+public class DUUIDAGExecutionPlanGenerator implements IDUUIExecutionPlanGenerator {
+    private final Vector<DUUIComposer.PipelinePart> _pipeline;
+    // Indexes of the parts each part has to wait for
+    private final List<List<Integer>> _predecessors;
+    // Indexes of the parts waiting for each part
+    private final List<List<Integer>> _successors;
+    // Parts without predecessors and parts without successors
+    private final List<Integer> _roots;
+    private final List<Integer> _sinks;
+    // Plans of a document that can be waiting for or running on branch threads at once
+    private final int _maxBranches;
+
+    public DUUIDAGExecutionPlanGenerator(Vector<DUUIComposer.PipelinePart> pipeline) {
+        _pipeline = pipeline;
+        _predecessors = new ArrayList<>();
+        _successors = new ArrayList<>();
+        _roots = new ArrayList<>();
+        _sinks = new ArrayList<>();
+
+        for (int j = 0; j < pipeline.size(); j++) {
+            _predecessors.add(new ArrayList<>());
+            _successors.add(new ArrayList<>());
+            for (int i = 0; i < j; i++) {
+                if (dependsOn(pipeline.get(j), pipeline.get(i))) {
+                    _predecessors.get(j).add(i);
+                    _successors.get(i).add(j);
+                }
+            }
+        }
+        for (int i = 0; i < pipeline.size(); i++) {
+            if (_predecessors.get(i).isEmpty()) _roots.add(i);
+            if (_successors.get(i).isEmpty()) _sinks.add(i);
+        }
+        // Every plan followed by several plans runs the first one itself and hands the others to branch threads
+        int maxBranches = Math.max(0, _roots.size() - 1);
+        for (List<Integer> successors : _successors) {
+            maxBranches += Math.max(0, successors.size() - 1);
+        }
+        _maxBranches = maxBranches;
+        checkAdditive();
+    }
+
+    /**
+     * Refuses the plan if a component called over HTTP with a communication layer that replaces the CAS runs in
+     * parallel to another component, since the annotations of the other branch would be lost.
+     *
+     * @throws IllegalStateException If such a component has a parallel branch
+     */
+    private void checkAdditive() {
+        int size = _pipeline.size();
+        // reaches[i][j]: part j runs after part i, possibly through other parts
+        boolean[][] reaches = new boolean[size][size];
+        for (int i = size - 1; i >= 0; i--) {
+            for (int successor : _successors.get(i)) {
+                reaches[i][successor] = true;
+                for (int j = 0; j < size; j++) {
+                    reaches[i][j] |= reaches[successor][j];
+                }
+            }
+        }
+
+        for (int i = 0; i < size; i++) {
+            DUUIComposer.PipelinePart part = _pipeline.get(i);
+            if (!(part.getSegmentationStrategy() instanceof DUUISegmentationStrategyNone)) continue;
+            IDUUIInstantiatedPipelineComponent comp = part.getDriver().getHttpComponent(part.getUUID());
+            if (comp == null) continue;
+
+            for (int j = 0; j < size; j++) {
+                if (j == i || reaches[i][j] || reaches[j][i]) continue;
+                // All instances of a component speak the same layer, no request is in flight yet
+                Triplet<IDUUIUrlAccessible, Long, Long> instance = comp.getComponent();
+                IDUUICommunicationLayer layer = instance.getValue0().getCommunicationLayer();
+                comp.addComponent(instance.getValue0());
+                if (!layer.isAdditive()) {
+                    throw new IllegalStateException(String.format(
+                        "Component %s replaces the CAS with %s and cannot run in parallel to component %s, declare "
+                            + "its inputs and outputs so it depends on the other component or disable parallel branches",
+                        part.getUUID(), layer.getClass().getSimpleName(), _pipeline.get(j).getUUID()));
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * @param later   Part later in the pipeline
+     * @param earlier Part earlier in the pipeline
+     * @return True if later has to wait for earlier
+     */
+    static boolean dependsOn(DUUIComposer.PipelinePart later, DUUIComposer.PipelinePart earlier) {
+        if (later.getInputs() == null || later.getOutputs() == null
+            || earlier.getInputs() == null || earlier.getOutputs() == null) {
+            return true;
+        }
+        return !Collections.disjoint(earlier.getOutputs(), later.getInputs())
+            || !Collections.disjoint(earlier.getOutputs(), later.getOutputs())
+            || !Collections.disjoint(earlier.getInputs(), later.getOutputs());
+    }
+
+    /**
+     * @return For every part the indexes of the parts it has to wait for.
+     */
+    public List<List<Integer>> getDependencies() {
+        return _predecessors;
+    }
+
+    /**
+     * @return Number of branch threads a single document occupies at most, 0 if the parts run one after another.
+     */
+    public int getMaxBranches() {
+        return _maxBranches;
+    }
+
+    public IDUUIExecutionPlan generate(JCas jc) {
+        Graph graph = new Graph(jc);
+        return graph.entry;
+    }
+
+    /**
+     * The plans of a single CAS.
+     */
+    private class Graph {
+        final JCas jc;
+        final ReentrantLock lock = new ReentrantLock();
+        final DUUIDAGExecutionPlan entry;
+        final DUUIDAGExecutionPlan exit;
+        final List<DUUIDAGExecutionPlan> nodes = new ArrayList<>();
+
+        Graph(JCas jc) {
+            this.jc = jc;
+            entry = new DUUIDAGExecutionPlan(this, -1, 1);
+            for (int i = 0; i < _pipeline.size(); i++) {
+                nodes.add(new DUUIDAGExecutionPlan(this, i, Math.max(1, _predecessors.get(i).size())));
+            }
+            exit = new DUUIDAGExecutionPlan(this, _pipeline.size(), Math.max(1, _sinks.size()));
+        }
+    }
+
+    public class DUUIDAGExecutionPlan implements IDUUIExecutionPlan {
+        private final Graph _graph;
+        private final int _index;
+        // Predecessors that have not finished yet
+        private final AtomicInteger _pending;
+
+        DUUIDAGExecutionPlan(Graph graph, int index, int pending) {
+            _graph = graph;
+            _index = index;
+            _pending = new AtomicInteger(pending);
+        }
+
+        public List<IDUUIExecutionPlan> getNextExecutionPlans() {
+            LinkedList<IDUUIExecutionPlan> exec = new LinkedList<>();
+            if (_index < 0) {
+                for (int root : _roots) exec.add(_graph.nodes.get(root));
+                if (_roots.isEmpty()) exec.add(_graph.exit);
+            } else if (_index < _pipeline.size()) {
+                for (int successor : _successors.get(_index)) exec.add(_graph.nodes.get(successor));
+                if (_successors.get(_index).isEmpty()) exec.add(_graph.exit);
+            }
+            return exec;
+        }
+
+        public DUUIComposer.PipelinePart getPipelinePart() {
+            if (_index >= 0 && _index < _pipeline.size()) {
+                return _pipeline.get(_index);
+            }
+            return null;
+        }
+
+        public JCas getJCas() {
+            return _graph.jc;
+        }
+
+        /**
+         * Called once by every predecessor that has finished. The last one receives this plan, the others a plan that
+         * does nothing, so the part runs exactly once.
+         */
+        public Future<IDUUIExecutionPlan> awaitMerge() {
+            if (_pending.decrementAndGet() == 0) {
+                return CompletableFuture.completedFuture(this);
+            }
+            return CompletableFuture.completedFuture(new Skip(_graph.jc));
+        }
+
+        @Override
+        public void run(DUUIPipelineDocumentPerformance perf, DUUIComposer composer) throws Exception {
+            DUUIComposer.PipelinePart part = getPipelinePart();
+            if (part == null) return;
+
+            IDUUIInstantiatedPipelineComponent comp = part.getSegmentationStrategy() instanceof DUUISegmentationStrategyNone
+                ? part.getDriver().getHttpComponent(part.getUUID())
+                : null;
+
+            if (comp == null) {
+                _graph.lock.lock();
+                try {
+                    part.getDriver().run(part.getUUID(), _graph.jc, perf, composer);
+                } finally {
+                    _graph.lock.unlock();
+                }
+                return;
+            }
+
+            // Waits for a free instance without the lock, so the other branches keep working on the CAS meanwhile
+            DUUIHttpProcessCall call = DUUIHttpProcessCall.prepare(_graph.jc, comp, _graph.lock);
+
+            HttpResponse<DUUIByteBufferPool.Buffer> resp;
+            try {
+                resp = call.send().join();
+            } catch (CompletionException e) {
+                call.release();
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw e;
+            }
+
+            _graph.lock.lock();
+            try {
+                call.complete(resp, perf);
+            } finally {
+                _graph.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Plan returned to predecessors that do not start a part.
+     */
+    private static class Skip implements IDUUIExecutionPlan {
+        private final JCas _jc;
+
+        Skip(JCas jc) {
+            _jc = jc;
+        }
+
+        public List<IDUUIExecutionPlan> getNextExecutionPlans() {
+            return List.of();
+        }
+
+        public Future<IDUUIExecutionPlan> awaitMerge() {
+            return CompletableFuture.completedFuture(this);
+        }
+
+        public JCas getJCas() {
+            return _jc;
+        }
+
+        public DUUIComposer.PipelinePart getPipelinePart() {
+            return null;
+        }
+    }
+}
@@ -16,7 +16,7 @@ import java.util.List;
 import java.util.Map;
 
 public class DUUIFallbackCommunicationLayer implements IDUUICommunicationLayer {
-    public void serialize(JCas jc, ByteArrayOutputStream out, Map<String,String> parameters, String sourceView) throws CompressorException, IOException, SAXException, CASException {
+    public void serialize(JCas jc, OutputStream out, Map<String,String> parameters, String sourceView) throws CompressorException, IOException, SAXException, CASException {
         JSONObject obj = new JSONObject();
         ByteArrayOutputStream arr = new ByteArrayOutputStream();
         XmiCasSerializer.serialize(jc.getView(sourceView).getCas(), null, arr);
@@ -35,7 +35,7 @@ public class DUUIFallbackCommunicationLayer implements IDUUICommunicationLayer {
         out.write(obj.toString().getBytes(StandardCharsets.UTF_8));
     }
 
-    public void deserialize(JCas jc, ByteArrayInputStream input, String targetView) throws IOException, SAXException {
+    public void deserialize(JCas jc, InputStream input, String targetView) throws IOException, SAXException {
         String body = new String(input.readAllBytes(), Charset.defaultCharset());
         JSONObject response = new JSONObject(body);
         if (response.has("cas") || response.has("error")) {
@@ -48,15 +48,23 @@ public class DUUIFallbackCommunicationLayer implements IDUUICommunicationLayer {
     }
 
     @Override
-    public void serialize(JCas jc, ByteArrayOutputStream out, Map<String, String> parameters) throws CompressorException, IOException, SAXException, CASException {
+    public void serialize(JCas jc, OutputStream out, Map<String, String> parameters) throws CompressorException, IOException, SAXException, CASException {
         serialize(jc, out, parameters, "_InitialView");
     }
 
     @Override
-    public void deserialize(JCas jc, ByteArrayInputStream input) throws IOException, SAXException, CASException {
+    public void deserialize(JCas jc, InputStream input) throws IOException, SAXException, CASException {
         deserialize(jc, input, "_InitialView");
     }
 
+    /**
+     * @return False, the CAS is reset and replaced by the XMI of the response.
+     */
+    @Override
+    public boolean isAdditive() {
+        return false;
+    }
+
     public IDUUICommunicationLayer copy() {
         return new DUUIFallbackCommunicationLayer();
     }
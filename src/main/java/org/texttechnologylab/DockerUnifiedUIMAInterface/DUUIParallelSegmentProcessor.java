@@ -0,0 +1,216 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface;
+
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCopier;
+import org.apache.uima.util.TypeSystemUtil;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.pipeline_storage.DUUIPipelineDocumentPerformance;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.segmentation.DUUISegmentationStrategy;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processes the segments of a document by a component in parallel instead of one after another.
+ * <p>
+ * The segmentation strategies reuse a single CAS for every segment, so each segment is copied into a CAS of its own
+ * before it is sent to the component. Up to the configured number of segments are in flight at once, spread over the
+ * instances of the component, and the results are merged back in the order of the segments as soon as they arrive.
+ * A CAS is reused for the next segment once its result is merged, and kept for the following documents afterwards, so
+ * the CASes of the segments are only created once per worker instead of once per document.
+ */
+public class DUUIParallelSegmentProcessor implements AutoCloseable {
+    private final int _maxInFlight;
+    private final ExecutorService _executor;
+    // CASes of segments not in use by any document, created from _pooledTypeSystem, guarded by this
+    private final ArrayDeque<JCas> _pool = new ArrayDeque<>();
+    private TypeSystem _pooledTypeSystem = null;
+    private TypeSystemDescription _pooledTypeSystemDescription = null;
+
+    private static class Segment {
+        final JCas jc;
+        final Future<?> done;
+
+        Segment(JCas jc, Future<?> done) {
+            this.jc = jc;
+            this.done = done;
+        }
+    }
+
+    /**
+     * @param maxInFlight Maximum number of segments processed at once
+     */
+    public DUUIParallelSegmentProcessor(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("At least one segment has to be processed at a time");
+        }
+        _maxInFlight = maxInFlight;
+        AtomicInteger count = new AtomicInteger(0);
+        _executor = Executors.newFixedThreadPool(maxInFlight, runnable -> {
+            Thread thread = new Thread(runnable, "DUUISegment-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Segments the document, processes all segments by the component and writes the merged result back into the
+     * document. If a segment fails, the segments in flight are awaited and the first error is thrown.
+     *
+     * @param part     Pipeline part to process the segments with
+     * @param jc       Document to process
+     * @param perf     Performance record of the document
+     * @param composer Composer passed to the driver
+     */
+    public void process(DUUIComposer.PipelinePart part, JCas jc, DUUIPipelineDocumentPerformance perf,
+                        DUUIComposer composer) throws Exception {
+        process(List.of(part), part.getSegmentationStrategy(), jc, perf, composer);
+    }
+
+    /**
+     * Segments the document once and processes every segment by all given components, one after another, before it is
+     * merged. If a segment fails, the segments in flight are awaited and the first error is thrown.
+     *
+     * @param parts                Pipeline parts to process the segments with, in pipeline order
+     * @param segmentationStrategy Strategy to segment the document with
+     * @param jc                   Document to process
+     * @param perf                 Performance record of the document
+     * @param composer             Composer passed to the drivers
+     */
+    public void process(List<DUUIComposer.PipelinePart> parts, DUUISegmentationStrategy segmentationStrategy, JCas jc,
+                        DUUIPipelineDocumentPerformance perf, DUUIComposer composer) throws Exception {
+        segmentationStrategy.initialize(jc);
+
+        ArrayDeque<JCas> free = new ArrayDeque<>();
+        ArrayDeque<Segment> inFlight = new ArrayDeque<>();
+        Exception error = null;
+
+        try {
+            JCas jCasSegmented = segmentationStrategy.getNextSegment();
+            while (jCasSegmented != null && error == null) {
+                if (inFlight.size() >= _maxInFlight) {
+                    error = mergeNext(segmentationStrategy, inFlight, free);
+                    continue;
+                }
+
+                JCas segment = free.poll();
+                if (segment == null) {
+                    segment = acquire(jc.getTypeSystem());
+                }
+                CasCopier.copyCas(jCasSegmented.getCas(), segment.getCas(), true, true);
+
+                JCas toProcess = segment;
+                inFlight.add(new Segment(toProcess, _executor.submit(() -> {
+                    for (DUUIComposer.PipelinePart part : parts) {
+                        part.getDriver().run(part.getUUID(), toProcess, perf, composer);
+                    }
+                    return null;
+                })));
+
+                // Merge finished segments early, this keeps the order and frees their CAS
+                while (error == null && !inFlight.isEmpty() && inFlight.peek().done.isDone()) {
+                    error = mergeNext(segmentationStrategy, inFlight, free);
+                }
+                jCasSegmented = segmentationStrategy.getNextSegment();
+            }
+
+            while (error == null && !inFlight.isEmpty()) {
+                error = mergeNext(segmentationStrategy, inFlight, free);
+            }
+        } finally {
+            // Do not leave segments running on a CAS that is no longer tracked
+            for (Segment segment : inFlight) {
+                try {
+                    segment.done.get();
+                } catch (ExecutionException e) {
+                    // The first error is reported
+                }
+                segment.jc.reset();
+                free.add(segment.jc);
+            }
+            release(free, jc.getTypeSystem());
+        }
+
+        if (error != null) {
+            throw error;
+        }
+        segmentationStrategy.finalize(jc);
+    }
+
+    /**
+     * Waits for the oldest segment in flight and merges it.
+     *
+     * @return Error of the segment, null if it was processed
+     */
+    private static Exception mergeNext(DUUISegmentationStrategy segmentationStrategy, ArrayDeque<Segment> inFlight,
+                                       ArrayDeque<JCas> free) throws InterruptedException {
+        Segment segment = inFlight.poll();
+        try {
+            segment.done.get();
+        } catch (ExecutionException e) {
+            return e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+        segmentationStrategy.merge(segment.jc);
+        segment.jc.reset();
+        free.add(segment.jc);
+        return null;
+    }
+
+    /**
+     * Takes a CAS for a segment from the pool, or creates one if the pool is empty. Only created when needed, short
+     * documents do not need a CAS per segment in flight.
+     *
+     * @param typeSystem Type system of the document
+     */
+    private JCas acquire(TypeSystem typeSystem) throws Exception {
+        TypeSystemDescription typeSystemDescription;
+        synchronized (this) {
+            if (_pooledTypeSystem != typeSystem) {
+                // The CASes of another type system cannot take the segments of this one
+                _pool.clear();
+                _pooledTypeSystem = typeSystem;
+                _pooledTypeSystemDescription = TypeSystemUtil.typeSystem2TypeSystemDescription(typeSystem);
+            }
+            JCas segment = _pool.poll();
+            if (segment != null) {
+                return segment;
+            }
+            typeSystemDescription = _pooledTypeSystemDescription;
+        }
+        return JCasFactory.createJCas(typeSystemDescription);
+    }
+
+    /**
+     * Returns the reset CASes of a document's segments to the pool for the following documents.
+     *
+     * @param segments   CASes of the segments
+     * @param typeSystem Type system of the document they were created for
+     */
+    private synchronized void release(ArrayDeque<JCas> segments, TypeSystem typeSystem) {
+        if (_pooledTypeSystem == typeSystem) {
+            _pool.addAll(segments);
+        }
+    }
+
+    /**
+     * @return Maximum number of segments processed at once.
+     */
+    public int getMaxInFlight() {
+        return _maxInFlight;
+    }
+
+    @Override
+    public void close() {
+        _executor.shutdown();
+        synchronized (this) {
+            _pool.clear();
+        }
+    }
+}
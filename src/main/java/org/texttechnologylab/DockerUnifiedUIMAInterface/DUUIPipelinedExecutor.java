@@ -0,0 +1,199 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface;
+
+import org.apache.uima.jcas.JCas;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.driver.DUUIHttpProcessCall;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.driver.IDUUIInstantiatedPipelineComponent;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.pipeline_storage.DUUIPipelineDocumentPerformance;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.segmentation.DUUISegmentationStrategy;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.segmentation.DUUISegmentationStrategyNone;
+
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs documents through the pipeline in stages instead of one worker thread per document.
+ * <p>
+ * For every component that is called over HTTP, the serializer stage takes an instance and serializes the CAS, the
+ * request is sent without occupying a thread, and the deserializer stage reads the response back into the CAS. Each
+ * stage has its own threads and a bounded queue, so while one document waits for component k, other documents are
+ * serialized for or deserialized from other components and every component can be kept busy at the same time.
+ * Components run in-process, over a websocket or with a segmentation strategy are run as a whole on the serializer
+ * stage.
+ * <p>
+ * A document is in at most one queue at a time, so queues with the capacity of the CAS pool can never overflow. The
+ * number of documents in flight is limited by the CAS pool and the number of requests per component by its instances.
+ */
+public class DUUIPipelinedExecutor implements AutoCloseable {
+    private final Vector<DUUIComposer.PipelinePart> _pipeline;
+    private final DUUIComposer _composer;
+    private final ThreadPoolExecutor _serializers;
+    private final ThreadPoolExecutor _deserializers;
+    private final AtomicInteger _requestsInFlight = new AtomicInteger(0);
+
+    private interface Step {
+        void run() throws Exception;
+    }
+
+    private static class Document {
+        final JCas jc;
+        final DUUIPipelineDocumentPerformance perf;
+        final CompletableFuture<JCas> done = new CompletableFuture<>();
+
+        Document(JCas jc, DUUIPipelineDocumentPerformance perf) {
+            this.jc = jc;
+            this.perf = perf;
+        }
+    }
+
+    /**
+     * @param pipeline            Instantiated pipeline
+     * @param composer            Composer passed to the drivers
+     * @param serializerThreads   Threads serializing requests and running components that are not called over HTTP
+     * @param deserializerThreads Threads deserializing responses
+     * @param queueCapacity       Capacity of the stage queues, at least the number of documents in flight
+     */
+    public DUUIPipelinedExecutor(Vector<DUUIComposer.PipelinePart> pipeline, DUUIComposer composer,
+                                 int serializerThreads, int deserializerThreads, int queueCapacity) {
+        _pipeline = pipeline;
+        _composer = composer;
+        _serializers = new ThreadPoolExecutor(serializerThreads, serializerThreads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), threadFactory("DUUISerializer-"));
+        _deserializers = new ThreadPoolExecutor(deserializerThreads, deserializerThreads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), threadFactory("DUUIDeserializer-"));
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger(0);
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Starts processing a document by all components of the pipeline.
+     *
+     * @param jc   Document to process
+     * @param perf Performance record of the document
+     * @return Completed with the document once the last component is done, or exceptionally with the first error, in
+     * which case the remaining components are skipped
+     */
+    public CompletableFuture<JCas> submit(JCas jc, DUUIPipelineDocumentPerformance perf) {
+        Document document = new Document(jc, perf);
+        next(document, 0);
+        return document.done;
+    }
+
+    private void next(Document document, int index) {
+        if (index >= _pipeline.size()) {
+            document.done.complete(document.jc);
+            return;
+        }
+        execute(_serializers, document, () -> {
+            DUUIComposer.PipelinePart part = _pipeline.get(index);
+            DUUISegmentationStrategy segmentationStrategy = part.getSegmentationStrategy();
+            IDUUIInstantiatedPipelineComponent comp = segmentationStrategy instanceof DUUISegmentationStrategyNone
+                ? part.getDriver().getHttpComponent(part.getUUID())
+                : null;
+
+            if (comp == null) {
+                runBlocking(part, document);
+                next(document, index + 1);
+                return;
+            }
+
+            DUUIHttpProcessCall call = DUUIHttpProcessCall.prepare(document.jc, comp);
+            _requestsInFlight.incrementAndGet();
+            call.send().whenComplete((resp, e) -> {
+                _requestsInFlight.decrementAndGet();
+                if (e != null) {
+                    call.release();
+                    document.done.completeExceptionally(e);
+                    return;
+                }
+                execute(_deserializers, document, () -> {
+                    call.complete(resp, document.perf);
+                    next(document, index + 1);
+                }, () -> {
+                    // complete never runs, so the instance and both buffers are returned here
+                    DUUIByteBufferPool.SHARED.release(resp.body());
+                    call.release();
+                });
+            });
+        });
+    }
+
+    private void runBlocking(DUUIComposer.PipelinePart part, Document document) throws Exception {
+        DUUISegmentationStrategy segmentationStrategy = part.getSegmentationStrategy();
+        if (segmentationStrategy instanceof DUUISegmentationStrategyNone) {
+            part.getDriver().run(part.getUUID(), document.jc, document.perf, _composer);
+            return;
+        }
+
+        segmentationStrategy.initialize(document.jc);
+        JCas jCasSegmented = segmentationStrategy.getNextSegment();
+        while (jCasSegmented != null) {
+            part.getDriver().run(part.getUUID(), jCasSegmented, document.perf, _composer);
+            segmentationStrategy.merge(jCasSegmented);
+            jCasSegmented = segmentationStrategy.getNextSegment();
+        }
+        segmentationStrategy.finalize(document.jc);
+    }
+
+    private static void execute(ThreadPoolExecutor stage, Document document, Step step) {
+        execute(stage, document, step, () -> {});
+    }
+
+    /**
+     * Runs a step of a document on a stage, failing the document if the step throws or the stage rejects it.
+     *
+     * @param onRejected Run if the stage rejects the step, to release what the step would have released
+     */
+    private static void execute(ThreadPoolExecutor stage, Document document, Step step, Runnable onRejected) {
+        try {
+            stage.execute(() -> {
+                try {
+                    step.run();
+                } catch (Throwable e) {
+                    document.done.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            onRejected.run();
+            document.done.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * @return Number of requests sent to components and not yet answered.
+     */
+    public int getRequestsInFlight() {
+        return _requestsInFlight.get();
+    }
+
+    /**
+     * @return Number of documents waiting for a serializer thread.
+     */
+    public int getSerializerBacklog() {
+        return _serializers.getQueue().size();
+    }
+
+    /**
+     * @return Number of documents waiting for a deserializer thread.
+     */
+    public int getDeserializerBacklog() {
+        return _deserializers.getQueue().size();
+    }
+
+    @Override
+    public void close() {
+        _serializers.shutdown();
+        _deserializers.shutdown();
+    }
+}
@@ -0,0 +1,290 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Blocking pool of reusable resources, e.g. empty CAS objects or instances of a pipeline component.
+ * <p>
+ * Threads waiting for a resource are parked instead of spinning. A returned resource is handed directly to the thread
+ * that has been waiting longest, so waiters are served in FIFO order and a newly arriving thread cannot overtake them.
+ * The pool counts how often and how long threads had to wait, which makes it possible to tell whether there are too
+ * few resources for the number of worker threads.
+ *
+ * @param <T> Type of the pooled resources
+ */
+public class DUUIResourcePool<T> implements Iterable<T> {
+    private final ReentrantLock _lock = new ReentrantLock();
+    // Available resources, only non-empty while no thread is waiting
+    private final ArrayDeque<T> _available = new ArrayDeque<>();
+    // Waiting threads in arrival order
+    private final ArrayDeque<Waiter<T>> _waiters = new ArrayDeque<>();
+
+    private long _acquired = 0;
+    private long _contended = 0;
+    private long _totalWaitNanos = 0;
+    private long _maxWaitNanos = 0;
+    private int _maxWaiting = 0;
+
+    private static class Waiter<T> {
+        final Condition ready;
+        T resource;
+
+        Waiter(Condition ready) {
+            this.ready = ready;
+        }
+    }
+
+    public DUUIResourcePool() {
+    }
+
+    public DUUIResourcePool(Iterable<T> resources) {
+        for (T resource : resources) {
+            add(resource);
+        }
+    }
+
+    /**
+     * Adds a resource to the pool or returns a taken one. If threads are waiting, the resource is handed to the one
+     * waiting longest.
+     *
+     * @param resource Resource to add, must not be null
+     */
+    public void add(T resource) {
+        if (resource == null) {
+            throw new NullPointerException("DUUIResourcePool does not accept null resources");
+        }
+        _lock.lock();
+        try {
+            Waiter<T> waiter = _waiters.poll();
+            if (waiter != null) {
+                waiter.resource = resource;
+                waiter.ready.signal();
+            } else {
+                _available.add(resource);
+            }
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a resource from the pool, waiting as long as necessary.
+     *
+     * @return Resource, has to be returned with add after use
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public T take() throws InterruptedException {
+        return acquire(false, 0);
+    }
+
+    /**
+     * Takes a resource from the pool, waiting as long as necessary even if the thread is interrupted. The interrupt
+     * status is restored before returning.
+     *
+     * @return Resource, has to be returned with add after use
+     */
+    public T takeUninterruptibly() {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return take();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Takes a resource from the pool, waiting at most the given time.
+     *
+     * @param timeout Maximum time to wait
+     * @param unit    Unit of timeout
+     * @return Resource, or null if none became available in time
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return acquire(true, unit.toNanos(timeout));
+    }
+
+    /**
+     * Takes a resource from the pool without waiting.
+     *
+     * @return Resource, or null if none is available
+     */
+    public T poll() {
+        _lock.lock();
+        try {
+            T resource = _available.poll();
+            if (resource != null) _acquired++;
+            return resource;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    private T acquire(boolean timed, long nanos) throws InterruptedException {
+        _lock.lockInterruptibly();
+        try {
+            T resource = _available.poll();
+            if (resource != null) {
+                _acquired++;
+                return resource;
+            }
+
+            Waiter<T> waiter = new Waiter<>(_lock.newCondition());
+            _waiters.add(waiter);
+            _maxWaiting = Math.max(_maxWaiting, _waiters.size());
+            long waitStart = System.nanoTime();
+            try {
+                while (waiter.resource == null) {
+                    if (!timed) {
+                        waiter.ready.await();
+                    } else if (nanos > 0) {
+                        nanos = waiter.ready.awaitNanos(nanos);
+                    } else {
+                        _waiters.remove(waiter);
+                        return null;
+                    }
+                }
+            } catch (InterruptedException e) {
+                if (waiter.resource == null) {
+                    _waiters.remove(waiter);
+                    throw e;
+                }
+                // A resource was handed over before the interrupt was noticed, keep it and the interrupt status
+                Thread.currentThread().interrupt();
+            }
+
+            long waited = System.nanoTime() - waitStart;
+            _acquired++;
+            _contended++;
+            _totalWaitNanos += waited;
+            _maxWaitNanos = Math.max(_maxWaitNanos, waited);
+            return waiter.resource;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of resources that are currently in the pool and not taken.
+     */
+    public int size() {
+        _lock.lock();
+        try {
+            return _available.size();
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of threads currently waiting for a resource.
+     */
+    public int getWaiting() {
+        _lock.lock();
+        try {
+            return _waiters.size();
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * @return Largest number of threads that have been waiting at once.
+     */
+    public int getMaxWaiting() {
+        _lock.lock();
+        try {
+            return _maxWaiting;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of resources taken from the pool so far.
+     */
+    public long getAcquired() {
+        _lock.lock();
+        try {
+            return _acquired;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of takes that had to wait for a resource.
+     */
+    public long getContended() {
+        _lock.lock();
+        try {
+            return _contended;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * @return Total time threads spent waiting for resources, in nanoseconds.
+     */
+    public long getTotalWaitNanos() {
+        _lock.lock();
+        try {
+            return _totalWaitNanos;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * @return Longest time a single thread waited for a resource, in nanoseconds.
+     */
+    public long getMaxWaitNanos() {
+        _lock.lock();
+        try {
+            return _maxWaitNanos;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * Iterates over a snapshot of the resources currently in the pool, e.g. to shut them down. Taken resources are not
+     * included.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        List<T> snapshot;
+        _lock.lock();
+        try {
+            snapshot = new ArrayList<>(_available);
+        } finally {
+            _lock.unlock();
+        }
+        return snapshot.iterator();
+    }
+
+    @Override
+    public String toString() {
+        _lock.lock();
+        try {
+            return String.format("available=%d waiting=%d maxWaiting=%d acquired=%d contended=%d totalWait=%dms maxWait=%dms",
+                    _available.size(), _waiters.size(), _maxWaiting, _acquired, _contended,
+                    TimeUnit.NANOSECONDS.toMillis(_totalWaitNanos), TimeUnit.NANOSECONDS.toMillis(_maxWaitNanos));
+        } finally {
+            _lock.unlock();
+        }
+    }
+}
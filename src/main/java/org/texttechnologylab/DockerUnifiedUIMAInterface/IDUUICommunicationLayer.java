@@ -6,8 +6,9 @@ import org.apache.uima.jcas.JCas;
 import org.xml.sax.SAXException;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 
@@ -16,12 +17,13 @@ import java.util.Map;
  */
 public interface IDUUICommunicationLayer {
 
-  public void serialize(JCas jc, ByteArrayOutputStream out, Map<String,String> parameters, String sourceView) throws CompressorException, IOException, SAXException, CASException;
+  public void serialize(JCas jc, OutputStream out, Map<String,String> parameters, String sourceView) throws CompressorException, IOException, SAXException, CASException;
 
-  public void deserialize(JCas jc, ByteArrayInputStream input, String targetView) throws IOException, SAXException, CASException;
+  public void deserialize(JCas jc, InputStream input, String targetView) throws IOException, SAXException, CASException;
 
     /**
-     * Serializes a JCas to a byte array output stream by using the LUA script provided by the component.
+     * Serializes a JCas to an output stream by using the LUA script provided by the component. The stream is either a
+     * buffer or, for streaming components, the request body while it is being sent.
      * @param jc Input JCas.
      * @param out Output stream, i.e. the input to the component.
      * @param parameters Parameters for use in the LUA script.
@@ -29,16 +31,26 @@ public interface IDUUICommunicationLayer {
      * @throws IOException
      * @throws SAXException
      */
-    public void serialize(JCas jc, ByteArrayOutputStream out, Map<String, String> parameters) throws CompressorException, IOException, SAXException, CASException;
+    public void serialize(JCas jc, OutputStream out, Map<String, String> parameters) throws CompressorException, IOException, SAXException, CASException;
 
     /**
-     * Deserializes a byte array input stream to a JCas by using the LUA script provided by the component.
+     * Deserializes an input stream to a JCas by using the LUA script provided by the component. For streaming
+     * components the stream is the response body while it arrives.
      * @param jc Output JCas, note that the CAS is not reset before deserialization.
      * @param input Input stream, i.e. the output of the component.
      * @throws IOException
      * @throws SAXException
      */
-    public void deserialize(JCas jc, ByteArrayInputStream input) throws IOException, SAXException, CASException;
+    public void deserialize(JCas jc, InputStream input) throws IOException, SAXException, CASException;
+
+    /**
+     * Whether deserialize only adds to the CAS it is given. A layer that resets or replaces the CAS loses everything
+     * added to it between serialize and deserialize, so its components cannot run in parallel branches.
+     * @return True if deserialization keeps the existing content of the CAS.
+     */
+    public default boolean isAdditive() {
+        return true;
+    }
 
     /**
      *
@@ -1,6 +1,7 @@
 package org.texttechnologylab.DockerUnifiedUIMAInterface;
 
 import org.apache.uima.jcas.JCas;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.pipeline_storage.DUUIPipelineDocumentPerformance;
 
 import java.util.List;
 import java.util.concurrent.Future;
@@ -14,4 +15,18 @@ public interface IDUUIExecutionPlan {
     public Future<IDUUIExecutionPlan> awaitMerge();
     public JCas getJCas();
     public DUUIComposer.PipelinePart getPipelinePart();
+
+    /**
+     * Runs the pipeline part of this plan on its CAS, does nothing if the plan has no part. Plans whose parts run at
+     * the same time as other parts of the same CAS have to guard the CAS here.
+     * @param perf Performance record of the document
+     * @param composer Composer running the plan
+     * @throws Exception
+     */
+    public default void run(DUUIPipelineDocumentPerformance perf, DUUIComposer composer) throws Exception {
+        DUUIComposer.PipelinePart part = getPipelinePart();
+        if (part != null) {
+            part.getDriver().run(part.getUUID(), getJCas(), perf, composer);
+        }
+    }
 }
@@ -12,7 +12,9 @@ import org.apache.uima.util.TypeSystemUtil;
 import org.javatuples.Triplet;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIComposer;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIDockerInterface;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIBinaryCommunicationLayer;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIFallbackCommunicationLayer;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIResourcePool;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.IDUUICommunicationLayer;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.connection.DUUIWebsocketAlt;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.connection.IDUUIConnectionHandler;
@@ -40,7 +42,6 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletionException;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
@@ -157,6 +158,12 @@ public class DUUIDockerDriver implements IDUUIDriverInterface {
                 }
                 if (resp.statusCode() == 200) {
                     String body2 = new String(resp.body(), Charset.defaultCharset());
+                    DUUIBinaryCommunicationLayer binary = DUUIBinaryCommunicationLayer.fromDescriptor(body2);
+                    if (binary != null) {
+                        layer = binary;
+                        printfunc.operation(format("Component binary communication layer%s, loaded.", binary.isZstd() ? " with zstd" : ""));
+                        break;
+                    }
                     try {
                         printfunc.operation("Component lua communication layer, loading...");
                         IDUUICommunicationLayer lua_com = new DUUILuaCommunicationLayer(body2, "requester", context);
@@ -404,6 +411,21 @@ public class DUUIDockerDriver implements IDUUIDriverInterface {
         }
     }
 
+    @Override
+    public IDUUIInstantiatedPipelineComponent getHttpComponent(String uuid) {
+        InstantiatedComponent comp = _active_components.get(uuid);
+        if (comp == null || comp.isWebsocket() || comp.getPipelineComponent().getStreaming()) {
+            return null;
+        }
+        return comp;
+    }
+
+    @Override
+    public DUUIResourcePool<?> getInstancePool(String uuid) {
+        InstantiatedComponent comp = _active_components.get(uuid);
+        return comp == null ? null : comp.getInstances();
+    }
+
     /**
      * Shutdown of the Docker-Driver
      *
@@ -423,6 +445,7 @@ public class DUUIDockerDriver implements IDUUIDriverInterface {
         if (comp == null) {
             throw new InvalidParameterException("Invalid UUID, this component has not been instantiated by the local Driver");
         }
+        System.out.printf("[DockerLocalDriver][%s] Instance pool: %s\n", uuid, comp.getInstances());
         if (!comp.getRunningAfterExit()) {
             int counter = 1;
             for (ComponentInstance inst : comp.getInstances()) {
@@ -481,7 +504,7 @@ public class DUUIDockerDriver implements IDUUIDriverInterface {
 
     static class InstantiatedComponent implements IDUUIInstantiatedPipelineComponent {
         private String _image_name;
-        private ConcurrentLinkedQueue<ComponentInstance> _instances;
+        private DUUIResourcePool<ComponentInstance> _instances;
         private boolean _gpu;
         private boolean _keep_runnging_after_exit;
         private int _scale;
@@ -500,10 +523,7 @@ public class DUUIDockerDriver implements IDUUIDriverInterface {
 
         public Triplet<IDUUIUrlAccessible, Long, Long> getComponent() {
             long mutexStart = System.nanoTime();
-            ComponentInstance inst = _instances.poll();
-            while (inst == null) {
-                inst = _instances.poll();
-            }
+            ComponentInstance inst = _instances.takeUninterruptibly();
             long mutexEnd = System.nanoTime();
             return Triplet.with(inst, mutexStart, mutexEnd);
         }
@@ -526,7 +546,7 @@ public class DUUIDockerDriver implements IDUUIDriverInterface {
             _uniqueComponentKey = "";
 
 
-            _instances = new ConcurrentLinkedQueue<ComponentInstance>();
+            _instances = new DUUIResourcePool<ComponentInstance>();
 
             _scale = comp.getScale(1);
 
@@ -581,7 +601,7 @@ public class DUUIDockerDriver implements IDUUIDriverInterface {
             return _gpu;
         }
 
-        public ConcurrentLinkedQueue<ComponentInstance> getInstances() {
+        public DUUIResourcePool<ComponentInstance> getInstances() {
             return _instances;
         }
 
@@ -625,6 +645,21 @@ public class DUUIDockerDriver implements IDUUIDriverInterface {
             return this;
         }
 
+        public Component withInputs(String... types) {
+            _component.withInputs(types);
+            return this;
+        }
+
+        public Component withOutputs(String... types) {
+            _component.withOutputs(types);
+            return this;
+        }
+
+        public Component withStreaming(boolean streaming) {
+            _component.withStreaming(streaming);
+            return this;
+        }
+
         public Component(String target) throws URISyntaxException, IOException {
             _component = new DUUIPipelineComponent();
             _component.withDockerImageName(target);
@@ -0,0 +1,486 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface.driver;
+
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.uima.cas.CASException;
+import org.apache.uima.jcas.JCas;
+import org.javatuples.Triplet;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIByteBufferPool;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIComposer;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.IDUUICommunicationLayer;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.pipeline_storage.DUUIPipelineDocumentPerformance;
+import org.texttechnologylab.duui.ReproducibleAnnotation;
+import org.xml.sax.SAXException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * A single call of a component over HTTP, split into the three steps of IDUUIInstantiatedPipelineComponent.process:
+ * prepare takes a component instance and serializes the CAS, send posts it without blocking a thread and complete
+ * deserializes the response and returns the instance. The steps can run on different threads, as long as they run
+ * one after another.
+ * <p>
+ * Request and response bodies are kept in buffers of the shared DUUIByteBufferPool: the communication layer
+ * serializes into a pooled buffer whose array is sent in slices without copying it, also when the request is retried,
+ * and the response is collected into another pooled buffer the communication layer deserializes from. Both are
+ * returned to the pool when the call is done.
+ */
+public class DUUIHttpProcessCall {
+    static final int MAX_TRIES = 3;
+
+    private final JCas jc;
+    private final JCas viewJc;
+    private final IDUUIInstantiatedPipelineComponent comp;
+    private final Triplet<IDUUIUrlAccessible, Long, Long> queue;
+    private final IDUUICommunicationLayer layer;
+    private final DUUIByteBufferPool.Buffer body;
+    private final long serializeStart;
+    private final long serializeEnd;
+    private volatile long annotatorEnd;
+    private boolean released = false;
+
+    private DUUIHttpProcessCall(JCas jc, JCas viewJc, IDUUIInstantiatedPipelineComponent comp,
+                                Triplet<IDUUIUrlAccessible, Long, Long> queue, IDUUICommunicationLayer layer, DUUIByteBufferPool.Buffer body,
+                                long serializeStart, long serializeEnd) {
+        this.jc = jc;
+        this.viewJc = viewJc;
+        this.comp = comp;
+        this.queue = queue;
+        this.layer = layer;
+        this.body = body;
+        this.serializeStart = serializeStart;
+        this.serializeEnd = serializeEnd;
+    }
+
+    /**
+     * Takes an instance of the component, waiting until one is free, and serializes the CAS with its communication
+     * layer. If serializing fails, the instance is returned before the exception is thrown.
+     *
+     * @param jc   CAS to process
+     * @param comp Component to process the CAS with
+     * @return Call holding the instance and the serialized request body
+     */
+    public static DUUIHttpProcessCall prepare(JCas jc, IDUUIInstantiatedPipelineComponent comp) throws CompressorException, IOException, SAXException, CASException {
+        return prepare(jc, comp, null);
+    }
+
+    /**
+     * Takes an instance of the component, waiting until one is free, and serializes the CAS with its communication
+     * layer while holding casLock. The lock is only taken once there is an instance, so waiting for a busy component
+     * does not keep others from working on the CAS. If serializing fails, the instance is returned before the
+     * exception is thrown.
+     *
+     * @param jc      CAS to process
+     * @param comp    Component to process the CAS with
+     * @param casLock Lock guarding the CAS, null if it is not shared
+     * @return Call holding the instance and the serialized request body
+     */
+    public static DUUIHttpProcessCall prepare(JCas jc, IDUUIInstantiatedPipelineComponent comp, Lock casLock) throws CompressorException, IOException, SAXException, CASException {
+        Triplet<IDUUIUrlAccessible, Long, Long> queue = comp.getComponent();
+        DUUIByteBufferPool.Buffer out = null;
+        if (casLock != null) {
+            casLock.lock();
+        }
+        try {
+            IDUUICommunicationLayer layer = queue.getValue0().getCommunicationLayer();
+            long serializeStart = System.nanoTime();
+
+            out = DUUIByteBufferPool.SHARED.acquire();
+
+            JCas viewJc = resolveView(jc, comp.getPipelineComponent());
+
+            layer.serialize(viewJc, out, comp.getParameters(), comp.getSourceView());
+            // lua serialize call()
+
+            long serializeEnd = System.nanoTime();
+            return new DUUIHttpProcessCall(jc, viewJc, comp, queue, layer, out, serializeStart, serializeEnd);
+        } catch (CompressorException | IOException | SAXException | CASException | RuntimeException e) {
+            DUUIByteBufferPool.SHARED.release(out);
+            comp.addComponent(queue.getValue0());
+            throw e;
+        } finally {
+            if (casLock != null) {
+                casLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return The view of the CAS the component works on, created from the initial view if the component asks for it
+     */
+    private static JCas resolveView(JCas jc, DUUIPipelineComponent pipelineComponent) throws CASException {
+        String viewName = pipelineComponent.getViewName();
+        if (viewName == null) {
+            return jc;
+        }
+        try {
+            return jc.getView(viewName);
+        } catch (CASException e) {
+            if (pipelineComponent.getCreateViewFromInitialView()) {
+                JCas viewJc = jc.createView(viewName);
+                viewJc.setDocumentText(jc.getDocumentText());
+                viewJc.setDocumentLanguage(jc.getDocumentLanguage());
+                return viewJc;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Processes the CAS by the component with streamed request and response bodies, see
+     * DUUIPipelineComponent.withStreaming. The request is sent while the communication layer is still serializing into
+     * it and the response is deserialized while it arrives, so neither body is held in memory as a whole. A streamed
+     * body cannot be sent again, so a request that fails is not retried.
+     *
+     * @param jc   CAS to process
+     * @param comp Component to process the CAS with
+     * @param perf Performance record of the document
+     */
+    public static void stream(JCas jc, IDUUIInstantiatedPipelineComponent comp, DUUIPipelineDocumentPerformance perf) throws CompressorException, IOException, SAXException, CASException {
+        Triplet<IDUUIUrlAccessible, Long, Long> queue = comp.getComponent();
+        CompletableFuture<HttpResponse<InputStream>> pending = null;
+        try {
+            IDUUICommunicationLayer layer = queue.getValue0().getCommunicationLayer();
+            JCas viewJc = resolveView(jc, comp.getPipelineComponent());
+            DUUIStreamingPipe pipe = new DUUIStreamingPipe();
+
+            HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(queue.getValue0().generateURL() + DUUIComposer.V1_COMPONENT_ENDPOINT_PROCESS))
+                .timeout(Duration.ofSeconds(comp.getPipelineComponent().getTimeout()))
+                .POST(HttpRequest.BodyPublishers.ofInputStream(pipe::getInputStream))
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+
+            long serializeStart = System.nanoTime();
+            pending = IDUUIInstantiatedPipelineComponent._client
+                .sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+            // If the request fails or is rejected early, the serializer must not wait for the body to be read
+            pending.whenComplete((resp, e) -> {
+                if (e != null) {
+                    pipe.abort(e);
+                } else if (resp.statusCode() != 200) {
+                    pipe.abort(new IOException("Component responded with " + resp.statusCode()));
+                }
+            });
+
+            OutputStream out = pipe.getOutputStream();
+            try {
+                layer.serialize(viewJc, out, comp.getParameters(), comp.getSourceView());
+                // Only a completely serialized body is ended, closing queues the end of the body
+                out.close();
+            } catch (CompressorException | IOException | SAXException | CASException | RuntimeException e) {
+                // Aborted before anything else, so the HTTP client never sends a truncated body as complete
+                pipe.abort(e);
+                // A component rejecting the request before reading all of it is reported below with its response
+                if (!pending.isDone() || pending.isCompletedExceptionally()) {
+                    throw e;
+                }
+            }
+            long serializeEnd = System.nanoTime();
+
+            HttpResponse<InputStream> resp;
+            try {
+                resp = pending.join();
+            } catch (CompletionException e) {
+                throw new IOException("Could not reach endpoint!", e.getCause());
+            }
+            long annotatorEnd = System.nanoTime();
+            long sizeArray = pipe.getBytesWritten();
+
+            // The stream of the HTTP client is not a public class, Lua communication layers cannot call its methods
+            try (InputStream body = new BufferedInputStream(resp.body(), DUUIStreamingPipe.DEFAULT_CHUNK_SIZE)) {
+                if (resp.statusCode() == 200) {
+                    long deserializeStart = System.nanoTime();
+                    layer.deserialize(viewJc, body, comp.getTargetView());
+                    long deserializeEnd = System.nanoTime();
+
+                    annotate(jc, comp, perf);
+                    perf.addData(serializeEnd - serializeStart, deserializeEnd - deserializeStart, annotatorEnd - serializeEnd, queue.getValue2() - queue.getValue1(), deserializeEnd - queue.getValue1(), comp.getPipelineComponent().getFinalizedRepresentationHash(), sizeArray, jc, null);
+                    perf.addInstanceData(comp.getPipelineComponent().getFinalizedRepresentationHash(), queue.getValue0().generateURL(), annotatorEnd - serializeEnd);
+                } else {
+                    String responseBody = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+                    rejected(jc, comp, perf, queue, resp.statusCode(), responseBody, serializeEnd - serializeStart, annotatorEnd - serializeEnd, sizeArray);
+                }
+            }
+        } finally {
+            // The instance is free for the next call, a request that failed on our side must not keep running on it
+            if (pending != null) {
+                pending.cancel(true);
+            }
+            comp.addComponent(queue.getValue0());
+        }
+    }
+
+    /**
+     * Posts the serialized CAS to the instance without blocking, retrying failed requests up to three times.
+     *
+     * @return Response of the component, completed exceptionally with an IOException if it could not be reached
+     */
+    public CompletableFuture<HttpResponse<DUUIByteBufferPool.Buffer>> send() {
+        return send(1);
+    }
+
+    private CompletableFuture<HttpResponse<DUUIByteBufferPool.Buffer>> send(int tries) {
+        CompletableFuture<HttpResponse<DUUIByteBufferPool.Buffer>> attempt;
+        try {
+            HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(queue.getValue0().generateURL() + DUUIComposer.V1_COMPONENT_ENDPOINT_PROCESS))
+                .timeout(Duration.ofSeconds(comp.getPipelineComponent().getTimeout()))
+                .POST(new PooledBodyPublisher(body.array(), body.size()))
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+            attempt = IDUUIInstantiatedPipelineComponent._client.sendAsync(request, DUUIHttpProcessCall::pooledBody);
+        } catch (Exception e) {
+            attempt = CompletableFuture.failedFuture(e);
+        }
+
+        return attempt.handle((resp, e) -> {
+            if (e == null) {
+                annotatorEnd = System.nanoTime();
+                return CompletableFuture.completedFuture(resp);
+            }
+            e.printStackTrace();
+            //System.out.printf("Cannot reach endpoint trying again %d/%d...\n",tries+1,10);
+            if (tries >= MAX_TRIES) {
+                return CompletableFuture.<HttpResponse<DUUIByteBufferPool.Buffer>>failedFuture(
+                    new IOException("Could not reach endpoint after " + MAX_TRIES + " tries!", e));
+            }
+            return send(tries + 1);
+        }).thenCompose(next -> next);
+    }
+
+    /**
+     * Collects a response body into a pooled buffer, sized by the Content-Length of the response if it is known. The
+     * header alone never allocates more than a pooled buffer may hold, larger bodies grow the buffer as they arrive.
+     */
+    static HttpResponse.BodySubscriber<DUUIByteBufferPool.Buffer> pooledBody(HttpResponse.ResponseInfo info) {
+        DUUIByteBufferPool.Buffer buffer = DUUIByteBufferPool.SHARED.acquire();
+        info.headers().firstValueAsLong("Content-Length")
+            .ifPresent(length -> buffer.ensureCapacity((int) Math.min(length, DUUIByteBufferPool.DEFAULT_MAX_POOLED_CAPACITY)));
+        return new PooledBodySubscriber(buffer);
+    }
+
+    /**
+     * Publishes the content of a pooled buffer as slices wrapping its array. BodyPublishers.ofByteArray would copy the
+     * whole content into newly allocated buffers on every send and every retry. Each subscription, i.e. each attempt,
+     * starts at the beginning of the array again.
+     */
+    static class PooledBodyPublisher implements HttpRequest.BodyPublisher {
+        static final int SLICE_SIZE = 256 * 1024;
+
+        private final byte[] array;
+        private final int length;
+
+        PooledBodyPublisher(byte[] array, int length) {
+            this.array = array;
+            this.length = length;
+        }
+
+        @Override
+        public long contentLength() {
+            return length;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                // Guarded by this, onNext may request more while the slices are emitted
+                private int offset = 0;
+                private long demand = 0;
+                private boolean emitting = false;
+                private boolean done = false;
+
+                @Override
+                public void request(long n) {
+                    synchronized (this) {
+                        if (done) return;
+                        if (n <= 0) {
+                            done = true;
+                        } else {
+                            demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                            if (emitting) return;
+                            emitting = true;
+                        }
+                    }
+                    if (n <= 0) {
+                        subscriber.onError(new IllegalArgumentException("Requested " + n + " slices of the body"));
+                        return;
+                    }
+
+                    while (true) {
+                        ByteBuffer slice;
+                        synchronized (this) {
+                            if (done || (demand == 0 && offset < length)) {
+                                emitting = false;
+                                return;
+                            }
+                            if (offset >= length) {
+                                done = true;
+                                slice = null;
+                            } else {
+                                int size = Math.min(SLICE_SIZE, length - offset);
+                                slice = ByteBuffer.wrap(array, offset, size);
+                                offset += size;
+                                demand--;
+                            }
+                        }
+                        if (slice == null) {
+                            subscriber.onComplete();
+                            return;
+                        }
+                        subscriber.onNext(slice);
+                    }
+                }
+
+                @Override
+                public synchronized void cancel() {
+                    done = true;
+                }
+            });
+        }
+    }
+
+    private static class PooledBodySubscriber implements HttpResponse.BodySubscriber<DUUIByteBufferPool.Buffer> {
+        private final DUUIByteBufferPool.Buffer buffer;
+        private final CompletableFuture<DUUIByteBufferPool.Buffer> result = new CompletableFuture<>();
+
+        PooledBodySubscriber(DUUIByteBufferPool.Buffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public CompletionStage<DUUIByteBufferPool.Buffer> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            for (ByteBuffer chunk : item) {
+                buffer.write(chunk);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            DUUIByteBufferPool.SHARED.release(buffer);
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete(buffer);
+        }
+    }
+
+    /**
+     * Deserializes the response into the CAS, records the performance of the call and returns the instance, also if
+     * any of this fails.
+     *
+     * @param resp Response of the component
+     * @param perf Performance record of the document
+     */
+    public void complete(HttpResponse<DUUIByteBufferPool.Buffer> resp, DUUIPipelineDocumentPerformance perf) throws CompressorException, IOException, SAXException, CASException {
+        long sizeArray = body.size();
+        long annotatorStart = serializeEnd;
+
+        try {
+            if (resp.statusCode() == 200) {
+                long deserializeStart = System.nanoTime();
+
+                try {
+                    layer.deserialize(viewJc, resp.body().toInputStream(), comp.getTargetView());
+                } catch (Exception e) {
+                    System.err.printf("Caught exception printing response %s\n", resp.body().toString(StandardCharsets.UTF_8));
+
+                    // Recorded like a rejected request, so the storage backend lists the document as error document
+                    if (perf.shouldTrackErrorDocs()) {
+                        long deserializeEnd = System.nanoTime();
+                        perf.addData(serializeEnd - serializeStart, deserializeEnd - deserializeStart, annotatorEnd - annotatorStart, queue.getValue2() - queue.getValue1(), deserializeEnd - queue.getValue1(), comp.getPipelineComponent().getFinalizedRepresentationHash(), sizeArray, jc, ExceptionUtils.getStackTrace(e));
+                    }
+
+                    throw e;
+                }
+                long deserializeEnd = System.nanoTime();
+
+                annotate(jc, comp, perf);
+                perf.addData(serializeEnd - serializeStart, deserializeEnd - deserializeStart, annotatorEnd - annotatorStart, queue.getValue2() - queue.getValue1(), deserializeEnd - queue.getValue1(), comp.getPipelineComponent().getFinalizedRepresentationHash(), sizeArray, jc, null);
+                perf.addInstanceData(comp.getPipelineComponent().getFinalizedRepresentationHash(), queue.getValue0().generateURL(), annotatorEnd - annotatorStart);
+            } else {
+                String responseBody = resp.body().toString(StandardCharsets.UTF_8);
+
+                rejected(jc, comp, perf, queue, resp.statusCode(), responseBody, serializeEnd - serializeStart, annotatorEnd - annotatorStart, sizeArray);
+            }
+        } finally {
+            DUUIByteBufferPool.SHARED.release(resp.body());
+            release();
+        }
+    }
+
+    /**
+     * Marks the CAS as processed by the component.
+     */
+    private static void annotate(JCas jc, IDUUIInstantiatedPipelineComponent comp, DUUIPipelineDocumentPerformance perf) {
+        ReproducibleAnnotation ann = new ReproducibleAnnotation(jc);
+        ann.setDescription(comp.getPipelineComponent().getFinalizedRepresentation());
+        ann.setCompression(DUUIPipelineComponent.compressionMethod);
+        ann.setTimestamp(System.nanoTime());
+        ann.setPipelineName(perf.getRunKey());
+        ann.addToIndexes();
+    }
+
+    /**
+     * Handles a response other than 200: records it as error document and throws unless the component ignores errors.
+     */
+    private static void rejected(JCas jc, IDUUIInstantiatedPipelineComponent comp, DUUIPipelineDocumentPerformance perf,
+                                 Triplet<IDUUIUrlAccessible, Long, Long> queue, int statusCode, String responseBody,
+                                 long durationSerialize, long durationAnnotator, long sizeArray) throws InvalidObjectException {
+        // track "performance" of error documents if not explicitly disabled
+        if (perf.shouldTrackErrorDocs()) {
+            long deserializeEnd = System.nanoTime();
+
+            String error = "Expected response 200, got " + statusCode + ": " + responseBody;
+
+            perf.addData(durationSerialize, 0, durationAnnotator, queue.getValue2() - queue.getValue1(), deserializeEnd - queue.getValue1(), comp.getPipelineComponent().getFinalizedRepresentationHash(), sizeArray, jc, error);
+        }
+
+        if (!comp.getPipelineComponent().getIgnoringHTTP200Error()) {
+            throw new InvalidObjectException(String.format("Expected response 200, got %d: %s", statusCode, responseBody));
+        } else {
+            System.err.println(String.format("Expected response 200, got %d: %s", statusCode, responseBody));
+        }
+    }
+
+    /**
+     * Returns the instance to the component and the request buffer to its pool if that has not happened yet, e.g.
+     * after the request failed.
+     */
+    public void release() {
+        if (!released) {
+            released = true;
+            DUUIByteBufferPool.SHARED.release(body);
+            comp.addComponent(queue.getValue0());
+        }
+    }
+}
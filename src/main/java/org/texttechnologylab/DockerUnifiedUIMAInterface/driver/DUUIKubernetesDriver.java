@@ -17,6 +17,7 @@ import org.apache.uima.util.InvalidXMLException;
 import org.javatuples.Triplet;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIComposer;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIDockerInterface;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIResourcePool;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.IDUUICommunicationLayer;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.connection.DUUIWebsocketAlt;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.connection.IDUUIConnectionHandler;
@@ -32,7 +33,6 @@ import java.net.URISyntaxException;
 import java.net.http.HttpClient;
 import java.security.InvalidParameterException;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static io.fabric8.kubernetes.client.impl.KubernetesClientImpl.logger;
@@ -350,6 +350,21 @@ public class DUUIKubernetesDriver implements IDUUIDriverInterface {
         }
     }
 
+    @Override
+    public IDUUIInstantiatedPipelineComponent getHttpComponent(String uuid) {
+        InstantiatedComponent comp = _active_components.get(uuid);
+        if (comp == null || comp.isWebsocket() || comp.getPipelineComponent().getStreaming()) {
+            return null;
+        }
+        return comp;
+    }
+
+    @Override
+    public DUUIResourcePool<?> getInstancePool(String uuid) {
+        InstantiatedComponent comp = _active_components.get(uuid);
+        return comp == null ? null : comp._components;
+    }
+
     /**
      * Deletes both the deployment and the service from the kubernetes cluster, if they exist.
      *
@@ -434,7 +449,7 @@ public class DUUIKubernetesDriver implements IDUUIDriverInterface {
         private String _image_name;
         private int _service_port;
         private boolean _gpu;
-        private final ConcurrentLinkedQueue<ComponentInstance> _components;
+        private final DUUIResourcePool<ComponentInstance> _components;
         private boolean _keep_running_after_exit;
         private int _scale;
         private boolean _withImageFetching;
@@ -468,7 +483,7 @@ public class DUUIKubernetesDriver implements IDUUIDriverInterface {
 
             _keep_running_after_exit = comp.getDockerRunAfterExit(false);
 
-            _components = new ConcurrentLinkedQueue<>();
+            _components = new DUUIResourcePool<>();
 
             _ws_elements = comp.getWebsocketElements();
 
@@ -509,10 +524,7 @@ public class DUUIKubernetesDriver implements IDUUIDriverInterface {
         @Override
         public Triplet<IDUUIUrlAccessible, Long, Long> getComponent() {
             long mutexStart = System.nanoTime();
-            ComponentInstance inst = _components.poll();
-            while (inst == null) {
-                inst = _components.poll();
-            }
+            ComponentInstance inst = _components.takeUninterruptibly();
             long mutexEnd = System.nanoTime();
             return Triplet.with(inst, mutexStart, mutexEnd);
         }
@@ -656,6 +668,21 @@ public class DUUIKubernetesDriver implements IDUUIDriverInterface {
             return this;
         }
 
+        public Component withInputs(String... types) {
+            _component.withInputs(types);
+            return this;
+        }
+
+        public Component withOutputs(String... types) {
+            _component.withOutputs(types);
+            return this;
+        }
+
+        public Component withStreaming(boolean streaming) {
+            _component.withStreaming(streaming);
+            return this;
+        }
+
         /**
          * Builds the component.
          *
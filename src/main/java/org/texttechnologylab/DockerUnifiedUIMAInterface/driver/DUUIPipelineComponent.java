@@ -73,6 +73,10 @@ public class DUUIPipelineComponent {
     private static String targetView = "targetView";
     private static String timeout = "timeout";
 
+    private static String inputsOptionName = "inputs";
+    private static String outputsOptionName = "outputs";
+    private static String streamingOptionName = "streaming";
+
     private String getVersion() throws URISyntaxException, IOException {
         ClassLoader classLoader = DUUIPipelineComponent.class.getClassLoader();
         try {
@@ -216,6 +220,22 @@ public class DUUIPipelineComponent {
         return Boolean.parseBoolean(_options.getOrDefault(ignoring200, "false"));
     }
 
+    /**
+     * Streams request and response bodies instead of building them in memory: the request is sent while the CAS is
+     * still being serialized and the response is deserialized while it arrives. This lowers the peak memory for large
+     * documents, but failed requests are not retried and the communication layer has to read its input as a stream.
+     * @param streaming Whether to stream the bodies
+     * @return this, for method chaining
+     */
+    public DUUIPipelineComponent withStreaming(boolean streaming) {
+        _options.put(streamingOptionName, String.valueOf(streaming));
+        return this;
+    }
+
+    public boolean getStreaming() {
+        return Boolean.parseBoolean(_options.getOrDefault(streamingOptionName, "false"));
+    }
+
     public DUUIPipelineComponent withConstraints(List<String> constraints) {
         _constraints.addAll(constraints);
         return this;
@@ -230,6 +250,49 @@ public class DUUIPipelineComponent {
         return _constraints;
     }
 
+    /**
+     * Declares the annotation types the component reads. Together with withOutputs this allows the
+     * DUUIDAGExecutionPlanGenerator to run components that do not depend on each other at the same time, which requires
+     * that the component only adds annotations to the CAS and does not replace it.
+     * @param types Fully qualified type names, none if the component only reads the document text
+     * @return this, for method chaining
+     */
+    public DUUIPipelineComponent withInputs(String... types) {
+        _options.put(inputsOptionName, String.join(",", types));
+        return this;
+    }
+
+    /**
+     * Declares the annotation types the component creates or changes, see withInputs.
+     * @param types Fully qualified type names
+     * @return this, for method chaining
+     */
+    public DUUIPipelineComponent withOutputs(String... types) {
+        _options.put(outputsOptionName, String.join(",", types));
+        return this;
+    }
+
+    /**
+     * @return The declared input types, or null if the component does not declare them.
+     */
+    public List<String> getInputs() {
+        return getDeclaredTypes(inputsOptionName);
+    }
+
+    /**
+     * @return The declared output types, or null if the component does not declare them.
+     */
+    public List<String> getOutputs() {
+        return getDeclaredTypes(outputsOptionName);
+    }
+
+    private List<String> getDeclaredTypes(String optionName) {
+        String types = _options.get(optionName);
+        if(types == null) return null;
+        if(types.isEmpty()) return List.of();
+        return List.of(types.split(","));
+    }
+
     public Integer getScale() {
         return getScale(null);
     }
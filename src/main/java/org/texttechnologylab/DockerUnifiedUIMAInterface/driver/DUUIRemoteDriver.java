@@ -9,6 +9,7 @@ import org.apache.uima.resource.metadata.TypeSystemDescription;
 import org.javatuples.Triplet;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIComposer;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUICompressionHelper;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIResourcePool;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.IDUUICommunicationLayer;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.connection.DUUIWebsocketAlt;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.connection.IDUUIConnectionHandler;
@@ -24,7 +25,6 @@ import java.net.http.HttpClient;
 import java.security.InvalidParameterException;
 import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -100,6 +100,21 @@ public class DUUIRemoteDriver implements IDUUIDriverInterface {
             return this;
         }
 
+        public Component withInputs(String... types) {
+            component.withInputs(types);
+            return this;
+        }
+
+        public Component withOutputs(String... types) {
+            component.withOutputs(types);
+            return this;
+        }
+
+        public Component withStreaming(boolean streaming) {
+            component.withStreaming(streaming);
+            return this;
+        }
+
         public Component withWebsocket(boolean b) {
             component.withWebsocket(b);
             return this;
@@ -168,7 +183,7 @@ public class DUUIRemoteDriver implements IDUUIDriverInterface {
     private static class InstantiatedComponent implements IDUUIInstantiatedPipelineComponent {
         private List<String> _urls;
         private int _maximum_concurrency;
-        private ConcurrentLinkedQueue<ComponentInstance> _components;
+        private DUUIResourcePool<ComponentInstance> _components;
         private String _uniqueComponentKey;
         private Map<String, String> _parameters;
         private String _sourceView;
@@ -179,10 +194,7 @@ public class DUUIRemoteDriver implements IDUUIDriverInterface {
 
         public Triplet<IDUUIUrlAccessible, Long, Long> getComponent() {
             long mutexStart = System.nanoTime();
-            ComponentInstance inst = _components.poll();
-            while (inst == null) {
-                inst = _components.poll();
-            }
+            ComponentInstance inst = _components.takeUninterruptibly();
             long mutexEnd = System.nanoTime();
             return Triplet.with(inst, mutexStart, mutexEnd);
         }
@@ -206,7 +218,7 @@ public class DUUIRemoteDriver implements IDUUIDriverInterface {
             _uniqueComponentKey = "";
 
             _maximum_concurrency = comp.getScale(1);
-            _components = new ConcurrentLinkedQueue<>();
+            _components = new DUUIResourcePool<>();
             _websocket = comp.isWebsocket();
             _ws_elements = comp.getWebsocketElements();
         }
@@ -356,6 +368,21 @@ public class DUUIRemoteDriver implements IDUUIDriverInterface {
         }
     }
 
+    @Override
+    public IDUUIInstantiatedPipelineComponent getHttpComponent(String uuid) {
+        InstantiatedComponent comp = _components.get(uuid);
+        if (comp == null || comp.isWebsocket() || comp.getPipelineComponent().getStreaming()) {
+            return null;
+        }
+        return comp;
+    }
+
+    @Override
+    public DUUIResourcePool<?> getInstancePool(String uuid) {
+        InstantiatedComponent comp = _components.get(uuid);
+        return comp == null ? null : comp._components;
+    }
+
     public boolean destroy(String uuid) {
         _components.remove(uuid);
         return true;
@@ -0,0 +1,214 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface.driver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded pipe between a thread serializing a CAS and the HTTP client sending it as request body.
+ * <p>
+ * Unlike PipedInputStream the two ends may be used by any threads, which the HTTP client requires as it reads the body
+ * on threads of its own executor. Bytes are passed on in chunks, at most a fixed number of chunks are in the pipe, so
+ * the writer waits while the network is slower than the serialization and memory stays bounded whatever the size of
+ * the document. Consumed chunks are handed back to the writer for reuse. If either end fails, the pipe is aborted and
+ * the other end gets an IOException instead of waiting forever. Once aborted, the reader gets no further chunks, not
+ * even those already in the pipe, so an aborted body never looks complete.
+ * <p>
+ * The ends are public classes because Lua communication layers call their methods by reflection.
+ */
+public class DUUIStreamingPipe {
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    static final int DEFAULT_CHUNKS = 16;
+
+    // Marks the end of the stream
+    private static final ByteBuffer EOF = ByteBuffer.allocate(0);
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final int _chunkSize;
+    private final ArrayBlockingQueue<ByteBuffer> _chunks;
+    private final ArrayBlockingQueue<byte[]> _free;
+    private volatile Throwable _aborted = null;
+    private volatile long _written = 0;
+    private volatile int _allocated = 0;
+
+    private final PipeOutputStream _out = new PipeOutputStream();
+    private final PipeInputStream _in = new PipeInputStream();
+
+    public class PipeOutputStream extends OutputStream {
+        private byte[] chunk = null;
+        private int pos = 0;
+        private boolean closed = false;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (chunk == null || pos == chunk.length) flushChunk();
+            chunk[pos++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (chunk == null || pos == chunk.length) flushChunk();
+                int n = Math.min(len, chunk.length - pos);
+                System.arraycopy(b, off, chunk, pos, n);
+                pos += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void flushChunk() throws IOException {
+            if (chunk != null && pos > 0) {
+                put(ByteBuffer.wrap(chunk, 0, pos));
+                _written += pos;
+            }
+            chunk = _free.poll();
+            if (chunk == null) {
+                chunk = new byte[_chunkSize];
+                _allocated++;
+            }
+            pos = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            if (chunk != null && pos > 0) {
+                put(ByteBuffer.wrap(chunk, 0, pos));
+                _written += pos;
+            }
+            put(EOF);
+        }
+    }
+
+    public class PipeInputStream extends InputStream {
+        private ByteBuffer chunk = null;
+        private boolean eof = false;
+
+        private boolean next() throws IOException {
+            while (chunk == null || !chunk.hasRemaining()) {
+                if (eof) return false;
+                if (chunk != null) _free.offer(chunk.array());
+                chunk = null;
+                ByteBuffer taken = take();
+                if (taken == EOF) {
+                    eof = true;
+                    return false;
+                }
+                chunk = taken;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return next() ? chunk.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!next()) return -1;
+            int n = Math.min(len, chunk.remaining());
+            chunk.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public void close() {
+            // Closing before the end means nobody reads any more, do not let the writer wait
+            if (!eof) abort(new IOException("Request body closed before it was sent completely"));
+        }
+    }
+
+    DUUIStreamingPipe() {
+        this(DEFAULT_CHUNK_SIZE, DEFAULT_CHUNKS);
+    }
+
+    /**
+     * @param chunkSize Size of a chunk in bytes
+     * @param chunks    Maximum number of chunks in the pipe
+     */
+    DUUIStreamingPipe(int chunkSize, int chunks) {
+        _chunkSize = chunkSize;
+        _chunks = new ArrayBlockingQueue<>(chunks);
+        // Besides the chunks in the pipe, one is being written and one is being read, none of them may be dropped
+        _free = new ArrayBlockingQueue<>(chunks + 2);
+    }
+
+    private void put(ByteBuffer chunk) throws IOException {
+        checkAborted();
+        try {
+            while (!_chunks.offer(chunk, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                checkAborted();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while streaming the request body");
+        }
+    }
+
+    private ByteBuffer take() throws IOException {
+        try {
+            ByteBuffer chunk;
+            do {
+                // Checked before every chunk, chunks written before the abort must not be read after it
+                checkAborted();
+            } while ((chunk = _chunks.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) == null);
+            checkAborted();
+            return chunk;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while streaming the request body");
+        }
+    }
+
+    private void checkAborted() throws IOException {
+        Throwable aborted = _aborted;
+        if (aborted != null) {
+            throw new IOException("Streaming the request body was aborted", aborted);
+        }
+    }
+
+    /**
+     * Fails both ends of the pipe, e.g. because the request could not be sent or serializing failed.
+     *
+     * @param cause Reason of the failure
+     */
+    void abort(Throwable cause) {
+        if (_aborted == null) _aborted = cause;
+    }
+
+    /**
+     * @return End the communication layer serializes into, closing it ends the request body
+     */
+    OutputStream getOutputStream() {
+        return _out;
+    }
+
+    /**
+     * @return End the HTTP client reads the request body from
+     */
+    InputStream getInputStream() {
+        return _in;
+    }
+
+    /**
+     * @return Number of bytes passed on so far.
+     */
+    long getBytesWritten() {
+        return _written;
+    }
+
+    /**
+     * @return Number of chunks allocated because no consumed chunk was free for reuse.
+     */
+    int getChunksAllocated() {
+        return _allocated;
+    }
+}
@@ -11,6 +11,7 @@ import org.apache.uima.resource.metadata.TypeSystemDescription;
 import org.javatuples.Triplet;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIComposer;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIDockerInterface;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIResourcePool;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.IDUUICommunicationLayer;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.connection.DUUIWebsocketAlt;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.connection.IDUUIConnectionHandler;
@@ -26,7 +27,6 @@ import java.net.http.HttpClient;
 import java.security.InvalidParameterException;
 import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static java.lang.String.format;
@@ -210,6 +210,21 @@ public class DUUISwarmDriver implements IDUUIDriverInterface {
         }
     }
 
+    @Override
+    public IDUUIInstantiatedPipelineComponent getHttpComponent(String uuid) {
+        InstantiatedComponent comp = _active_components.get(uuid);
+        if (comp == null || comp.isWebsocket() || comp.getPipelineComponent().getStreaming()) {
+            return null;
+        }
+        return comp;
+    }
+
+    @Override
+    public DUUIResourcePool<?> getInstancePool(String uuid) {
+        InstantiatedComponent comp = _active_components.get(uuid);
+        return comp == null ? null : comp._components;
+    }
+
     public boolean destroy(String uuid) {
         DUUISwarmDriver.InstantiatedComponent comp = _active_components.remove(uuid);
         if (comp == null) {
@@ -259,7 +274,7 @@ public class DUUISwarmDriver implements IDUUIDriverInterface {
         private final Boolean _keep_runnging_after_exit;
         private final int _scale;
         private final String _fromLocalImage;
-        private final ConcurrentLinkedQueue<ComponentInstance> _components;
+        private final DUUIResourcePool<ComponentInstance> _components;
         private final boolean _websocket;
         private final int _ws_elements;
 
@@ -285,7 +300,7 @@ public class DUUISwarmDriver implements IDUUIDriverInterface {
             _sourceView = comp.getSourceView();
             _scale = comp.getScale(1);
             _constraints.addAll(comp.getConstraints());
-            _components = new ConcurrentLinkedQueue<>();
+            _components = new DUUIResourcePool<>();
 
             _keep_runnging_after_exit = comp.getDockerRunAfterExit(false);
 
@@ -388,10 +403,7 @@ public class DUUISwarmDriver implements IDUUIDriverInterface {
 
         public Triplet<IDUUIUrlAccessible, Long, Long> getComponent() {
             long mutexStart = System.nanoTime();
-            ComponentInstance inst = _components.poll();
-            while (inst == null) {
-                inst = _components.poll();
-            }
+            ComponentInstance inst = _components.takeUninterruptibly();
             long mutexEnd = System.nanoTime();
             return Triplet.with(inst, mutexStart, mutexEnd);
         }
@@ -438,6 +450,21 @@ public class DUUISwarmDriver implements IDUUIDriverInterface {
             return this;
         }
 
+        public Component withInputs(String... types) {
+            component.withInputs(types);
+            return this;
+        }
+
+        public Component withOutputs(String... types) {
+            component.withOutputs(types);
+            return this;
+        }
+
+        public Component withStreaming(boolean streaming) {
+            component.withStreaming(streaming);
+            return this;
+        }
+
         public Component withScale(int scale) {
             component.withScale(scale);
             return this;
@@ -18,6 +18,7 @@ import org.apache.uima.resource.metadata.NameValuePair;
 import org.apache.uima.resource.metadata.TypeSystemDescription;
 import org.apache.uima.util.InvalidXMLException;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIComposer;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIResourcePool;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.lua.DUUILuaContext;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUIEvent;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.pipeline_storage.DUUIPipelineDocumentPerformance;
@@ -28,7 +29,6 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.security.InvalidParameterException;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -57,11 +57,11 @@ public class DUUIUIMADriver implements IDUUIDriverInterface {
     }
 
     public static class InstantiatedComponent {
-        private ConcurrentLinkedQueue<AnalysisEngine> _engines;
+        private DUUIResourcePool<AnalysisEngine> _engines;
         private DUUIPipelineComponent _component;
 
         public InstantiatedComponent(DUUIPipelineComponent component) {
-            _engines = new ConcurrentLinkedQueue<AnalysisEngine>();
+            _engines = new DUUIResourcePool<AnalysisEngine>();
             _component = component;
         }
 
@@ -78,7 +78,7 @@ public class DUUIUIMADriver implements IDUUIDriverInterface {
             return this;
         }
 
-        public ConcurrentLinkedQueue<AnalysisEngine> getEngines() {
+        public DUUIResourcePool<AnalysisEngine> getEngines() {
             return _engines;
         }
     }
@@ -114,6 +114,16 @@ public class DUUIUIMADriver implements IDUUIDriverInterface {
             return this;
         }
 
+        public Component withInputs(String... types) {
+            component.withInputs(types);
+            return this;
+        }
+
+        public Component withOutputs(String... types) {
+            component.withOutputs(types);
+            return this;
+        }
+
         static private String[] extractNames(AnalysisEngineDescription engine, int recursionDepth) throws InvalidXMLException {
             List<String> lst = new ArrayList<String>();
             String offset = "";
@@ -329,6 +339,12 @@ public class DUUIUIMADriver implements IDUUIDriverInterface {
         return TypeSystemDescriptionFactory.createTypeSystemDescription();
     }
 
+    @Override
+    public DUUIResourcePool<?> getInstancePool(String uuid) {
+        InstantiatedComponent comp = _engines.get(uuid);
+        return comp == null ? null : comp.getEngines();
+    }
+
     public void run(String uuid, JCas aCas, DUUIPipelineDocumentPerformance perf, DUUIComposer composer) throws InterruptedException, IOException, SAXException, AnalysisEngineProcessException, CompressorException, CASException {
         long mutexStart = System.nanoTime();
 
@@ -336,10 +352,7 @@ public class DUUIUIMADriver implements IDUUIDriverInterface {
         if (component == null) {
             throw new InvalidParameterException("The given instantiated component uuid was not instantiated by the remote driver");
         }
-        AnalysisEngine engine = component.getEngines().poll();
-        while (engine == null) {
-            engine = component.getEngines().poll();
-        }
+        AnalysisEngine engine = component.getEngines().take();
         long mutexEnd = System.nanoTime();
         try {
             long annotatorStart = mutexEnd;
@@ -370,20 +383,18 @@ public class DUUIUIMADriver implements IDUUIDriverInterface {
             ann.setTimestamp(System.nanoTime());
             ann.setPipelineName(perf.getRunKey());
             ann.addToIndexes();
-            perf.addData(0, 0, annotatorEnd - annotatorStart, mutexEnd - mutexStart, annotatorEnd - mutexStart, String.valueOf(component.getPipelineComponent().getFinalizedRepresentationHash()), 0, jc, null);
-            component.add(engine);
+            perf.addData(0, 0, annotatorEnd - annotatorStart, mutexEnd - mutexStart, annotatorEnd - mutexStart, component.getPipelineComponent().getFinalizedRepresentationHash(), 0, jc, null);
         } catch (Exception e) {
-            component.add(engine);
-
             // track error docs
             long annotatorStart = mutexEnd;
             long annotatorEnd = System.nanoTime();
             if (perf.shouldTrackErrorDocs()) {
-                perf.addData(0, 0, annotatorEnd - annotatorStart, mutexEnd - mutexStart, annotatorEnd - mutexStart, String.valueOf(component.getPipelineComponent().getFinalizedRepresentationHash()), 0, null, ExceptionUtils.getStackTrace(e));
-                component.add(engine);
+                perf.addData(0, 0, annotatorEnd - annotatorStart, mutexEnd - mutexStart, annotatorEnd - mutexStart, component.getPipelineComponent().getFinalizedRepresentationHash(), 0, null, ExceptionUtils.getStackTrace(e));
             }
 
             throw e;
+        } finally {
+            component.add(engine);
         }
     }
 
@@ -392,6 +403,7 @@ public class DUUIUIMADriver implements IDUUIDriverInterface {
         if (component == null) {
             throw new InvalidParameterException("Invalid UUID, this component has not been instantiated by the local Driver");
         }
+        System.out.printf("[UIMADriver][%s] Engine pool: %s\n", uuid, component.getEngines());
         for (AnalysisEngine engine : component.getEngines()) {
             engine.destroy();
         }
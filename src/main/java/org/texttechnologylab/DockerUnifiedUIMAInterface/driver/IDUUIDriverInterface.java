@@ -8,6 +8,7 @@ import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.resource.metadata.TypeSystemDescription;
 import org.apache.uima.util.InvalidXMLException;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIComposer;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIResourcePool;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.lua.DUUILuaContext;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.pipeline_storage.DUUIPipelineDocumentPerformance;
 import org.xml.sax.SAXException;
@@ -86,6 +87,27 @@ public interface IDUUIDriverInterface {
      */
     public void run(String uuid, JCas aCas, DUUIPipelineDocumentPerformance perf, DUUIComposer composer) throws InterruptedException, IOException, SAXException, AnalysisEngineProcessException, CompressorException, CASException;
 
+    /**
+     * Returns the instantiated component if it is processed by a plain HTTP request with buffered bodies, so the
+     * composer can run the serialization, the request and the deserialization as separate steps, see
+     * {@link DUUIHttpProcessCall}.
+     * @param uuid
+     * @return The instantiated component, or null if it can only be processed with run
+     */
+    public default IDUUIInstantiatedPipelineComponent getHttpComponent(String uuid) {
+        return null;
+    }
+
+    /**
+     * Returns the pool of idle instances of a component, e.g. to monitor how many are available and how long
+     * documents wait for one.
+     * @param uuid
+     * @return The pool, or null if the driver does not pool instances of the component
+     */
+    public default DUUIResourcePool<?> getInstancePool(String uuid) {
+        return null;
+    }
+
     /**
      * Destruction of a component
      * @param uuid
@@ -9,6 +9,7 @@ import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.resource.metadata.TypeSystemDescription;
 import org.javatuples.Triplet;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIByteBufferPool;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIComposer;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.IDUUICommunicationLayer;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.connection.DUUIWebsocketAlt;
@@ -28,6 +29,7 @@ import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
 
 /**
  * The interface for the instance of each component that is executed in a pipeline.
@@ -104,119 +106,26 @@ public interface IDUUIInstantiatedPipelineComponent {
      * @throws CASException
      */
     public static void process(JCas jc, IDUUIInstantiatedPipelineComponent comp, DUUIPipelineDocumentPerformance perf) throws CompressorException, IOException, SAXException, CASException {
-        Triplet<IDUUIUrlAccessible,Long,Long> queue = comp.getComponent();
-
-        IDUUICommunicationLayer layer = queue.getValue0().getCommunicationLayer();
-        long serializeStart = System.nanoTime();
-
-        ByteArrayOutputStream out = new ByteArrayOutputStream(1024*1024);
-
-        DUUIPipelineComponent pipelineComponent = comp.getPipelineComponent();
-        String viewName = pipelineComponent.getViewName();
-        JCas viewJc;
-        if(viewName == null) {
-            viewJc = jc;
-        }
-        else {
-            try {
-                viewJc = jc.getView(viewName);
-            }
-            catch(CASException e) {
-                if(pipelineComponent.getCreateViewFromInitialView()) {
-                    viewJc = jc.createView(viewName);
-                    viewJc.setDocumentText(jc.getDocumentText());
-                    viewJc.setDocumentLanguage(jc.getDocumentLanguage());
-                }
-                else {
-                    throw e;
-                }
-            }
+        if (comp.getPipelineComponent().getStreaming()) {
+            DUUIHttpProcessCall.stream(jc, comp, perf);
+            return;
         }
 
-        layer.serialize(viewJc,out,comp.getParameters(), comp.getSourceView());
-        // lua serialize call()
-
-        byte[] ok = out.toByteArray();
-        long sizeArray = ok.length;
-        long serializeEnd = System.nanoTime();
+        DUUIHttpProcessCall call = DUUIHttpProcessCall.prepare(jc, comp);
 
-        long annotatorStart = serializeEnd;
-        int tries = 0;
-        HttpResponse<byte[]> resp = null;
-        while (tries < 3) {
-            tries++;
-            try {
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create(queue.getValue0().generateURL() + DUUIComposer.V1_COMPONENT_ENDPOINT_PROCESS))
-                        .timeout(Duration.ofSeconds(comp.getPipelineComponent().getTimeout()))
-                        .POST(HttpRequest.BodyPublishers.ofByteArray(ok))
-                        .version(HttpClient.Version.HTTP_1_1)
-                        .build();
-                resp = _client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()).join();
-                break;
-            }
-            catch(Exception e) {
-                e.printStackTrace();
-                //System.out.printf("Cannot reach endpoint trying again %d/%d...\n",tries+1,10);
-            }
+        HttpResponse<DUUIByteBufferPool.Buffer> resp;
+        try {
+            resp = call.send().join();
         }
-        if(resp==null) {
-            throw new IOException("Could not reach endpoint after 3 tries!");
-        }
-
-
-        if (resp.statusCode() == 200) {
-            ByteArrayInputStream st = new ByteArrayInputStream(resp.body());
-            long annotatorEnd = System.nanoTime();
-            long deserializeStart = annotatorEnd;
-
-            try {
-                layer.deserialize(viewJc, st, comp.getTargetView());
-            }
-            catch(Exception e) {
-                System.err.printf("Caught exception printing response %s\n",new String(resp.body(), StandardCharsets.UTF_8));
-
-                // TODO better error handleing flow?
-                comp.addComponent(queue.getValue0());
-
-                // TODO handle error docs for db here too?
-
-                throw e;
-            }
-            long deserializeEnd = System.nanoTime();
-
-            ReproducibleAnnotation ann = new ReproducibleAnnotation(jc);
-            ann.setDescription(comp.getPipelineComponent().getFinalizedRepresentation());
-            ann.setCompression(DUUIPipelineComponent.compressionMethod);
-            ann.setTimestamp(System.nanoTime());
-            ann.setPipelineName(perf.getRunKey());
-            ann.addToIndexes();
-            perf.addData(serializeEnd-serializeStart,deserializeEnd-deserializeStart,annotatorEnd-annotatorStart,queue.getValue2()-queue.getValue1(),deserializeEnd-queue.getValue1(), String.valueOf(comp.getPipelineComponent().getFinalizedRepresentationHash()), sizeArray, jc, null);
-
-            comp.addComponent(queue.getValue0());
-        } else {
-            comp.addComponent(queue.getValue0());
-            ByteArrayInputStream st = new ByteArrayInputStream(resp.body());
-            String responseBody = new String(st.readAllBytes(), StandardCharsets.UTF_8);
-            st.close();
-
-            // track "performance" of error documents if not explicitly disabled
-            if (perf.shouldTrackErrorDocs()) {
-                long annotatorEnd = System.nanoTime();
-                long deserializeStart = annotatorEnd;
-                long deserializeEnd = System.nanoTime();
-
-                String error = "Expected response 200, got " + resp.statusCode() + ": " + responseBody;
-
-                perf.addData(serializeEnd - serializeStart, deserializeEnd - deserializeStart, annotatorEnd - annotatorStart, queue.getValue2() - queue.getValue1(), deserializeEnd - queue.getValue1(), String.valueOf(comp.getPipelineComponent().getFinalizedRepresentationHash()), sizeArray, jc, error);
-            }
-
-            if (!pipelineComponent.getIgnoringHTTP200Error()) {
-                throw new InvalidObjectException(String.format("Expected response 200, got %d: %s", resp.statusCode(), responseBody));
-            } else {
-                System.err.println(String.format("Expected response 200, got %d: %s", resp.statusCode(), responseBody));
+        catch(CompletionException e) {
+            call.release();
+            if(e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
             }
+            throw e;
         }
+
+        call.complete(resp, perf);
     }
 
     /**
@@ -320,7 +229,8 @@ public interface IDUUIInstantiatedPipelineComponent {
             ann.setTimestamp(System.nanoTime());
             ann.setPipelineName(perf.getRunKey());
             ann.addToIndexes();
-            perf.addData(serializeEnd-serializeStart,deserializeEnd-deserializeStart,annotatorEnd-annotatorStart,queue.getValue2()-queue.getValue1(),deserializeEnd-queue.getValue1(), String.valueOf(comp.getPipelineComponent().getFinalizedRepresentationHash()), sizeArray, jc, error);
+            perf.addData(serializeEnd-serializeStart,deserializeEnd-deserializeStart,annotatorEnd-annotatorStart,queue.getValue2()-queue.getValue1(),deserializeEnd-queue.getValue1(), comp.getPipelineComponent().getFinalizedRepresentationHash(), sizeArray, jc, error);
+            perf.addInstanceData(comp.getPipelineComponent().getFinalizedRepresentationHash(), accessible.generateURL(), annotatorEnd-annotatorStart);
             comp.addComponent(accessible);
         }
     }
@@ -12,6 +12,8 @@ import org.dkpro.core.api.io.ProgressMeter;
 import org.javaync.io.AsyncFiles;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.document_handler.DUUIInputStream;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.document_handler.IDUUIDocumentHandler;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUIMetricsWriter;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.IDUUIMetricsSource;
 import org.texttechnologylab.utilities.helper.StringUtils;
 import org.xml.sax.SAXException;
 
@@ -28,7 +30,7 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @Deprecated
-public class AsyncCollectionReader {
+public class AsyncCollectionReader implements IDUUIMetricsSource {
     private String _path;
     private ConcurrentLinkedQueue<String> _filePaths;
     private ConcurrentLinkedQueue<String> _filePathsBackup;
@@ -407,6 +409,28 @@ public class AsyncCollectionReader {
         return _docNumber.get() >= _initialSize;
     }
 
+    /**
+     * @return Number of documents to read.
+     */
+    public int getDocumentCount() {
+        return _initialSize;
+    }
+
+    /**
+     * @return Number of documents read so far.
+     */
+    public int getDocumentsRead() {
+        return _docNumber.get();
+    }
+
+    @Override
+    public void collectMetrics(DUUIMetricsWriter metrics) {
+        metrics.gauge("duui_reader_documents", "Documents the collection reader has to read", getDocumentCount())
+                .counter("duui_reader_documents_read", "Documents read by the collection reader", getDocumentsRead())
+                .gauge("duui_reader_cached_bytes", "Bytes of documents loaded ahead by the collection reader", getCachedSize())
+                .gauge("duui_reader_max_cached_bytes", "Maximum bytes of documents loaded ahead by the collection reader", getMaxMemory());
+    }
+
     public CompletableFuture<Integer> getAsyncNextByteArray() throws IOException, CompressorException, SAXException {
         String result = _filePaths.poll();
         if (result == null) return CompletableFuture.completedFuture(1);
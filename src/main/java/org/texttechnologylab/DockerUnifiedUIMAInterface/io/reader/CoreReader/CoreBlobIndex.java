@@ -0,0 +1,223 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface.io.reader.CoreReader;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+
+/**
+ * Index from blob id (file name without extensions, see CorePageUtils.getBaseName) to the path of the blob below a
+ * root directory, e.g. TEMP_files/TEMP_data/html or TEMP_files/TEMP_data/screens. Replaces a directory walk per page
+ * with a single walk at startup and constant-time lookups afterwards.
+ * <p>
+ * The index can be saved as a sorted .tsv file (id, path relative to the root directory) and loaded again. Besides the
+ * blobs it stores the directories below the root directory and the time the last walk over them started. When it is
+ * loaded, every known directory is checked once, and only directories that were modified since that time are listed
+ * again. Files in unmodified directories are never touched, so new blobs are picked up without walking the whole tree.
+ * Deleted blobs are not removed by such an incremental refresh, use build to rebuild the index from scratch.
+ *
+ * @author Filip Fitzermann
+ */
+public class CoreBlobIndex {
+    // First line of the index file, followed by the time the last walk started
+    private static final String HEADER = "#indexedAt";
+    // Directory timestamps can be this much coarser than the clock, directories modified within it are listed again
+    private static final long MTIME_GRANULARITY = 2000;
+
+    private final Path rootDir;
+    // Blob id -> path relative to rootDir
+    private final Map<String, String> paths;
+    // Directories below rootDir relative to it, "" is rootDir itself
+    private final Set<String> directories;
+    // Time the last full build or refresh started, directories modified after it are listed again by refresh
+    private long indexedAt;
+
+    private CoreBlobIndex(Path rootDir, Map<String, String> paths, Set<String> directories, long indexedAt) {
+        this.rootDir = rootDir;
+        this.paths = paths;
+        this.directories = directories;
+        this.directories.add("");
+        this.indexedAt = indexedAt;
+    }
+
+    /**
+     * Builds the index by listing all directories below rootDir once.
+     *
+     * @param rootDir Directory to index
+     * @return Index of all regular files below rootDir
+     * @throws IOException
+     */
+    public static CoreBlobIndex build(Path rootDir) throws IOException {
+        CoreBlobIndex index = new CoreBlobIndex(rootDir, new HashMap<>(), new HashSet<>(), 0);
+        index.refresh();
+        return index;
+    }
+
+    /**
+     * Loads the index of rootDir from indexFile and refreshes it incrementally. If indexFile does not exist yet, the
+     * index is built and saved to indexFile.
+     *
+     * @param rootDir   Directory to index
+     * @param indexFile File the index is stored in
+     * @return Up to date index of rootDir
+     * @throws IOException
+     */
+    public static CoreBlobIndex load(Path rootDir, Path indexFile) throws IOException {
+        if (!Files.exists(indexFile)) {
+            CoreBlobIndex index = build(rootDir);
+            index.save(indexFile);
+            return index;
+        }
+
+        Map<String, String> paths = new HashMap<>();
+        Set<String> directories = new HashSet<>();
+        // Index files without a header predate it, then every directory is listed once and the header is added
+        long indexedAt = 0;
+        boolean hasHeader = false;
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf('\t');
+                if (separator < 0) continue;
+                String key = line.substring(0, separator);
+                String value = line.substring(separator + 1);
+                if (!hasHeader && key.equals(HEADER)) {
+                    indexedAt = Long.parseLong(value);
+                    hasHeader = true;
+                } else if (key.isEmpty()) {
+                    directories.add(value);
+                } else {
+                    paths.put(key, value);
+                }
+            }
+        }
+
+        CoreBlobIndex index = new CoreBlobIndex(rootDir, paths, directories, indexedAt);
+        if (index.refresh() > 0 || !hasHeader) index.save(indexFile);
+        return index;
+    }
+
+    /**
+     * Checks every known directory once and lists those modified since the index was built or last refreshed, adding
+     * their files and new subdirectories to the index. New subdirectories are listed completely, whatever their
+     * modification time, since a moved directory keeps it. Only directories are checked, files are only touched in
+     * modified directories.
+     *
+     * @return Number of added or moved blobs and added or removed directories
+     * @throws IOException
+     */
+    public int refresh() throws IOException {
+        long since = this.indexedAt - MTIME_GRANULARITY;
+        // The start of this walk, anything modified during it is at least as new and listed by the next refresh
+        this.indexedAt = System.currentTimeMillis();
+        int changed = 0;
+
+        ArrayDeque<String> unlisted = new ArrayDeque<>();
+        for (String directory : new ArrayList<>(this.directories)) {
+            FileTime modified;
+            try {
+                modified = Files.getLastModifiedTime(this.rootDir.resolve(directory));
+            } catch (NoSuchFileException e) {
+                this.directories.remove(directory);
+                changed++;
+                continue;
+            }
+            if (modified.toMillis() >= since) unlisted.add(directory);
+        }
+
+        while (!unlisted.isEmpty()) {
+            Path dir = this.rootDir.resolve(unlisted.poll());
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class);
+                    if (attrs.isDirectory()) {
+                        String directory = this.rootDir.relativize(entry).toString();
+                        if (this.directories.add(directory)) {
+                            unlisted.add(directory);
+                            changed++;
+                        }
+                    } else if (attrs.isRegularFile() && this.put(entry)) {
+                        changed++;
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                // Deleted while walking, dropped by the next refresh
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Writes the index to indexFile: the header, one "\tdirectory" line per directory and one "id\tpath" line per blob,
+     * sorted by id.
+     *
+     * @param indexFile File the index is stored in
+     * @throws IOException
+     */
+    public void save(Path indexFile) throws IOException {
+        Path tempFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.write('\t');
+            writer.write(Long.toString(this.indexedAt));
+            writer.newLine();
+            // Directories are stored with an empty id, which no blob can have
+            for (String directory : new TreeSet<>(this.directories)) {
+                if (directory.isEmpty()) continue;
+                writer.write('\t');
+                writer.write(directory);
+                writer.newLine();
+            }
+            for (Map.Entry<String, String> entry : new TreeMap<>(this.paths).entrySet()) {
+                writer.write(entry.getKey());
+                writer.write('\t');
+                writer.write(entry.getValue());
+                writer.newLine();
+            }
+        }
+        Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return True if the blob was not in the index or its path changed.
+     */
+    private boolean put(Path file) {
+        String id = CorePageUtils.getBaseName(file.getFileName().toString());
+        // Hidden files like .gitkeep have no id
+        if (id.isEmpty()) return false;
+        String relativePath = this.rootDir.relativize(file).toString();
+        return !relativePath.equals(this.paths.put(id, relativePath));
+    }
+
+    /**
+     * @param id Blob id, the file name without any extensions
+     * @return Path to the blob, or null if there is no blob with this id
+     */
+    public Path get(String id) {
+        String relativePath = this.paths.get(id);
+        return relativePath == null ? null : this.rootDir.resolve(relativePath);
+    }
+
+    /**
+     * Looks up several blobs at once, equivalent to CorePageUtils.filesSearch without walking the directory.
+     *
+     * @param ids Blob ids, the file names without any extensions
+     * @return Paths of all found blobs by id
+     */
+    public Map<String, Path> getAll(Set<String> ids) {
+        Map<String, Path> result = new HashMap<>();
+        for (String id : ids) {
+            Path path = this.get(id);
+            if (path != null) result.put(id, path);
+        }
+        return result;
+    }
+
+    public int size() {
+        return this.paths.size();
+    }
+}
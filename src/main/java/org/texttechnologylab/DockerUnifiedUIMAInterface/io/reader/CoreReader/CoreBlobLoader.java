@@ -0,0 +1,173 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface.io.reader.CoreReader;
+
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.fit.component.JCasAnnotator_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.ByteArray;
+import org.texttechnologylab.annotation.corepagetypes.BlobReference;
+import org.texttechnologylab.annotation.corepagetypes.HTMLData;
+import org.texttechnologylab.annotation.corepagetypes.Screenshot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Loads the blobs of HTMLData and Screenshot annotations that DUUICoreReader.withLazyBlobs only referenced. Add it to
+ * the pipeline right before the first component that consumes HTMLData.HTMLSource or Screenshot.base64Encoding, or
+ * before the writer if the final CAS should contain the blobs. Pipelines that only use page metadata or scroll events
+ * can leave it out and never read a blob.
+ * <p>
+ * Annotations whose payload is already set are not loaded again. The blob reference is kept, so the CAS can still be
+ * traced back to the export.
+ *
+ * @author Filip Fitzermann
+ */
+public class CoreBlobLoader extends JCasAnnotator_ImplBase {
+    public static final String CODEC_GZIP = "gzip";
+    public static final String CODEC_NONE = "none";
+
+    public static final String PARAM_BINARY_SCREENSHOTS = "binaryScreenshots";
+
+    /**
+     * If true, screenshots are loaded as raw png bytes into Screenshot.pngData instead of Base64 into base64Encoding.
+     */
+    @ConfigurationParameter(name = PARAM_BINARY_SCREENSHOTS, mandatory = false, defaultValue = "false")
+    protected boolean binaryScreenshots;
+
+    @Override
+    public void process(JCas jCas) throws AnalysisEngineProcessException {
+        try {
+            loadAll(jCas, this.binaryScreenshots);
+        } catch (IOException e) {
+            throw new AnalysisEngineProcessException(e);
+        }
+    }
+
+    /**
+     * Loads all referenced blobs of a CAS.
+     *
+     * @param jcas              CAS created by DUUICoreReader
+     * @param binaryScreenshots If true, screenshots are loaded into Screenshot.pngData, otherwise Base64 encoded into
+     *                          Screenshot.base64Encoding
+     * @throws IOException
+     */
+    public static void loadAll(JCas jcas, boolean binaryScreenshots) throws IOException {
+        for (HTMLData htmlData : JCasUtil.select(jcas, HTMLData.class)) {
+            if (htmlData.getHTMLSource() == null && htmlData.getBlob() != null) {
+                try (InputStream stream = open(htmlData.getBlob())) {
+                    htmlData.setHTMLSource(CorePageUtils.readHTML(stream));
+                }
+            }
+        }
+
+        for (Screenshot screenshot : JCasUtil.select(jcas, Screenshot.class)) {
+            if (screenshot.getBase64Encoding() != null || screenshot.getPngData() != null) continue;
+            if (screenshot.getBlob() == null) continue;
+
+            byte[] png = read(screenshot.getBlob());
+            if (binaryScreenshots) {
+                ByteArray pngData = new ByteArray(jcas, png.length);
+                pngData.copyFromArray(png, 0, 0, png.length);
+                screenshot.setPngData(pngData);
+            } else {
+                screenshot.setBase64Encoding(Base64.getEncoder().encodeToString(png));
+            }
+        }
+    }
+
+    /**
+     * Creates a reference to a whole gzipped blob file.
+     *
+     * @param jcas CAS the reference is created in
+     * @param path Path to the gzipped blob
+     * @return Reference, not added to the indexes since it is only reachable from its annotation
+     */
+    public static BlobReference reference(JCas jcas, Path path) {
+        BlobReference blob = new BlobReference(jcas);
+        blob.setPath(path.toAbsolutePath().toString());
+        blob.setOffset(0);
+        blob.setSize(-1);
+        blob.setCodec(CODEC_GZIP);
+        return blob;
+    }
+
+    /**
+     * Reads and decompresses the bytes a blob reference points to.
+     *
+     * @param blob Reference to the blob
+     * @return Decompressed bytes
+     * @throws IOException
+     */
+    public static byte[] read(BlobReference blob) throws IOException {
+        try (InputStream stream = open(blob)) {
+            return stream.readAllBytes();
+        }
+    }
+
+    /**
+     * Opens a stream of the decompressed bytes a blob reference points to. Nothing is read before the stream is.
+     *
+     * @param blob Reference to the blob
+     * @return Stream of the decompressed bytes, must be closed by the caller
+     * @throws IOException
+     */
+    public static InputStream open(BlobReference blob) throws IOException {
+        InputStream file = Files.newInputStream(Path.of(blob.getPath()));
+        try {
+            file.skipNBytes(blob.getOffset());
+            InputStream stored = blob.getSize() < 0 ? file : new BoundedInputStream(file, blob.getSize());
+
+            switch (blob.getCodec() == null ? CODEC_NONE : blob.getCodec()) {
+                case CODEC_GZIP:
+                    return new GZIPInputStream(stored);
+                case CODEC_NONE:
+                    return stored;
+                default:
+                    throw new IOException("CoreBlobLoader.open: Unknown codec " + blob.getCodec());
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads at most "remaining" bytes of the wrapped stream.
+     */
+    private static class BoundedInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long size) {
+            this.in = in;
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (this.remaining <= 0) return -1;
+            int b = this.in.read();
+            if (b >= 0) this.remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (this.remaining <= 0) return -1;
+            int n = this.in.read(b, off, (int) Math.min(len, this.remaining));
+            if (n > 0) this.remaining -= n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+    }
+}
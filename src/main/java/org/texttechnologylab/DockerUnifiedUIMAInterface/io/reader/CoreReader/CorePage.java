@@ -0,0 +1,120 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface.io.reader.CoreReader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * All data of a single CORE page that DUUICoreReader writes into a CAS: the rows of the page from each table and the
+ * decompressed html sources and screenshots, either Base64 encoded or as raw png bytes.
+ * <p>
+ * The rows are collected by the reader thread, the blobs are read by load, which does not touch any shared state of
+ * the reader and can therefore run on a prefetch worker.
+ *
+ * @author Filip Fitzermann
+ */
+class CorePage {
+    final String pageID;
+    final String sessionID;
+    final String userID;
+    // Single row of pages.tsv
+    final TSVTable page;
+    // Rows of the page in html_data.tsv, screenshots.tsv and scroll_events.tsv
+    final TSVTable htmlData;
+    final TSVTable screenshots;
+    final TSVTable scrollEvents;
+
+    // Html id -> html source, filled by load
+    Map<String, String> htmlSources = Map.of();
+    // Screenshot id -> Base64 encoded png, filled by load unless the screenshots are loaded as raw bytes
+    Map<String, String> screenshotsBase64 = Map.of();
+    // Screenshot id -> decoded png bytes, filled by load if the screenshots are loaded as raw bytes
+    Map<String, byte[]> screenshotsPng = Map.of();
+    // Html id / screenshot id -> path of the gzipped blob, filled by locate instead of loading the blobs
+    Map<String, Path> htmlPaths = Map.of();
+    Map<String, Path> screenshotPaths = Map.of();
+
+    CorePage(String pageID, String sessionID, String userID, TSVTable page, TSVTable htmlData, TSVTable screenshots,
+             TSVTable scrollEvents) {
+        this.pageID = pageID;
+        this.sessionID = sessionID;
+        this.userID = userID;
+        this.page = page;
+        this.htmlData = htmlData;
+        this.screenshots = screenshots;
+        this.scrollEvents = scrollEvents;
+    }
+
+    /**
+     * Reads, decompresses and encodes the html sources and screenshots of the page.
+     *
+     * @param htmlIndex         Index of the gzipped html sources
+     * @param screenshotIndex   Index of the gzipped screenshots
+     * @param binaryScreenshots If true, the screenshots are only decompressed and kept as raw png bytes
+     * @return This page
+     * @throws IOException
+     */
+    CorePage load(CoreBlobIndex htmlIndex, CoreBlobIndex screenshotIndex, boolean binaryScreenshots) throws IOException {
+        this.htmlSources = readHtmlSources(this.htmlData, htmlIndex);
+        if (binaryScreenshots) {
+            this.screenshotsPng = readScreenshotBytes(this.screenshots, screenshotIndex);
+        } else {
+            this.screenshotsBase64 = readScreenshots(this.screenshots, screenshotIndex);
+        }
+        return this;
+    }
+
+    /**
+     * Only looks up the paths of the html sources and screenshots of the page, without reading them.
+     *
+     * @param htmlIndex       Index of the gzipped html sources
+     * @param screenshotIndex Index of the gzipped screenshots
+     * @return This page
+     */
+    CorePage locate(CoreBlobIndex htmlIndex, CoreBlobIndex screenshotIndex) {
+        this.htmlPaths = locateBlobs(this.htmlData, htmlIndex);
+        this.screenshotPaths = locateBlobs(this.screenshots, screenshotIndex);
+        return this;
+    }
+
+    static Map<String, Path> locateBlobs(TSVTable blobData, CoreBlobIndex blobIndex) {
+        Map<String, Path> paths = new HashMap<>();
+        for (int row = 0; row < blobData.table.size(); row++) {
+            String id = blobData.getCell("id", row);
+            Path path = blobIndex.get(id);
+            if (path != null) paths.put(id, path);
+        }
+        return paths;
+    }
+
+    static Map<String, String> readHtmlSources(TSVTable htmlData, CoreBlobIndex htmlIndex) throws IOException {
+        Map<String, String> htmlSources = new HashMap<>();
+        for (int row = 0; row < htmlData.table.size(); row++) {
+            String id = htmlData.getCell("id", row);
+            Path path = htmlIndex.get(id);
+            htmlSources.put(id, CorePageUtils.readGzippedHTML(path));
+        }
+        return htmlSources;
+    }
+
+    static Map<String, String> readScreenshots(TSVTable screenshots, CoreBlobIndex screenshotIndex) throws IOException {
+        Map<String, String> screenshotsBase64 = new HashMap<>();
+        for (int row = 0; row < screenshots.table.size(); row++) {
+            String id = screenshots.getCell("id", row);
+            Path path = screenshotIndex.get(id);
+            screenshotsBase64.put(id, CorePageUtils.pngToBase64(path));
+        }
+        return screenshotsBase64;
+    }
+
+    static Map<String, byte[]> readScreenshotBytes(TSVTable screenshots, CoreBlobIndex screenshotIndex) throws IOException {
+        Map<String, byte[]> screenshotsPng = new HashMap<>();
+        for (int row = 0; row < screenshots.table.size(); row++) {
+            String id = screenshots.getCell("id", row);
+            Path path = screenshotIndex.get(id);
+            screenshotsPng.put(id, CorePageUtils.readGzippedBytes(path));
+        }
+        return screenshotsPng;
+    }
+}
@@ -50,20 +50,38 @@ public class CorePageUtils {
     }
 
     public static String pngToBase64(Path imagePath) throws IOException {
-        Base64.Encoder encoder = Base64.getEncoder();
-        String base64String;
+        return Base64.getEncoder().encodeToString(readGzippedBytes(imagePath));
+    }
 
-        try (InputStream stream = new GZIPInputStream(Files.newInputStream(imagePath))) {
-            byte[] data = stream.readAllBytes();
-            base64String = encoder.encodeToString(data);
+    /**
+     * Reads and decompresses a gzipped file, e.g. a screenshot, without any further encoding.
+     *
+     * @param gzippedFilePath Path to the gzipped file
+     * @return Decompressed bytes
+     * @throws IOException
+     */
+    public static byte[] readGzippedBytes(Path gzippedFilePath) throws IOException {
+        try (InputStream stream = new GZIPInputStream(Files.newInputStream(gzippedFilePath))) {
+            return stream.readAllBytes();
         }
-        return base64String;
     }
 
     public static String readGzippedHTML(Path gzippedFilePath) throws IOException {
+        try (GZIPInputStream gzStream = new GZIPInputStream(Files.newInputStream(gzippedFilePath))) {
+            return readHTML(gzStream);
+        }
+    }
+
+    /**
+     * Reads an UTF-8 encoded html source, every line is terminated with "\n".
+     *
+     * @param stream Decompressed html source, closed by this method
+     * @return Html source
+     * @throws IOException
+     */
+    public static String readHTML(InputStream stream) throws IOException {
         StringBuilder htmlString = new StringBuilder();
-        try (GZIPInputStream gzStream = new GZIPInputStream(Files.newInputStream(gzippedFilePath));
-             InputStreamReader reader = new InputStreamReader(gzStream, StandardCharsets.UTF_8);
+        try (InputStreamReader reader = new InputStreamReader(stream, StandardCharsets.UTF_8);
              BufferedReader bufferedReader = new BufferedReader(reader)
         ) {
             String line;
@@ -9,6 +9,7 @@ import org.apache.uima.fit.factory.JCasFactory;
 import org.apache.uima.fit.factory.TypeSystemDescriptionFactory;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.ByteArray;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.resource.metadata.TypeSystemDescription;
 
@@ -22,9 +23,20 @@ import org.xml.sax.SAXException;
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
+ * Reads pages of a CORE database export into CASes.
+ * <p>
+ * getNextCas can be called by several threads at once: each call claims a page atomically, the tables, indexes and
+ * mappings are built in the constructor and only read afterwards. Only the streaming cursors and the prefetch queue
+ * are sequential by nature, taking a page from them is serialized, while loading the blobs and writing the CAS are not.
+ *
  * @author Filip Fitzermann
  */
 @TypeCapability(
@@ -41,25 +53,117 @@ public class DUUICoreReader
     private TSVTable scrolleventTable;
     private TSVTable sessionDataTable;
     private TSVTable userDataTable;
-    private List<List<String>> mappedPagesSessionsUsers;
-    // Index of the next pageID to be processed
-    public Integer nextIndex = 0;
+    private volatile List<List<String>> mappedPagesSessionsUsers;
+    // pageID -> {sessionID, userID}, built in a single pass over pages.tsv in the constructor
+    private Map<String, String[]> pageSessionUser;
+    // Streaming mode only: cursors over the tables ordered by page id, null if the tables are loaded into memory
+    private TSVCursor pageCursor;
+    private TSVCursor screenshotsCursor;
+    private TSVCursor htmlCursor;
+    private TSVCursor scrolleventCursor;
+    // Indexes from blob id to the path of the gzipped html source or screenshot, loaded on first use
+    private volatile CoreBlobIndex htmlIndex;
+    private volatile CoreBlobIndex screenshotIndex;
+    // Prefetching: pages that are collected and being loaded by the prefetch pool, in reading order
+    private ExecutorService prefetchPool;
+    private int prefetchSize = 0;
+    private final ArrayDeque<Future<CorePage>> prefetched = new ArrayDeque<>();
+    // Guards the streaming cursors, the prefetch queue and collectIndex
+    private final Object collectLock = new Object();
+    // Number of pages collected from the tables or cursors, runs ahead of nextIndex by the number of prefetched pages
+    private int collectIndex = 0;
+    // If true, screenshots are stored as raw png bytes in Screenshot.pngData instead of Base64 in base64Encoding
+    private boolean binaryScreenshots = false;
+    // If true, html sources and screenshots are only referenced by a BlobReference and loaded by CoreBlobLoader
+    private boolean lazyBlobs = false;
+    // Maximum number of rows per table held in memory while sorting a table for streaming
+    public static final int STREAMING_MAX_ROWS_IN_MEMORY = 100000;
+    // Index of the next page to be claimed by getNextCas
+    public final AtomicInteger nextIndex = new AtomicInteger(0);
+    // Number of pages written into a CAS or skipped because they could not be loaded
+    private final AtomicInteger done = new AtomicInteger(0);
     TypeSystemDescription tsDesc;
 
     public DUUICoreReader() throws CsvValidationException, IOException {
-        this.pageTable =        new TSVTable("TEMP_files/testTables/pages.tsv");
-        this.screenshotsTable = new TSVTable("TEMP_files/testTables/screenshots.tsv");
-        this.htmlTable =        new TSVTable("TEMP_files/testTables/html_data.tsv");
-        this.scrolleventTable = new TSVTable("TEMP_files/testTables/scroll_events.tsv");
-        this.sessionDataTable = new TSVTable("TEMP_files/testTables/sessions.tsv");
-        this.userDataTable =    new TSVTable("TEMP_files/testTables/users.tsv");
-        this.pageIDs = new TSVTable("TEMP_files/testTables/pages.tsv").getColumn(0);
+        this(false);
+    }
+
+    /**
+     * @param streaming If true, pages.tsv, screenshots.tsv, html_data.tsv and scroll_events.tsv are not loaded into
+     *                  memory, but read page by page with merge-join cursors ordered by page id. Tables that are not
+     *                  sorted by page id are sorted externally first. Pages are then processed in ascending page id
+     *                  order and pageIDs stays empty.
+     * @throws CsvValidationException
+     * @throws IOException
+     */
+    public DUUICoreReader(boolean streaming) throws CsvValidationException, IOException {
+        this.sessionDataTable = new TSVTable("TEMP_files/testTables/sessions.tsv").buildIndexes("id");
+        this.userDataTable =    new TSVTable("TEMP_files/testTables/users.tsv").buildIndexes("id");
+        if (streaming) {
+            this.pageCursor =        TSVCursor.open("TEMP_files/testTables/pages.tsv", "id", STREAMING_MAX_ROWS_IN_MEMORY);
+            this.screenshotsCursor = TSVCursor.open("TEMP_files/testTables/screenshots.tsv", "page_id", STREAMING_MAX_ROWS_IN_MEMORY);
+            this.htmlCursor =        TSVCursor.open("TEMP_files/testTables/html_data.tsv", "page_id", STREAMING_MAX_ROWS_IN_MEMORY);
+            this.scrolleventCursor = TSVCursor.open("TEMP_files/testTables/scroll_events.tsv", "page_id", STREAMING_MAX_ROWS_IN_MEMORY);
+        } else {
+            this.pageTable =        new TSVTable("TEMP_files/testTables/pages.tsv").buildIndexes("id");
+            this.screenshotsTable = new TSVTable("TEMP_files/testTables/screenshots.tsv").buildIndexes("page_id");
+            this.htmlTable =        new TSVTable("TEMP_files/testTables/html_data.tsv").buildIndexes("page_id");
+            this.scrolleventTable = new TSVTable("TEMP_files/testTables/scroll_events.tsv").buildIndexes("page_id");
+            this.buildPageSessionUserMapping();
+        }
         this.tsDesc = TypeSystemDescriptionFactory
                 .createTypeSystemDescriptionFromPath(
                         "src/main/resources/org/texttechnologylab/types/CorePageTypes.xml"
                 );
     }
 
+    /**
+     * Reads and decodes the html sources and screenshots of the next pages in parallel, while the current page is
+     * written into its CAS. At most "pages" pages are prefetched at once, getNextCas only collects a new page after a
+     * prefetched one has been taken. Pages are returned in the same order as without prefetching.
+     *
+     * @param pages   Maximum number of pages prefetched at once
+     * @param threads Number of threads reading and decoding pages
+     * @return this
+     */
+    public DUUICoreReader withPrefetch(int pages, int threads) {
+        if (pages < 1 || threads < 1) {
+            throw new IllegalArgumentException("DUUICoreReader.withPrefetch: pages and threads must be at least 1");
+        }
+        this.prefetchSize = pages;
+        this.prefetchPool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "DUUICoreReader-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        return this;
+    }
+
+    /**
+     * Stores the decompressed screenshots as raw png bytes in Screenshot.pngData instead of Base64 strings in
+     * Screenshot.base64Encoding. This avoids the Base64 overhead (a third more bytes, twice that as Java String) for
+     * every screenshot. Components that need the screenshot as text can encode it on demand with
+     * DUUICoreReaderLuaUtils.getScreenshotBase64.
+     *
+     * @return this
+     */
+    public DUUICoreReader withBinaryScreenshots() {
+        this.binaryScreenshots = true;
+        return this;
+    }
+
+    /**
+     * Does not read any html sources or screenshots. HTMLData and Screenshot annotations only get a BlobReference to
+     * their gzipped file, which CoreBlobLoader resolves later in the pipeline, right before the first component that
+     * needs the blobs. Pipelines that only use page metadata or scroll events skip almost all I/O this way.
+     *
+     * @return this
+     */
+    public DUUICoreReader withLazyBlobs() {
+        this.lazyBlobs = true;
+        return this;
+    }
+
     @Override
     public AdvancedProgressMeter getProgress() {
         return null;
@@ -76,17 +180,58 @@ public class DUUICoreReader
 
     @Override
     public boolean hasNext() {
-        return !(nextIndex >= pageIDs.size());
+        return this.nextIndex.get() < this.getSize();
     }
 
     @Override
     public long getSize() {
+        if (this.pageCursor != null) return this.pageCursor.getRowCount();
         return pageIDs.size();
     }
 
     @Override
     public long getDone() {
-        return nextIndex + 1;
+        return this.done.get();
+    }
+
+    /**
+     * Collects all pageIDs in table order and maps each page to its session and user. Session and user IDs are
+     * interned, since many pages share the same session and user.
+     */
+    private void buildPageSessionUserMapping() {
+        int rowCount = this.pageTable.getSize().get(0);
+        List<String> pageIDs = new ArrayList<>(rowCount);
+        Map<String, String[]> pageSessionUser = new HashMap<>(rowCount * 4 / 3 + 1);
+
+        for (int row = 0; row < rowCount; row++) {
+            String pageID = this.pageTable.getCell("id", row);
+            String sessionID = this.pageTable.getCell("session_id", row).intern();
+            List<Integer> sessionRows = this.sessionDataTable.getRowIndicesByValue("id", sessionID);
+            String userID = sessionRows.isEmpty()
+                    ? null
+                    : this.sessionDataTable.getCell("user_id", sessionRows.get(0)).intern();
+
+            pageIDs.add(pageID);
+            pageSessionUser.putIfAbsent(pageID, new String[] {sessionID, userID});
+        }
+
+        this.pageIDs = Collections.unmodifiableList(pageIDs);
+        this.pageSessionUser = Collections.unmodifiableMap(pageSessionUser);
+    }
+
+    /**
+     * Returns the {sessionID, userID} pair of a page.
+     *
+     * @param pageID ID of the page
+     * @return Array containing sessionID and userID of the page
+     */
+    private String[] getSessionAndUser(String pageID) {
+        this.requireInMemoryTables();
+        String[] sessionUser = this.pageSessionUser.get(pageID);
+        if (sessionUser == null) {
+            throw new NoSuchElementException("No session mapped to page " + pageID);
+        }
+        return sessionUser;
     }
 
     /**
@@ -99,40 +244,27 @@ public class DUUICoreReader
     public List<List<String>> getMappedPagesSessionsUsers() throws CsvValidationException, IOException {
         if (this.mappedPagesSessionsUsers != null) return this.mappedPagesSessionsUsers;
 
-        TSVTable pages = new TSVTable("TEMP_files/testTables/pages.tsv");
-        TSVTable sessions = new TSVTable("TEMP_files/testTables/sessions.tsv");
         List<List<String>> result = new ArrayList<>();
 
         for (var id : this.pageIDs) {
-            String sessionID = pages.extractByValue("id", id).getCell("session_id", 0);
-            String userID = sessions.extractByValue("id", sessionID).getCell("user_id", 0);
+            String[] sessionUser = this.getSessionAndUser(id);
             List<String> row = new ArrayList<>();
             row.add(id);
-            row.add(sessionID);
-            row.add(userID);
+            row.add(sessionUser[0]);
+            row.add(sessionUser[1]);
             result.add(row);
         }
 
-        this.mappedPagesSessionsUsers = result;
-        return result;
+        this.mappedPagesSessionsUsers = Collections.unmodifiableList(result);
+        return this.mappedPagesSessionsUsers;
     }
 
     public String getSessionID(String pageID) throws CsvValidationException, IOException {
-        String sessionID = this.getMappedPagesSessionsUsers().stream()
-                .filter(arr -> arr.get(0).equals(pageID))
-                .findFirst()
-                .get()
-                .get(1);
-        return sessionID;
+        return this.getSessionAndUser(pageID)[0];
     }
 
     public String getUserID(String pageID) throws CsvValidationException, IOException {
-        String userID = this.getMappedPagesSessionsUsers().stream()
-                .filter(arr -> arr.get(0).equals(pageID))
-                .findFirst()
-                .get()
-                .get(2);
-        return userID;
+        return this.getSessionAndUser(pageID)[1];
     }
 
     public void addMetadata(JCas jcas, String id) {
@@ -143,19 +275,71 @@ public class DUUICoreReader
 
     }
 
+    /**
+     * Returns the index of the gzipped html sources. It is loaded from TEMP_files/TEMP_data/html.index on first use,
+     * or built and saved there if the index file does not exist yet.
+     *
+     * @return Index from html id to path
+     * @throws IOException
+     */
+    public CoreBlobIndex getHtmlIndex() throws IOException {
+        if (this.htmlIndex == null) {
+            synchronized (this) {
+                if (this.htmlIndex == null) {
+                    this.htmlIndex = CoreBlobIndex.load(
+                            Paths.get("TEMP_files/TEMP_data/html"),
+                            Paths.get("TEMP_files/TEMP_data/html.index")
+                    );
+                }
+            }
+        }
+        return this.htmlIndex;
+    }
+
+    /**
+     * Returns the index of the gzipped screenshots. It is loaded from TEMP_files/TEMP_data/screens.index on first use,
+     * or built and saved there if the index file does not exist yet.
+     *
+     * @return Index from screenshot id to path
+     * @throws IOException
+     */
+    public CoreBlobIndex getScreenshotIndex() throws IOException {
+        if (this.screenshotIndex == null) {
+            synchronized (this) {
+                if (this.screenshotIndex == null) {
+                    this.screenshotIndex = CoreBlobIndex.load(
+                            Paths.get("TEMP_files/TEMP_data/screens"),
+                            Paths.get("TEMP_files/TEMP_data/screens.index")
+                    );
+                }
+            }
+        }
+        return this.screenshotIndex;
+    }
+
+    /**
+     * The lookups by page id need the tables in memory, in streaming mode the pages are only read through toJcas.
+     */
+    private void requireInMemoryTables() {
+        if (this.pageTable == null) {
+            throw new IllegalStateException("DUUICoreReader: Pages cannot be looked up by id in streaming mode, use toJcas");
+        }
+    }
+
     public void annotatePageData(JCas jcas, String pageID) {
-        Map<String, List<String>> pageDataMap = this.pageTable
-                .extractByValue("id", pageID)
-                .getTableMap();
+        this.requireInMemoryTables();
+        this.annotatePageData(jcas, this.rowsOf(this.pageTable, "id", pageID));
+    }
 
+    private void annotatePageData(JCas jcas, TSVTable page) {
         Page pageAnno = new Page(jcas);
 
-        pageAnno.setId(pageDataMap.get("id").get(0));
-        pageAnno.setTitle(pageDataMap.get("title").get(0));
-        pageAnno.setUrl(pageDataMap.get("url").get(0));
-        pageAnno.setSession_id(pageDataMap.get("session_id").get(0));
-        pageAnno.setTab_id(pageDataMap.get("tab_id").get(0));
-        pageAnno.setAssessment_phase_in_session_id(pageDataMap.get("assessment_phase_in_session_id").get(0));
+        pageAnno.setId(page.getCell("id", 0));
+        pageAnno.setTitle(page.getCell("title", 0));
+        pageAnno.setUrl(page.getCell("url", 0));
+        pageAnno.setSession_id(page.getCell("session_id", 0));
+        pageAnno.setTab_id(page.getCell("tab_id", 0));
+        pageAnno.setAssessment_phase_in_session_id(page.getCell("assessment_phase_in_session_id", 0));
         pageAnno.addToIndexes();
     }
 
@@ -165,21 +349,18 @@ public class DUUICoreReader
          * Having sessionID get every row from sessions.tsv whose id column equals the sessionID
          * A Page can only have one session associated with it
          */
-        List<List<String>> mappedPagesSessions = this.getMappedPagesSessionsUsers().stream()
-                .filter(arr -> arr.get(0).equals(pageID))
-                .toList();
-        String sessionID = mappedPagesSessions.get(0).get(1); // Nested list, second element
+        this.annotateSessionByID(jcas, this.getSessionID(pageID));
+    }
+
+    private void annotateSessionByID(JCas jcas, String sessionID) {
         // Only the first found row, because a page can only belong to one session
-        Map<String, List<String>> sessionTableMap = this.sessionDataTable
-                .extractByValue("id", sessionID)
-                .getRow(0)
-                .getTableMap();
+        int row = this.sessionDataTable.getRowIndicesByValue("id", sessionID).get(0);
 
         UserSession sessionAnno = new UserSession(jcas);
-        sessionAnno.setId(sessionTableMap.get("id").get(0));
-        sessionAnno.setStarted(sessionTableMap.get("started").get(0));
-        sessionAnno.setUseragent(sessionTableMap.get("useragent").get(0));
-        sessionAnno.setWebExtensionKey(sessionTableMap.get("webExtensionKey").get(0));
+        sessionAnno.setId(this.sessionDataTable.getCell("id", row));
+        sessionAnno.setStarted(this.sessionDataTable.getCell("started", row));
+        sessionAnno.setUseragent(this.sessionDataTable.getCell("useragent", row));
+        sessionAnno.setWebExtensionKey(this.sessionDataTable.getCell("webExtensionKey", row));
         sessionAnno.addToIndexes();
     }
 
@@ -189,90 +370,113 @@ public class DUUICoreReader
          * Having the userID get every row from users.tsv whose id column equals the userID
          * A Page can only have one user associated with it
          */
-        List<List<String>> mappedPagesUsers = this.getMappedPagesSessionsUsers().stream()
-                .filter(arr -> arr.get(0).equals(pageID))
-                .toList();
-        String userID = mappedPagesUsers.get(0).get(2); // Nested list, third element
+        this.annotateUserByID(jcas, this.getUserID(pageID));
+    }
+
+    private void annotateUserByID(JCas jcas, String userID) {
         // Only the first found row, because a page can only be associated with one user
-        Map<String, List<String>> userTableMap = this.userDataTable
-                .extractByValue("id", userID)
-                .getRow(0)
-                .getTableMap();
+        int row = this.userDataTable.getRowIndicesByValue("id", userID).get(0);
 
         NeobridgeUser userAnno = new NeobridgeUser(jcas);
-        userAnno.setId(userTableMap.get("id").get(0));
-        userAnno.setCreated(userTableMap.get("created").get(0));
-        userAnno.setEmail(userTableMap.get("email").get(0));
-        userAnno.setOpenId(userTableMap.get("openId").get(0));
-        userAnno.setRoles(userTableMap.get("roles").get(0));
-        userAnno.setUserID(userTableMap.get("userID").get(0));
-        userAnno.setUsername(userTableMap.get("username").get(0));
-        userAnno.setPicture(userTableMap.get("picture").get(0));
-        userAnno.setRealName(userTableMap.get("realName").get(0));
+        userAnno.setId(this.userDataTable.getCell("id", row));
+        userAnno.setCreated(this.userDataTable.getCell("created", row));
+        userAnno.setEmail(this.userDataTable.getCell("email", row));
+        userAnno.setOpenId(this.userDataTable.getCell("openId", row));
+        userAnno.setRoles(this.userDataTable.getCell("roles", row));
+        userAnno.setUserID(this.userDataTable.getCell("userID", row));
+        userAnno.setUsername(this.userDataTable.getCell("username", row));
+        userAnno.setPicture(this.userDataTable.getCell("picture", row));
+        userAnno.setRealName(this.userDataTable.getCell("realName", row));
         userAnno.addToIndexes();
     }
 
     public void annotateAllHtmlData(JCas jcas, String pageID) throws IOException {
-        TSVTable pageHtmlData = this.htmlTable.extractByValue("page_id", pageID);
-        Map<String, List<String>> tableMap = pageHtmlData.getTableMap();
-        Map<String, Path> htmlSourcePaths = CorePageUtils.filesSearch(
-                Set.copyOf(tableMap.get("id")),
-                Paths.get("TEMP_files/TEMP_data/html")
-        );
+        this.requireInMemoryTables();
+        TSVTable htmlData = this.rowsOf(this.htmlTable, "page_id", pageID);
+        if (this.lazyBlobs) {
+            this.annotateAllHtmlData(jcas, htmlData, Map.of(), CorePage.locateBlobs(htmlData, this.getHtmlIndex()));
+        } else {
+            this.annotateAllHtmlData(jcas, htmlData, CorePage.readHtmlSources(htmlData, this.getHtmlIndex()), Map.of());
+        }
+    }
 
-        for (var i = 0; i < pageHtmlData.getSize().get(0); i++) {
+    private void annotateAllHtmlData(JCas jcas, TSVTable htmlData, Map<String, String> htmlSources,
+                                     Map<String, Path> htmlPaths) {
+        for (int row = 0; row < htmlData.table.size(); row++) {
             HTMLData htmlAnno = new HTMLData(jcas);
-            htmlAnno.setId(tableMap.get("id").get(i));
-            htmlAnno.setSource(tableMap.get("source").get(i));
-            htmlAnno.setTimestamp(tableMap.get("timestamp").get(i));
-
-//            String htmlSource = Files.readString(htmlSourcePaths.get(tableMap.get("id").get(i)));
-            String htmlSource = CorePageUtils.readGzippedHTML(htmlSourcePaths.get(tableMap.get("id").get(i)));
-            htmlAnno.setHTMLSource(htmlSource);
+            htmlAnno.setId(htmlData.getCell("id", row));
+            htmlAnno.setSource(htmlData.getCell("source", row));
+            htmlAnno.setTimestamp(htmlData.getCell("timestamp", row));
+            htmlAnno.setHTMLSource(htmlSources.get(htmlAnno.getId()));
+            Path htmlPath = htmlPaths.get(htmlAnno.getId());
+            if (htmlPath != null) htmlAnno.setBlob(CoreBlobLoader.reference(jcas, htmlPath));
 
             htmlAnno.addToIndexes();
         }
     }
 
     public void annotateAllScreenshotData(JCas jcas, String pageID) throws Exception {
-        TSVTable pageScreenshotData = this.screenshotsTable.extractByValue("page_id", pageID);
-        Map<String, List<String>> tableMap = pageScreenshotData.getTableMap();
-        Map<String, Path> screenshotPaths = CorePageUtils.filesSearch(
-                Set.copyOf(tableMap.get("id")),
-                Paths.get("TEMP_files/TEMP_data/screens")
-        );
+        this.requireInMemoryTables();
+        TSVTable screenshots = this.rowsOf(this.screenshotsTable, "page_id", pageID);
+        if (this.lazyBlobs) {
+            this.annotateAllScreenshotData(jcas, screenshots, Map.of(), Map.of(),
+                    CorePage.locateBlobs(screenshots, this.getScreenshotIndex()));
+        } else if (this.binaryScreenshots) {
+            this.annotateAllScreenshotData(jcas, screenshots, Map.of(),
+                    CorePage.readScreenshotBytes(screenshots, this.getScreenshotIndex()), Map.of());
+        } else {
+            this.annotateAllScreenshotData(jcas, screenshots,
+                    CorePage.readScreenshots(screenshots, this.getScreenshotIndex()), Map.of(), Map.of());
+        }
+    }
 
-        for (var i = 0; i < pageScreenshotData.getSize().get(0); i++) {
+    private void annotateAllScreenshotData(JCas jcas, TSVTable screenshots, Map<String, String> screenshotsBase64,
+                                           Map<String, byte[]> screenshotsPng, Map<String, Path> screenshotPaths) {
+        for (int row = 0; row < screenshots.table.size(); row++) {
             Screenshot shotAnno = new Screenshot(jcas);
-            shotAnno.setId(tableMap.get("id").get(i));
-            shotAnno.setReason(tableMap.get("reason").get(i));
-            shotAnno.setTimestamp(tableMap.get("timestamp").get(i));
-            String base64Img = CorePageUtils.pngToBase64(
-                    screenshotPaths.get(tableMap.get("id").get(i))
-            );
-            shotAnno.setBase64Encoding(base64Img);
+            shotAnno.setId(screenshots.getCell("id", row));
+            shotAnno.setReason(screenshots.getCell("reason", row));
+            shotAnno.setTimestamp(screenshots.getCell("timestamp", row));
+            shotAnno.setBase64Encoding(screenshotsBase64.get(shotAnno.getId()));
+            byte[] png = screenshotsPng.get(shotAnno.getId());
+            if (png != null) {
+                ByteArray pngData = new ByteArray(jcas, png.length);
+                pngData.copyFromArray(png, 0, 0, png.length);
+                shotAnno.setPngData(pngData);
+            }
+            Path screenshotPath = screenshotPaths.get(shotAnno.getId());
+            if (screenshotPath != null) shotAnno.setBlob(CoreBlobLoader.reference(jcas, screenshotPath));
 
             shotAnno.addToIndexes();
         }
     }
 
     public void annotateAllScrollEvents(JCas jcas, String pageID) {
-        TSVTable scrollEventData = this.scrolleventTable.extractByValue("page_id", pageID);
-        Map<String, List<String>> tableMap = scrollEventData.getTableMap();
-
-            for (var i = 0; i < scrollEventData.getSize().get(0); i++) {
-                ScrollEvent scrollAnno = new ScrollEvent(jcas);
-
-                scrollAnno.setId(tableMap.get("id").get(i));
-                scrollAnno.setFromX(Integer.parseInt(tableMap.get("fromX").get(i)));
-                scrollAnno.setFromY(Integer.parseInt(tableMap.get("fromY").get(i)));
-                scrollAnno.setToX(Integer.parseInt(tableMap.get("toX").get(i)));
-                scrollAnno.setToY(Integer.parseInt(tableMap.get("toY").get(i)));
-                scrollAnno.setStartTime(tableMap.get("startTime").get(i));
-                scrollAnno.setEndTime(tableMap.get("endTime").get(i));
-                scrollAnno.setTimestamp(tableMap.get("timestamp").get(i));
-                scrollAnno.addToIndexes();
-            }
+        this.requireInMemoryTables();
+        this.annotateAllScrollEvents(jcas, this.rowsOf(this.scrolleventTable, "page_id", pageID));
+    }
+
+    private void annotateAllScrollEvents(JCas jcas, TSVTable scrollEvents) {
+        for (int row = 0; row < scrollEvents.table.size(); row++) {
+            ScrollEvent scrollAnno = new ScrollEvent(jcas);
+
+            scrollAnno.setId(scrollEvents.getCell("id", row));
+            scrollAnno.setFromX(scrollEvents.getIntCell("fromX", row));
+            scrollAnno.setFromY(scrollEvents.getIntCell("fromY", row));
+            scrollAnno.setToX(scrollEvents.getIntCell("toX", row));
+            scrollAnno.setToY(scrollEvents.getIntCell("toY", row));
+            scrollAnno.setStartTime(scrollEvents.getCell("startTime", row));
+            scrollAnno.setEndTime(scrollEvents.getCell("endTime", row));
+            scrollAnno.setTimestamp(scrollEvents.getCell("timestamp", row));
+            scrollAnno.addToIndexes();
+        }
+    }
+
+    /**
+     * Returns the rows of "table" whose value in column "header" matches "value" as a table without copying the rows.
+     */
+    private TSVTable rowsOf(TSVTable table, String header, String value) {
+        return new TSVTable(table.headers, table.getRowsByValue(header, value));
     }
 
     public static List<String> getHtmlFileIDs (String filePath) throws ResourceInitializationException, CASException {
@@ -293,19 +497,154 @@ public class DUUICoreReader
     }
 
     public void toJcas(JCas jcas) throws Exception {
-        String currentPageID = this.pageIDs.get(this.nextIndex);
+        // Several consumers can pass hasNext for the last page, only the first one to claim it gets it
+        int index = this.nextIndex.getAndIncrement();
+        if (index >= this.getSize()) return;
 
-        if (JCasUtil.select(jcas, DocumentMetaData.class).isEmpty()) {
-            this.addMetadata(jcas, currentPageID);
+        CorePage page;
+        try {
+            page = this.takePage(index);
+        } catch (Exception e) {
+            // The page counts as processed, so a broken page is skipped instead of being read again
+            this.done.incrementAndGet();
+            throw e;
         }
 
-        annotatePageData(jcas, currentPageID);
-        annotateSession(jcas, currentPageID);
-        annotateUser(jcas, currentPageID);
-        annotateAllHtmlData(jcas, currentPageID);
-        annotateAllScreenshotData(jcas, currentPageID);
-        annotateAllScrollEvents(jcas, currentPageID);
+        try {
+            if (JCasUtil.select(jcas, DocumentMetaData.class).isEmpty()) {
+                this.addMetadata(jcas, page.pageID);
+            }
+
+            annotatePageData(jcas, page.page);
+            annotateSessionByID(jcas, page.sessionID);
+            annotateUserByID(jcas, page.userID);
+            annotateAllHtmlData(jcas, page.htmlData, page.htmlSources, page.htmlPaths);
+            annotateAllScreenshotData(jcas, page.screenshots, page.screenshotsBase64, page.screenshotsPng, page.screenshotPaths);
+            annotateAllScrollEvents(jcas, page.scrollEvents);
+        } finally {
+            this.done.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the claimed page with its blobs loaded. In memory, the page is looked up by its index without any
+     * locking. The streaming cursors and the prefetch queue can only be read in order, so there the next page is taken
+     * under collectLock and the pages are distributed in reading order instead of by index. Either way each claim
+     * gets exactly one page, because there are never more claims than pages.
+     *
+     * @param index Claimed index, smaller than getSize
+     */
+    private CorePage takePage(int index) throws IOException, InterruptedException {
+        if (this.prefetchPool != null) {
+            Future<CorePage> next;
+            synchronized (this.collectLock) {
+                this.fillPrefetchQueue();
+                next = this.prefetched.poll();
+                if (!this.hasUncollectedPage() && this.prefetched.isEmpty()) this.close();
+            }
+            if (next == null) throw new NoSuchElementException("DUUICoreReader: No more pages");
+            try {
+                return next.get();
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+        }
+
+        if (this.pageCursor != null) {
+            CorePage page;
+            synchronized (this.collectLock) {
+                page = this.collectNextPage();
+                if (!this.hasUncollectedPage()) this.close();
+            }
+            return this.loadBlobs(page, this.getHtmlIndex(), this.getScreenshotIndex());
+        }
 
-        this.nextIndex++;
+        return this.loadBlobs(this.collectPage(this.pageIDs.get(index)), this.getHtmlIndex(), this.getScreenshotIndex());
+    }
+
+    /**
+     * Reads the blobs of a collected page, or only looks up their paths if the blobs are loaded lazily. Only reads the
+     * configuration of the reader, so it can run on a prefetch worker.
+     */
+    private CorePage loadBlobs(CorePage page, CoreBlobIndex htmlIndex, CoreBlobIndex screenshotIndex) throws IOException {
+        if (this.lazyBlobs) return page.locate(htmlIndex, screenshotIndex);
+        return page.load(htmlIndex, screenshotIndex, this.binaryScreenshots);
+    }
+
+    /**
+     * Collects pages and hands them to the prefetch pool until prefetchSize pages are in flight. Collecting reads
+     * the cursors, which are not thread-safe, so it must hold collectLock.
+     */
+    private void fillPrefetchQueue() throws IOException {
+        CoreBlobIndex htmlIndex = this.getHtmlIndex();
+        CoreBlobIndex screenshotIndex = this.getScreenshotIndex();
+        while (this.prefetched.size() < this.prefetchSize && this.hasUncollectedPage()) {
+            CorePage page = this.collectNextPage();
+            this.prefetched.add(this.prefetchPool.submit(() -> this.loadBlobs(page, htmlIndex, screenshotIndex)));
+        }
+    }
+
+    private boolean hasUncollectedPage() {
+        if (this.pageCursor != null) return this.pageCursor.hasNext();
+        return this.collectIndex < this.pageIDs.size();
+    }
+
+    /**
+     * Collects the rows of the next page, from the in-memory tables or by advancing the streaming cursors. Must hold
+     * collectLock.
+     */
+    private CorePage collectNextPage() throws IOException {
+        if (this.pageCursor == null) return this.collectPage(this.pageIDs.get(this.collectIndex++));
+
+        // Only the rows of the current page are held in memory
+        TSVTable page = new TSVTable(this.pageCursor.getHeaders(), List.of(this.pageCursor.nextRow()));
+        String pageID = page.getCell("id", 0);
+        String sessionID = page.getCell("session_id", 0);
+        String userID = this.sessionDataTable.getCell("user_id",
+                this.sessionDataTable.getRowIndicesByValue("id", sessionID).get(0));
+        this.collectIndex++;
+        return new CorePage(
+                pageID,
+                sessionID,
+                userID,
+                page,
+                new TSVTable(this.htmlCursor.getHeaders(), this.htmlCursor.rowsFor(pageID)),
+                new TSVTable(this.screenshotsCursor.getHeaders(), this.screenshotsCursor.rowsFor(pageID)),
+                new TSVTable(this.scrolleventCursor.getHeaders(), this.scrolleventCursor.rowsFor(pageID))
+        );
+    }
+
+    /**
+     * Collects the rows of a page from the in-memory tables. Only reads the tables and their prebuilt indexes, so it
+     * can be called by several threads at once.
+     */
+    private CorePage collectPage(String pageID) {
+        String[] sessionUser = this.getSessionAndUser(pageID);
+        return new CorePage(
+                pageID,
+                sessionUser[0],
+                sessionUser[1],
+                this.rowsOf(this.pageTable, "id", pageID),
+                this.rowsOf(this.htmlTable, "page_id", pageID),
+                this.rowsOf(this.screenshotsTable, "page_id", pageID),
+                this.rowsOf(this.scrolleventTable, "page_id", pageID)
+        );
+    }
+
+    /**
+     * Closes the cursors of the streaming mode, deleting their temporary files, and stops the prefetch pool. Pages
+     * that are already being loaded by the pool are still finished. Called automatically after the last page has been
+     * taken.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        synchronized (this.collectLock) {
+            if (this.prefetchPool != null) this.prefetchPool.shutdown();
+            if (this.pageCursor == null) return;
+            for (TSVCursor cursor : List.of(this.pageCursor, this.screenshotsCursor, this.htmlCursor, this.scrolleventCursor)) {
+                cursor.close();
+            }
+        }
     }
 }
@@ -1,15 +1,32 @@
 package org.texttechnologylab.DockerUnifiedUIMAInterface.io.reader.CoreReader;
 
+import org.apache.uima.cas.FeatureStructure;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.ByteArray;
 import org.texttechnologylab.annotation.ImageBase64;
+import org.texttechnologylab.annotation.corepagetypes.HTMLData;
+import org.texttechnologylab.annotation.corepagetypes.Screenshot;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Base64;
 
 public class DUUICoreReaderLuaUtils {
+    /**
+     * Returns the image of a CAS created by ImageReader as Base64 string. If the image was stored as raw bytes in the
+     * sofa, it is only encoded here, when a component actually needs it as text.
+     */
     public static String getImageBase64(JCas jcas) {
         ImageBase64 anno = JCasUtil.selectSingle(jcas, ImageBase64.class);
-        return anno.getBase64String();
+        if (anno.getBase64String() != null) return anno.getBase64String();
+
+        FeatureStructure sofaData = jcas.getSofaDataArray();
+        if (sofaData instanceof ByteArray) {
+            return Base64.getEncoder().encodeToString(((ByteArray) sofaData).toArray());
+        }
+        return jcas.getDocumentText();
     }
 
     public static int getImageWidth(JCas jcas) {
@@ -21,4 +38,27 @@ public class DUUICoreReaderLuaUtils {
         ImageBase64 anno = JCasUtil.selectSingle(jcas, ImageBase64.class);
         return anno.getHeight();
     }
+
+    /**
+     * Returns a screenshot created by DUUICoreReader as Base64 string, encoding it from Screenshot.pngData if the
+     * reader stored it as raw bytes, or reading it from Screenshot.blob if the reader did not load it at all.
+     */
+    public static String getScreenshotBase64(Screenshot screenshot) throws IOException {
+        if (screenshot.getBase64Encoding() != null) return screenshot.getBase64Encoding();
+        if (screenshot.getPngData() != null) {
+            return Base64.getEncoder().encodeToString(screenshot.getPngData().toArray());
+        }
+        if (screenshot.getBlob() == null) return null;
+        return Base64.getEncoder().encodeToString(CoreBlobLoader.read(screenshot.getBlob()));
+    }
+
+    /**
+     * Returns the html source of an HTMLData annotation, reading it from HTMLData.blob if the reader did not load it.
+     */
+    public static String getHtmlSource(HTMLData htmlData) throws IOException {
+        if (htmlData.getHTMLSource() != null || htmlData.getBlob() == null) return htmlData.getHTMLSource();
+        try (InputStream stream = CoreBlobLoader.open(htmlData.getBlob())) {
+            return CorePageUtils.readHTML(stream);
+        }
+    }
 }
@@ -3,6 +3,7 @@ package org.texttechnologylab.DockerUnifiedUIMAInterface.io.reader.CoreReader;
 import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.ByteArray;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.io.DUUICollectionReader;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.AdvancedProgressMeter;
 import org.texttechnologylab.annotation.ImageBase64;
@@ -27,9 +28,23 @@ public class ImageReader implements DUUICollectionReader
     private AtomicInteger documentNumber;
     private AdvancedProgressMeter progress = null;
     private String currentFilePath = "";
+    // If true, the decompressed image is stored as raw bytes in the sofa instead of as Base64 document text
+    private boolean binaryPayload;
 
     public ImageReader(String inputDir) throws IOException {
+        this(inputDir, false);
+    }
+
+    /**
+     * @param inputDir      Directory containing the gzipped images
+     * @param binaryPayload If true, the decompressed image bytes are set as sofa data array with mime type
+     *                      "image/png" instead of Base64 encoding them into the document text. Use
+     *                      DUUICoreReaderLuaUtils.getImageBase64 to get the Base64 string if a component needs text.
+     * @throws IOException
+     */
+    public ImageReader(String inputDir, boolean binaryPayload) throws IOException {
         this.inputDir = inputDir;
+        this.binaryPayload = binaryPayload;
         this.filePaths = new ConcurrentLinkedQueue<>();
         this.documentNumber = new AtomicInteger(0);
 
@@ -54,12 +69,85 @@ public class ImageReader implements DUUICollectionReader
         return stream.readAllBytes();
     }
 
+    /**
+     * Returns {width, height} of an image. PNG and JPEG dimensions are read from the image header without decoding
+     * any pixels, other formats are decoded with ImageIO.
+     */
     public static int[] imageDimensions(byte[] imageBytes) throws IOException {
+        int[] dimensions = probeDimensions(new ByteArrayInputStream(imageBytes));
+        if (dimensions != null) return dimensions;
+
         ByteArrayInputStream imageByteStream = new ByteArrayInputStream(imageBytes);
         BufferedImage image = ImageIO.read(imageByteStream);
+        if (image == null) throw new IOException("[ImageReader.imageDimensions] Unknown image format");
         return new int[] {image.getWidth(), image.getHeight()};
     }
 
+    /**
+     * Returns {width, height} of a gzipped image. For PNG and JPEG only the first bytes of the file are decompressed,
+     * other formats are decompressed completely and decoded with ImageIO.
+     */
+    public static int[] imageDimensions(String gzippedFilePath) throws IOException {
+        try (InputStream stream = new BufferedInputStream(new GZIPInputStream(Files.newInputStream(Path.of(gzippedFilePath))))) {
+            int[] dimensions = probeDimensions(stream);
+            if (dimensions != null) return dimensions;
+        }
+        return imageDimensions(decompressGzip(gzippedFilePath));
+    }
+
+    /**
+     * Reads width and height from the IHDR chunk of a PNG or the first SOF segment of a JPEG.
+     *
+     * @return {width, height}, or null if the stream is neither PNG nor JPEG or the header is malformed.
+     */
+    static int[] probeDimensions(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        int first = in.read();
+        int second = in.read();
+
+        try {
+            // PNG: 8 byte signature, then the IHDR chunk (length, "IHDR", width, height)
+            if (first == 0x89 && second == 'P') {
+                byte[] header = new byte[22];
+                in.readFully(header);
+                if (header[0] != 'N' || header[1] != 'G' || header[10] != 'I' || header[11] != 'H'
+                        || header[12] != 'D' || header[13] != 'R') {
+                    return null;
+                }
+                DataInputStream ihdr = new DataInputStream(new ByteArrayInputStream(header, 14, 8));
+                return new int[] {ihdr.readInt(), ihdr.readInt()};
+            }
+
+            // JPEG: SOI marker, then segments until a start of frame (SOF0-SOF15 except DHT, JPG and DAC)
+            if (first == 0xFF && second == 0xD8) {
+                while (true) {
+                    int marker = in.readUnsignedByte();
+                    if (marker != 0xFF) return null;
+                    do {
+                        marker = in.readUnsignedByte(); // Markers may be padded with any number of 0xFF
+                    } while (marker == 0xFF);
+
+                    // Standalone markers without a length
+                    if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) continue;
+                    if (marker == 0xD9 || marker == 0xDA) return null; // End of image or start of scan before SOF
+
+                    int length = in.readUnsignedShort();
+                    if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                        in.readUnsignedByte(); // Sample precision
+                        int height = in.readUnsignedShort();
+                        int width = in.readUnsignedShort();
+                        return width == 0 || height == 0 ? null : new int[] {width, height};
+                    }
+                    if (length < 2) return null;
+                    in.skipNBytes(length - 2);
+                }
+            }
+        } catch (EOFException e) {
+            return null;
+        }
+        return null;
+    }
+
     public static String imageToBase64(byte[] imgBytes) {
         Base64.Encoder encoder = Base64.getEncoder();
         return encoder.encodeToString(imgBytes);
@@ -123,7 +211,13 @@ public class ImageReader implements DUUICollectionReader
             e.printStackTrace();
         }
 
-        pCas.setDocumentText(ImageReader.imageToBase64(imgBytes));
+        if (this.binaryPayload) {
+            ByteArray imgData = new ByteArray(pCas, imgBytes.length);
+            imgData.copyFromArray(imgBytes, 0, 0, imgBytes.length);
+            pCas.setSofaDataArray(imgData, "image/png");
+        } else {
+            pCas.setDocumentText(ImageReader.imageToBase64(imgBytes));
+        }
 
         if (JCasUtil.select(pCas, DocumentMetaData.class).isEmpty()) { this.addMetadata(pCas); }
 
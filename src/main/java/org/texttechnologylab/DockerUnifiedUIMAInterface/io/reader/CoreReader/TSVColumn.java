@@ -0,0 +1,400 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface.io.reader.CoreReader;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single typed column of a columnar TSVTable.
+ * <p>
+ * Columns start out with the most compact representation that fits their first value and are promoted to a more
+ * general one as soon as a value does not fit anymore (int -> long -> string). A value is only stored in a typed
+ * representation if formatting it again yields exactly the original string, so get(row) always returns the value as
+ * it was read from the .tsv file.
+ * <p>
+ * Numeric and timestamp columns format a row the first time it is read as a string and keep the string for later
+ * reads, so loops reading the same rows again do not allocate. Rows that are never read as strings cost nothing
+ * extra, but a column read completely as strings ends up holding the strings next to its typed values. Callers that
+ * need the number should use getInt or getLong, which never format.
+ *
+ * @author Filip Fitzermann
+ */
+abstract class TSVColumn {
+    // Timestamp format of the CORE database export, e.g. "2023-12-16 14:57:46.441000 +00:00"
+    static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSS xxx");
+
+    protected int size = 0;
+
+    /**
+     * Creates an empty column whose representation is chosen by the first appended value.
+     */
+    static TSVColumn create() {
+        return new EmptyColumn();
+    }
+
+    abstract String get(int row);
+
+    /**
+     * Appends a value to the column.
+     *
+     * @param value Value to append
+     * @return The column the value was appended to. This is a new column if this column had to be promoted.
+     */
+    abstract TSVColumn add(String value);
+
+    /**
+     * Releases unused capacity after the column has been loaded completely.
+     */
+    abstract void trim();
+
+    int getInt(int row) {
+        return Integer.parseInt(this.get(row));
+    }
+
+    long getLong(int row) {
+        return Long.parseLong(this.get(row));
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Copies all values of this column into a string column and appends "value".
+     */
+    protected TSVColumn promoteToString(String value) {
+        TSVColumn column = new DictionaryColumn(Math.max(16, this.size + 1));
+        for (int row = 0; row < this.size; row++) {
+            column = column.add(this.get(row));
+        }
+        return column.add(value);
+    }
+
+    protected static int grow(int capacity) {
+        return Math.max(16, capacity + (capacity >> 1));
+    }
+
+    protected static Integer parseInt(String value) {
+        try {
+            int parsed = Integer.parseInt(value);
+            return Integer.toString(parsed).equals(value) ? parsed : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    protected static Long parseLong(String value) {
+        try {
+            long parsed = Long.parseLong(value);
+            return Long.toString(parsed).equals(value) ? parsed : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    protected static OffsetDateTime parseTimestamp(String value) {
+        // Cheap pre-check so that arbitrary strings do not pay for a DateTimeParseException
+        if (value.length() != 33 || value.charAt(4) != '-' || value.charAt(10) != ' ') return null;
+        try {
+            OffsetDateTime parsed = OffsetDateTime.parse(value, TIMESTAMP_FORMAT);
+            return TIMESTAMP_FORMAT.format(parsed).equals(value) ? parsed : null;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Typed column that formats its values on demand.
+     */
+    private abstract static class FormattedColumn extends TSVColumn {
+        // Strings of the rows read so far, allocated on the first read. Concurrent readers may format a row twice,
+        // which is harmless as strings are immutable.
+        private String[] formatted = null;
+
+        /**
+         * Formats a row as it was read from the .tsv file.
+         */
+        abstract String format(int row);
+
+        @Override
+        final String get(int row) {
+            if (row >= this.size) throw new IndexOutOfBoundsException(row);
+            String[] formatted = this.formatted;
+            if (formatted == null || formatted.length <= row) {
+                formatted = formatted == null ? new String[this.size] : Arrays.copyOf(formatted, this.size);
+                this.formatted = formatted;
+            }
+            String value = formatted[row];
+            if (value == null) {
+                value = this.format(row);
+                formatted[row] = value;
+            }
+            return value;
+        }
+
+        @Override
+        protected TSVColumn promoteToString(String value) {
+            // The column is replaced, do not fill the cache on the way
+            TSVColumn column = new DictionaryColumn(Math.max(16, this.size + 1));
+            for (int row = 0; row < this.size; row++) {
+                column = column.add(this.format(row));
+            }
+            return column.add(value);
+        }
+
+        @Override
+        void trim() {
+            if (this.formatted != null) {
+                this.formatted = Arrays.copyOf(this.formatted, this.size);
+            }
+        }
+    }
+
+    private static class EmptyColumn extends TSVColumn {
+        @Override
+        String get(int row) {
+            throw new IndexOutOfBoundsException(row);
+        }
+
+        @Override
+        TSVColumn add(String value) {
+            TSVColumn column;
+            if (parseInt(value) != null) {
+                column = new IntColumn();
+            } else if (parseLong(value) != null) {
+                column = new LongColumn();
+            } else if (parseTimestamp(value) != null) {
+                column = new TimestampColumn(parseTimestamp(value).getOffset());
+            } else {
+                column = new DictionaryColumn(16);
+            }
+            return column.add(value);
+        }
+
+        @Override
+        void trim() {
+        }
+    }
+
+    /**
+     * Numeric ids and coordinates.
+     */
+    private static class IntColumn extends FormattedColumn {
+        private int[] values = new int[16];
+
+        @Override
+        String format(int row) {
+            return Integer.toString(this.values[row]);
+        }
+
+        @Override
+        int getInt(int row) {
+            if (row >= this.size) throw new IndexOutOfBoundsException(row);
+            return this.values[row];
+        }
+
+        @Override
+        long getLong(int row) {
+            return this.getInt(row);
+        }
+
+        @Override
+        TSVColumn add(String value) {
+            Integer parsed = parseInt(value);
+            if (parsed == null) {
+                if (parseLong(value) == null) return this.promoteToString(value);
+
+                LongColumn column = new LongColumn();
+                for (int row = 0; row < this.size; row++) {
+                    column.append(this.values[row]);
+                }
+                return column.add(value);
+            }
+
+            if (this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, grow(this.size));
+            }
+            this.values[this.size++] = parsed;
+            return this;
+        }
+
+        @Override
+        void trim() {
+            super.trim();
+            this.values = Arrays.copyOf(this.values, this.size);
+        }
+    }
+
+    private static class LongColumn extends FormattedColumn {
+        private long[] values = new long[16];
+
+        @Override
+        String format(int row) {
+            return Long.toString(this.values[row]);
+        }
+
+        @Override
+        long getLong(int row) {
+            if (row >= this.size) throw new IndexOutOfBoundsException(row);
+            return this.values[row];
+        }
+
+        void append(long value) {
+            if (this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, grow(this.size));
+            }
+            this.values[this.size++] = value;
+        }
+
+        @Override
+        TSVColumn add(String value) {
+            Long parsed = parseLong(value);
+            if (parsed == null) return this.promoteToString(value);
+
+            this.append(parsed);
+            return this;
+        }
+
+        @Override
+        void trim() {
+            super.trim();
+            this.values = Arrays.copyOf(this.values, this.size);
+        }
+    }
+
+    /**
+     * Timestamps stored as microseconds since the epoch. Microseconds instead of milliseconds, because some tables
+     * (e.g. sessions.tsv) contain timestamps with microsecond precision. All values of the column must share the same
+     * UTC offset, otherwise the column is promoted to a string column.
+     */
+    private static class TimestampColumn extends FormattedColumn {
+        private final ZoneOffset offset;
+        private long[] epochMicros = new long[16];
+
+        TimestampColumn(ZoneOffset offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        String format(int row) {
+            return TIMESTAMP_FORMAT.format(this.getOffsetDateTime(row));
+        }
+
+        @Override
+        long getLong(int row) {
+            if (row >= this.size) throw new IndexOutOfBoundsException(row);
+            return this.epochMicros[row];
+        }
+
+        OffsetDateTime getOffsetDateTime(int row) {
+            long micros = this.getLong(row);
+            Instant instant = Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1_000L);
+            return OffsetDateTime.ofInstant(instant, this.offset);
+        }
+
+        @Override
+        TSVColumn add(String value) {
+            OffsetDateTime parsed = parseTimestamp(value);
+            if (parsed == null || !parsed.getOffset().equals(this.offset)) return this.promoteToString(value);
+
+            Instant instant = parsed.toInstant();
+            if (this.size == this.epochMicros.length) {
+                this.epochMicros = Arrays.copyOf(this.epochMicros, grow(this.size));
+            }
+            this.epochMicros[this.size++] = instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1_000L;
+            return this;
+        }
+
+        @Override
+        void trim() {
+            super.trim();
+            this.epochMicros = Arrays.copyOf(this.epochMicros, this.size);
+        }
+    }
+
+    /**
+     * Dictionary encoded strings for repetitive values like reason, source or useragent. Once a column turns out to be
+     * mostly distinct values (e.g. titles or urls), it is converted to a plain string column, since the dictionary
+     * would only add overhead.
+     */
+    private static class DictionaryColumn extends TSVColumn {
+        private static final int MIN_ROWS_BEFORE_PLAIN = 1024;
+
+        private int[] codes;
+        private final List<String> dictionary = new ArrayList<>();
+        private final Map<String, Integer> dictionaryCodes = new HashMap<>();
+
+        DictionaryColumn(int capacity) {
+            this.codes = new int[capacity];
+        }
+
+        @Override
+        String get(int row) {
+            if (row >= this.size) throw new IndexOutOfBoundsException(row);
+            return this.dictionary.get(this.codes[row]);
+        }
+
+        @Override
+        TSVColumn add(String value) {
+            Integer code = this.dictionaryCodes.get(value);
+            if (code == null) {
+                if (this.size >= MIN_ROWS_BEFORE_PLAIN && this.dictionary.size() > this.size / 2) {
+                    PlainStringColumn column = new PlainStringColumn(grow(this.size));
+                    for (int row = 0; row < this.size; row++) {
+                        column.add(this.get(row));
+                    }
+                    return column.add(value);
+                }
+                code = this.dictionary.size();
+                this.dictionary.add(value);
+                this.dictionaryCodes.put(value, code);
+            }
+
+            if (this.size == this.codes.length) {
+                this.codes = Arrays.copyOf(this.codes, grow(this.size));
+            }
+            this.codes[this.size++] = code;
+            return this;
+        }
+
+        @Override
+        void trim() {
+            this.codes = Arrays.copyOf(this.codes, this.size);
+        }
+    }
+
+    private static class PlainStringColumn extends TSVColumn {
+        private String[] values;
+
+        PlainStringColumn(int capacity) {
+            this.values = new String[capacity];
+        }
+
+        @Override
+        String get(int row) {
+            if (row >= this.size) throw new IndexOutOfBoundsException(row);
+            return this.values[row];
+        }
+
+        @Override
+        TSVColumn add(String value) {
+            if (this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, grow(this.size));
+            }
+            this.values[this.size++] = value;
+            return this;
+        }
+
+        @Override
+        void trim() {
+            this.values = Arrays.copyOf(this.values, this.size);
+        }
+    }
+}
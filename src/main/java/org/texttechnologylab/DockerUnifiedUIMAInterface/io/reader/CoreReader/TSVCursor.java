@@ -0,0 +1,342 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface.io.reader.CoreReader;
+
+import com.opencsv.CSVParser;
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.exceptions.CsvValidationException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Forward-only cursor over a .tsv file whose rows are ordered by a key column, used for merge joins between the CORE
+ * export tables without loading them into memory.
+ * <p>
+ * When the file is opened it is checked in a single streaming pass whether it is sorted by the key column. If it is
+ * not, it is sorted externally: the rows are split into sorted runs of at most maxRowsInMemory rows in temporary files,
+ * which are merged lazily while the cursor advances. Rows with equal keys keep their order from the file.
+ *
+ * @author Filip Fitzermann
+ */
+public class TSVCursor implements Closeable {
+    /**
+     * Order of the key column. Numeric keys (all ids of the CORE export) are compared numerically and sorted before
+     * non-numeric keys, which are compared lexicographically.
+     */
+    public static final Comparator<String> KEY_ORDER = (a, b) -> {
+        Long numA = parseKey(a);
+        Long numB = parseKey(b);
+        if (numA != null && numB != null) return Long.compare(numA, numB);
+        if (numA != null) return -1;
+        if (numB != null) return 1;
+        return a.compareTo(b);
+    };
+
+    private final List<String> headers;
+    private final int keyIndex;
+    private final long rowCount;
+    private final RowSource source;
+    private final List<Path> tempFiles;
+
+    // Next row of the source that has not been handed out yet
+    private String[] lookahead;
+    // Key and rows of the last group returned by rowsFor, returned again if the same key is requested twice
+    private String lastKey;
+    private List<List<String>> lastGroup = List.of();
+
+    private TSVCursor(List<String> headers, int keyIndex, long rowCount, RowSource source, List<Path> tempFiles)
+            throws IOException {
+        this.headers = headers;
+        this.keyIndex = keyIndex;
+        this.rowCount = rowCount;
+        this.source = source;
+        this.tempFiles = tempFiles;
+        this.lookahead = source.next();
+    }
+
+    /**
+     * Opens a cursor over the .tsv file in "filePath", ordered by the column "keyHeader".
+     *
+     * @param filePath        Path to .tsv file with data
+     * @param keyHeader       Header of the column the rows are ordered by
+     * @param maxRowsInMemory Maximum number of rows held in memory if the file has to be sorted
+     * @return Cursor positioned before the first row
+     * @throws IOException
+     * @throws CsvValidationException
+     */
+    public static TSVCursor open(String filePath, String keyHeader, int maxRowsInMemory)
+            throws IOException, CsvValidationException {
+        List<String> headers;
+        int keyIndex;
+        long rowCount = 0;
+        boolean sorted = true;
+
+        try (CSVReader reader = openReader(filePath)) {
+            headers = Arrays.asList(reader.readNext());
+            keyIndex = headers.indexOf(keyHeader);
+            if (keyIndex < 0) {
+                throw new IllegalArgumentException("TSVCursor.open: Unknown column header " + keyHeader + " in " + filePath);
+            }
+
+            String previousKey = null;
+            String[] line;
+            while ((line = reader.readNext()) != null) {
+                if (previousKey != null && KEY_ORDER.compare(previousKey, line[keyIndex]) > 0) sorted = false;
+                previousKey = line[keyIndex];
+                rowCount++;
+            }
+        }
+
+        if (sorted) {
+            CSVReader reader = openReader(filePath);
+            reader.readNext(); // Skip headers
+            return new TSVCursor(headers, keyIndex, rowCount, new TSVSource(reader), List.of());
+        }
+
+        List<Path> runs = writeSortedRuns(filePath, keyIndex, Math.max(1, maxRowsInMemory));
+        List<RowSource> runSources = new ArrayList<>(runs.size());
+        for (Path run : runs) {
+            runSources.add(new RunSource(run));
+        }
+        return new TSVCursor(headers, keyIndex, rowCount, new MergeSource(runSources, keyIndex), runs);
+    }
+
+    private static CSVReader openReader(String filePath) throws FileNotFoundException {
+        CSVParser parser = new CSVParserBuilder().withSeparator('\t').build();
+        return new CSVReaderBuilder(new FileReader(filePath))
+                .withCSVParser(parser)
+                .build();
+    }
+
+    private static Long parseKey(String key) {
+        if (key.isEmpty() || key.length() > 18) return null;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if ((c < '0' || c > '9') && !(i == 0 && c == '-' && key.length() > 1)) return null;
+        }
+        return Long.parseLong(key);
+    }
+
+    /**
+     * Splits the file into runs of at most maxRowsInMemory rows, sorts each run by the key column and writes it to a
+     * temporary file.
+     */
+    private static List<Path> writeSortedRuns(String filePath, int keyIndex, int maxRowsInMemory)
+            throws IOException, CsvValidationException {
+        List<Path> runs = new ArrayList<>();
+        Comparator<String[]> rowOrder = (a, b) -> KEY_ORDER.compare(a[keyIndex], b[keyIndex]);
+
+        try (CSVReader reader = openReader(filePath)) {
+            reader.readNext(); // Skip headers
+            List<String[]> chunk = new ArrayList<>();
+            String[] line;
+            do {
+                line = reader.readNext();
+                if (line != null) chunk.add(line);
+
+                if (chunk.size() >= maxRowsInMemory || (line == null && !chunk.isEmpty())) {
+                    chunk.sort(rowOrder); // Stable, rows with equal keys keep their order
+                    Path run = Files.createTempFile("duui-core-", ".run");
+                    runs.add(run);
+                    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+                        for (String[] row : chunk) {
+                            RunSource.write(out, row);
+                        }
+                        out.writeBoolean(false);
+                    }
+                    chunk.clear();
+                }
+            } while (line != null);
+        } catch (IOException | CsvValidationException | RuntimeException e) {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+            throw e;
+        }
+        return runs;
+    }
+
+    public List<String> getHeaders() {
+        return this.headers;
+    }
+
+    /**
+     * @return Number of rows in the file, without the header row.
+     */
+    public long getRowCount() {
+        return this.rowCount;
+    }
+
+    public boolean hasNext() {
+        return this.lookahead != null;
+    }
+
+    /**
+     * Returns the next row.
+     *
+     * @return Next row, or null if there are no more rows.
+     * @throws IOException
+     */
+    public List<String> nextRow() throws IOException {
+        if (this.lookahead == null) return null;
+        String[] row = this.lookahead;
+        this.advance();
+        return Arrays.asList(row);
+    }
+
+    /**
+     * Returns all rows whose key equals "key" in KEY_ORDER, so "007" is found for "7". Rows with smaller keys are
+     * skipped. Keys must be requested in ascending KEY_ORDER, except that the last key can be requested again.
+     *
+     * @param key Key to look up
+     * @return Rows with the key in file order, empty if there are none.
+     * @throws IOException
+     */
+    public List<List<String>> rowsFor(String key) throws IOException {
+        if (this.lastKey != null && KEY_ORDER.compare(this.lastKey, key) == 0) return this.lastGroup;
+        if (this.lastKey != null && KEY_ORDER.compare(this.lastKey, key) > 0) {
+            throw new IllegalStateException("TSVCursor.rowsFor: Keys must be requested in ascending order, got " + key
+                    + " after " + this.lastKey);
+        }
+
+        while (this.lookahead != null && KEY_ORDER.compare(this.lookahead[this.keyIndex], key) < 0) {
+            this.advance();
+        }
+
+        List<List<String>> group = new ArrayList<>();
+        while (this.lookahead != null && KEY_ORDER.compare(this.lookahead[this.keyIndex], key) == 0) {
+            group.add(Arrays.asList(this.lookahead));
+            this.advance();
+        }
+
+        this.lastKey = key;
+        this.lastGroup = group;
+        return group;
+    }
+
+    private void advance() throws IOException {
+        String[] previous = this.lookahead;
+        this.lookahead = this.source.next();
+        if (this.lookahead != null && KEY_ORDER.compare(previous[this.keyIndex], this.lookahead[this.keyIndex]) > 0) {
+            // Can only happen if the file was changed after it has been opened
+            throw new IllegalStateException("TSVCursor: Rows are not sorted by " + this.headers.get(this.keyIndex));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.source.close();
+        for (Path tempFile : this.tempFiles) {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private interface RowSource extends Closeable {
+        /**
+         * @return Next row, or null if there are no more rows.
+         */
+        String[] next() throws IOException;
+    }
+
+    private static class TSVSource implements RowSource {
+        private final CSVReader reader;
+
+        TSVSource(CSVReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public String[] next() throws IOException {
+            try {
+                return this.reader.readNext();
+            } catch (CsvValidationException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.reader.close();
+        }
+    }
+
+    /**
+     * Sorted run in a temporary file. Each row is stored as a marker, the number of cells and the length-prefixed
+     * UTF-8 bytes of each cell, so values are read back exactly as they were written.
+     */
+    private static class RunSource implements RowSource {
+        private final DataInputStream in;
+
+        RunSource(Path run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run)));
+        }
+
+        static void write(DataOutputStream out, String[] row) throws IOException {
+            out.writeBoolean(true);
+            out.writeInt(row.length);
+            for (String cell : row) {
+                byte[] bytes = cell.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        @Override
+        public String[] next() throws IOException {
+            if (!this.in.readBoolean()) return null;
+            String[] row = new String[this.in.readInt()];
+            for (int i = 0; i < row.length; i++) {
+                byte[] bytes = new byte[this.in.readInt()];
+                this.in.readFully(bytes);
+                row[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return row;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+    }
+
+    /**
+     * K-way merge of sorted runs. Ties are broken by run index, so the merge is stable.
+     */
+    private static class MergeSource implements RowSource {
+        private final List<RowSource> runs;
+        private final PriorityQueue<Map.Entry<String[], Integer>> heads;
+
+        MergeSource(List<RowSource> runs, int keyIndex) throws IOException {
+            this.runs = runs;
+            this.heads = new PriorityQueue<>(Math.max(1, runs.size()), (a, b) -> {
+                int order = KEY_ORDER.compare(a.getKey()[keyIndex], b.getKey()[keyIndex]);
+                return order != 0 ? order : Integer.compare(a.getValue(), b.getValue());
+            });
+            for (int runIndex = 0; runIndex < runs.size(); runIndex++) {
+                String[] row = runs.get(runIndex).next();
+                if (row != null) this.heads.add(new AbstractMap.SimpleImmutableEntry<>(row, runIndex));
+            }
+        }
+
+        @Override
+        public String[] next() throws IOException {
+            Map.Entry<String[], Integer> head = this.heads.poll();
+            if (head == null) return null;
+
+            String[] row = this.runs.get(head.getValue()).next();
+            if (row != null) this.heads.add(new AbstractMap.SimpleImmutableEntry<>(row, head.getValue()));
+            return head.getKey();
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (RowSource run : this.runs) {
+                run.close();
+            }
+        }
+    }
+}
@@ -17,6 +17,11 @@ public class TSVTable {
     public List<String> headers;
     public List<List<String>> table;
     public Map<String, List<String>> tableMap;
+    // Typed columns of tables read from a .tsv file, null for tables constructed from nested lists. If set, this.table
+    // and this.tableMap are only views on the columns.
+    private List<TSVColumn> columns;
+    // Lazily built secondary indexes: column header -> cell value -> indices of the rows containing that value
+    private final Map<String, Map<String, List<Integer>>> indexes = new HashMap<>();
 
     /**
      * Returns a hashtable-represantation of the of this.table. The Keys are the column headers and the values are lists
@@ -27,6 +32,14 @@ public class TSVTable {
     public Map<String, List<String>> getTableMap() {
         if (this.tableMap != null) return this.tableMap;
         Map<String, List<String>> tableMap = new HashMap<>();
+        if (this.columns != null) {
+            for (int colIndex = 0; colIndex < this.headers.size(); colIndex++) {
+                tableMap.put(this.headers.get(colIndex), new ColumnView(colIndex));
+            }
+            this.tableMap = tableMap;
+            return this.tableMap;
+        }
+
         Integer columnCount = this.headers.size();
         Integer rowCount = this.table.size();
 
@@ -49,25 +62,36 @@ public class TSVTable {
     }
 
     /**
-     * Constructs a TSVTable from the .tsv file in "filepath".
+     * Constructs a TSVTable from the .tsv file in "filepath". The data is stored column-wise in typed columns (see
+     * TSVColumn), this.table and this.tableMap are views on these columns.
      *
      * @param filePath Path to .tsv file with data
      * @throws IOException
      * @throws CsvValidationException
      */
     public TSVTable(String filePath) throws IOException, CsvValidationException {
-        this.table = new ArrayList<>();
         this.filePath = filePath;
         CSVParser parser = new CSVParserBuilder().withSeparator('\t').build();
-        CSVReader reader = new CSVReaderBuilder(new FileReader(filePath))
+
+        try (CSVReader reader = new CSVReaderBuilder(new FileReader(filePath))
                 .withCSVParser(parser)
-                .build();
+                .build()
+        ) {
+            this.headers = Arrays.asList(reader.readNext());
+            this.columns = new ArrayList<>(this.headers.size());
+            for (int colIndex = 0; colIndex < this.headers.size(); colIndex++) {
+                this.columns.add(TSVColumn.create());
+            }
+            this.table = new RowsView();
 
-        this.headers = Arrays.asList(reader.readNext());
-        String[] line;
-        while ((line = reader.readNext()) != null) {
-            List<String> rowElements = Arrays.asList(line);
-            this.table.add(rowElements);
+            String[] line;
+            while ((line = reader.readNext()) != null) {
+                this.appendToColumns(Arrays.asList(line));
+            }
+        }
+
+        for (TSVColumn column : this.columns) {
+            column.trim();
         }
     }
 
@@ -138,9 +162,28 @@ public class TSVTable {
      */
     public String getCell(String header, Integer rowIndex) {
         Integer colIndex = this.headers.indexOf(header);
+        return this.getCell(colIndex, rowIndex);
+    }
+
+    private String getCell(int colIndex, int rowIndex) {
+        if (this.columns != null) return this.columns.get(colIndex).get(rowIndex);
         return this.table.get(rowIndex).get(colIndex);
     }
 
+    /**
+     * Gets a single table-cell of a numeric column as int. For columnar tables the value is read directly from the
+     * typed column without going through its string representation.
+     *
+     * @param header   Column header of the cell
+     * @param rowIndex Row index of the cell
+     * @return Single table-cell datum as int
+     */
+    public int getIntCell(String header, Integer rowIndex) {
+        Integer colIndex = this.headers.indexOf(header);
+        if (this.columns != null) return this.columns.get(colIndex).getInt(rowIndex);
+        return Integer.parseInt(this.table.get(rowIndex).get(colIndex));
+    }
+
     /**
      * Returns the selected rows from start (inclusive) to end (exclusive) as a new TSVTable.
      * Headers are already excluded.
@@ -164,6 +207,11 @@ public class TSVTable {
             throw new Exception("TSVTable.addRow: Column numbers do not match!");
         }
         this.table.add(new ArrayList<>(row));
+        this.tableMap = null;
+        for (var entry : this.indexes.entrySet()) {
+            String columnValue = row.get(this.headers.indexOf(entry.getKey()));
+            entry.getValue().computeIfAbsent(columnValue, k -> new ArrayList<>(1)).add(this.table.size() - 1);
+        }
         return this;
     }
 
@@ -179,22 +227,95 @@ public class TSVTable {
         }
     }
 
+    /**
+     * Returns the secondary index of a column. The index is built on first use by a single pass over the table and
+     * kept up to date by addRow afterwards.
+     *
+     * @param header Column header of the indexed column
+     * @return Map from each distinct value of the column to the indices of all rows containing it
+     */
+    private Map<String, List<Integer>> getIndex(String header) {
+        Map<String, List<Integer>> index = this.indexes.get(header);
+        if (index != null) return index;
+
+        int headerIndex = this.headers.indexOf(header);
+        if (headerIndex < 0) {
+            throw new IllegalArgumentException("TSVTable.getIndex: Unknown column header " + header);
+        }
+
+        index = new HashMap<>();
+        for (int rowIndex = 0; rowIndex < this.table.size(); rowIndex++) {
+            String columnValue = this.getCell(headerIndex, rowIndex);
+            index.computeIfAbsent(columnValue, k -> new ArrayList<>(1)).add(rowIndex);
+        }
+        this.indexes.put(header, index);
+        return index;
+    }
+
+    /**
+     * Builds the secondary indexes of the given columns up front instead of on first lookup. Lookups only read the
+     * table afterwards, so once all looked up columns are indexed and no more rows are added, the table can be read
+     * by several threads at once.
+     *
+     * @param headers Column headers of the columns to index
+     * @return this
+     */
+    public TSVTable buildIndexes(String... headers) {
+        for (String header : headers) {
+            this.getIndex(header);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the indices of all rows whose value in column "header" matches "value". Uses a hash index on the
+     * column, so after the index has been built once a lookup does not depend on the size of the table.
+     *
+     * @param header Column selected by header name
+     * @param value  Value to look up
+     * @return Unmodifiable list of row indices in table order, empty if no row matches.
+     */
+    public List<Integer> getRowIndicesByValue(String header, String value) {
+        List<Integer> rowIndices = this.getIndex(header).get(value);
+        return rowIndices == null ? List.of() : Collections.unmodifiableList(rowIndices);
+    }
+
+    /**
+     * Returns all rows whose value in column "header" matches "value" as read-only views on this table. In contrast to
+     * extractByValue no rows are copied.
+     *
+     * @param header Column selected by header name
+     * @param value  Value to look up
+     * @return Read-only list of the matching rows in table order, empty if no row matches.
+     */
+    public List<List<String>> getRowsByValue(String header, String value) {
+        List<Integer> rowIndices = this.getRowIndicesByValue(header, value);
+        return new AbstractList<>() {
+            @Override
+            public List<String> get(int index) {
+                return Collections.unmodifiableList(TSVTable.this.table.get(rowIndices.get(index)));
+            }
+
+            @Override
+            public int size() {
+                return rowIndices.size();
+            }
+        };
+    }
+
     /**
      * Extracts rows into new table by matching value in a header column.
      *
      * @param header Column selected by header name, in which each rows value is compared to "value"
      * @param value  Value to compare to. If a row's value matches, the row is included in the returned TSVTable.
      * @return TSVTable with all the rows whose value in column "header" match "value".
-     * @throws Exception
      */
     public TSVTable extractByValue(String header, String value) {
         TSVTable newTable = new TSVTable(new ArrayList<>(this.headers), new ArrayList<>());
-        Integer headerIndex = this.headers.indexOf(header);
 
         try {
-            for (List<String> row : this.table) {
-                String columnValue = row.get(headerIndex);
-                if (columnValue.equals(value)) newTable.addRow(row);
+            for (List<String> row : this.getRowsByValue(header, value)) {
+                newTable.addRow(row);
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -202,4 +323,66 @@ public class TSVTable {
 
         return newTable;
     }
+
+    private void appendToColumns(List<String> row) {
+        if (this.headers.size() != row.size()) {
+            throw new IllegalArgumentException("TSVTable: Column numbers do not match in " + this.filePath);
+        }
+        for (int colIndex = 0; colIndex < row.size(); colIndex++) {
+            this.columns.set(colIndex, this.columns.get(colIndex).add(row.get(colIndex)));
+        }
+    }
+
+    /**
+     * Row-wise view on the columns of a columnar table. Rows can only be appended.
+     */
+    private class RowsView extends AbstractList<List<String>> {
+        @Override
+        public List<String> get(int rowIndex) {
+            return new AbstractList<>() {
+                @Override
+                public String get(int colIndex) {
+                    return TSVTable.this.columns.get(colIndex).get(rowIndex);
+                }
+
+                @Override
+                public int size() {
+                    return TSVTable.this.columns.size();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return TSVTable.this.columns.isEmpty() ? 0 : TSVTable.this.columns.get(0).size();
+        }
+
+        @Override
+        public void add(int index, List<String> row) {
+            if (index != this.size()) throw new UnsupportedOperationException("TSVTable: Rows can only be appended");
+            TSVTable.this.appendToColumns(row);
+            this.modCount++;
+        }
+    }
+
+    /**
+     * Read-only view on a single column of a columnar table.
+     */
+    private class ColumnView extends AbstractList<String> {
+        private final int colIndex;
+
+        ColumnView(int colIndex) {
+            this.colIndex = colIndex;
+        }
+
+        @Override
+        public String get(int rowIndex) {
+            return TSVTable.this.columns.get(this.colIndex).get(rowIndex);
+        }
+
+        @Override
+        public int size() {
+            return TSVTable.this.columns.get(this.colIndex).size();
+        }
+    }
 }
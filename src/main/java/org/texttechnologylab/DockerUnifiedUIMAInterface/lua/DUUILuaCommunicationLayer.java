@@ -10,8 +10,9 @@ import org.texttechnologylab.DockerUnifiedUIMAInterface.IDUUICommunicationLayer;
 import org.xml.sax.SAXException;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 
@@ -33,11 +34,11 @@ public class DUUILuaCommunicationLayer implements IDUUICommunicationLayer {
         _globalContext = globalContext;
     }
 
-    public void serialize(JCas jc, ByteArrayOutputStream out, Map<String,String> parameters) throws CompressorException, IOException, SAXException, CASException {
+    public void serialize(JCas jc, OutputStream out, Map<String,String> parameters) throws CompressorException, IOException, SAXException, CASException {
         serialize(jc, out, parameters, "_InitialView");
     }
 
-    public void serialize(JCas jc, ByteArrayOutputStream out, Map<String,String> parameters, String sourceView) throws CompressorException, IOException, SAXException, CASException {
+    public void serialize(JCas jc, OutputStream out, Map<String,String> parameters, String sourceView) throws CompressorException, IOException, SAXException, CASException {
         LuaTable params = new LuaTable();
         if (parameters != null) {
             for (String key : parameters.keySet()) {
@@ -48,12 +49,12 @@ public class DUUILuaCommunicationLayer implements IDUUICommunicationLayer {
         _file.call("serialize",CoerceJavaToLua.coerce(jc.getView(sourceView)),CoerceJavaToLua.coerce(out), params);
     }
 
-    public void deserialize(JCas jc, ByteArrayInputStream input) throws IOException, SAXException, CASException {
+    public void deserialize(JCas jc, InputStream input) throws IOException, SAXException, CASException {
         deserialize(jc, input, "_InitialView");
     }
 
 
-    public void deserialize(JCas jc, ByteArrayInputStream input, String targetView) throws IOException, SAXException, CASException {
+    public void deserialize(JCas jc, InputStream input, String targetView) throws IOException, SAXException, CASException {
 
         JCas tJc;
 
@@ -0,0 +1,159 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds with a relative error of at most about 3%, in the spirit of HdrHistogram.
+ * <p>
+ * Values below 64 have a bucket each, above that every power of two is split into 32 buckets of equal width. Recording
+ * increments a single counter and allocates nothing, so it can be done by any number of threads for every component
+ * call. Histograms with the same layout are merged by adding their counters, e.g. to combine the replicas of a
+ * component or the histograms of several composers. Values from about 4.9 hours upwards share the last bucket.
+ */
+public class DUUILatencyHistogram {
+    private static final int LINEAR = 64;
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 43;
+    private static final int BUCKETS = LINEAR + (MAX_EXPONENT - 5) * SUB_BUCKETS;
+
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong _count = new AtomicLong(0);
+    private final AtomicLong _sum = new AtomicLong(0);
+    private final AtomicLong _max = new AtomicLong(0);
+
+    static int bucketOf(long value) {
+        if (value < LINEAR) {
+            return (int) Math.max(value, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return LINEAR + (exponent - 6) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return Largest value falling into the bucket.
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR) / SUB_BUCKETS + 6;
+        int subBucket = (bucket - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (((long) subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * @param nanos Latency to record, negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        _counts.incrementAndGet(bucketOf(value));
+        _count.incrementAndGet();
+        _sum.addAndGet(value);
+        _max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Adds all values recorded by another histogram to this one.
+     *
+     * @param other Histogram to add
+     * @return this
+     */
+    public DUUILatencyHistogram merge(DUUILatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = other._counts.get(i);
+            if (count != 0) {
+                _counts.addAndGet(i, count);
+            }
+        }
+        _count.addAndGet(other._count.get());
+        _sum.addAndGet(other._sum.get());
+        _max.accumulateAndGet(other._max.get(), Math::max);
+        return this;
+    }
+
+    /**
+     * @return Independent copy of the values recorded so far.
+     */
+    public DUUILatencyHistogram copy() {
+        return new DUUILatencyHistogram().merge(this);
+    }
+
+    /**
+     * Forgets all recorded values. Values recorded at the same time may partly survive.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            _counts.set(i, 0);
+        }
+        _count.set(0);
+        _sum.set(0);
+        _max.set(0);
+    }
+
+    /**
+     * @param percentile Percentile between 0 and 100, e.g. 99.9
+     * @return Value in nanoseconds below or equal to which the given percentage of the values lie, 0 if empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += _counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += _counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * @return Number of recorded values.
+     */
+    public long getCount() {
+        return _count.get();
+    }
+
+    /**
+     * @return Sum of all recorded values in nanoseconds.
+     */
+    public long getSum() {
+        return _sum.get();
+    }
+
+    /**
+     * @return Largest recorded value in nanoseconds.
+     */
+    public long getMax() {
+        return _max.get();
+    }
+
+    /**
+     * @return Mean of the recorded values in nanoseconds, 0 if empty.
+     */
+    public double getMean() {
+        long count = _count.get();
+        return count == 0 ? 0 : (double) _sum.get() / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d p50=%.3fms p99=%.3fms p999=%.3fms max=%.3fms", getCount(),
+                getValueAtPercentile(50) / 1e6, getValueAtPercentile(99) / 1e6,
+                getValueAtPercentile(99.9) / 1e6, getMax() / 1e6);
+    }
+}
@@ -0,0 +1,230 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Live latency histograms of the components of a pipeline, kept in memory while documents are processed.
+ * <p>
+ * For every component there is a histogram per phase of a call, filled from the same measurements that are passed to
+ * the storage backend, and a histogram of the annotator phase per instance of the component, e.g. a Docker container
+ * or a Kubernetes pod. A replica that is slower than the others thus shows up during the run. The histograms can be
+ * queried at any time and exported periodically, see {@link #exportEvery(Duration, Consumer)}.
+ */
+public class DUUILatencyHistograms implements AutoCloseable {
+    /**
+     * Phases of a call of a component.
+     */
+    public enum Phase {
+        SERIALIZE,
+        DESERIALIZE,
+        ANNOTATOR,
+        MUTEX_WAIT,
+        COMPONENT_TOTAL
+    }
+
+    /**
+     * Histograms of a single component.
+     */
+    public static class Component {
+        private final int _hash;
+        private volatile String _name;
+        private final DUUILatencyHistogram[] _phases = new DUUILatencyHistogram[Phase.values().length];
+        private final ConcurrentHashMap<String, DUUILatencyHistogram> _instances = new ConcurrentHashMap<>();
+
+        Component(int hash, String name) {
+            _hash = hash;
+            _name = name;
+            for (int i = 0; i < _phases.length; i++) {
+                _phases[i] = new DUUILatencyHistogram();
+            }
+        }
+
+        /**
+         * @return Finalized representation hash of the component.
+         */
+        public int getHash() {
+            return _hash;
+        }
+
+        /**
+         * @return Name of the component, its hash if it was not registered.
+         */
+        public String getName() {
+            return _name;
+        }
+
+        public DUUILatencyHistogram getHistogram(Phase phase) {
+            return _phases[phase.ordinal()];
+        }
+
+        /**
+         * @return Histograms of the annotator phase by the URL of the instance.
+         */
+        public Map<String, DUUILatencyHistogram> getInstances() {
+            return Collections.unmodifiableMap(_instances);
+        }
+
+        void reset() {
+            for (DUUILatencyHistogram histogram : _phases) {
+                histogram.reset();
+            }
+            _instances.clear();
+        }
+    }
+
+    // Copied on write, components are only added when a pipeline is instantiated
+    private volatile Component[] _components = new Component[0];
+    private ScheduledExecutorService _export = null;
+
+    /**
+     * Gives a component a readable name, otherwise it is known by its hash.
+     *
+     * @param hash Finalized representation hash of the component
+     * @param name Name of the component, ignored if null
+     */
+    public void register(int hash, String name) {
+        Component component = component(hash);
+        if (name != null) {
+            component._name = name;
+        }
+    }
+
+    /**
+     * Records the phases of a call of a component.
+     *
+     * @param hash Finalized representation hash of the component
+     */
+    public void record(int hash, long durationSerialize, long durationDeserialize, long durationAnnotator,
+                       long durationMutexWait, long durationComponentTotal) {
+        Component component = component(hash);
+        component._phases[Phase.SERIALIZE.ordinal()].record(durationSerialize);
+        component._phases[Phase.DESERIALIZE.ordinal()].record(durationDeserialize);
+        component._phases[Phase.ANNOTATOR.ordinal()].record(durationAnnotator);
+        component._phases[Phase.MUTEX_WAIT.ordinal()].record(durationMutexWait);
+        component._phases[Phase.COMPONENT_TOTAL.ordinal()].record(durationComponentTotal);
+    }
+
+    /**
+     * Records the annotator phase of a call handled by a specific instance of a component.
+     *
+     * @param hash              Finalized representation hash of the component
+     * @param instance          URL of the instance
+     * @param durationAnnotator Time the instance took to answer in nanoseconds
+     */
+    public void recordInstance(int hash, String instance, long durationAnnotator) {
+        component(hash)._instances.computeIfAbsent(instance, key -> new DUUILatencyHistogram()).record(durationAnnotator);
+    }
+
+    private Component component(int hash) {
+        for (Component component : _components) {
+            if (component._hash == hash) {
+                return component;
+            }
+        }
+        synchronized (this) {
+            Component[] components = _components;
+            for (Component component : components) {
+                if (component._hash == hash) {
+                    return component;
+                }
+            }
+            Component component = new Component(hash, String.valueOf(hash));
+            Component[] grown = Arrays.copyOf(components, components.length + 1);
+            grown[components.length] = component;
+            _components = grown;
+            return component;
+        }
+    }
+
+    /**
+     * @return Histograms of all components in the order they were first seen.
+     */
+    public List<Component> getComponents() {
+        return List.of(_components);
+    }
+
+    /**
+     * @param hash  Finalized representation hash of the component
+     * @param phase Phase of the calls
+     * @return Histogram, null if nothing was recorded for the component
+     */
+    public DUUILatencyHistogram getHistogram(int hash, Phase phase) {
+        for (Component component : _components) {
+            if (component._hash == hash) {
+                return component.getHistogram(phase);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Forgets all recorded values, e.g. between two runs. Registered components keep their names.
+     */
+    public void reset() {
+        for (Component component : _components) {
+            component.reset();
+        }
+    }
+
+    /**
+     * Passes the histograms to the exporter in a fixed interval, replacing a previous export. The exporter is called
+     * on a thread of its own and should not block for long.
+     *
+     * @param interval Time between two exports
+     * @param exporter Exporter, e.g. writing {@link #toString()} to a log
+     * @return this
+     */
+    public synchronized DUUILatencyHistograms exportEvery(Duration interval, Consumer<DUUILatencyHistograms> exporter) {
+        if (_export != null) {
+            _export.shutdownNow();
+        }
+        _export = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DUUILatencyExport");
+            thread.setDaemon(true);
+            return thread;
+        });
+        _export.scheduleAtFixedRate(() -> {
+            try {
+                exporter.accept(this);
+            } catch (RuntimeException e) {
+                // An export failing once must not stop the following ones
+                e.printStackTrace();
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * Stops the periodic export.
+     */
+    @Override
+    public synchronized void close() {
+        if (_export != null) {
+            _export.shutdownNow();
+            _export = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Component component : _components) {
+            for (Phase phase : Phase.values()) {
+                DUUILatencyHistogram histogram = component.getHistogram(phase);
+                if (histogram.getCount() > 0) {
+                    builder.append(String.format("%s %s %s%n", component.getName(), phase, histogram));
+                }
+            }
+            for (Map.Entry<String, DUUILatencyHistogram> instance : new TreeMap<>(component._instances).entrySet()) {
+                builder.append(String.format("%s %s %s%n", component.getName(), instance.getKey(), instance.getValue()));
+            }
+        }
+        return builder.toString();
+    }
+}
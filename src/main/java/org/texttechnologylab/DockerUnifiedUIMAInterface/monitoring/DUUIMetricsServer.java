@@ -0,0 +1,121 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Endpoint for Prometheus to scrape the live metrics of a composer and its parts from, without Docker or InfluxDB.
+ * <p>
+ * Runs on the HTTP server of the JDK with a single thread. The metrics are read from the counters the sources keep
+ * anyway only when /metrics is requested, so the endpoint costs nothing while nobody scrapes it.
+ */
+public class DUUIMetricsServer implements AutoCloseable {
+    public static final String PATH = "/metrics";
+
+    private final HttpServer _server;
+    private final ExecutorService _executor;
+    private final List<IDUUIMetricsSource> _sources = new CopyOnWriteArrayList<>();
+
+    /**
+     * Starts the endpoint.
+     *
+     * @param port Port to listen on, 0 to pick a free one
+     */
+    public DUUIMetricsServer(int port) throws IOException {
+        this(new InetSocketAddress(port));
+    }
+
+    /**
+     * Starts the endpoint.
+     *
+     * @param address Address to listen on
+     */
+    public DUUIMetricsServer(InetSocketAddress address) throws IOException {
+        _server = HttpServer.create(address, 0);
+        _executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DUUIMetricsServer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        _server.setExecutor(_executor);
+        _server.createContext(PATH, this::handle);
+        _server.start();
+    }
+
+    /**
+     * Adds a source whose metrics are exposed from now on.
+     *
+     * @param source Source, e.g. a collection reader
+     * @return this
+     */
+    public DUUIMetricsServer withSource(IDUUIMetricsSource source) {
+        _sources.add(source);
+        return this;
+    }
+
+    public void removeSource(IDUUIMetricsSource source) {
+        _sources.remove(source);
+    }
+
+    /**
+     * @return The metrics of all sources in the Prometheus text format.
+     */
+    public String scrape() {
+        DUUIMetricsWriter metrics = new DUUIMetricsWriter();
+        for (IDUUIMetricsSource source : _sources) {
+            source.collectMetrics(metrics);
+        }
+        return metrics.toString();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body;
+            int status;
+            try {
+                body = scrape().getBytes(StandardCharsets.UTF_8);
+                status = 200;
+            } catch (RuntimeException e) {
+                body = String.valueOf(e).getBytes(StandardCharsets.UTF_8);
+                status = 500;
+            }
+            exchange.getResponseHeaders().set("Content-Type", DUUIMetricsWriter.CONTENT_TYPE);
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @return Port the endpoint listens on.
+     */
+    public int getPort() {
+        return _server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        _server.stop(0);
+        _executor.shutdownNow();
+    }
+}
@@ -0,0 +1,104 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects metrics in the Prometheus text exposition format, version 0.0.4.
+ * <p>
+ * Samples of the same metric written by different sources or for different labels are grouped under a single HELP
+ * and TYPE line, in the order the metric was first written. Labels are given as alternating names and values.
+ */
+public class DUUIMetricsWriter {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static class Family {
+        final String header;
+        final StringBuilder samples = new StringBuilder();
+
+        Family(String header) {
+            this.header = header;
+        }
+    }
+
+    private final Map<String, Family> _families = new LinkedHashMap<>();
+
+    /**
+     * Writes the current value of something that may go up and down, e.g. the number of idle instances.
+     */
+    public DUUIMetricsWriter gauge(String name, String help, double value, String... labels) {
+        sample(family(name, help, "gauge"), name, value, labels);
+        return this;
+    }
+
+    /**
+     * Writes the value of something that only goes up. The name is given without the _total suffix, which is appended
+     * to the HELP and TYPE lines as well as to the samples, as the text format 0.0.4 expects.
+     */
+    public DUUIMetricsWriter counter(String name, String help, double value, String... labels) {
+        String total = name + "_total";
+        sample(family(total, help, "counter"), total, value, labels);
+        return this;
+    }
+
+    /**
+     * Writes quantiles, sum and count of a latency histogram in seconds.
+     */
+    public DUUIMetricsWriter summary(String name, String help, DUUILatencyHistogram histogram, String... labels) {
+        Family family = family(name, help, "summary");
+        for (double quantile : QUANTILES) {
+            String[] withQuantile = new String[labels.length + 2];
+            System.arraycopy(labels, 0, withQuantile, 0, labels.length);
+            withQuantile[labels.length] = "quantile";
+            withQuantile[labels.length + 1] = Double.toString(quantile);
+            sample(family, name, histogram.getValueAtPercentile(quantile * 100) / 1e9, withQuantile);
+        }
+        sample(family, name + "_sum", histogram.getSum() / 1e9, labels);
+        sample(family, name + "_count", histogram.getCount(), labels);
+        return this;
+    }
+
+    private Family family(String name, String help, String type) {
+        return _families.computeIfAbsent(name, key -> new Family(
+                "# HELP " + name + " " + help.replace("\\", "\\\\").replace("\n", "\\n") + "\n" +
+                "# TYPE " + name + " " + type + "\n"));
+    }
+
+    private static void sample(Family family, String name, double value, String[] labels) {
+        StringBuilder out = family.samples;
+        out.append(name);
+        if (labels.length > 0) {
+            out.append('{');
+            for (int i = 0; i + 1 < labels.length; i += 2) {
+                if (i > 0) out.append(',');
+                out.append(labels[i]).append("=\"");
+                String label = labels[i + 1] == null ? "" : labels[i + 1];
+                out.append(label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"));
+                out.append('"');
+            }
+            out.append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else if (Double.isNaN(value)) {
+            out.append("NaN");
+        } else if (Double.isInfinite(value)) {
+            out.append(value > 0 ? "+Inf" : "-Inf");
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        for (Family family : _families.values()) {
+            out.append(family.header).append(family.samples);
+        }
+        return out.toString();
+    }
+}
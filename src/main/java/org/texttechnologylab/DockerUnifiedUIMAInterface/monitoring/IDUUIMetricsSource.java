@@ -0,0 +1,15 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring;
+
+/**
+ * Anything exposing live metrics through the {@link DUUIMetricsServer}, e.g. the composer, a collection reader or a
+ * storage backend.
+ */
+public interface IDUUIMetricsSource {
+    /**
+     * Writes the current values of the metrics. Only called when the metrics are scraped, so reading them may take a
+     * lock but must not block for long.
+     *
+     * @param metrics Writer collecting the metrics of all sources
+     */
+    public void collectMetrics(DUUIMetricsWriter metrics);
+}
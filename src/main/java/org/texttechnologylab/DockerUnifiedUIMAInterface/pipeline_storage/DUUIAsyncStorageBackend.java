@@ -0,0 +1,318 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface.pipeline_storage;
+
+import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIComposer;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.driver.IDUUIPipelineComponent;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUIMetricsWriter;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.IDUUIMetricsSource;
+
+import java.net.UnknownHostException;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Storage backend persisting the metrics of documents in the background, wrapping any other storage backend.
+ * <p>
+ * Workers only put the metrics of a document into a bounded ring buffer and continue with the next document, a writer
+ * thread passes them on to the wrapped backend one after another. A slow database therefore no longer stalls the
+ * pipeline. What happens if the buffer is full is decided by the {@link OverflowPolicy}. Runs are added and finalized
+ * synchronously, finalizing a run waits until the metrics of all its documents are passed on.
+ * <pre>
+ * composer.withStorageBackend(new DUUIAsyncStorageBackend(new DUUIMongoDBStorageBackend(uri))
+ *         .withOverflowPolicy(DUUIAsyncStorageBackend.OverflowPolicy.DROP_OLDEST));
+ * </pre>
+ */
+public class DUUIAsyncStorageBackend implements IDUUIStorageBackend, IDUUIMetricsSource {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * Behaviour if the metrics of a document arrive while the buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * The worker waits until there is space, no metrics are lost.
+         */
+        BLOCK,
+        /**
+         * The oldest metrics in the buffer are dropped, the worker never waits.
+         */
+        DROP_OLDEST,
+        /**
+         * The buffer keeps a uniform random sample of the metrics that arrived since it last ran empty, the worker
+         * never waits. The n-th metrics replace randomly chosen ones with probability capacity/n and are dropped
+         * otherwise (reservoir sampling). Unlike DROP_OLDEST the persisted metrics remain spread evenly over the
+         * whole time the backend could not keep up.
+         */
+        SAMPLE
+    }
+
+    private final IDUUIStorageBackend _backend;
+    private final DUUIPipelineDocumentPerformance[] _ring;
+    private int _head = 0;
+    private int _size = 0;
+    // Metrics offered since the buffer last ran empty, counted for reservoir sampling once the buffer is full
+    private long _seen = 0;
+    private boolean _writing = false;
+    private boolean _closed = false;
+    private volatile OverflowPolicy _policy = OverflowPolicy.BLOCK;
+    // Draws the slot for reservoir sampling, uniformly from [0, bound)
+    private final LongUnaryOperator _slots;
+
+    private final ReentrantLock _lock = new ReentrantLock();
+    private final Condition _notEmpty = _lock.newCondition();
+    private final Condition _notFull = _lock.newCondition();
+    private final Condition _idle = _lock.newCondition();
+
+    private final AtomicLong _written = new AtomicLong(0);
+    private final AtomicLong _dropped = new AtomicLong(0);
+    private final AtomicLong _failed = new AtomicLong(0);
+
+    private final Thread _writer;
+
+    /**
+     * @param backend Backend to persist the metrics with
+     */
+    public DUUIAsyncStorageBackend(IDUUIStorageBackend backend) {
+        this(backend, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param backend  Backend to persist the metrics with
+     * @param capacity Maximum number of documents whose metrics are waiting to be persisted
+     */
+    public DUUIAsyncStorageBackend(IDUUIStorageBackend backend, int capacity) {
+        this(backend, capacity, bound -> ThreadLocalRandom.current().nextLong(bound));
+    }
+
+    /**
+     * @param slots Draws the slot the next metrics replace when sampling, given the number of metrics seen
+     */
+    DUUIAsyncStorageBackend(IDUUIStorageBackend backend, int capacity, LongUnaryOperator slots) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity has to be at least 1");
+        }
+        _backend = backend;
+        _slots = slots;
+        _ring = new DUUIPipelineDocumentPerformance[capacity];
+        _writer = new Thread(this::write, "DUUIAsyncStorage-" + backend.getClass().getSimpleName());
+        _writer.setDaemon(true);
+        _writer.start();
+    }
+
+    public DUUIAsyncStorageBackend withOverflowPolicy(OverflowPolicy policy) {
+        _policy = policy;
+        return this;
+    }
+
+    @Override
+    public void addNewRun(String name, DUUIComposer composer) throws SQLException {
+        _backend.addNewRun(name, composer);
+    }
+
+    @Override
+    public IDUUIPipelineComponent loadComponent(String id) {
+        return _backend.loadComponent(id);
+    }
+
+    @Override
+    public void addMetricsForDocument(DUUIPipelineDocumentPerformance perf) {
+        _lock.lock();
+        try {
+            if (_closed) {
+                // Nothing drains the buffer any more
+                _dropped.incrementAndGet();
+                return;
+            }
+            if (_size == _ring.length) {
+                switch (_policy) {
+                    case BLOCK:
+                        while (_size == _ring.length && !_closed) {
+                            _notFull.awaitUninterruptibly();
+                        }
+                        if (_closed) {
+                            _dropped.incrementAndGet();
+                            return;
+                        }
+                        break;
+                    case DROP_OLDEST:
+                        _ring[_head] = null;
+                        _head = (_head + 1) % _ring.length;
+                        _size--;
+                        _dropped.incrementAndGet();
+                        break;
+                    case SAMPLE:
+                        // _seen also counts what the writer already took, so it is at least the capacity here
+                        _seen++;
+                        long slot = _slots.applyAsLong(_seen);
+                        if (slot < _ring.length) {
+                            _ring[(int) ((_head + slot) % _ring.length)] = perf;
+                        }
+                        // Either the replaced metrics or the new ones are lost
+                        _dropped.incrementAndGet();
+                        return;
+                }
+            }
+            _ring[(_head + _size) % _ring.length] = perf;
+            _size++;
+            _seen++;
+            _notEmpty.signal();
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until all metrics in the buffer are passed on to the wrapped backend.
+     */
+    public void flush() {
+        _lock.lock();
+        try {
+            // The timeout only guards against a writer that died without signalling
+            while ((_size > 0 || _writing) && _writer.isAlive()) {
+                _idle.await(100, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    @Override
+    public void finalizeRun(String name, Instant start, Instant end) throws SQLException {
+        flush();
+        _backend.finalizeRun(name, start, end);
+    }
+
+    @Override
+    public void shutdown() throws UnknownHostException {
+        flush();
+        _lock.lock();
+        try {
+            _closed = true;
+            _notEmpty.signalAll();
+            _notFull.signalAll();
+        } finally {
+            _lock.unlock();
+        }
+        try {
+            _writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        _backend.shutdown();
+    }
+
+    @Override
+    public boolean shouldTrackErrorDocs() {
+        return _backend.shouldTrackErrorDocs();
+    }
+
+    @Override
+    public boolean shouldCountAnnotations() {
+        return _backend.shouldCountAnnotations();
+    }
+
+    /**
+     * Body of the writer thread.
+     */
+    private void write() {
+        while (true) {
+            DUUIPipelineDocumentPerformance perf;
+            _lock.lock();
+            try {
+                _writing = false;
+                if (_size == 0) {
+                    // The backend caught up, the next overflow starts a new sample
+                    _seen = 0;
+                    _idle.signalAll();
+                }
+                while (_size == 0 && !_closed) {
+                    _notEmpty.awaitUninterruptibly();
+                }
+                if (_size == 0) {
+                    return;
+                }
+                perf = _ring[_head];
+                _ring[_head] = null;
+                _head = (_head + 1) % _ring.length;
+                _size--;
+                _writing = true;
+                _notFull.signal();
+            } finally {
+                _lock.unlock();
+            }
+
+            try {
+                _backend.addMetricsForDocument(perf);
+                _written.incrementAndGet();
+            } catch (Exception e) {
+                // A failing document must not stop the metrics of the following ones
+                _failed.incrementAndGet();
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @return The wrapped backend.
+     */
+    public IDUUIStorageBackend getBackend() {
+        return _backend;
+    }
+
+    /**
+     * @return Number of documents whose metrics are waiting in the buffer.
+     */
+    public int getPending() {
+        _lock.lock();
+        try {
+            return _size;
+        } finally {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of documents whose metrics were dropped because the buffer was full or the backend shut down.
+     */
+    public long getDropped() {
+        return _dropped.get();
+    }
+
+    /**
+     * @return Number of documents whose metrics were passed on to the wrapped backend.
+     */
+    public long getWritten() {
+        return _written.get();
+    }
+
+    /**
+     * @return Number of documents whose metrics the wrapped backend failed to persist.
+     */
+    public long getFailed() {
+        return _failed.get();
+    }
+
+    @Override
+    public void collectMetrics(DUUIMetricsWriter metrics) {
+        String backend = _backend.getClass().getSimpleName();
+        metrics.gauge("duui_storage_pending", "Documents whose metrics wait to be persisted", getPending(), "backend", backend)
+                .counter("duui_storage_written", "Documents whose metrics were persisted", getWritten(), "backend", backend)
+                .counter("duui_storage_dropped", "Documents whose metrics were dropped", getDropped(), "backend", backend)
+                .counter("duui_storage_failed", "Documents whose metrics could not be persisted", getFailed(), "backend", backend);
+        if (_backend instanceof IDUUIMetricsSource) {
+            ((IDUUIMetricsSource) _backend).collectMetrics(metrics);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pending=%d written=%d dropped=%d failed=%d", getPending(), getWritten(), getDropped(), getFailed());
+    }
+}
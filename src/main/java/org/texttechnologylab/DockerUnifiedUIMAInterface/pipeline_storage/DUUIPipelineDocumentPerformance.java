@@ -5,6 +5,7 @@ import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.tcas.Annotation;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUILatencyHistograms;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -12,17 +13,35 @@ import java.util.Vector;
 
 
 public class DUUIPipelineDocumentPerformance {
+    // Measurements per component in compact mode, FIELDS values per component ordinal
+    private static final int SERIALIZE = 0;
+    private static final int DESERIALIZE = 1;
+    private static final int ANNOTATOR = 2;
+    private static final int MUTEX_WAIT = 3;
+    private static final int COMPONENT_TOTAL = 4;
+    private static final int SERIALIZED_SIZE = 5;
+    private static final int ANNOTATIONS = 6;
+    private static final int DOCUMENT_SIZE = 7;
+    private static final int FIELDS = 8;
+
     private Vector<DUUIPipelinePerformancePoint> _points;
     private String _runKey;
-    private Long _durationTotalSerialize;
-    private Long _durationTotalDeserialize;
-    private Long _durationTotalAnnotator;
-    private Long _durationTotalMutexWait;
-    private Long _durationTotal;
-    private Integer _documentSize;
-    private Long _documentWaitTime;
+    private long _durationTotalSerialize;
+    private long _durationTotalDeserialize;
+    private long _durationTotalAnnotator;
+    private long _durationTotalMutexWait;
+    private long _durationTotal;
+    private int _documentSize;
+    private long _documentWaitTime;
     private String document;
 
+    private final DUUIPipelinePerformanceLayout _layout;
+    private final long[] _compact;
+    private final int[] _calls;
+    private String[] _errors;
+
+    private final DUUILatencyHistograms _histograms;
+
     /**
      * Stores the types of annotations and how many were made.
      */
@@ -34,17 +53,42 @@ public class DUUIPipelineDocumentPerformance {
     private final boolean trackErrorDocs;
 
     public DUUIPipelineDocumentPerformance(String runKey, long waitDocumentTime, JCas jc, boolean trackErrorDocs) {
+        this(runKey, waitDocumentTime, jc, trackErrorDocs, null);
+    }
+
+    /**
+     * @param runKey           Key of the run
+     * @param waitDocumentTime Time spent waiting for the document
+     * @param jc               Document
+     * @param trackErrorDocs   Whether to track error documents
+     * @param layout           Components of the pipeline to record compactly, null to create a
+     *                         {@link DUUIPipelinePerformancePoint} for every call of a component
+     */
+    public DUUIPipelineDocumentPerformance(String runKey, long waitDocumentTime, JCas jc, boolean trackErrorDocs, DUUIPipelinePerformanceLayout layout) {
+        this(runKey, waitDocumentTime, jc, trackErrorDocs, layout, null);
+    }
+
+    /**
+     * @param runKey           Key of the run
+     * @param waitDocumentTime Time spent waiting for the document
+     * @param jc               Document
+     * @param trackErrorDocs   Whether to track error documents
+     * @param layout           Components of the pipeline to record compactly, null to create a
+     *                         {@link DUUIPipelinePerformancePoint} for every call of a component
+     * @param histograms       Live latency histograms to record the calls of components in as well, may be null
+     */
+    public DUUIPipelineDocumentPerformance(String runKey, long waitDocumentTime, JCas jc, boolean trackErrorDocs, DUUIPipelinePerformanceLayout layout, DUUILatencyHistograms histograms) {
         this.trackErrorDocs = trackErrorDocs;
+        _histograms = histograms;
 
         _points = new Vector<>();
         _runKey = runKey;
 
+        _layout = layout;
+        _compact = layout == null ? null : new long[layout.size() * FIELDS];
+        _calls = layout == null ? null : new int[layout.size()];
+
         _documentWaitTime = waitDocumentTime;
-        _durationTotalDeserialize = 0L;
-        _durationTotalSerialize = 0L;
-        _durationTotalAnnotator = 0L;
-        _durationTotalMutexWait = 0L;
-        _durationTotal = 0L;
         if(jc.getDocumentText()!=null) {
             _documentSize = jc.getDocumentText().length();
         }
@@ -80,11 +124,93 @@ public class DUUIPipelineDocumentPerformance {
         return _runKey;
     }
 
-    public Vector<DUUIPipelinePerformancePoint> getPerformancePoints() {
-        return _points;
+    /**
+     * In compact mode the points are created on demand, one per component, adding up the calls of a component, e.g.
+     * for the segments of a document.
+     *
+     * @return Measurements of the components
+     */
+    public synchronized Vector<DUUIPipelinePerformancePoint> getPerformancePoints() {
+        if (_layout == null) {
+            return _points;
+        }
+        Vector<DUUIPipelinePerformancePoint> points = new Vector<>(_layout.size() + _points.size());
+        for (int ordinal = 0; ordinal < _calls.length; ordinal++) {
+            if (_calls[ordinal] == 0) continue;
+            int offset = ordinal * FIELDS;
+            points.add(new DUUIPipelinePerformancePoint(_compact[offset + SERIALIZE], _compact[offset + DESERIALIZE],
+                    _compact[offset + ANNOTATOR], _compact[offset + MUTEX_WAIT], _compact[offset + COMPONENT_TOTAL],
+                    String.valueOf(_layout.getComponentHash(ordinal)), _compact[offset + SERIALIZED_SIZE],
+                    _compact[offset + ANNOTATIONS], _compact[offset + DOCUMENT_SIZE],
+                    _errors == null ? null : _errors[ordinal], document));
+        }
+        // Components that were not part of the pipeline when the layout was created
+        points.addAll(_points);
+        return points;
+    }
+
+    public synchronized void addData(long durationSerialize, long durationDeserialize, long durationAnnotator, long durationMutexWait, long durationComponentTotal, String componentKey, long serializeSize, JCas jc, String error) {
+        addTotals(durationSerialize, durationDeserialize, durationAnnotator, durationMutexWait, durationComponentTotal);
+        _points.add(new DUUIPipelinePerformancePoint(durationSerialize,durationDeserialize,durationAnnotator,durationMutexWait,durationComponentTotal,componentKey,serializeSize, jc, error, document));
+    }
+
+    /**
+     * Records the measurements of a call of a component. In compact mode nothing is allocated, the annotations are
+     * only counted if the layout asks for it.
+     *
+     * @param componentHash Finalized representation hash of the component
+     */
+    public void addData(long durationSerialize, long durationDeserialize, long durationAnnotator, long durationMutexWait, long durationComponentTotal, int componentHash, long serializeSize, JCas jc, String error) {
+        if (_histograms != null) {
+            _histograms.record(componentHash, durationSerialize, durationDeserialize, durationAnnotator, durationMutexWait, durationComponentTotal);
+        }
+
+        int ordinal = _layout == null ? -1 : _layout.ordinal(componentHash);
+        if (ordinal < 0) {
+            addData(durationSerialize, durationDeserialize, durationAnnotator, durationMutexWait, durationComponentTotal, String.valueOf(componentHash), serializeSize, jc, error);
+            return;
+        }
+
+        // Counting iterates the CAS, it is done outside of the lock
+        long annotations = _layout.shouldCountAnnotations() ? DUUIPipelinePerformancePoint.countAnnotations(jc) : 0;
+        long documentSize = DUUIPipelinePerformancePoint.documentSize(jc);
+
+        synchronized (this) {
+            addTotals(durationSerialize, durationDeserialize, durationAnnotator, durationMutexWait, durationComponentTotal);
+
+            int offset = ordinal * FIELDS;
+            _compact[offset + SERIALIZE] += durationSerialize;
+            _compact[offset + DESERIALIZE] += durationDeserialize;
+            _compact[offset + ANNOTATOR] += durationAnnotator;
+            _compact[offset + MUTEX_WAIT] += durationMutexWait;
+            _compact[offset + COMPONENT_TOTAL] += durationComponentTotal;
+            _compact[offset + SERIALIZED_SIZE] += serializeSize;
+            _compact[offset + ANNOTATIONS] = annotations;
+            _compact[offset + DOCUMENT_SIZE] = documentSize;
+            _calls[ordinal]++;
+            if (error != null) {
+                if (_errors == null) {
+                    _errors = new String[_calls.length];
+                }
+                _errors[ordinal] = error;
+            }
+        }
     }
 
-    public void addData(long durationSerialize, long durationDeserialize, long durationAnnotator, long durationMutexWait, long durationComponentTotal, String componentKey, long serializeSize, JCas jc, String error) {
+    /**
+     * Records which instance of a component handled a call, only kept in the live latency histograms.
+     *
+     * @param componentHash     Finalized representation hash of the component
+     * @param instance          URL of the instance
+     * @param durationAnnotator Time the instance took to answer
+     */
+    public void addInstanceData(int componentHash, String instance, long durationAnnotator) {
+        if (_histograms != null) {
+            _histograms.recordInstance(componentHash, instance, durationAnnotator);
+        }
+    }
+
+    private void addTotals(long durationSerialize, long durationDeserialize, long durationAnnotator, long durationMutexWait, long durationComponentTotal) {
         _durationTotalDeserialize += durationDeserialize;
         _durationTotalSerialize += durationSerialize;
         _durationTotalAnnotator += durationAnnotator;
@@ -97,8 +223,6 @@ public class DUUIPipelineDocumentPerformance {
 //                    JCasUtil.select(jc, annotation.getClass()).size()
 //            );
 //        }
-
-        _points.add(new DUUIPipelinePerformancePoint(durationSerialize,durationDeserialize,durationAnnotator,durationMutexWait,durationComponentTotal,componentKey,serializeSize, jc, error, document));
     }
 
     public long getDocumentWaitTime() {
@@ -115,7 +239,7 @@ public class DUUIPipelineDocumentPerformance {
 
     public Vector<BaseDocument> generateComponentPerformance(String docKey) {
         Vector<BaseDocument> docs = new Vector<>();
-        for(DUUIPipelinePerformancePoint point : _points) {
+        for(DUUIPipelinePerformancePoint point : getPerformancePoints()) {
             Map<String, Object> props = new HashMap<>();
             props.put("run", _runKey);
             props.put("compkey", point.getKey());
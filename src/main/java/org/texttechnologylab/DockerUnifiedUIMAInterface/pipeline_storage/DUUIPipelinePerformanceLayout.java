@@ -0,0 +1,64 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface.pipeline_storage;
+
+import org.texttechnologylab.DockerUnifiedUIMAInterface.driver.DUUIPipelineComponent;
+
+import java.util.List;
+
+/**
+ * Components of a pipeline in pipeline order, shared by the performance records of all documents of a run.
+ * <p>
+ * With a layout a {@link DUUIPipelineDocumentPerformance} records its measurements in primitive arrays indexed by the
+ * ordinal of the component instead of creating a {@link DUUIPipelinePerformancePoint} per call. Looking up the ordinal
+ * is a scan over a few ints, pipelines are short enough that this beats hashing.
+ */
+public class DUUIPipelinePerformanceLayout {
+    private final int[] _hashes;
+    private final boolean _countAnnotations;
+
+    /**
+     * @param pipeline         Components of the pipeline
+     * @param countAnnotations Whether the number of annotations is counted after each component
+     */
+    public DUUIPipelinePerformanceLayout(List<DUUIPipelineComponent> pipeline, boolean countAnnotations) {
+        _hashes = new int[pipeline.size()];
+        for (int i = 0; i < _hashes.length; i++) {
+            _hashes[i] = pipeline.get(i).getFinalizedRepresentationHash();
+        }
+        _countAnnotations = countAnnotations;
+    }
+
+    /**
+     * @param componentHash Finalized representation hash of a component
+     * @return Ordinal of the component, -1 if it is not part of the pipeline
+     */
+    public int ordinal(int componentHash) {
+        for (int i = 0; i < _hashes.length; i++) {
+            if (_hashes[i] == componentHash) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param ordinal Ordinal of a component
+     * @return Finalized representation hash of the component
+     */
+    public int getComponentHash(int ordinal) {
+        return _hashes[ordinal];
+    }
+
+    /**
+     * @return Number of components in the pipeline.
+     */
+    public int size() {
+        return _hashes.length;
+    }
+
+    /**
+     * @return True if the number of annotations is counted after each component, which means iterating the CAS.
+     */
+    public boolean shouldCountAnnotations() {
+        return _countAnnotations;
+    }
+}
@@ -30,23 +30,52 @@ public class DUUIPipelinePerformancePoint {
         _durationSerialize = durationSerialize;
         _durationDeserialize = durationDeserialize;
         _durationMutexWait = durationMutexWait;
+        _numberAnnotations = countAnnotations(jc);
+        _documentSize = documentSize(jc);
+        _serializedSize = serializedSize;
+
+        this.document = document;
+
+        this.error = error;
+    }
+
+    /**
+     * Creates a point from measurements that were already taken, e.g. recorded compactly.
+     */
+    public DUUIPipelinePerformancePoint(long durationSerialize, long durationDeserialize, long durationAnnotator, long durationMutexWait, long durationComponentTotal,
+                                        String componentKey, long serializedSize, long numberAnnotations, long documentSize, String error, String document) {
+        _componentKey = componentKey;
+
+        _durationAnnotator = durationAnnotator;
+        _durationComponentTotal = durationComponentTotal;
+        _durationSerialize = durationSerialize;
+        _durationDeserialize = durationDeserialize;
+        _durationMutexWait = durationMutexWait;
+        _numberAnnotations = numberAnnotations;
+        _documentSize = documentSize;
+        _serializedSize = serializedSize;
+
+        this.document = document;
+
+        this.error = error;
+    }
+
+    static long countAnnotations(JCas jc) {
         try {
-            _numberAnnotations = JCasUtil.select(jc, TOP.class).stream().count();
+            return JCasUtil.select(jc, TOP.class).stream().count();
         }
         catch (Exception e){
-            _numberAnnotations=0l;
+            return 0l;
         }
+    }
+
+    static long documentSize(JCas jc) {
         try {
-            _documentSize = Long.valueOf(jc.getDocumentText().length());
+            return jc.getDocumentText().length();
         }
         catch (Exception e){
-            _documentSize=-1l;
+            return -1l;
         }
-        _serializedSize = serializedSize;
-
-        this.document = document;
-
-        this.error = error;
     }
 
     public String getError() {
@@ -21,4 +21,13 @@ public interface IDUUIStorageBackend {
      * @return true if error documents should be tracked, false otherwise
      */
     boolean shouldTrackErrorDocs();
+
+    /**
+     * Whether the storage backend persists the number of annotations after each component. Counting iterates the whole
+     * CAS, compact performance recording skips it for backends that do not need it.
+     * @return true if annotations should be counted, false otherwise
+     */
+    default boolean shouldCountAnnotations() {
+        return true;
+    }
 }
@@ -167,6 +167,11 @@ public class DUUIArangoDBStorageBackend implements IDUUIStorageBackend {
         return false;
     }
 
+    @Override
+    public boolean shouldCountAnnotations() {
+        return false;
+    }
+
     public void addNewRun(String name, DUUIComposer composer) throws SQLException {
         Vector<String> stringvec = new Vector<>();
         stringvec.add(_pipelineCollection.insertDocument(new DUUIArangoComposerConfiguration(name, composer.getWorkerCount())).getId());
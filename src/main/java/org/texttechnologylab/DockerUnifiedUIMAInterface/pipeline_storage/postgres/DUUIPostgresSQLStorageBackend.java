@@ -131,6 +131,11 @@ public class DUUIPostgresSQLStorageBackend implements IDUUIStorageBackend {
         return false;
     }
 
+    @Override
+    public boolean shouldCountAnnotations() {
+        return false;
+    }
+
     public void addNewRun(String name, DUUIComposer composer) throws SQLException {
     }
 
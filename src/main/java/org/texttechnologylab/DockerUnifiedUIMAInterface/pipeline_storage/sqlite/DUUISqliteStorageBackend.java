@@ -1,8 +1,11 @@
 package org.texttechnologylab.DockerUnifiedUIMAInterface.pipeline_storage.sqlite;
 
 import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIComposer;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIResourcePool;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.driver.DUUIPipelineComponent;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.driver.IDUUIPipelineComponent;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.DUUIMetricsWriter;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring.IDUUIMetricsSource;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.pipeline_storage.DUUIPipelineDocumentPerformance;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.pipeline_storage.DUUIPipelinePerformancePoint;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.pipeline_storage.IDUUIStorageBackend;
@@ -11,15 +14,60 @@ import java.io.IOException;
 import java.net.UnknownHostException;
 import java.sql.*;
 import java.time.Instant;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Do not use this class it is not finished and just a raw idea about how one could implement a postgres backend
+ * Storage backend writing the metrics of a run into a Sqlite database.
+ * <p>
+ * The metrics of a document are not written by the worker that processed it. They are put into a bounded queue, a
+ * writer thread drains it and inserts the rows in batches, one transaction per batch. A batch is committed once it
+ * holds the configured number of documents or the oldest document in it has waited for the flush interval. If the
+ * queue is full, workers wait for the writer, so a slow disk slows the pipeline down instead of filling the memory.
+ * The database runs in WAL mode, which lets a run be inspected while the writer is still committing.
+ * <p>
+ * If a batch cannot be committed, its documents are written again one by one, so only the documents that fail on
+ * their own are lost. They are counted by {@link #getFailed()}, metrics arriving after {@link #shutdown()} are counted
+ * by {@link #getDropped()}.
  */
-public class DUUISqliteStorageBackend implements IDUUIStorageBackend {
-    private ConcurrentLinkedQueue<Connection> _client;
+public class DUUISqliteStorageBackend implements IDUUIStorageBackend, IDUUIMetricsSource {
+    public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+    public static final int DEFAULT_FLUSH_SIZE = 256;
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 1000;
+
+    private static final String INSERT_DOCUMENT = "INSERT INTO pipeline_document(documentSize, waitTime, totalTime, document) VALUES (?,?,?,?)";
+    private static final String INSERT_DOCUMENT_PERF = "INSERT INTO pipeline_document_perf(pipelinename,componenthash,durationSerialize,durationDeserialize,durationAnnotator,durationMutexWait,durationComponentTotal,totalAnnotations, documentSize, serializedSize, error,document) VALUES (?,?,?,?,?,?,?,?,?,?,?,?)";
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final DUUIResourcePool<Connection> _client;
     private String _sqliteUrl;
 
+    private final ArrayBlockingQueue<Object> _queue;
+    private final Connection _writerConnection;
+    private final Thread _writer;
+    private volatile int _flushSize = DEFAULT_FLUSH_SIZE;
+    private volatile long _flushIntervalMs = DEFAULT_FLUSH_INTERVAL_MS;
+    private volatile boolean _closed = false;
+    private final AtomicLong _failed = new AtomicLong(0);
+    private final AtomicLong _dropped = new AtomicLong(0);
+
+    /**
+     * Asks the writer to commit everything queued before it, optionally stopping it afterwards.
+     */
+    private static class Flush {
+        final CountDownLatch done = new CountDownLatch(1);
+        final boolean stop;
+        volatile SQLException error = null;
+
+        Flush(boolean stop) {
+            this.stop = stop;
+        }
+    }
+
 
     /**
      * Whether to track error documents in the database or not
@@ -42,19 +90,15 @@ public class DUUISqliteStorageBackend implements IDUUIStorageBackend {
     public DUUISqliteStorageBackend(String sqliteurl, boolean trackErrorDocs) throws IOException, SQLException, InterruptedException {
         this.trackErrorDocs = trackErrorDocs;
 
-        _client = null;
         _sqliteUrl = "jdbc:sqlite:"+sqliteurl;
 
-        _client = null;
-        try {
-            _client = new ConcurrentLinkedQueue<>();
-            _client.add(DriverManager.getConnection(_sqliteUrl));
-            System.out.println("Connected to the Sqlite database successfully.");
-        } catch (SQLException e) {
-            System.out.println(e.getMessage());
-        }
-        Connection conn = _client.poll();
+        _client = new DUUIResourcePool<>();
+        Connection conn = connect();
+        System.out.println("Connected to the Sqlite database successfully.");
+
         Statement stmt = conn.createStatement();
+        // The journal mode is stored in the database file, the other connections use it as well
+        stmt.execute("PRAGMA journal_mode=WAL");
         stmt.execute("CREATE TABLE IF NOT EXISTS pipeline(name TEXT PRIMARY KEY, workers INT)");
         stmt.execute("CREATE TABLE IF NOT EXISTS pipeline_perf(name TEXT, startTime INT, endTime INT)");
         stmt.execute("CREATE TABLE IF NOT EXISTS pipeline_component(hash INT, name TEXT, description TEXT)");
@@ -66,127 +110,440 @@ public class DUUISqliteStorageBackend implements IDUUIStorageBackend {
                 "durationComponentTotal INT,totalAnnotations INT, documentSize INT, serializedSize INT," +
                 "error TEXT," +
                 "document TEXT)");
-
+        stmt.close();
 
         _client.add(conn);
+
+        _queue = new ArrayBlockingQueue<>(DEFAULT_QUEUE_CAPACITY);
+        _writerConnection = connect();
+        _writer = new Thread(this::write, "DUUISqliteWriter");
+        _writer.setDaemon(true);
+        _writer.start();
+    }
+
+    private Connection connect() throws SQLException {
+        Connection conn = DriverManager.getConnection(_sqliteUrl);
+        try (Statement stmt = conn.createStatement()) {
+            // Wait for the lock of another connection instead of failing with SQLITE_BUSY
+            stmt.execute("PRAGMA busy_timeout=5000");
+            // In WAL mode a commit does not have to wait for the disk, a power loss may only lose the last commits
+            stmt.execute("PRAGMA synchronous=NORMAL");
+        }
+        return conn;
     }
 
     public DUUISqliteStorageBackend withConnectionPoolSize(int poolsize) throws SQLException {
         for(int i = 1; i < poolsize; i++) {
-            _client = new ConcurrentLinkedQueue<>();
-            _client.add(DriverManager.getConnection(_sqliteUrl));
+            _client.add(connect());
             System.out.printf("[DUUISqliteStorageBackend] Populated connection pool %d/%d\n",i,poolsize);
         }
         return this;
     }
 
+    /**
+     * Sets the number of documents whose metrics are committed in one transaction.
+     *
+     * @param flushSize Number of documents per transaction
+     * @return this
+     */
+    public DUUISqliteStorageBackend withFlushSize(int flushSize) {
+        if (flushSize < 1) {
+            throw new IllegalArgumentException("The flush size has to be at least 1");
+        }
+        _flushSize = flushSize;
+        return this;
+    }
+
+    /**
+     * Sets how long the metrics of a document wait for further documents before they are committed.
+     *
+     * @param flushIntervalMs Maximum time in milliseconds between queueing metrics and committing them
+     * @return this
+     */
+    public DUUISqliteStorageBackend withFlushInterval(long flushIntervalMs) {
+        if (flushIntervalMs < 0) {
+            throw new IllegalArgumentException("The flush interval must not be negative");
+        }
+        _flushIntervalMs = flushIntervalMs;
+        return this;
+    }
+
     public void shutdown() throws UnknownHostException {
         System.out.printf("[DUUISqliteStorageBackend] Shutting down.\n");
+        try {
+            flush(true);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        try {
+            _writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Metrics queued while the writer was stopping
+        drain();
+        _closed = true;
+        try {
+            _writerConnection.close();
+            for (Connection conn : _client) {
+                conn.close();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
     }
 
     public void addNewRun(String name, DUUIComposer composer) throws SQLException {
-        Connection conn = null;
-        while(conn == null) {
-            conn = _client.poll();
-        }
-
-        PreparedStatement dStmt = conn.prepareStatement("DELETE FROM pipeline WHERE name = ?");;
-        dStmt.setString(1, name);
-        dStmt.execute();
+        Connection conn = _client.takeUninterruptibly();
+        try {
+            PreparedStatement dStmt = conn.prepareStatement("DELETE FROM pipeline WHERE name = ?");;
+            dStmt.setString(1, name);
+            dStmt.execute();
 
-        dStmt = conn.prepareStatement("DELETE FROM pipeline_perf WHERE name = ?");
-        dStmt.setString(1, name);
-        dStmt.execute();
-        //dStmt.executeUpdate();
+            dStmt = conn.prepareStatement("DELETE FROM pipeline_perf WHERE name = ?");
+            dStmt.setString(1, name);
+            dStmt.execute();
+            //dStmt.executeUpdate();
 
-        PreparedStatement cleanUp = conn.prepareStatement("DELETE FROM pipeline_document_perf where pipelinename = ?;");
-        cleanUp.setString(1, name);
-        cleanUp.execute();
+            PreparedStatement cleanUp = conn.prepareStatement("DELETE FROM pipeline_document_perf where pipelinename = ?;");
+            cleanUp.setString(1, name);
+            cleanUp.execute();
 
-        PreparedStatement cleanUp2 = conn.prepareStatement("DELETE FROM pipeline_component where name = ?;");
-        cleanUp2.setString(1, name);
-        cleanUp2.execute();
+            PreparedStatement cleanUp2 = conn.prepareStatement("DELETE FROM pipeline_component where name = ?;");
+            cleanUp2.setString(1, name);
+            cleanUp2.execute();
 
 
-        PreparedStatement stmt = conn.prepareStatement("INSERT INTO pipeline (name,workers) VALUES (?,?)");
-        stmt.setString(1,name);
-        stmt.setLong(2,composer.getWorkerCount());
-        stmt.executeUpdate();
+            PreparedStatement stmt = conn.prepareStatement("INSERT INTO pipeline (name,workers) VALUES (?,?)");
+            stmt.setString(1,name);
+            stmt.setLong(2,composer.getWorkerCount());
+            stmt.executeUpdate();
 
-        for(DUUIPipelineComponent comp : composer.getPipeline()) {
-            String value = comp.toJson();
+            PreparedStatement stmt2 = conn.prepareStatement("INSERT INTO pipeline_component (hash,name,description) VALUES (?,?,?)");
+            for(DUUIPipelineComponent comp : composer.getPipeline()) {
+                String value = comp.toJson();
 
-            // Note switched from "value.hashCode()" to the "finalized" hash to be able to match the value to table "pipeline_document_perf"
-            long hash = comp.getFinalizedRepresentationHash();
+                // Note switched from "value.hashCode()" to the "finalized" hash to be able to match the value to table "pipeline_document_perf"
+                long hash = comp.getFinalizedRepresentationHash();
 
-            PreparedStatement stmt2 = conn.prepareStatement("INSERT INTO pipeline_component (hash,name,description) VALUES (?,?,?)");
-            stmt2.setLong(1,hash);
-            stmt2.setString(2,name);
-            stmt2.setString(3,value);
-            stmt2.executeUpdate();
+                stmt2.setLong(1,hash);
+                stmt2.setString(2,name);
+                stmt2.setString(3,value);
+                stmt2.executeUpdate();
+            }
+        } finally {
+            _client.add(conn);
         }
-        _client.add(conn);
     }
 
+    /**
+     * Queues the metrics of a document for the writer, waiting while the queue is full. If the writer is not running
+     * any more, the metrics are written directly. After {@link #shutdown()} they are dropped.
+     */
     @Override
     public void addMetricsForDocument(DUUIPipelineDocumentPerformance perf) {
-        Connection conn = null;
-        while(conn == null) {
-            conn = _client.poll();
+        if (!_writer.isAlive()) {
+            writeDirectly(perf);
+            return;
         }
         try {
-            PreparedStatement stmt = null;
-            stmt = conn.prepareStatement("INSERT INTO pipeline_document(documentSize, waitTime, totalTime, document) VALUES (?,?,?,?)");
-            stmt.setLong(1, perf.getDocumentSize());
-            stmt.setLong(2, perf.getDocumentWaitTime());
-            stmt.setLong(3, perf.getTotalTime());
-            stmt.setString(4,perf.getDocument());
-            stmt.executeUpdate();
+            while (!_queue.offer(perf, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                if (!_writer.isAlive()) {
+                    writeDirectly(perf);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writeDirectly(perf);
+            return;
         }
-        catch(SQLException e) {
+        // The writer may have drained the queue and stopped right before the metrics were queued
+        if (!_writer.isAlive() && _queue.remove(perf)) {
+            writeDirectly(perf);
+        }
+    }
+
+    private void writeDirectly(DUUIPipelineDocumentPerformance perf) {
+        if (_closed) {
+            _dropped.incrementAndGet();
+            return;
+        }
+        Connection conn = _client.takeUninterruptibly();
+        try (PreparedStatement documents = conn.prepareStatement(INSERT_DOCUMENT);
+             PreparedStatement points = conn.prepareStatement(INSERT_DOCUMENT_PERF)) {
+            conn.setAutoCommit(false);
+            try {
+                insert(conn, documents, points, perf);
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException | RuntimeException e) {
             e.printStackTrace();
+            _failed.incrementAndGet();
+        } finally {
+            _client.add(conn);
         }
+    }
+
+    /**
+     * Writes the metrics of all queued documents directly, releasing the flushes waiting for them.
+     */
+    private void drain() {
+        Object item;
+        while ((item = _queue.poll()) != null) {
+            if (item instanceof DUUIPipelineDocumentPerformance) {
+                writeDirectly((DUUIPipelineDocumentPerformance) item);
+            } else {
+                ((Flush) item).done.countDown();
+            }
+        }
+    }
 
-        for(DUUIPipelinePerformancePoint points : perf.getPerformancePoints()) {
-            PreparedStatement stmt2 = null;
+    /**
+     * @return Number of documents whose metrics could not be written
+     */
+    public long getFailed() {
+        return _failed.get();
+    }
+
+    /**
+     * @return Number of documents whose metrics arrived after the backend was shut down
+     */
+    public long getDropped() {
+        return _dropped.get();
+    }
+
+    /**
+     * Waits until the metrics of all documents queued so far are committed.
+     *
+     * @throws SQLException If the last batch could not be committed
+     */
+    public void flush() throws SQLException {
+        flush(false);
+    }
+
+    private void flush(boolean stop) throws SQLException {
+        if (!_writer.isAlive()) {
+            return;
+        }
+        Flush flush = new Flush(stop);
+        try {
+            while (!_queue.offer(flush, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                if (!_writer.isAlive()) return;
+            }
+            while (!flush.done.await(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                if (!_writer.isAlive()) return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (flush.error != null) {
+            throw flush.error;
+        }
+    }
+
+    /**
+     * Body of the writer thread. The statements are prepared once and reused for every batch.
+     */
+    private void write() {
+        // Documents of the open transaction, written one by one if it cannot be committed
+        List<DUUIPipelineDocumentPerformance> batch = new ArrayList<>();
+        try (PreparedStatement documents = _writerConnection.prepareStatement(INSERT_DOCUMENT);
+             PreparedStatement points = _writerConnection.prepareStatement(INSERT_DOCUMENT_PERF)) {
+            _writerConnection.setAutoCommit(false);
+
+            long deadline = 0;
+            while (true) {
+                Object item;
+                if (batch.isEmpty()) {
+                    item = _queue.take();
+                } else {
+                    item = _queue.poll(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+                }
+
+                if (item instanceof DUUIPipelineDocumentPerformance) {
+                    DUUIPipelineDocumentPerformance perf = (DUUIPipelineDocumentPerformance) item;
+                    if (batch.isEmpty()) {
+                        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(_flushIntervalMs);
+                    }
+                    try {
+                        addBatch(documents, points, perf);
+                        batch.add(perf);
+                    } catch (SQLException | RuntimeException e) {
+                        e.printStackTrace();
+                        _failed.incrementAndGet();
+                        // Drop the rows the document may have added before it failed
+                        documents.clearBatch();
+                        points.clearBatch();
+                        for (DUUIPipelineDocumentPerformance pending : batch) {
+                            addBatch(documents, points, pending);
+                        }
+                    }
+                    if (batch.size() >= _flushSize) {
+                        commit(documents, points, batch);
+                    }
+                } else if (item instanceof Flush) {
+                    Flush flush = (Flush) item;
+                    if (!batch.isEmpty()) {
+                        flush.error = commit(documents, points, batch);
+                    }
+                    flush.done.countDown();
+                    if (flush.stop) {
+                        break;
+                    }
+                } else {
+                    // The flush interval of the oldest pending document has passed
+                    commit(documents, points, batch);
+                }
+            }
+        } catch (InterruptedException e) {
+            System.err.println("[DUUISqliteStorageBackend] Writer interrupted, queued metrics are written directly.");
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("[DUUISqliteStorageBackend] Writer failed, queued metrics are written directly.");
+            e.printStackTrace();
+        }
+
+        if (!batch.isEmpty()) {
+            // Release the lock of the open transaction, its documents are written on another connection
             try {
-                stmt2 = conn.prepareStatement("INSERT INTO pipeline_document_perf(pipelinename,componenthash,durationSerialize,durationDeserialize,durationAnnotator,durationMutexWait,durationComponentTotal,totalAnnotations, documentSize, serializedSize, error,document) VALUES (?,?,?,?,?,?,?,?,?,?,?,?)");
-
-                stmt2.setString(1,perf.getRunKey());
-                stmt2.setLong(2,Long.parseLong(points.getKey()));
-                stmt2.setLong(3,points.getDurationSerialize());
-                stmt2.setLong(4,points.getDurationDeserialize());
-                stmt2.setLong(5,points.getDurationAnnotator());
-                stmt2.setLong(6,points.getDurationMutexWait());
-                stmt2.setLong(7,points.getDurationComponentTotal());
-                stmt2.setLong(8,points.getNumberOfAnnotations());
-                stmt2.setLong(9,points.getDocumentSize());
-                stmt2.setLong(10,points.getSerializedSize());
-                stmt2.setString(11,points.getError());
-                stmt2.setString(12,points.getDocument());
-                stmt2.executeUpdate();
+                _writerConnection.rollback();
             } catch (SQLException e) {
                 e.printStackTrace();
             }
+            for (DUUIPipelineDocumentPerformance perf : batch) {
+                writeDirectly(perf);
+            }
         }
-        _client.add(conn);
+        // Do not lose metrics that were queued before the writer stopped
+        drain();
+    }
+
+    /**
+     * Commits the open transaction. If that fails, the documents of the batch are written again one transaction each.
+     *
+     * @return The last error of a document that could not be written, null if all were written
+     */
+    private SQLException commit(PreparedStatement documents, PreparedStatement points, List<DUUIPipelineDocumentPerformance> batch) {
+        try {
+            documents.executeBatch();
+            points.executeBatch();
+            _writerConnection.commit();
+            return null;
+        } catch (SQLException e) {
+            System.err.printf("[DUUISqliteStorageBackend] Committing the metrics of %d documents failed, writing them one by one.\n", batch.size());
+            e.printStackTrace();
+            try {
+                documents.clearBatch();
+                points.clearBatch();
+                _writerConnection.rollback();
+            } catch (SQLException e2) {
+                e2.printStackTrace();
+                _failed.addAndGet(batch.size());
+                return e2;
+            }
+
+            SQLException error = null;
+            for (DUUIPipelineDocumentPerformance perf : batch) {
+                try {
+                    insert(_writerConnection, documents, points, perf);
+                } catch (SQLException | RuntimeException e2) {
+                    e2.printStackTrace();
+                    _failed.incrementAndGet();
+                    error = e2 instanceof SQLException ? (SQLException) e2 : new SQLException(e2);
+                }
+            }
+            return error;
+        } finally {
+            batch.clear();
+        }
+    }
+
+    /**
+     * Writes the metrics of a single document in its own transaction, rolling it back if they cannot be written.
+     */
+    private static void insert(Connection conn, PreparedStatement documents, PreparedStatement points, DUUIPipelineDocumentPerformance perf) throws SQLException {
+        try {
+            addBatch(documents, points, perf);
+            documents.executeBatch();
+            points.executeBatch();
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            documents.clearBatch();
+            points.clearBatch();
+            conn.rollback();
+            throw e;
+        }
+    }
+
+    /**
+     * Adds the rows of a document to the batches. All values are read and checked before the first row is added, so a
+     * malformed performance point cannot leave the document without its points.
+     */
+    private static void addBatch(PreparedStatement documents, PreparedStatement points, DUUIPipelineDocumentPerformance perf) throws SQLException {
+        List<DUUIPipelinePerformancePoint> performancePoints = perf.getPerformancePoints();
+        long[][] values = new long[performancePoints.size()][];
+        for (int i = 0; i < values.length; i++) {
+            DUUIPipelinePerformancePoint point = performancePoints.get(i);
+            values[i] = new long[]{
+                Long.parseLong(point.getKey()),
+                point.getDurationSerialize(),
+                point.getDurationDeserialize(),
+                point.getDurationAnnotator(),
+                point.getDurationMutexWait(),
+                point.getDurationComponentTotal(),
+                point.getNumberOfAnnotations(),
+                point.getDocumentSize(),
+                point.getSerializedSize()
+            };
+        }
+
+        documents.setLong(1, perf.getDocumentSize());
+        documents.setLong(2, perf.getDocumentWaitTime());
+        documents.setLong(3, perf.getTotalTime());
+        documents.setString(4,perf.getDocument());
+        documents.addBatch();
+
+        for (int i = 0; i < values.length; i++) {
+            DUUIPipelinePerformancePoint point = performancePoints.get(i);
+            points.setString(1,perf.getRunKey());
+            for (int j = 0; j < values[i].length; j++) {
+                points.setLong(j + 2, values[i][j]);
+            }
+            points.setString(11,point.getError());
+            points.setString(12,point.getDocument());
+            points.addBatch();
+        }
+    }
+
+    @Override
+    public void collectMetrics(DUUIMetricsWriter metrics) {
+        metrics.gauge("duui_sqlite_queue", "Documents whose metrics wait for the Sqlite writer", _queue.size())
+                .gauge("duui_sqlite_idle_connections", "Idle connections of the Sqlite storage backend", _client.size())
+                .counter("duui_sqlite_failed", "Documents whose metrics could not be written to the Sqlite database", getFailed())
+                .counter("duui_sqlite_dropped", "Documents whose metrics arrived after the Sqlite storage backend was shut down", getDropped());
     }
 
     public IDUUIPipelineComponent loadComponent(String id) {
         return new IDUUIPipelineComponent();
     }
+
+    /**
+     * Commits the metrics of all queued documents before the run is marked as finished.
+     */
     public void finalizeRun(String name, Instant start, Instant end) throws SQLException {
-        Connection conn = null;
-        while(conn == null) {
-            conn = _client.poll();
-        }
-        PreparedStatement stmt2 = conn.prepareStatement("INSERT INTO pipeline_perf(name,startTime,endTime) VALUES (?,?,?)");
-        stmt2.setString(1,name);
-        stmt2.setLong(2,start.toEpochMilli());
-        stmt2.setLong(3,end.toEpochMilli());
-        stmt2.executeUpdate();
-        _client.add(conn);
+        flush();
+        Connection conn = _client.takeUninterruptibly();
+        try {
+            PreparedStatement stmt2 = conn.prepareStatement("INSERT INTO pipeline_perf(name,startTime,endTime) VALUES (?,?,?)");
+            stmt2.setString(1,name);
+            stmt2.setLong(2,start.toEpochMilli());
+            stmt2.setLong(3,end.toEpochMilli());
+            stmt2.executeUpdate();
+        } finally {
+            _client.add(conn);
+        }
     }
 
 }
-
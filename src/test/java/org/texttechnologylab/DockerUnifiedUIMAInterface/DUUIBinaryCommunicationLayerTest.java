@@ -0,0 +1,175 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.apache.uima.util.CasIOUtils;
+import org.apache.uima.util.CasLoadMode;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.InvalidObjectException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.texttechnologylab.DockerUnifiedUIMAInterface.DUUITestPipeline.annotations;
+
+class DUUIBinaryCommunicationLayerTest {
+
+    private static JCas document(String text) throws Exception {
+        JCas jc = JCasFactory.createJCas();
+        jc.setDocumentText(text);
+        jc.setDocumentLanguage("de");
+        return jc;
+    }
+
+    private static byte[] serialize(DUUIBinaryCommunicationLayer layer, JCas jc, Map<String, String> parameters) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        layer.serialize(jc, out, parameters, CAS.NAME_DEFAULT_SOFA);
+        return out.toByteArray();
+    }
+
+    /**
+     * Header of a message as written by the layer, followed by the given bytes.
+     */
+    private static byte[] message(int magic, byte version, byte compression, String view, byte[] cas) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(magic);
+        header.writeByte(version);
+        header.writeByte(compression);
+        header.writeUTF(view);
+        header.writeInt(0);
+        header.write(cas);
+        header.flush();
+        return out.toByteArray();
+    }
+
+    /**
+     * Receives a request like a component, annotates the document and sends the response back through the layer.
+     */
+    private static void roundTrip(boolean zstd) throws Exception {
+        DUUIBinaryCommunicationLayer layer = new DUUIBinaryCommunicationLayer(zstd);
+        JCas jc = document("Hallo Welt");
+        new Annotation(jc, 0, 5).addToIndexes();
+
+        Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("model", "small");
+        parameters.put("batch", "8");
+        DUUIBinaryCommunicationLayer.Message request = DUUIBinaryCommunicationLayer.decode(
+            new ByteArrayInputStream(serialize(layer, jc, parameters)));
+        assertEquals(CAS.NAME_DEFAULT_SOFA, request.getView());
+        assertEquals(List.of("model", "batch"), List.copyOf(request.getParameters().keySet()));
+        assertEquals("8", request.getParameters().get("batch"));
+
+        JCas component = JCasFactory.createJCas();
+        CasIOUtils.load(request.getCas(), null, component.getCas(), CasLoadMode.DEFAULT);
+        assertEquals("Hallo Welt", component.getDocumentText());
+        assertEquals("de", component.getDocumentLanguage());
+        assertEquals(1, annotations(component));
+        new Annotation(component, 6, 10).addToIndexes();
+
+        layer.deserialize(jc, new ByteArrayInputStream(serialize(layer, component, Map.of())), CAS.NAME_DEFAULT_SOFA);
+        assertEquals("Hallo Welt", jc.getDocumentText());
+        assertEquals(2, annotations(jc));
+        assertTrue(JCasUtil.select(jc, Annotation.class).stream().anyMatch(annotation -> annotation.getCoveredText().equals("Welt")));
+    }
+
+    @Test
+    public void testRoundTripPlain() throws Exception {
+        roundTrip(false);
+    }
+
+    @Test
+    public void testRoundTripZstd() throws Exception {
+        roundTrip(true);
+    }
+
+    @Test
+    public void testHeader() throws Exception {
+        for (boolean zstd : new boolean[]{false, true}) {
+            byte[] body = serialize(new DUUIBinaryCommunicationLayer(zstd), document("Text"), Map.of("key", "value"));
+            DataInputStream header = new DataInputStream(new ByteArrayInputStream(body));
+
+            assertEquals(DUUIBinaryCommunicationLayer.MAGIC, header.readInt());
+            assertEquals(DUUIBinaryCommunicationLayer.VERSION, header.readByte());
+            assertEquals(zstd ? DUUIBinaryCommunicationLayer.COMPRESSION_ZSTD : DUUIBinaryCommunicationLayer.COMPRESSION_NONE, header.readByte());
+            assertEquals(CAS.NAME_DEFAULT_SOFA, header.readUTF());
+            assertEquals(1, header.readInt());
+            assertEquals("key", header.readUTF());
+            assertEquals("value", header.readUTF());
+            if (zstd) {
+                // Magic number of a zstd frame, little endian
+                assertEquals(0xFD2FB528, Integer.reverseBytes(header.readInt()));
+            }
+        }
+    }
+
+    @Test
+    public void testZstdKeepsStreamOfCallerOpen() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                fail("The stream of the caller must stay open");
+            }
+        };
+        new DUUIBinaryCommunicationLayer(true).serialize(document("Text"), out, null, CAS.NAME_DEFAULT_SOFA);
+        assertTrue(out.size() > 0);
+    }
+
+    @Test
+    public void testNullParameters() throws Exception {
+        byte[] body = serialize(new DUUIBinaryCommunicationLayer(false), document("Text"), null);
+        assertEquals(Map.of(), DUUIBinaryCommunicationLayer.decode(new ByteArrayInputStream(body)).getParameters());
+    }
+
+    @Test
+    public void testRejectsOtherViews() throws Exception {
+        DUUIBinaryCommunicationLayer layer = new DUUIBinaryCommunicationLayer(false);
+        JCas jc = document("Text");
+        JCas view = jc.createView("other");
+        view.setDocumentText("Other");
+
+        assertThrows(IllegalArgumentException.class, () -> layer.serialize(jc, new ByteArrayOutputStream(), Map.of(), "other"));
+        assertThrows(IllegalArgumentException.class, () -> layer.serialize(view, new ByteArrayOutputStream(), Map.of(), CAS.NAME_DEFAULT_SOFA));
+        byte[] body = serialize(layer, jc, Map.of());
+        assertThrows(IllegalArgumentException.class, () -> layer.deserialize(jc, new ByteArrayInputStream(body), "other"));
+        assertThrows(IllegalArgumentException.class, () -> layer.deserialize(view, new ByteArrayInputStream(body), CAS.NAME_DEFAULT_SOFA));
+
+        // A response for another view is refused before its CAS is read
+        byte[] otherView = message(DUUIBinaryCommunicationLayer.MAGIC, DUUIBinaryCommunicationLayer.VERSION, DUUIBinaryCommunicationLayer.COMPRESSION_NONE, "other", new byte[0]);
+        assertThrows(InvalidObjectException.class, () -> layer.deserialize(jc, new ByteArrayInputStream(otherView), CAS.NAME_DEFAULT_SOFA));
+        assertEquals("Text", jc.getDocumentText());
+    }
+
+    @Test
+    public void testRejectsOtherFormats() throws Exception {
+        byte[] magic = message(0x3C3F786D, DUUIBinaryCommunicationLayer.VERSION, DUUIBinaryCommunicationLayer.COMPRESSION_NONE, CAS.NAME_DEFAULT_SOFA, new byte[0]);
+        byte[] version = message(DUUIBinaryCommunicationLayer.MAGIC, (byte) 2, DUUIBinaryCommunicationLayer.COMPRESSION_NONE, CAS.NAME_DEFAULT_SOFA, new byte[0]);
+        byte[] compression = message(DUUIBinaryCommunicationLayer.MAGIC, DUUIBinaryCommunicationLayer.VERSION, (byte) 7, CAS.NAME_DEFAULT_SOFA, new byte[0]);
+
+        for (byte[] body : List.of(magic, version, compression)) {
+            assertThrows(InvalidObjectException.class, () -> DUUIBinaryCommunicationLayer.decode(new ByteArrayInputStream(body)));
+        }
+    }
+
+    @Test
+    public void testFromDescriptor() {
+        assertFalse(DUUIBinaryCommunicationLayer.fromDescriptor("duui-binary-cas/1\n").isZstd());
+        assertTrue(DUUIBinaryCommunicationLayer.fromDescriptor("duui-binary-cas/1 compression=zstd").isZstd());
+        assertTrue(DUUIBinaryCommunicationLayer.fromDescriptor("duui-binary-cas/1\ncompression=zstd\n").isZstd());
+        assertNull(DUUIBinaryCommunicationLayer.fromDescriptor("serial = luajava.bindClass(\"org.apache.uima.cas.impl.XmiCasSerializer\")"));
+    }
+
+    @Test
+    public void testReplacesTheCas() {
+        assertFalse(new DUUIBinaryCommunicationLayer(false).isAdditive());
+    }
+}
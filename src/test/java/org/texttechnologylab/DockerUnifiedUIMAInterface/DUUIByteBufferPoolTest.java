@@ -0,0 +1,117 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DUUIByteBufferPoolTest {
+
+    @Test
+    public void testReleasedBuffersAreReused() {
+        DUUIByteBufferPool pool = new DUUIByteBufferPool(16, 4, 1024);
+        DUUIByteBufferPool.Buffer buffer = pool.acquire();
+        buffer.write(1);
+        pool.release(buffer);
+
+        assertEquals(1, pool.getPooled());
+        assertEquals(16, pool.getPooledBytes());
+        DUUIByteBufferPool.Buffer reused = pool.acquire();
+        assertSame(buffer, reused);
+        // Returned buffers are emptied
+        assertEquals(0, reused.size());
+        assertEquals(1, pool.getAllocated());
+        assertEquals(1, pool.getReused());
+        assertEquals(0, pool.getPooled());
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void testNullIsIgnored() {
+        DUUIByteBufferPool pool = new DUUIByteBufferPool(16, 4, 1024);
+        pool.release(null);
+        assertEquals(0, pool.getPooled());
+    }
+
+    @Test
+    public void testMaxPooled() {
+        DUUIByteBufferPool pool = new DUUIByteBufferPool(16, 2, 1024);
+        DUUIByteBufferPool.Buffer first = pool.acquire();
+        DUUIByteBufferPool.Buffer second = pool.acquire();
+        DUUIByteBufferPool.Buffer third = pool.acquire();
+
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+        assertEquals(2, pool.getPooled());
+        assertEquals(32, pool.getPooledBytes());
+    }
+
+    @Test
+    public void testGrownBuffersAreNotPooled() {
+        DUUIByteBufferPool pool = new DUUIByteBufferPool(16, 4, 64);
+        DUUIByteBufferPool.Buffer buffer = pool.acquire();
+        buffer.write(new byte[100], 0, 100);
+        assertTrue(buffer.capacity() > 64);
+
+        pool.release(buffer);
+        assertEquals(0, pool.getPooled());
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void testMaxPooledBytes() {
+        DUUIByteBufferPool pool = new DUUIByteBufferPool(16, 10, 64, 80);
+        DUUIByteBufferPool.Buffer large = pool.acquire();
+        large.ensureCapacity(64);
+        DUUIByteBufferPool.Buffer small = pool.acquire();
+        DUUIByteBufferPool.Buffer tooMuch = pool.acquire();
+
+        pool.release(large);
+        pool.release(small);
+        // 64 + 16 bytes are pooled, another 16 would exceed the limit
+        pool.release(tooMuch);
+        assertEquals(2, pool.getPooled());
+        assertEquals(80, pool.getPooledBytes());
+
+        // Taking a buffer frees its bytes for the next release
+        DUUIByteBufferPool.Buffer taken = pool.acquire();
+        pool.release(tooMuch);
+        assertEquals(2, pool.getPooled());
+        assertEquals(80 - taken.capacity() + 16, pool.getPooledBytes());
+    }
+
+    @Test
+    public void testBufferWriteAndRead() throws Exception {
+        DUUIByteBufferPool.Buffer buffer = new DUUIByteBufferPool(4, 1, 1024).acquire();
+        byte[] data = "response body".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer chunk = ByteBuffer.wrap(data, 2, 5);
+
+        buffer.write(ByteBuffer.wrap(data, 0, 2));
+        buffer.write(chunk);
+        assertFalse(chunk.hasRemaining());
+        buffer.write(ByteBuffer.wrap(data, 7, data.length - 7));
+
+        assertEquals(data.length, buffer.size());
+        assertTrue(buffer.capacity() >= data.length);
+        assertArrayEquals(data, buffer.toInputStream().readAllBytes());
+        assertEquals("response body", buffer.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testEnsureCapacityKeepsContent() {
+        DUUIByteBufferPool.Buffer buffer = new DUUIByteBufferPool(4, 1, 1024).acquire();
+        buffer.write(7);
+        buffer.ensureCapacity(100);
+
+        assertEquals(100, buffer.capacity());
+        assertEquals(1, buffer.size());
+        assertEquals(7, buffer.array()[0]);
+
+        // Never shrinks
+        buffer.ensureCapacity(10);
+        assertEquals(100, buffer.capacity());
+    }
+}
@@ -0,0 +1,164 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DUUICompletionTrackerTest {
+
+    /**
+     * Runs a worker that dies of an uncaught exception and waits until its handler has run.
+     */
+    private static void runDyingWorker(DUUICompletionTracker tracker, Runnable body) throws InterruptedException {
+        Thread worker = new Thread(() -> {
+            body.run();
+            throw new RuntimeException("Worker died");
+        });
+        worker.setUncaughtExceptionHandler(tracker.endOnFailure());
+        worker.start();
+        worker.join();
+    }
+
+    @Test
+    public void testEmptyInputCompletes() throws Exception {
+        DUUICompletionTracker tracker = new DUUICompletionTracker();
+        assertFalse(tracker.isCompleted());
+
+        tracker.inputFinished();
+        assertTrue(tracker.isCompleted());
+        assertTrue(tracker.awaitCompletion(0, TimeUnit.MILLISECONDS));
+        assertNotNull(tracker.getCompletedAt());
+    }
+
+    @Test
+    public void testCompletesWhenInputFinishedAndLastDocumentEnds() throws Exception {
+        DUUICompletionTracker tracker = new DUUICompletionTracker();
+        assertTrue(tracker.begin());
+        assertTrue(tracker.begin());
+        assertEquals(2, tracker.getInFlight());
+
+        tracker.inputFinished();
+        assertFalse(tracker.isCompleted());
+        assertFalse(tracker.awaitCompletion(1, TimeUnit.MILLISECONDS));
+
+        tracker.end();
+        assertFalse(tracker.isCompleted());
+        assertEquals(1, tracker.getInFlight());
+        assertNull(tracker.getCompletedAt());
+
+        tracker.endProcessed();
+        assertTrue(tracker.isCompleted());
+        assertFalse(tracker.isCancelled());
+        assertEquals(0, tracker.getInFlight());
+        assertEquals(1, tracker.getProcessed());
+        assertNotNull(tracker.getCompletedAt());
+    }
+
+    @Test
+    public void testDocumentsEndingBeforeInputFinishesDoNotComplete() {
+        DUUICompletionTracker tracker = new DUUICompletionTracker();
+        tracker.begin();
+        tracker.endProcessed();
+
+        // The input may still deliver documents
+        assertFalse(tracker.isCompleted());
+        tracker.inputFinished();
+        assertTrue(tracker.isCompleted());
+    }
+
+    @Test
+    public void testInputFinishedTwice() {
+        DUUICompletionTracker tracker = new DUUICompletionTracker();
+        tracker.begin();
+        tracker.inputFinished();
+        // A second call must not take the party of the document in flight
+        tracker.inputFinished();
+        assertFalse(tracker.isCompleted());
+        tracker.end();
+        assertTrue(tracker.isCompleted());
+    }
+
+    @Test
+    public void testWakesWaitingThreads() throws Exception {
+        DUUICompletionTracker tracker = new DUUICompletionTracker();
+        tracker.begin();
+        CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> {
+            try {
+                tracker.awaitCompletion();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        tracker.inputFinished();
+        assertFalse(waiting.isDone());
+        tracker.end();
+        waiting.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testBeginAfterCompletionIsRefused() {
+        DUUICompletionTracker tracker = new DUUICompletionTracker();
+        tracker.inputFinished();
+
+        assertFalse(tracker.begin());
+        assertEquals(0, tracker.getInFlight());
+    }
+
+    @Test
+    public void testCancelCompletesWithDocumentsInFlight() throws Exception {
+        DUUICompletionTracker tracker = new DUUICompletionTracker();
+        tracker.begin();
+
+        tracker.cancel();
+        assertTrue(tracker.isCompleted());
+        assertTrue(tracker.isCancelled());
+        assertTrue(tracker.awaitCompletion(0, TimeUnit.MILLISECONDS));
+        assertNotNull(tracker.getCompletedAt());
+
+        // Late ends of the cancelled documents are harmless
+        tracker.end();
+    }
+
+    @Test
+    public void testWorkerDyingWhileHoldingDocumentEndsIt() throws Exception {
+        DUUICompletionTracker tracker = new DUUICompletionTracker();
+        runDyingWorker(tracker, () -> assertTrue(tracker.begin()));
+
+        assertEquals(0, tracker.getInFlight());
+        tracker.inputFinished();
+        assertTrue(tracker.isCompleted());
+    }
+
+    @Test
+    public void testWorkerDyingWithHandedOverDocumentEndsIt() throws Exception {
+        DUUICompletionTracker tracker = new DUUICompletionTracker();
+        // Begun by the thread reading the input, then handed to a worker
+        tracker.begin();
+        tracker.inputFinished();
+
+        runDyingWorker(tracker, tracker::hold);
+        assertTrue(tracker.isCompleted());
+    }
+
+    @Test
+    public void testWorkerDyingBetweenDocumentsEndsNothing() throws Exception {
+        DUUICompletionTracker tracker = new DUUICompletionTracker();
+        tracker.begin();
+        runDyingWorker(tracker, () -> {
+            tracker.begin();
+            tracker.endProcessed();
+        });
+
+        // Ending anything here would take the party of the other document or of the input
+        assertEquals(1, tracker.getInFlight());
+        tracker.inputFinished();
+        assertFalse(tracker.isCompleted());
+        tracker.end();
+        assertTrue(tracker.isCompleted());
+        assertEquals(1, tracker.getProcessed());
+    }
+}
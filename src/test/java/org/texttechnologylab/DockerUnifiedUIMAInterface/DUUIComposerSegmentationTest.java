@@ -0,0 +1,113 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface;
+
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.texttechnologylab.DockerUnifiedUIMAInterface.DUUITestPipeline.annotate;
+import static org.texttechnologylab.DockerUnifiedUIMAInterface.DUUITestPipeline.annotations;
+
+class DUUIComposerSegmentationTest {
+    private final DUUITestPipeline.LocalDriver _driver = new DUUITestPipeline.LocalDriver();
+    private final List<String> _log = Collections.synchronizedList(new ArrayList<>());
+    private DUUIComposer _composer;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        DUUITestPipeline.WordSegmentation.SEGMENTED.set(0);
+        _composer = new DUUIComposer()
+            .withSkipVerification(true)
+            .addDriver(_driver);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        _composer.shutdown();
+    }
+
+    /**
+     * Adds a component annotating the segment, logging how many annotations it found.
+     */
+    private void add(String name, DUUITestPipeline.WordSegmentation segmentationStrategy) throws Exception {
+        _composer.add(_driver.component(name, jc -> {
+            _log.add(name + ":" + jc.getDocumentText() + ":" + annotations(jc));
+            annotate(jc);
+        }, segmentationStrategy));
+    }
+
+    private String run(String text) throws Exception {
+        JCas jc = JCasFactory.createJCas();
+        jc.setDocumentText(text);
+        _composer.run(jc);
+        return jc.getDocumentText();
+    }
+
+    @Test
+    public void testSharedStrategyIsSegmentedOnce() throws Exception {
+        DUUITestPipeline.WordSegmentation words = new DUUITestPipeline.WordSegmentation();
+        add("first", words);
+        add("second", words);
+        _composer.withPipelineSegmentation(true);
+
+        assertEquals("a:2 b:2", run("a b"));
+        assertEquals(1, DUUITestPipeline.WordSegmentation.SEGMENTED.get());
+        // Every segment is processed by both components before the next one, the second sees the first's annotation
+        assertEquals(List.of("first:a:0", "second:a:1", "first:b:0", "second:b:1"), _log);
+    }
+
+    @Test
+    public void testSharedStrategyIsSegmentedOnceInParallel() throws Exception {
+        DUUITestPipeline.WordSegmentation words = new DUUITestPipeline.WordSegmentation();
+        add("first", words);
+        add("second", words);
+        _composer.withPipelineSegmentation(true).withParallelSegments(2);
+
+        assertEquals("a:2 b:2 c:2", run("a b c"));
+        assertEquals(1, DUUITestPipeline.WordSegmentation.SEGMENTED.get());
+        assertEquals(List.of("first:a:0", "first:b:0", "first:c:0", "second:a:1", "second:b:1", "second:c:1"),
+            _log.stream().sorted().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testWithoutPipelineSegmentationEveryComponentSegments() throws Exception {
+        DUUITestPipeline.WordSegmentation words = new DUUITestPipeline.WordSegmentation();
+        add("first", words);
+        add("second", words);
+
+        // The second component segments the merged result of the first
+        assertEquals("a:1:1 b:1:1", run("a b"));
+        assertEquals(2, DUUITestPipeline.WordSegmentation.SEGMENTED.get());
+        assertEquals(List.of("first:a:0", "first:b:0", "second:a:1:0", "second:b:1:0"), _log);
+    }
+
+    @Test
+    public void testOtherStrategyInstanceEndsGroup() throws Exception {
+        add("first", new DUUITestPipeline.WordSegmentation());
+        add("second", new DUUITestPipeline.WordSegmentation());
+        _composer.withPipelineSegmentation(true);
+
+        assertEquals("a:1:1 b:1:1", run("a b"));
+        assertEquals(2, DUUITestPipeline.WordSegmentation.SEGMENTED.get());
+    }
+
+    @Test
+    public void testComponentWithoutStrategyEndsGroup() throws Exception {
+        DUUITestPipeline.WordSegmentation words = new DUUITestPipeline.WordSegmentation();
+        add("first", words);
+        add("whole", null);
+        add("second", words);
+        _composer.withPipelineSegmentation(true);
+
+        run("a b");
+        assertEquals(2, DUUITestPipeline.WordSegmentation.SEGMENTED.get());
+        assertEquals("whole:a:1 b:1:0", _log.get(2));
+    }
+}
@@ -0,0 +1,140 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Vector;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DUUIDAGExecutionPlanGeneratorTest {
+    private final DUUITestPipeline.LocalDriver _driver = new DUUITestPipeline.LocalDriver();
+
+    private DUUIComposer.PipelinePart part(String uuid, List<String> inputs, List<String> outputs) {
+        return _driver.part(uuid, jc -> {}, inputs, outputs);
+    }
+
+    private static DUUIDAGExecutionPlanGenerator generator(DUUIComposer.PipelinePart... parts) {
+        return new DUUIDAGExecutionPlanGenerator(new Vector<>(List.of(parts)));
+    }
+
+    /**
+     * Component that is never called, the generator only looks up its communication layer.
+     */
+    private static DUUITestPipeline.HttpComponent component(boolean additive) throws Exception {
+        return new DUUITestPipeline.HttpComponent("http://127.0.0.1:1", new DUUITestPipeline.TextLayer(additive, (jc, response) -> {}), 1);
+    }
+
+    @Test
+    public void testReadAfterWrite() {
+        DUUIComposer.PipelinePart tokenizer = part("tokenizer", List.of(), List.of("Token"));
+        DUUIComposer.PipelinePart tagger = part("tagger", List.of("Token"), List.of("POS"));
+
+        assertTrue(DUUIDAGExecutionPlanGenerator.dependsOn(tagger, tokenizer));
+        assertEquals(List.of(List.of(), List.of(0)), generator(tokenizer, tagger).getDependencies());
+    }
+
+    @Test
+    public void testWriteAfterRead() {
+        DUUIComposer.PipelinePart reader = part("reader", List.of("Token"), List.of("Sentiment"));
+        DUUIComposer.PipelinePart retokenizer = part("retokenizer", List.of(), List.of("Token"));
+
+        // The reader has to see the tokens from before they are replaced
+        assertTrue(DUUIDAGExecutionPlanGenerator.dependsOn(retokenizer, reader));
+    }
+
+    @Test
+    public void testWriteWrite() {
+        DUUIComposer.PipelinePart first = part("first", List.of("Token"), List.of("NamedEntity"));
+        DUUIComposer.PipelinePart second = part("second", List.of("Sentence"), List.of("NamedEntity"));
+
+        assertTrue(DUUIDAGExecutionPlanGenerator.dependsOn(second, first));
+        assertEquals(List.of(List.of(), List.of(0)), generator(first, second).getDependencies());
+    }
+
+    @Test
+    public void testReadersOfTheSameTypeAreIndependent() {
+        DUUIComposer.PipelinePart sentiment = part("sentiment", List.of("Token"), List.of("Sentiment"));
+        DUUIComposer.PipelinePart ner = part("ner", List.of("Token"), List.of("NamedEntity"));
+        DUUIComposer.PipelinePart linker = part("linker", List.of("Sentiment", "NamedEntity"), List.of("Link"));
+
+        assertFalse(DUUIDAGExecutionPlanGenerator.dependsOn(ner, sentiment));
+        DUUIDAGExecutionPlanGenerator generator = generator(sentiment, ner, linker);
+        assertEquals(List.of(List.of(), List.of(), List.of(0, 1)), generator.getDependencies());
+        // The worker runs one root itself and the other on a branch thread
+        assertEquals(1, generator.getMaxBranches());
+    }
+
+    @Test
+    public void testUndeclaredPartIsBarrier() {
+        DUUIComposer.PipelinePart sentiment = part("sentiment", List.of("Token"), List.of("Sentiment"));
+        DUUIComposer.PipelinePart undeclared = part("undeclared", null, null);
+        DUUIComposer.PipelinePart ner = part("ner", List.of("Token"), List.of("NamedEntity"));
+
+        // Without the undeclared part in between, sentiment and ner would be independent
+        assertTrue(DUUIDAGExecutionPlanGenerator.dependsOn(undeclared, sentiment));
+        assertTrue(DUUIDAGExecutionPlanGenerator.dependsOn(ner, undeclared));
+        DUUIDAGExecutionPlanGenerator generator = generator(sentiment, undeclared, ner);
+        assertEquals(List.of(List.of(), List.of(0), List.of(1)), generator.getDependencies());
+        assertEquals(0, generator.getMaxBranches());
+    }
+
+    @Test
+    public void testPartsMissingOnlyOutputsAreBarriers() {
+        DUUIComposer.PipelinePart sentiment = part("sentiment", List.of("Token"), List.of("Sentiment"));
+        DUUIComposer.PipelinePart inputsOnly = part("inputsOnly", List.of("Token"), null);
+
+        assertTrue(DUUIDAGExecutionPlanGenerator.dependsOn(inputsOnly, sentiment));
+    }
+
+    @Test
+    public void testPartWaitsForAllPredecessors() throws Exception {
+        DUUIComposer.PipelinePart sentiment = part("sentiment", List.of("Token"), List.of("Sentiment"));
+        DUUIComposer.PipelinePart ner = part("ner", List.of("Token"), List.of("NamedEntity"));
+        DUUIComposer.PipelinePart linker = part("linker", List.of("Sentiment", "NamedEntity"), List.of("Link"));
+        IDUUIExecutionPlan entry = generator(sentiment, ner, linker).generate(null);
+
+        List<IDUUIExecutionPlan> roots = entry.getNextExecutionPlans();
+        assertEquals(2, roots.size());
+        assertSame(sentiment, roots.get(0).getPipelinePart());
+        assertSame(ner, roots.get(1).getPipelinePart());
+
+        IDUUIExecutionPlan fromSentiment = roots.get(0).getNextExecutionPlans().get(0);
+        IDUUIExecutionPlan fromNer = roots.get(1).getNextExecutionPlans().get(0);
+        assertSame(fromSentiment, fromNer);
+        // Only the branch finishing last runs the linker
+        assertNull(fromSentiment.awaitMerge().get().getPipelinePart());
+        assertSame(linker, fromNer.awaitMerge().get().getPipelinePart());
+    }
+
+    @Test
+    public void testNonAdditiveLayerInParallelIsRefused() throws Exception {
+        DUUITestPipeline.HttpComponent comp = component(false);
+        DUUIComposer.PipelinePart xmi = _driver.httpPart("xmi", comp, List.of("Token"), List.of("POS"));
+        DUUIComposer.PipelinePart ner = part("ner", List.of("Token"), List.of("NamedEntity"));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> generator(xmi, ner));
+        assertTrue(e.getMessage().contains("xmi"));
+        assertTrue(e.getMessage().contains("ner"));
+        // Looking up the layer does not keep the instance
+        assertEquals(1, comp.getInstances().size());
+    }
+
+    @Test
+    public void testNonAdditiveLayerWithoutParallelBranchIsAccepted() throws Exception {
+        DUUITestPipeline.HttpComponent comp = component(false);
+        DUUIComposer.PipelinePart tokenizer = part("tokenizer", List.of(), List.of("Token"));
+        DUUIComposer.PipelinePart xmi = _driver.httpPart("xmi", comp, List.of("Token"), List.of("POS"));
+
+        assertEquals(List.of(List.of(), List.of(0)), generator(tokenizer, xmi).getDependencies());
+        assertEquals(1, comp.getInstances().size());
+    }
+
+    @Test
+    public void testAdditiveLayerInParallelIsAccepted() throws Exception {
+        DUUIComposer.PipelinePart additive = _driver.httpPart("additive", component(true), List.of("Token"), List.of("POS"));
+        DUUIComposer.PipelinePart ner = part("ner", List.of("Token"), List.of("NamedEntity"));
+
+        assertEquals(List.of(List.of(), List.of()), generator(additive, ner).getDependencies());
+    }
+}
@@ -0,0 +1,133 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface;
+
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.pipeline_storage.DUUIPipelineDocumentPerformance;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.texttechnologylab.DockerUnifiedUIMAInterface.DUUITestPipeline.annotate;
+import static org.texttechnologylab.DockerUnifiedUIMAInterface.DUUITestPipeline.await;
+
+class DUUIParallelSegmentProcessorTest {
+    private final DUUITestPipeline.LocalDriver _driver = new DUUITestPipeline.LocalDriver();
+    private final List<String> _log = Collections.synchronizedList(new ArrayList<>());
+    private DUUIParallelSegmentProcessor _processor;
+
+    @BeforeEach
+    public void setUp() {
+        DUUITestPipeline.WordSegmentation.SEGMENTED.set(0);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (_processor != null) {
+            _processor.close();
+        }
+    }
+
+    private static JCas document(String text) throws Exception {
+        JCas jc = JCasFactory.createJCas();
+        jc.setDocumentText(text);
+        return jc;
+    }
+
+    private void process(DUUIComposer.PipelinePart part, JCas jc) throws Exception {
+        _processor.process(part, jc, new DUUIPipelineDocumentPerformance("run", 0, jc, false), null);
+    }
+
+    @Test
+    public void testRejectsNoSegmentsInFlight() {
+        assertThrows(IllegalArgumentException.class, () -> new DUUIParallelSegmentProcessor(0));
+    }
+
+    @Test
+    public void testMergesInSegmentOrder() throws Exception {
+        _processor = new DUUIParallelSegmentProcessor(3);
+        CountDownLatch thirdDone = new CountDownLatch(1);
+        DUUIComposer.PipelinePart part = _driver.segmentedPart("words", jc -> {
+            // The first segment finishes only after the third
+            if (jc.getDocumentText().equals("a")) {
+                await(thirdDone);
+            }
+            annotate(jc);
+            _log.add(jc.getDocumentText());
+            if (jc.getDocumentText().equals("c")) {
+                thirdDone.countDown();
+            }
+        }, new DUUITestPipeline.WordSegmentation());
+
+        JCas jc = document("a b c d");
+        process(part, jc);
+
+        assertTrue(_log.indexOf("c") < _log.indexOf("a"));
+        assertEquals("a:1 b:1 c:1 d:1", jc.getDocumentText());
+        assertEquals(1, DUUITestPipeline.WordSegmentation.SEGMENTED.get());
+    }
+
+    @Test
+    public void testBoundsSegmentsInFlight() throws Exception {
+        _processor = new DUUIParallelSegmentProcessor(2);
+        AtomicInteger active = new AtomicInteger(0);
+        AtomicInteger maxActive = new AtomicInteger(0);
+        DUUIComposer.PipelinePart part = _driver.segmentedPart("words", jc -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            annotate(jc);
+            active.decrementAndGet();
+        }, new DUUITestPipeline.WordSegmentation());
+
+        JCas jc = document("a b c d e f g h");
+        process(part, jc);
+
+        assertEquals("a:1 b:1 c:1 d:1 e:1 f:1 g:1 h:1", jc.getDocumentText());
+        assertTrue(maxActive.get() <= 2);
+    }
+
+    @Test
+    public void testFailedSegmentIsThrownAndCasesAreReset() throws Exception {
+        _processor = new DUUIParallelSegmentProcessor(2);
+        DUUIComposer.PipelinePart part = _driver.segmentedPart("words", jc -> {
+            annotate(jc);
+            if (jc.getDocumentText().equals("b")) {
+                throw new IOException("Segment failed");
+            }
+        }, new DUUITestPipeline.WordSegmentation());
+
+        JCas jc = document("a b c d");
+        IOException e = assertThrows(IOException.class, () -> process(part, jc));
+        assertEquals("Segment failed", e.getMessage());
+        // Not merged, the document is left as it was
+        assertEquals("a b c d", jc.getDocumentText());
+
+        // The next document of the same type system gets the pooled CASes, they must come back empty
+        jc.reset();
+        jc.setDocumentText("x y");
+        process(part, jc);
+        assertEquals("x:1 y:1", jc.getDocumentText());
+    }
+
+    @Test
+    public void testPooledCasesAreReusedAcrossDocuments() throws Exception {
+        _processor = new DUUIParallelSegmentProcessor(2);
+        DUUIComposer.PipelinePart part = _driver.segmentedPart("words", DUUITestPipeline::annotate, new DUUITestPipeline.WordSegmentation());
+
+        // Reused like the CASes of the composer, so the segments' CASes are pooled for the same type system
+        JCas jc = JCasFactory.createJCas();
+        for (String text : List.of("a b c", "d e", "f g h i")) {
+            jc.reset();
+            jc.setDocumentText(text);
+            process(part, jc);
+            assertEquals(text.replace(" ", ":1 ") + ":1", jc.getDocumentText());
+        }
+        assertEquals(3, DUUITestPipeline.WordSegmentation.SEGMENTED.get());
+    }
+}
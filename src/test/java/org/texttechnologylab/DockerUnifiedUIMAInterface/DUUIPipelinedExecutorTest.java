@@ -0,0 +1,237 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface;
+
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.pipeline_storage.DUUIPipelineDocumentPerformance;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.pipeline_storage.DUUIPipelinePerformancePoint;
+import org.texttechnologylab.duui.ReproducibleAnnotation;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.texttechnologylab.DockerUnifiedUIMAInterface.DUUITestPipeline.await;
+
+class DUUIPipelinedExecutorTest {
+    private final List<AutoCloseable> _closeables = new ArrayList<>();
+    private final List<String> _log = Collections.synchronizedList(new ArrayList<>());
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        for (AutoCloseable closeable : _closeables) {
+            closeable.close();
+        }
+    }
+
+    private DUUITestPipeline.ComponentServer server(String prefix) throws IOException {
+        DUUITestPipeline.ComponentServer server = new DUUITestPipeline.ComponentServer(prefix);
+        _closeables.add(server);
+        return server;
+    }
+
+    private DUUIPipelinedExecutor executor(Vector<DUUIComposer.PipelinePart> pipeline, int serializerThreads, int deserializerThreads, int queueCapacity) {
+        DUUIPipelinedExecutor executor = new DUUIPipelinedExecutor(pipeline, null, serializerThreads, deserializerThreads, queueCapacity);
+        _closeables.add(executor);
+        return executor;
+    }
+
+    /**
+     * Layer logging every response it reads into the CAS.
+     */
+    private DUUITestPipeline.TextLayer loggingLayer() {
+        return new DUUITestPipeline.TextLayer(true, (jc, response) -> _log.add(response));
+    }
+
+    private static JCas document(String text) throws Exception {
+        JCas jc = JCasFactory.createJCas();
+        jc.setDocumentText(text);
+        return jc;
+    }
+
+    private static DUUIPipelineDocumentPerformance perf(JCas jc) {
+        return new DUUIPipelineDocumentPerformance("run", 0, jc, true);
+    }
+
+    private static CompletableFuture<JCas> submit(DUUIPipelinedExecutor executor, String text) throws Exception {
+        JCas jc = document(text);
+        return executor.submit(jc, perf(jc));
+    }
+
+    private static Throwable failure(CompletableFuture<JCas> future) {
+        CompletionException e = assertThrows(CompletionException.class, () -> future.orTimeout(5, TimeUnit.SECONDS).join());
+        return e.getCause();
+    }
+
+    @Test
+    public void testRunsPartsInOrder() throws Exception {
+        DUUITestPipeline.ComponentServer server = server("http:");
+        DUUITestPipeline.HttpComponent comp = new DUUITestPipeline.HttpComponent(server.getUrl(), loggingLayer(), 1);
+        DUUITestPipeline.LocalDriver driver = new DUUITestPipeline.LocalDriver();
+        Vector<DUUIComposer.PipelinePart> pipeline = new Vector<>(List.of(
+            driver.part("first", jc -> _log.add("first:" + jc.getDocumentText())),
+            driver.httpPart("http", comp, null, null),
+            driver.part("last", jc -> _log.add("last:" + jc.getDocumentText()))));
+        DUUIPipelinedExecutor executor = executor(pipeline, 2, 2, 4);
+
+        JCas jc = document("text");
+        DUUIPipelineDocumentPerformance perf = perf(jc);
+        assertSame(jc, executor.submit(jc, perf).get(5, TimeUnit.SECONDS));
+
+        assertEquals(List.of("first:text", "http:text", "last:text"), _log);
+        assertEquals(List.of("text"), server.getBodies());
+        // The call of the component is recorded and marked in the CAS
+        assertEquals(1, JCasUtil.select(jc, ReproducibleAnnotation.class).size());
+        assertEquals(1, perf.getPerformancePoints().size());
+        assertNull(perf.getPerformancePoints().get(0).getError());
+        assertEquals(1, comp.getInstances().size());
+        assertEquals(0, executor.getRequestsInFlight());
+    }
+
+    @Test
+    public void testRequestsOfDocumentsOverlap() throws Exception {
+        DUUITestPipeline.ComponentServer server = server("http:");
+        CountDownLatch gate = server.closeGate();
+        DUUITestPipeline.HttpComponent comp = new DUUITestPipeline.HttpComponent(server.getUrl(), loggingLayer(), 2);
+        DUUITestPipeline.LocalDriver driver = new DUUITestPipeline.LocalDriver();
+        Vector<DUUIComposer.PipelinePart> pipeline = new Vector<>(List.of(driver.httpPart("http", comp, null, null)));
+        // A single serializer thread does not wait for the response of a document before serializing the next one
+        DUUIPipelinedExecutor executor = executor(pipeline, 1, 1, 4);
+
+        CompletableFuture<JCas> first = submit(executor, "a");
+        CompletableFuture<JCas> second = submit(executor, "b");
+        await("both requests are held by the component", () -> server.getActive() == 2);
+        assertEquals(2, executor.getRequestsInFlight());
+        assertFalse(first.isDone());
+
+        gate.countDown();
+        CompletableFuture.allOf(first, second).get(5, TimeUnit.SECONDS);
+        assertEquals(2, server.getMaxActive());
+        assertEquals(2, comp.getInstances().size());
+        assertEquals(0, executor.getRequestsInFlight());
+    }
+
+    @Test
+    public void testInstancesBoundRequestsInFlight() throws Exception {
+        DUUITestPipeline.ComponentServer server = server("http:");
+        CountDownLatch gate = server.closeGate();
+        DUUITestPipeline.HttpComponent comp = new DUUITestPipeline.HttpComponent(server.getUrl(), loggingLayer(), 1);
+        DUUITestPipeline.LocalDriver driver = new DUUITestPipeline.LocalDriver();
+        Vector<DUUIComposer.PipelinePart> pipeline = new Vector<>(List.of(driver.httpPart("http", comp, null, null)));
+        DUUIPipelinedExecutor executor = executor(pipeline, 1, 1, 4);
+
+        List<CompletableFuture<JCas>> futures = new ArrayList<>();
+        futures.add(submit(executor, "a"));
+        await("the first request is held by the component", () -> server.getActive() == 1);
+        futures.add(submit(executor, "b"));
+        // The serializer waits for the only instance, so the third document waits for the serializer
+        await("the serializer waits for the instance", () -> comp.getInstances().getWaiting() == 1);
+        futures.add(submit(executor, "c"));
+        assertEquals(1, executor.getSerializerBacklog());
+        assertEquals(1, executor.getRequestsInFlight());
+
+        gate.countDown();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        assertEquals(1, server.getMaxActive());
+        assertEquals(3, server.getReceived());
+        assertEquals(1, comp.getInstances().size());
+    }
+
+    @Test
+    public void testErrorResponseFailsDocument() throws Exception {
+        DUUITestPipeline.ComponentServer server = server("http:");
+        server.setStatus(500);
+        DUUITestPipeline.HttpComponent comp = new DUUITestPipeline.HttpComponent(server.getUrl(), loggingLayer(), 1);
+        DUUITestPipeline.LocalDriver driver = new DUUITestPipeline.LocalDriver();
+        Vector<DUUIComposer.PipelinePart> pipeline = new Vector<>(List.of(
+            driver.httpPart("http", comp, null, null),
+            driver.part("last", jc -> _log.add("last"))));
+        DUUIPipelinedExecutor executor = executor(pipeline, 1, 1, 4);
+
+        JCas jc = document("text");
+        DUUIPipelineDocumentPerformance perf = perf(jc);
+        assertInstanceOf(InvalidObjectException.class, failure(executor.submit(jc, perf)));
+
+        // The remaining parts are skipped, the instance is free for the next document
+        assertEquals(List.of(), _log);
+        assertEquals(1, comp.getInstances().size());
+        assertEquals(1, perf.getPerformancePoints().size());
+        assertTrue(perf.getPerformancePoints().get(0).getError().contains("500"));
+    }
+
+    @Test
+    public void testFailedDeserializationIsErrorDocument() throws Exception {
+        DUUITestPipeline.ComponentServer server = server("http:");
+        DUUITestPipeline.TextLayer layer = new DUUITestPipeline.TextLayer(true, (jc, response) -> {
+            throw new IOException("Malformed response");
+        });
+        DUUITestPipeline.HttpComponent comp = new DUUITestPipeline.HttpComponent(server.getUrl(), layer, 1);
+        DUUITestPipeline.LocalDriver driver = new DUUITestPipeline.LocalDriver();
+        Vector<DUUIComposer.PipelinePart> pipeline = new Vector<>(List.of(driver.httpPart("http", comp, null, null)));
+        DUUIPipelinedExecutor executor = executor(pipeline, 1, 1, 4);
+
+        JCas jc = document("text");
+        DUUIPipelineDocumentPerformance perf = perf(jc);
+        assertInstanceOf(IOException.class, failure(executor.submit(jc, perf)));
+
+        assertEquals(1, comp.getInstances().size());
+        List<DUUIPipelinePerformancePoint> points = perf.getPerformancePoints();
+        assertEquals(1, points.size());
+        assertTrue(points.get(0).getError().contains("Malformed response"));
+        // Not marked as processed by the component
+        assertEquals(0, JCasUtil.select(jc, ReproducibleAnnotation.class).size());
+    }
+
+    @Test
+    public void testRejectedResponseReleasesBuffers() throws Exception {
+        long pooledBefore = DUUIByteBufferPool.SHARED.getPooled();
+        long allocatedBefore = DUUIByteBufferPool.SHARED.getAllocated();
+
+        DUUITestPipeline.ComponentServer server = server("http:");
+        CountDownLatch deserializing = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        DUUITestPipeline.TextLayer layer = new DUUITestPipeline.TextLayer(true, (jc, response) -> {
+            if (response.equals("http:a")) {
+                deserializing.countDown();
+                try {
+                    await(proceed);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        });
+        DUUITestPipeline.HttpComponent comp = new DUUITestPipeline.HttpComponent(server.getUrl(), layer, 3);
+        DUUITestPipeline.LocalDriver driver = new DUUITestPipeline.LocalDriver();
+        Vector<DUUIComposer.PipelinePart> pipeline = new Vector<>(List.of(driver.httpPart("http", comp, null, null)));
+        // One deserializer and room for one more response
+        DUUIPipelinedExecutor executor = executor(pipeline, 2, 1, 1);
+
+        CompletableFuture<JCas> first = submit(executor, "a");
+        await(deserializing);
+        CompletableFuture<JCas> second = submit(executor, "b");
+        await("the second response is queued", () -> executor.getDeserializerBacklog() == 1);
+
+        CompletableFuture<JCas> third = submit(executor, "c");
+        assertInstanceOf(RejectedExecutionException.class, failure(third));
+        // The rejected document returned its instance, the others still hold theirs
+        assertEquals(1, comp.getInstances().size());
+
+        proceed.countDown();
+        CompletableFuture.allOf(first, second).get(5, TimeUnit.SECONDS);
+        assertEquals(3, comp.getInstances().size());
+        // Every request and response buffer went back to the pool
+        long allocated = DUUIByteBufferPool.SHARED.getAllocated() - allocatedBefore;
+        assertEquals(Math.min(DUUIByteBufferPool.DEFAULT_MAX_POOLED, pooledBefore + allocated), DUUIByteBufferPool.SHARED.getPooled());
+    }
+}
@@ -0,0 +1,166 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DUUIResourcePoolTest {
+
+    private static <T> CompletableFuture<T> takeAsync(DUUIResourcePool<T> pool) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.take();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    /**
+     * Waits until the given number of threads are parked in the pool, which fixes their order in the queue.
+     */
+    private static void awaitWaiting(DUUIResourcePool<?> pool, int waiting) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pool.getWaiting() != waiting) {
+            if (System.nanoTime() > deadline) {
+                fail("Expected " + waiting + " waiting threads, got " + pool.getWaiting());
+            }
+            Thread.yield();
+        }
+    }
+
+    @Test
+    public void testTakeAndReturn() throws Exception {
+        DUUIResourcePool<String> pool = new DUUIResourcePool<>(List.of("a", "b"));
+
+        assertEquals(2, pool.size());
+        String first = pool.take();
+        String second = pool.take();
+        assertEquals(0, pool.size());
+        assertNull(pool.poll());
+
+        pool.add(first);
+        pool.add(second);
+        assertEquals(2, pool.size());
+        assertEquals(2, pool.getAcquired());
+        assertEquals(0, pool.getContended());
+    }
+
+    @Test
+    public void testNullIsRejected() {
+        assertThrows(NullPointerException.class, () -> new DUUIResourcePool<String>().add(null));
+    }
+
+    @Test
+    public void testWaitersAreServedInArrivalOrder() throws Exception {
+        DUUIResourcePool<String> pool = new DUUIResourcePool<>();
+        CompletableFuture<String> first = takeAsync(pool);
+        awaitWaiting(pool, 1);
+        CompletableFuture<String> second = takeAsync(pool);
+        awaitWaiting(pool, 2);
+
+        pool.add("a");
+        assertEquals("a", first.get(5, TimeUnit.SECONDS));
+        assertFalse(second.isDone());
+
+        pool.add("b");
+        assertEquals("b", second.get(5, TimeUnit.SECONDS));
+        assertEquals(2, pool.getContended());
+        assertEquals(2, pool.getMaxWaiting());
+    }
+
+    @Test
+    public void testNewcomersCannotOvertakeWaiters() throws Exception {
+        DUUIResourcePool<String> pool = new DUUIResourcePool<>();
+        CompletableFuture<String> waiting = takeAsync(pool);
+        awaitWaiting(pool, 1);
+
+        // The returned resource belongs to the waiting thread even before it wakes up
+        pool.add("a");
+        assertNull(pool.poll());
+        assertNull(pool.poll(0, TimeUnit.MILLISECONDS));
+        assertEquals("a", waiting.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testPollTimesOut() throws Exception {
+        DUUIResourcePool<String> pool = new DUUIResourcePool<>();
+
+        assertNull(pool.poll(10, TimeUnit.MILLISECONDS));
+        assertEquals(0, pool.getWaiting());
+
+        // The timed out thread must not be served any more, the resource stays in the pool
+        pool.add("a");
+        assertEquals(1, pool.size());
+        assertEquals("a", pool.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testPollIsServedBeforeTimeout() throws Exception {
+        DUUIResourcePool<String> pool = new DUUIResourcePool<>();
+        CompletableFuture<String> polling = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.poll(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        awaitWaiting(pool, 1);
+
+        pool.add("a");
+        assertEquals("a", polling.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testInterruptedWaiterLeavesTheQueue() throws Exception {
+        DUUIResourcePool<String> pool = new DUUIResourcePool<>();
+        CompletableFuture<Thread> started = new CompletableFuture<>();
+        CompletableFuture<Boolean> interrupted = CompletableFuture.supplyAsync(() -> {
+            started.complete(Thread.currentThread());
+            try {
+                pool.take();
+                return false;
+            } catch (InterruptedException e) {
+                return true;
+            }
+        });
+        Thread waiter = started.get(5, TimeUnit.SECONDS);
+        awaitWaiting(pool, 1);
+
+        waiter.interrupt();
+        assertTrue(interrupted.get(5, TimeUnit.SECONDS));
+        assertEquals(0, pool.getWaiting());
+        pool.add("a");
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void testTakeUninterruptiblyRestoresInterrupt() throws Exception {
+        DUUIResourcePool<String> pool = new DUUIResourcePool<>(List.of("a"));
+        CompletableFuture<Boolean> result = CompletableFuture.supplyAsync(() -> {
+            Thread.currentThread().interrupt();
+            String resource = pool.takeUninterruptibly();
+            return "a".equals(resource) && Thread.interrupted();
+        });
+
+        assertTrue(result.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testIteratorIsSnapshot() {
+        DUUIResourcePool<String> pool = new DUUIResourcePool<>(List.of("a", "b"));
+        List<String> seen = new ArrayList<>();
+        for (String resource : pool) {
+            // Taking while iterating must not break the iteration
+            pool.poll();
+            seen.add(resource);
+        }
+        assertEquals(List.of("a", "b"), seen);
+        assertEquals(0, pool.size());
+    }
+}
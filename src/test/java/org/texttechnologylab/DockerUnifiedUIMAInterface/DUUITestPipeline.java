@@ -0,0 +1,456 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.uima.UIMAException;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.apache.uima.jcas.tcas.DocumentAnnotation;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.javatuples.Triplet;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.connection.IDUUIConnectionHandler;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.driver.DUUIPipelineComponent;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.driver.IDUUIDriverInterface;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.driver.IDUUIInstantiatedPipelineComponent;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.driver.IDUUIUrlAccessible;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.lua.DUUILuaContext;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.pipeline_storage.DUUIPipelineDocumentPerformance;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.segmentation.DUUISegmentationStrategy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Drivers, components and a component server running inside the test JVM, to test how the composer schedules the
+ * parts of a pipeline without Docker.
+ */
+class DUUITestPipeline {
+
+    /**
+     * What a part run by the LocalDriver does with the CAS.
+     */
+    interface Step {
+        void run(JCas jc) throws Exception;
+    }
+
+    /**
+     * Waits until a condition holds, e.g. until a thread is parked in a pool. Fails the test after five seconds.
+     */
+    static void await(String what, BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Timed out waiting until " + what);
+            }
+            Thread.yield();
+        }
+    }
+
+    static void await(CountDownLatch latch) throws InterruptedException {
+        if (!latch.await(5, TimeUnit.SECONDS)) {
+            fail("Timed out waiting for a latch");
+        }
+    }
+
+    /**
+     * Annotates the whole document, e.g. a segment.
+     */
+    static void annotate(JCas jc) {
+        new Annotation(jc, 0, jc.getDocumentText().length()).addToIndexes();
+    }
+
+    /**
+     * @return Number of annotations added to the CAS, without the document annotation.
+     */
+    static int annotations(JCas jc) {
+        int count = 0;
+        for (Annotation annotation : JCasUtil.select(jc, Annotation.class)) {
+            if (!(annotation instanceof DocumentAnnotation)) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Segments a document into its words, reusing a single CAS for all segments like the strategies of DUUI. The
+     * merged document lists every word with the number of annotations the components added to it, in the order the
+     * segments were merged.
+     */
+    static class WordSegmentation extends DUUISegmentationStrategy {
+        // Documents segmented by any copy of the strategy, the pipeline parts hand out copies
+        static final AtomicInteger SEGMENTED = new AtomicInteger(0);
+
+        private transient String[] _words;
+        private transient int _next;
+        private transient JCas _segment;
+        private transient StringBuilder _merged;
+
+        @Override
+        protected void initialize() throws UIMAException {
+            SEGMENTED.incrementAndGet();
+            _words = jCasInput.getDocumentText().split(" ");
+            _next = 0;
+            _merged = new StringBuilder();
+            if (_segment == null) {
+                _segment = JCasFactory.createJCas();
+            }
+        }
+
+        @Override
+        public JCas getNextSegment() {
+            if (_next >= _words.length) {
+                return null;
+            }
+            _segment.reset();
+            _segment.setDocumentText(_words[_next++]);
+            return _segment;
+        }
+
+        @Override
+        public void merge(JCas jCasSegment) {
+            if (_merged.length() > 0) {
+                _merged.append(' ');
+            }
+            _merged.append(jCasSegment.getDocumentText()).append(':').append(annotations(jCasSegment));
+        }
+
+        @Override
+        public void finalize(JCas jCas) {
+            jCas.reset();
+            jCas.setDocumentText(_merged.toString());
+        }
+    }
+
+    /**
+     * Driver running its parts as Java callbacks in the calling thread, or handing out components called over HTTP.
+     * Parts are either created directly or instantiated by a composer from the components of this driver.
+     */
+    static class LocalDriver implements IDUUIDriverInterface {
+        private final Map<String, Step> _steps = new ConcurrentHashMap<>();
+        private final Map<String, IDUUIInstantiatedPipelineComponent> _http = new ConcurrentHashMap<>();
+
+        DUUIComposer.PipelinePart part(String uuid, Step step) {
+            return part(uuid, step, null, null);
+        }
+
+        DUUIComposer.PipelinePart part(String uuid, Step step, List<String> inputs, List<String> outputs) {
+            _steps.put(uuid, step);
+            return new DUUIComposer.PipelinePart(this, uuid, uuid, null, inputs, outputs);
+        }
+
+        DUUIComposer.PipelinePart segmentedPart(String uuid, Step step, DUUISegmentationStrategy strategy) {
+            _steps.put(uuid, step);
+            return new DUUIComposer.PipelinePart(this, uuid, uuid, strategy);
+        }
+
+        /**
+         * Component to add to a composer, instantiated under its name.
+         *
+         * @param segmentationStrategy Strategy of the component, null to process whole documents
+         */
+        DUUIPipelineComponent component(String name, Step step, DUUISegmentationStrategy segmentationStrategy) throws Exception {
+            _steps.put(name, step);
+            return new DUUIPipelineComponent()
+                .withDriver(LocalDriver.class)
+                .withName(name)
+                .withTimeout(60)
+                .withSegmentationStrategy(segmentationStrategy);
+        }
+
+        DUUIComposer.PipelinePart httpPart(String uuid, IDUUIInstantiatedPipelineComponent comp, List<String> inputs, List<String> outputs) {
+            _http.put(uuid, comp);
+            return new DUUIComposer.PipelinePart(this, uuid, uuid, null, inputs, outputs);
+        }
+
+        @Override
+        public void setLuaContext(DUUILuaContext luaContext) {
+        }
+
+        @Override
+        public boolean canAccept(DUUIPipelineComponent component) {
+            return _steps.containsKey(component.getName());
+        }
+
+        @Override
+        public String instantiate(DUUIPipelineComponent component, JCas jc, boolean skipVerification, AtomicBoolean shutdown) {
+            return component.getName();
+        }
+
+        @Override
+        public void printConcurrencyGraph(String uuid) {
+        }
+
+        @Override
+        public TypeSystemDescription get_typesystem(String uuid) {
+            return null;
+        }
+
+        @Override
+        public void run(String uuid, JCas aCas, DUUIPipelineDocumentPerformance perf, DUUIComposer composer) throws IOException, InterruptedException {
+            Step step = _steps.get(uuid);
+            if (step == null) {
+                throw new IllegalStateException("No step for part " + uuid);
+            }
+            try {
+                step.run(aCas);
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public IDUUIInstantiatedPipelineComponent getHttpComponent(String uuid) {
+            return _http.get(uuid);
+        }
+
+        @Override
+        public boolean destroy(String uuid) {
+            _steps.remove(uuid);
+            _http.remove(uuid);
+            return true;
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+
+    /**
+     * Communication layer sending the document text and passing the response to a callback. What the callback adds
+     * to the CAS is up to the test.
+     */
+    static class TextLayer implements IDUUICommunicationLayer {
+        interface Deserializer {
+            void deserialize(JCas jc, String response) throws IOException;
+        }
+
+        private final boolean _additive;
+        private final Deserializer _deserializer;
+
+        TextLayer(boolean additive, Deserializer deserializer) {
+            _additive = additive;
+            _deserializer = deserializer;
+        }
+
+        @Override
+        public void serialize(JCas jc, OutputStream out, Map<String, String> parameters, String sourceView) throws IOException {
+            out.write(jc.getDocumentText().getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void deserialize(JCas jc, InputStream input, String targetView) throws IOException {
+            _deserializer.deserialize(jc, new String(input.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void serialize(JCas jc, OutputStream out, Map<String, String> parameters) throws IOException {
+            serialize(jc, out, parameters, null);
+        }
+
+        @Override
+        public void deserialize(JCas jc, InputStream input) throws IOException {
+            deserialize(jc, input, null);
+        }
+
+        @Override
+        public boolean isAdditive() {
+            return _additive;
+        }
+
+        @Override
+        public IDUUICommunicationLayer copy() {
+            return this;
+        }
+
+        @Override
+        public ByteArrayInputStream merge(List<ByteArrayInputStream> results) {
+            return null;
+        }
+
+        @Override
+        public String myLuaTestMerging() {
+            return "TextLayer";
+        }
+    }
+
+    /**
+     * Component called over HTTP with a fixed number of instances, all speaking the same layer.
+     */
+    static class HttpComponent implements IDUUIInstantiatedPipelineComponent {
+        private final DUUIPipelineComponent _component;
+        private final DUUIResourcePool<IDUUIUrlAccessible> _instances = new DUUIResourcePool<>();
+
+        HttpComponent(String url, IDUUICommunicationLayer layer, int instances) throws Exception {
+            _component = new DUUIPipelineComponent().withTimeout(60);
+            _component.finalizeComponent();
+            for (int i = 0; i < instances; i++) {
+                _instances.add(new IDUUIUrlAccessible() {
+                    @Override
+                    public String generateURL() {
+                        return url;
+                    }
+
+                    @Override
+                    public IDUUIConnectionHandler getHandler() {
+                        return null;
+                    }
+
+                    @Override
+                    public IDUUICommunicationLayer getCommunicationLayer() {
+                        return layer;
+                    }
+                });
+            }
+        }
+
+        /**
+         * @return The instances that are not taken by a call.
+         */
+        DUUIResourcePool<IDUUIUrlAccessible> getInstances() {
+            return _instances;
+        }
+
+        @Override
+        public DUUIPipelineComponent getPipelineComponent() {
+            return _component;
+        }
+
+        @Override
+        public Triplet<IDUUIUrlAccessible, Long, Long> getComponent() {
+            long mutexStart = System.nanoTime();
+            IDUUIUrlAccessible instance = _instances.takeUninterruptibly();
+            return Triplet.with(instance, mutexStart, System.nanoTime());
+        }
+
+        @Override
+        public void addComponent(IDUUIUrlAccessible item) {
+            _instances.add(item);
+        }
+
+        @Override
+        public Map<String, String> getParameters() {
+            return _component.getParameters();
+        }
+
+        @Override
+        public String getSourceView() {
+            return _component.getSourceView();
+        }
+
+        @Override
+        public String getTargetView() {
+            return _component.getTargetView();
+        }
+
+        @Override
+        public String getUniqueComponentKey() {
+            return "";
+        }
+    }
+
+    /**
+     * Component server answering /v1/process with a prefix and the request body. Requests can be held back until the
+     * test opens the gate, the server counts how many are held at once.
+     */
+    static class ComponentServer implements AutoCloseable {
+        private final HttpServer _server;
+        private final String _prefix;
+        private volatile CountDownLatch _gate = new CountDownLatch(0);
+        private volatile int _status = 200;
+        private final AtomicInteger _active = new AtomicInteger(0);
+        private final AtomicInteger _maxActive = new AtomicInteger(0);
+        private final AtomicInteger _received = new AtomicInteger(0);
+        private final List<String> _bodies = Collections.synchronizedList(new ArrayList<>());
+
+        ComponentServer(String prefix) throws IOException {
+            _prefix = prefix;
+            _server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            _server.setExecutor(Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "ComponentServer-" + prefix);
+                thread.setDaemon(true);
+                return thread;
+            }));
+            _server.createContext(DUUIComposer.V1_COMPONENT_ENDPOINT_PROCESS, exchange -> {
+                try {
+                    String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                    _bodies.add(body);
+                    _maxActive.accumulateAndGet(_active.incrementAndGet(), Math::max);
+                    _received.incrementAndGet();
+                    try {
+                        _gate.await();
+                    } finally {
+                        _active.decrementAndGet();
+                    }
+                    byte[] response = (_prefix + body).getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(_status, response.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(response);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    exchange.close();
+                }
+            });
+            _server.start();
+        }
+
+        String getUrl() {
+            return "http://127.0.0.1:" + _server.getAddress().getPort();
+        }
+
+        /**
+         * Holds back all following requests until the returned latch is counted down.
+         */
+        CountDownLatch closeGate() {
+            CountDownLatch gate = new CountDownLatch(1);
+            _gate = gate;
+            return gate;
+        }
+
+        void setStatus(int status) {
+            _status = status;
+        }
+
+        int getReceived() {
+            return _received.get();
+        }
+
+        int getActive() {
+            return _active.get();
+        }
+
+        int getMaxActive() {
+            return _maxActive.get();
+        }
+
+        List<String> getBodies() {
+            return _bodies;
+        }
+
+        @Override
+        public void close() {
+            _gate.countDown();
+            _server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface.driver;
+
+import org.junit.jupiter.api.Test;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIByteBufferPool;
+
+import java.io.ByteArrayOutputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DUUIHttpProcessCallTest {
+
+    /**
+     * Subscriber recording what the publisher emits, requesting only when asked to.
+     */
+    private static class RecordingSubscriber implements Flow.Subscriber<ByteBuffer> {
+        final List<ByteBuffer> slices = new ArrayList<>();
+        Flow.Subscription subscription;
+        boolean completed = false;
+        Throwable error = null;
+        // Slices requested again from within onNext, like the HTTP client does
+        long requestOnNext = 0;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(ByteBuffer item) {
+            assertFalse(completed);
+            slices.add(item);
+            if (requestOnNext > 0) {
+                subscription.request(requestOnNext);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+
+        byte[] content() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (ByteBuffer slice : slices) {
+                ByteBuffer copy = slice.duplicate();
+                byte[] bytes = new byte[copy.remaining()];
+                copy.get(bytes);
+                out.write(bytes, 0, bytes.length);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    private static RecordingSubscriber subscribe(DUUIHttpProcessCall.PooledBodyPublisher publisher) {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        assertNotNull(subscriber.subscription);
+        return subscriber;
+    }
+
+    @Test
+    public void testPublisherHonoursDemand() {
+        int size = 3 * DUUIHttpProcessCall.PooledBodyPublisher.SLICE_SIZE + 5;
+        byte[] array = randomBytes(size + 100);
+        DUUIHttpProcessCall.PooledBodyPublisher publisher = new DUUIHttpProcessCall.PooledBodyPublisher(array, size);
+        assertEquals(size, publisher.contentLength());
+
+        RecordingSubscriber subscriber = subscribe(publisher);
+        assertEquals(0, subscriber.slices.size());
+
+        subscriber.subscription.request(1);
+        assertEquals(1, subscriber.slices.size());
+        subscriber.subscription.request(2);
+        assertEquals(3, subscriber.slices.size());
+        assertFalse(subscriber.completed);
+
+        subscriber.subscription.request(10);
+        assertEquals(4, subscriber.slices.size());
+        assertTrue(subscriber.completed);
+        assertNull(subscriber.error);
+
+        // Only the valid part of the array is sent, in slices of the array itself instead of copies
+        byte[] expected = new byte[size];
+        System.arraycopy(array, 0, expected, 0, size);
+        assertArrayEquals(expected, subscriber.content());
+        for (ByteBuffer slice : subscriber.slices) {
+            assertSame(array, slice.array());
+        }
+    }
+
+    @Test
+    public void testPublisherRequestingFromOnNext() {
+        int size = 5 * DUUIHttpProcessCall.PooledBodyPublisher.SLICE_SIZE;
+        byte[] array = randomBytes(size);
+        RecordingSubscriber subscriber = subscribe(new DUUIHttpProcessCall.PooledBodyPublisher(array, size));
+
+        subscriber.requestOnNext = 1;
+        subscriber.subscription.request(1);
+        assertEquals(5, subscriber.slices.size());
+        assertTrue(subscriber.completed);
+        assertArrayEquals(array, subscriber.content());
+    }
+
+    @Test
+    public void testPublisherCancel() {
+        int size = 3 * DUUIHttpProcessCall.PooledBodyPublisher.SLICE_SIZE;
+        RecordingSubscriber subscriber = subscribe(new DUUIHttpProcessCall.PooledBodyPublisher(randomBytes(size), size));
+
+        subscriber.subscription.request(1);
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(10);
+
+        assertEquals(1, subscriber.slices.size());
+        assertFalse(subscriber.completed);
+        assertNull(subscriber.error);
+    }
+
+    @Test
+    public void testPublisherRestartsForEveryAttempt() {
+        int size = 2 * DUUIHttpProcessCall.PooledBodyPublisher.SLICE_SIZE + 1;
+        byte[] array = randomBytes(size);
+        DUUIHttpProcessCall.PooledBodyPublisher publisher = new DUUIHttpProcessCall.PooledBodyPublisher(array, size);
+
+        // The first attempt fails halfway
+        RecordingSubscriber failed = subscribe(publisher);
+        failed.subscription.request(1);
+        failed.subscription.cancel();
+
+        // A retry sends the whole body again
+        RecordingSubscriber retry = subscribe(publisher);
+        retry.subscription.request(Long.MAX_VALUE);
+        assertTrue(retry.completed);
+        assertArrayEquals(array, retry.content());
+    }
+
+    @Test
+    public void testPublisherEmptyBody() {
+        RecordingSubscriber subscriber = subscribe(new DUUIHttpProcessCall.PooledBodyPublisher(new byte[16], 0));
+
+        subscriber.subscription.request(1);
+        assertEquals(0, subscriber.slices.size());
+        assertTrue(subscriber.completed);
+    }
+
+    @Test
+    public void testPublisherRejectsInvalidDemand() {
+        RecordingSubscriber subscriber = subscribe(new DUUIHttpProcessCall.PooledBodyPublisher(new byte[16], 16));
+
+        subscriber.subscription.request(0);
+        assertInstanceOf(IllegalArgumentException.class, subscriber.error);
+        subscriber.subscription.request(1);
+        assertEquals(0, subscriber.slices.size());
+    }
+
+    @Test
+    public void testContentLengthDoesNotDecideAllocation() {
+        HttpResponse.ResponseInfo info = new HttpResponse.ResponseInfo() {
+            @Override
+            public int statusCode() {
+                return 200;
+            }
+
+            @Override
+            public HttpHeaders headers() {
+                return HttpHeaders.of(Map.of("Content-Length", List.of(Long.toString(Integer.MAX_VALUE))), (name, value) -> true);
+            }
+
+            @Override
+            public HttpClient.Version version() {
+                return HttpClient.Version.HTTP_1_1;
+            }
+        };
+
+        HttpResponse.BodySubscriber<DUUIByteBufferPool.Buffer> body = DUUIHttpProcessCall.pooledBody(info);
+        body.onComplete();
+        DUUIByteBufferPool.Buffer buffer = body.getBody().toCompletableFuture().join();
+        assertTrue(buffer.capacity() <= DUUIByteBufferPool.DEFAULT_MAX_POOLED_CAPACITY);
+        DUUIByteBufferPool.SHARED.release(buffer);
+    }
+}
@@ -0,0 +1,164 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface.driver;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DUUIStreamingPipeTest {
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Serializer writing into the pipe on a thread of its own, so the test can see when it is blocked.
+     */
+    private static class Writer {
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        final Thread thread;
+
+        Writer(DUUIStreamingPipe pipe, byte[] data) {
+            thread = new Thread(() -> {
+                try {
+                    OutputStream out = pipe.getOutputStream();
+                    out.write(data);
+                    out.close();
+                    done.complete(null);
+                } catch (IOException e) {
+                    done.completeExceptionally(new RuntimeException(e));
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Waits until the writer has passed on the given number of bytes and is parked because the pipe is full.
+         */
+        void awaitBlocked(DUUIStreamingPipe pipe, long written) {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (pipe.getBytesWritten() < written || thread.getState() != Thread.State.TIMED_WAITING) {
+                assertTrue(System.nanoTime() < deadline, "Writer did not block after " + written + " bytes");
+                Thread.yield();
+            }
+        }
+    }
+
+    @Test
+    public void testTransfersAllBytes() throws Exception {
+        DUUIStreamingPipe pipe = new DUUIStreamingPipe(16, 2);
+        byte[] data = randomBytes(1000);
+
+        Writer writer = new Writer(pipe, data);
+        byte[] read = pipe.getInputStream().readAllBytes();
+        writer.done.get(5, TimeUnit.SECONDS);
+
+        assertArrayEquals(data, read);
+        assertEquals(data.length, pipe.getBytesWritten());
+    }
+
+    @Test
+    public void testAbortHidesChunksAlreadyInThePipe() throws Exception {
+        DUUIStreamingPipe pipe = new DUUIStreamingPipe(16, 4);
+        OutputStream out = pipe.getOutputStream();
+        out.write(randomBytes(40));
+
+        // Serialization failed halfway, the chunks written so far must not be read as a complete body
+        pipe.abort(new IOException("Serialization failed"));
+
+        InputStream in = pipe.getInputStream();
+        IOException e = assertThrows(IOException.class, in::readAllBytes);
+        assertEquals("Serialization failed", e.getCause().getMessage());
+        assertThrows(IOException.class, out::close);
+    }
+
+    @Test
+    public void testAbortAfterCloseFailsReader() throws Exception {
+        DUUIStreamingPipe pipe = new DUUIStreamingPipe(16, 4);
+        OutputStream out = pipe.getOutputStream();
+        out.write(randomBytes(20));
+        out.close();
+
+        pipe.abort(new IOException("Request failed"));
+
+        assertThrows(IOException.class, () -> pipe.getInputStream().readAllBytes());
+    }
+
+    @Test
+    public void testAbortReleasesBlockedWriter() throws Exception {
+        DUUIStreamingPipe pipe = new DUUIStreamingPipe(16, 2);
+        Writer writer = new Writer(pipe, randomBytes(1000));
+
+        // Nobody reads, so the writer waits for space in the pipe
+        writer.awaitBlocked(pipe, 32);
+        assertFalse(writer.done.isDone());
+
+        pipe.abort(new IOException("Component rejected the request"));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> writer.done.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause().getCause());
+    }
+
+    @Test
+    public void testClosingReaderEarlyReleasesWriter() throws Exception {
+        DUUIStreamingPipe pipe = new DUUIStreamingPipe(16, 2);
+        Writer writer = new Writer(pipe, randomBytes(1000));
+
+        InputStream in = pipe.getInputStream();
+        in.read(new byte[10]);
+        in.close();
+
+        assertThrows(ExecutionException.class, () -> writer.done.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testBoundedBackPressure() throws Exception {
+        int chunkSize = 16;
+        int chunks = 2;
+        DUUIStreamingPipe pipe = new DUUIStreamingPipe(chunkSize, chunks);
+        byte[] data = randomBytes(1000);
+        Writer writer = new Writer(pipe, data);
+
+        // Without a reader only the chunks fitting into the pipe are passed on
+        writer.awaitBlocked(pipe, (long) chunkSize * chunks);
+        assertFalse(writer.done.isDone());
+        assertEquals((long) chunkSize * chunks, pipe.getBytesWritten());
+
+        byte[] read = pipe.getInputStream().readAllBytes();
+        writer.done.get(5, TimeUnit.SECONDS);
+        assertArrayEquals(data, read);
+    }
+
+    @Test
+    public void testChunksAreReused() throws Exception {
+        int chunkSize = 16;
+        int chunks = 2;
+        DUUIStreamingPipe pipe = new DUUIStreamingPipe(chunkSize, chunks);
+        byte[] data = randomBytes(100 * 1000);
+        Writer writer = new Writer(pipe, data);
+
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        InputStream in = pipe.getInputStream();
+        byte[] buffer = new byte[7];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            read.write(buffer, 0, n);
+        }
+        writer.done.get(5, TimeUnit.SECONDS);
+
+        assertArrayEquals(data, read.toByteArray());
+        // At most one chunk being written, the chunks in the pipe and one chunk being read exist at a time
+        assertTrue(pipe.getChunksAllocated() <= chunks + 2,
+            "Allocated " + pipe.getChunksAllocated() + " chunks for " + data.length / chunkSize + " written ones");
+    }
+}
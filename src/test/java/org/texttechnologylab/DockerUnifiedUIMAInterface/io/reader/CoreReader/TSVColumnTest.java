@@ -0,0 +1,126 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface.io.reader.CoreReader;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TSVColumnTest {
+
+    private static TSVColumn column(String... values) {
+        TSVColumn column = TSVColumn.create();
+        for (String value : values) {
+            column = column.add(value);
+        }
+        return column;
+    }
+
+    private static void assertValues(TSVColumn column, String... values) {
+        assertEquals(values.length, column.size());
+        for (int row = 0; row < values.length; row++) {
+            assertEquals(values[row], column.get(row));
+        }
+    }
+
+    @Test
+    public void testIntColumn() {
+        TSVColumn column = column("1", "-42", "2147483647");
+
+        assertEquals("IntColumn", column.getClass().getSimpleName());
+        assertValues(column, "1", "-42", "2147483647");
+        assertEquals(-42, column.getInt(1));
+        assertEquals(2147483647L, column.getLong(2));
+    }
+
+    @Test
+    public void testIntColumnIsPromotedToLong() {
+        TSVColumn column = column("1", "2", "9999999999");
+
+        assertEquals("LongColumn", column.getClass().getSimpleName());
+        assertValues(column, "1", "2", "9999999999");
+        assertEquals(9999999999L, column.getLong(2));
+    }
+
+    @Test
+    public void testNumbersThatDoNotFormatBackStayStrings() {
+        // "007" and "+5" parse as numbers, but formatting them again would change the value
+        TSVColumn column = column("1", "007", "+5");
+
+        assertEquals("DictionaryColumn", column.getClass().getSimpleName());
+        assertValues(column, "1", "007", "+5");
+        assertEquals(7, column.getInt(1));
+    }
+
+    @Test
+    public void testTimestampColumn() {
+        String first = "2023-12-16 14:57:46.441000 +00:00";
+        String second = "2023-12-16 14:57:47.000123 +00:00";
+        TSVColumn column = column(first, second);
+
+        assertEquals("TimestampColumn", column.getClass().getSimpleName());
+        assertValues(column, first, second);
+        // Stored as microseconds since the epoch
+        assertEquals(123, column.getLong(1) % 1_000_000L);
+        assertEquals(559_123, column.getLong(1) - column.getLong(0));
+    }
+
+    @Test
+    public void testTimestampsWithDifferentOffsetsAreStrings() {
+        TSVColumn column = column("2023-12-16 14:57:46.441000 +00:00", "2023-12-16 15:57:46.441000 +01:00");
+
+        assertEquals("DictionaryColumn", column.getClass().getSimpleName());
+        assertValues(column, "2023-12-16 14:57:46.441000 +00:00", "2023-12-16 15:57:46.441000 +01:00");
+    }
+
+    @Test
+    public void testFormattedValuesAreCached() {
+        TSVColumn ints = column("17", "18");
+        TSVColumn timestamps = column("2023-12-16 14:57:46.441000 +00:00");
+
+        assertSame(ints.get(1), ints.get(1));
+        assertSame(timestamps.get(0), timestamps.get(0));
+    }
+
+    @Test
+    public void testReadingDoesNotBreakAppending() {
+        TSVColumn column = column("1", "2");
+        assertEquals("2", column.get(1));
+
+        // The cache has to grow with the column and survive a promotion
+        column = column.add("3");
+        assertEquals("3", column.get(2));
+        column = column.add("text");
+        assertValues(column, "1", "2", "3", "text");
+    }
+
+    @Test
+    public void testTrimKeepsValues() {
+        TSVColumn column = column("1", "2", "3");
+        column.get(0);
+        column.trim();
+        assertValues(column, "1", "2", "3");
+
+        TSVColumn strings = column("a", "b", "a");
+        strings.trim();
+        assertValues(strings, "a", "b", "a");
+    }
+
+    @Test
+    public void testMostlyDistinctStringsBecomePlain() {
+        TSVColumn column = TSVColumn.create();
+        String[] values = new String[2000];
+        for (int row = 0; row < values.length; row++) {
+            values[row] = "url-" + row;
+            column = column.add(values[row]);
+        }
+
+        assertEquals("PlainStringColumn", column.getClass().getSimpleName());
+        assertValues(column, values);
+    }
+
+    @Test
+    public void testRowsOutOfBounds() {
+        assertThrows(IndexOutOfBoundsException.class, () -> TSVColumn.create().get(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> column("1").get(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> column("a").get(1));
+    }
+}
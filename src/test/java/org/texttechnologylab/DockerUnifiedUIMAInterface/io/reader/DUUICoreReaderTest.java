@@ -26,12 +26,15 @@ import org.texttechnologylab.DockerUnifiedUIMAInterface.io.DUUIAsynchronousProce
 import org.texttechnologylab.DockerUnifiedUIMAInterface.io.reader.CoreReader.CorePageUtils;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.io.reader.CoreReader.DUUICoreReader;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.io.reader.CoreReader.ImageReader;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.io.reader.CoreReader.TSVCursor;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.io.reader.CoreReader.TSVTable;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.lua.DUUILuaCommunicationLayer;
 import org.texttechnologylab.DockerUnifiedUIMAInterface.lua.DUUILuaContext;
 import org.texttechnologylab.annotation.FourPointBoundingBox;
 import org.texttechnologylab.annotation.ImageBase64;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -40,6 +43,8 @@ import java.util.*;
 import java.util.zip.GZIPInputStream;
 
 import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngineDescription;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class DUUICoreReaderTest {
 
@@ -77,6 +82,29 @@ class DUUICoreReaderTest {
         t.print();
     }
 
+    @Test
+    public void testRowsByValue() throws Exception {
+        TSVTable t = new TSVTable("TEMP_files/testTables/screenshots.tsv");
+        List<List<String>> rows = t.getRowsByValue("page_id", "24111");
+
+        assertEquals(t.extractByValue("page_id", "24111").table, rows);
+        assertTrue(t.getRowsByValue("page_id", "does-not-exist").isEmpty());
+    }
+
+    @Test
+    public void testCursorRowsFor() throws Exception {
+        TSVTable t = new TSVTable("TEMP_files/testTables/screenshots.tsv");
+        List<String> pageIDs = new ArrayList<>(new TSVTable("TEMP_files/testTables/pages.tsv").getColumn("id"));
+        pageIDs.sort(TSVCursor.KEY_ORDER);
+
+        // Few rows in memory, so screenshots.tsv is sorted in several runs
+        try (TSVCursor cursor = TSVCursor.open("TEMP_files/testTables/screenshots.tsv", "page_id", 100)) {
+            for (String pageID : pageIDs) {
+                assertEquals(t.getRowsByValue("page_id", pageID), cursor.rowsFor(pageID));
+            }
+        }
+    }
+
     @Test
     public void testToJcas() throws Exception {
         DUUICoreReader reader = new DUUICoreReader();
@@ -328,6 +356,19 @@ class DUUICoreReaderTest {
         ImageReader.imageFromBase64(base64String, "TEMP_files/TEMP_out/decoded64.png");
     }
 
+    @Test
+    void testImageDimensions() throws IOException {
+        for (String format : List.of("png", "jpg", "gif")) {
+            BufferedImage image = new BufferedImage(37, 421, BufferedImage.TYPE_INT_RGB);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image, format, out);
+
+            int[] dimensions = ImageReader.imageDimensions(out.toByteArray());
+            assertEquals(37, dimensions[0], format);
+            assertEquals(421, dimensions[1], format);
+        }
+    }
+
     @Test
     void testReadGzippedHTML() throws Exception {
         Path filePath = Paths.get("TEMP_files/TEMP_data/html/7053/1945217.html.gz");
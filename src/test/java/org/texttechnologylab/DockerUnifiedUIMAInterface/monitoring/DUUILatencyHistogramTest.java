@@ -0,0 +1,121 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DUUILatencyHistogramTest {
+    // Largest relative error of a bucket: its width divided by its lowest value, 32 sub-buckets per power of two
+    private static final double MAX_ERROR = 1.0 / 32;
+
+    private static final int LAST_BUCKET = DUUILatencyHistogram.bucketOf(Long.MAX_VALUE);
+
+    private static void assertWithinError(long expected, long actual) {
+        assertTrue(actual >= expected, actual + " is below " + expected);
+        assertTrue(actual - expected <= expected * MAX_ERROR, actual + " is more than 3% above " + expected);
+    }
+
+    @Test
+    public void testLinearBuckets() {
+        for (long value = 0; value < 64; value++) {
+            assertEquals(value, DUUILatencyHistogram.bucketOf(value));
+            assertEquals(value, DUUILatencyHistogram.highestValueOf((int) value));
+        }
+        assertEquals(0, DUUILatencyHistogram.bucketOf(-5));
+    }
+
+    @Test
+    public void testSubBucketsPerPowerOfTwo() {
+        for (int exponent = 6; exponent <= 43; exponent++) {
+            int first = DUUILatencyHistogram.bucketOf(1L << exponent);
+            assertEquals(64 + (exponent - 6) * 32, first);
+            assertEquals(first + 31, DUUILatencyHistogram.bucketOf((1L << (exponent + 1)) - 1));
+            // Every sub-bucket has the same width
+            long width = 1L << (exponent - 5);
+            for (int sub = 0; sub < 32; sub++) {
+                long lowest = (1L << exponent) + sub * width;
+                assertEquals(first + sub, DUUILatencyHistogram.bucketOf(lowest));
+                assertEquals(lowest + width - 1, DUUILatencyHistogram.highestValueOf(first + sub));
+            }
+        }
+        assertEquals(64 + 38 * 32 - 1, LAST_BUCKET);
+        assertEquals(LAST_BUCKET, DUUILatencyHistogram.bucketOf(1L << 44));
+    }
+
+    @Test
+    public void testBucketsAreContiguous() {
+        for (int bucket = 1; bucket <= LAST_BUCKET; bucket++) {
+            long lowest = DUUILatencyHistogram.highestValueOf(bucket - 1) + 1;
+            long highest = DUUILatencyHistogram.highestValueOf(bucket);
+            assertEquals(bucket, DUUILatencyHistogram.bucketOf(lowest));
+            assertEquals(bucket, DUUILatencyHistogram.bucketOf(highest));
+            if (bucket >= 64) {
+                assertTrue(highest - lowest <= lowest * MAX_ERROR);
+            }
+        }
+    }
+
+    @Test
+    public void testErrorAtBucketBoundaries() {
+        for (int exponent = 6; exponent <= 43; exponent++) {
+            long power = 1L << exponent;
+            for (long value : new long[]{power - 1, power, power + 1, DUUILatencyHistogram.highestValueOf(DUUILatencyHistogram.bucketOf(power)) + 1}) {
+                DUUILatencyHistogram histogram = new DUUILatencyHistogram();
+                histogram.record(value);
+                // A larger maximum, so the percentile is not capped at the recorded value
+                histogram.record(Long.MAX_VALUE / 2);
+                assertWithinError(value, histogram.getValueAtPercentile(50));
+            }
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        DUUILatencyHistogram histogram = new DUUILatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(0.0, histogram.getMean());
+
+        // 1 to 10000 microseconds
+        for (long micros = 1; micros <= 10000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        assertEquals(10000, histogram.getCount());
+        assertEquals(1000L * 10000 * 10001 / 2, histogram.getSum());
+        assertEquals(10_000_000, histogram.getMax());
+        assertEquals(5_000_500.0, histogram.getMean());
+
+        assertWithinError(5_000_000, histogram.getValueAtPercentile(50));
+        assertWithinError(9_900_000, histogram.getValueAtPercentile(99));
+        assertWithinError(9_990_000, histogram.getValueAtPercentile(99.9));
+        // Never above the largest recorded value
+        assertEquals(10_000_000, histogram.getValueAtPercentile(100));
+        assertWithinError(1000, histogram.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void testMerge() {
+        DUUILatencyHistogram all = new DUUILatencyHistogram();
+        DUUILatencyHistogram even = new DUUILatencyHistogram();
+        DUUILatencyHistogram odd = new DUUILatencyHistogram();
+        for (long value = 0; value < 100_000; value += 7) {
+            all.record(value * 13);
+            (value % 2 == 0 ? even : odd).record(value * 13);
+        }
+
+        DUUILatencyHistogram merged = even.copy().merge(odd);
+        assertEquals(all.getCount(), merged.getCount());
+        assertEquals(all.getSum(), merged.getSum());
+        assertEquals(all.getMax(), merged.getMax());
+        for (double percentile : new double[]{50, 90, 99, 99.9, 100}) {
+            assertEquals(all.getValueAtPercentile(percentile), merged.getValueAtPercentile(percentile));
+        }
+        // The copy is independent of the merged histograms
+        assertTrue(even.getCount() < merged.getCount());
+
+        merged.reset();
+        assertEquals(0, merged.getCount());
+        assertEquals(0, merged.getMax());
+        assertEquals(0, merged.getValueAtPercentile(99));
+        assertEquals(all.getCount(), even.getCount() + odd.getCount());
+    }
+}
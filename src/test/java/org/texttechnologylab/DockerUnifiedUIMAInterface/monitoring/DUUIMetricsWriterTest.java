@@ -0,0 +1,78 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface.monitoring;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DUUIMetricsWriterTest {
+
+    @Test
+    public void testCounterHasTotalSuffix() {
+        String text = new DUUIMetricsWriter()
+                .counter("duui_documents_processed", "Documents processed", 3)
+                .toString();
+
+        assertEquals("# HELP duui_documents_processed_total Documents processed\n" +
+                "# TYPE duui_documents_processed_total counter\n" +
+                "duui_documents_processed_total 3\n", text);
+    }
+
+    @Test
+    public void testSamplesAreGroupedByMetric() {
+        String text = new DUUIMetricsWriter()
+                .gauge("duui_idle", "Idle instances", 2, "component", "tokenizer")
+                .gauge("duui_workers", "Worker threads", 4)
+                .gauge("duui_idle", "Idle instances", 0.25, "component", "tagger")
+                .toString();
+
+        assertEquals("# HELP duui_idle Idle instances\n" +
+                "# TYPE duui_idle gauge\n" +
+                "duui_idle{component=\"tokenizer\"} 2\n" +
+                "duui_idle{component=\"tagger\"} 0.25\n" +
+                "# HELP duui_workers Worker threads\n" +
+                "# TYPE duui_workers gauge\n" +
+                "duui_workers 4\n", text);
+    }
+
+    @Test
+    public void testSummaryInSeconds() {
+        DUUILatencyHistogram histogram = new DUUILatencyHistogram();
+        // 1.5 ms, every quantile of a single value is the value itself
+        histogram.record(1_500_000);
+
+        String text = new DUUIMetricsWriter()
+                .summary("duui_latency_seconds", "Latency", histogram, "component", "tokenizer")
+                .toString();
+
+        assertEquals("# HELP duui_latency_seconds Latency\n" +
+                "# TYPE duui_latency_seconds summary\n" +
+                "duui_latency_seconds{component=\"tokenizer\",quantile=\"0.5\"} 0.0015\n" +
+                "duui_latency_seconds{component=\"tokenizer\",quantile=\"0.9\"} 0.0015\n" +
+                "duui_latency_seconds{component=\"tokenizer\",quantile=\"0.99\"} 0.0015\n" +
+                "duui_latency_seconds{component=\"tokenizer\",quantile=\"0.999\"} 0.0015\n" +
+                "duui_latency_seconds_sum{component=\"tokenizer\"} 0.0015\n" +
+                "duui_latency_seconds_count{component=\"tokenizer\"} 1\n", text);
+    }
+
+    @Test
+    public void testEscaping() {
+        String text = new DUUIMetricsWriter()
+                .gauge("duui_idle", "Idle\\instances\nof a component", 1, "component", "say \"hi\"\\\n", "instance", null)
+                .toString();
+
+        assertEquals("# HELP duui_idle Idle\\\\instances\\nof a component\n" +
+                "# TYPE duui_idle gauge\n" +
+                "duui_idle{component=\"say \\\"hi\\\"\\\\\\n\",instance=\"\"} 1\n", text);
+    }
+
+    @Test
+    public void testSpecialValues() {
+        String text = new DUUIMetricsWriter()
+                .gauge("duui_nan", "Not a number", Double.NaN)
+                .gauge("duui_inf", "Infinite", Double.NEGATIVE_INFINITY)
+                .toString();
+
+        assertTrue(text.contains("duui_nan NaN\n"));
+        assertTrue(text.contains("duui_inf -Inf\n"));
+    }
+}
@@ -0,0 +1,255 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface.pipeline_storage;
+
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.DUUIComposer;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.driver.IDUUIPipelineComponent;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DUUIAsyncStorageBackendTest {
+    private final SlowBackend _backend = new SlowBackend();
+    private DUUIAsyncStorageBackend _async;
+    private JCas _jc;
+
+    /**
+     * Backend persisting the metrics of a document only once the test hands out a permit.
+     */
+    private static class SlowBackend implements IDUUIStorageBackend {
+        final Semaphore permits = new Semaphore(0);
+        final AtomicInteger entered = new AtomicInteger(0);
+        final List<DUUIPipelineDocumentPerformance> written = Collections.synchronizedList(new ArrayList<>());
+        final List<DUUIPipelineDocumentPerformance> failing = Collections.synchronizedList(new ArrayList<>());
+        // Documents written when each run was finalized
+        final List<Integer> finalized = Collections.synchronizedList(new ArrayList<>());
+        volatile boolean shutdown = false;
+
+        @Override
+        public void addNewRun(String name, DUUIComposer composer) {
+        }
+
+        @Override
+        public IDUUIPipelineComponent loadComponent(String id) {
+            return null;
+        }
+
+        @Override
+        public void addMetricsForDocument(DUUIPipelineDocumentPerformance perf) {
+            entered.incrementAndGet();
+            permits.acquireUninterruptibly();
+            if (failing.contains(perf)) {
+                throw new IllegalStateException("Metrics could not be persisted");
+            }
+            written.add(perf);
+        }
+
+        @Override
+        public void finalizeRun(String name, Instant start, Instant end) {
+            finalized.add(written.size());
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public boolean shouldTrackErrorDocs() {
+            return false;
+        }
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        _jc = JCasFactory.createJCas();
+        _jc.setDocumentText("text");
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        _backend.permits.release(Integer.MAX_VALUE / 2);
+        if (_async != null) {
+            _async.shutdown();
+        }
+    }
+
+    private static void await(String what, BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Timed out waiting until " + what);
+            }
+            Thread.yield();
+        }
+    }
+
+    private DUUIPipelineDocumentPerformance perf() {
+        return new DUUIPipelineDocumentPerformance("run", 0, _jc, false);
+    }
+
+    /**
+     * Offers the metrics of a document and waits until the writer is stuck persisting them, the buffer is empty then.
+     */
+    private DUUIPipelineDocumentPerformance stall() {
+        int entered = _backend.entered.get();
+        DUUIPipelineDocumentPerformance perf = perf();
+        _async.addMetricsForDocument(perf);
+        await("the writer persists the document", () -> _backend.entered.get() == entered + 1);
+        assertEquals(0, _async.getPending());
+        return perf;
+    }
+
+    private List<DUUIPipelineDocumentPerformance> offer(int count) {
+        List<DUUIPipelineDocumentPerformance> perfs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            DUUIPipelineDocumentPerformance perf = perf();
+            _async.addMetricsForDocument(perf);
+            perfs.add(perf);
+        }
+        return perfs;
+    }
+
+    private void drain() {
+        _backend.permits.release(Integer.MAX_VALUE / 2);
+        _async.flush();
+        assertEquals(0, _async.getPending());
+    }
+
+    @Test
+    public void testRejectsEmptyBuffer() {
+        assertThrows(IllegalArgumentException.class, () -> new DUUIAsyncStorageBackend(_backend, 0));
+    }
+
+    @Test
+    public void testBlockWaitsForSpace() throws Exception {
+        _async = new DUUIAsyncStorageBackend(_backend, 2);
+        DUUIPipelineDocumentPerformance first = stall();
+        List<DUUIPipelineDocumentPerformance> buffered = offer(2);
+
+        DUUIPipelineDocumentPerformance last = perf();
+        Thread worker = new Thread(() -> _async.addMetricsForDocument(last));
+        worker.setDaemon(true);
+        worker.start();
+        await("the worker waits for space", () -> worker.getState() == Thread.State.WAITING);
+        assertEquals(2, _async.getPending());
+
+        // Persisting the first document makes room for the waiting one
+        _backend.permits.release(1);
+        worker.join(5000);
+        assertFalse(worker.isAlive());
+
+        drain();
+        assertEquals(List.of(first, buffered.get(0), buffered.get(1), last), _backend.written);
+        assertEquals(4, _async.getWritten());
+        assertEquals(0, _async.getDropped());
+    }
+
+    @Test
+    public void testDropOldestKeepsNewest() {
+        _async = new DUUIAsyncStorageBackend(_backend, 2)
+                .withOverflowPolicy(DUUIAsyncStorageBackend.OverflowPolicy.DROP_OLDEST);
+        DUUIPipelineDocumentPerformance first = stall();
+        List<DUUIPipelineDocumentPerformance> offered = offer(4);
+        assertEquals(2, _async.getPending());
+        assertEquals(2, _async.getDropped());
+
+        drain();
+        assertEquals(List.of(first, offered.get(2), offered.get(3)), _backend.written);
+        assertEquals(3, _async.getWritten());
+    }
+
+    @Test
+    public void testSampleReplacesDrawnSlots() {
+        List<Long> bounds = Collections.synchronizedList(new ArrayList<>());
+        Queue<Long> slots = new ConcurrentLinkedQueue<>(List.of(0L, 4L, 1L, 2L));
+        _async = new DUUIAsyncStorageBackend(_backend, 2, bound -> {
+            bounds.add(bound);
+            return slots.remove();
+        }).withOverflowPolicy(DUUIAsyncStorageBackend.OverflowPolicy.SAMPLE);
+
+        DUUIPipelineDocumentPerformance first = stall();
+        List<DUUIPipelineDocumentPerformance> offered = offer(5);
+        // The third document replaces the oldest in the buffer, the fourth is dropped, the fifth replaces the second
+        assertEquals(List.of(4L, 5L, 6L), bounds);
+        assertEquals(2, _async.getPending());
+        assertEquals(3, _async.getDropped());
+
+        drain();
+        assertEquals(List.of(first, offered.get(2), offered.get(4)), _backend.written);
+
+        // The buffer ran empty, the next overflow starts a new sample
+        _backend.permits.drainPermits();
+        DUUIPipelineDocumentPerformance next = stall();
+        List<DUUIPipelineDocumentPerformance> sampled = offer(3);
+        assertEquals(List.of(4L, 5L, 6L, 4L), bounds);
+        assertEquals(4, _async.getDropped());
+
+        drain();
+        assertEquals(List.of(first, offered.get(2), offered.get(4), next, sampled.get(0), sampled.get(1)), _backend.written);
+    }
+
+    @Test
+    public void testFinalizeRunWaitsForBuffer() throws Exception {
+        _async = new DUUIAsyncStorageBackend(_backend, 4);
+        stall();
+        offer(2);
+
+        Thread finalizer = new Thread(() -> {
+            try {
+                _async.finalizeRun("run", Instant.now(), Instant.now());
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        finalizer.setDaemon(true);
+        finalizer.start();
+        await("the run waits for the buffer", () -> finalizer.getState() == Thread.State.TIMED_WAITING);
+        assertEquals(List.of(), _backend.finalized);
+
+        _backend.permits.release(Integer.MAX_VALUE / 2);
+        finalizer.join(5000);
+        assertFalse(finalizer.isAlive());
+        assertEquals(List.of(3), _backend.finalized);
+    }
+
+    @Test
+    public void testCountsFailedAndDropped() throws Exception {
+        _async = new DUUIAsyncStorageBackend(_backend, 4);
+        _backend.permits.release(Integer.MAX_VALUE / 2);
+        DUUIPipelineDocumentPerformance failing = perf();
+        _backend.failing.add(failing);
+
+        DUUIPipelineDocumentPerformance before = perf();
+        DUUIPipelineDocumentPerformance after = perf();
+        _async.addMetricsForDocument(before);
+        _async.addMetricsForDocument(failing);
+        _async.addMetricsForDocument(after);
+        _async.flush();
+
+        // A failing document does not stop the writer
+        assertEquals(List.of(before, after), _backend.written);
+        assertEquals(2, _async.getWritten());
+        assertEquals(1, _async.getFailed());
+        assertEquals(0, _async.getDropped());
+
+        _async.shutdown();
+        assertTrue(_backend.shutdown);
+        _async.addMetricsForDocument(perf());
+        assertEquals(1, _async.getDropped());
+        assertEquals(2, _backend.written.size());
+    }
+}
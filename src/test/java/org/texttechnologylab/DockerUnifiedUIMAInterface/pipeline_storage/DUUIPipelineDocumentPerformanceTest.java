@@ -0,0 +1,114 @@
+package org.texttechnologylab.DockerUnifiedUIMAInterface.pipeline_storage;
+
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.texttechnologylab.DockerUnifiedUIMAInterface.driver.DUUIPipelineComponent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DUUIPipelineDocumentPerformanceTest {
+    private final List<DUUIPipelineComponent> _pipeline = new ArrayList<>();
+    private JCas _jc;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        for (String name : List.of("tokenizer", "tagger", "parser")) {
+            DUUIPipelineComponent component = new DUUIPipelineComponent().withName(name);
+            component.finalizeComponent();
+            _pipeline.add(component);
+        }
+        _jc = JCasFactory.createJCas();
+        _jc.setDocumentText("Hallo Welt");
+        new Annotation(_jc, 0, 5).addToIndexes();
+        new Annotation(_jc, 6, 10).addToIndexes();
+    }
+
+    private int hash(int ordinal) {
+        return _pipeline.get(ordinal).getFinalizedRepresentationHash();
+    }
+
+    private DUUIPipelineDocumentPerformance compact(boolean countAnnotations) {
+        return new DUUIPipelineDocumentPerformance("run", 7, _jc, false, new DUUIPipelinePerformanceLayout(_pipeline, countAnnotations));
+    }
+
+    private static void assertPoint(DUUIPipelinePerformancePoint point, int hash, long serialize, long deserialize, long annotator, long mutexWait, long total, long serializedSize) {
+        assertEquals(String.valueOf(hash), point.getKey());
+        assertEquals(serialize, point.getDurationSerialize());
+        assertEquals(deserialize, point.getDurationDeserialize());
+        assertEquals(annotator, point.getDurationAnnotator());
+        assertEquals(mutexWait, point.getDurationMutexWait());
+        assertEquals(total, point.getDurationComponentTotal());
+        assertEquals(serializedSize, point.getSerializedSize());
+    }
+
+    @Test
+    public void testCompactPointsFollowPipelineOrder() {
+        DUUIPipelineDocumentPerformance perf = compact(true);
+        perf.addData(10, 11, 12, 13, 14, hash(2), 15, _jc, null);
+        perf.addData(1, 2, 3, 4, 5, hash(0), 6, _jc, null);
+
+        // One point per called component by ordinal, the tagger was not called
+        List<DUUIPipelinePerformancePoint> points = perf.getPerformancePoints();
+        assertEquals(2, points.size());
+        assertPoint(points.get(0), hash(0), 1, 2, 3, 4, 5, 6);
+        assertPoint(points.get(1), hash(2), 10, 11, 12, 13, 14, 15);
+        assertEquals(10L, points.get(0).getDocumentSize());
+        assertNull(points.get(0).getError());
+        assertEquals(7 + 5 + 14, perf.getTotalTime());
+    }
+
+    @Test
+    public void testComponentOutsideLayoutGetsOwnPoint() {
+        DUUIPipelineDocumentPerformance perf = compact(true);
+        perf.addData(1, 2, 3, 4, 5, 42, 6, _jc, null);
+        perf.addData(1, 2, 3, 4, 5, hash(1), 6, _jc, null);
+
+        List<DUUIPipelinePerformancePoint> points = perf.getPerformancePoints();
+        assertEquals(2, points.size());
+        assertPoint(points.get(0), hash(1), 1, 2, 3, 4, 5, 6);
+        // Appended after the components of the layout
+        assertPoint(points.get(1), 42, 1, 2, 3, 4, 5, 6);
+    }
+
+    @Test
+    public void testCallsOfComponentAreSummed() {
+        DUUIPipelineDocumentPerformance perf = compact(true);
+        // Two segments of the document processed by the tagger
+        perf.addData(1, 2, 3, 4, 5, hash(1), 6, _jc, null);
+        perf.addData(10, 20, 30, 40, 50, hash(1), 60, _jc, "Segment failed");
+
+        List<DUUIPipelinePerformancePoint> points = perf.getPerformancePoints();
+        assertEquals(1, points.size());
+        assertPoint(points.get(0), hash(1), 11, 22, 33, 44, 55, 66);
+        assertEquals("Segment failed", points.get(0).getError());
+        assertEquals(7 + 55, perf.getTotalTime());
+
+        // Without a layout every call is a point of its own
+        DUUIPipelineDocumentPerformance full = new DUUIPipelineDocumentPerformance("run", 7, _jc, false);
+        full.addData(1, 2, 3, 4, 5, hash(1), 6, _jc, null);
+        full.addData(10, 20, 30, 40, 50, hash(1), 60, _jc, null);
+        assertEquals(2, full.getPerformancePoints().size());
+        assertEquals(7 + 55, full.getTotalTime());
+    }
+
+    @Test
+    public void testAnnotationsAreCountedOnlyIfRequested() {
+        DUUIPipelineDocumentPerformance counted = compact(true);
+        counted.addData(1, 2, 3, 4, 5, hash(0), 6, _jc, null);
+        long annotations = DUUIPipelinePerformancePoint.countAnnotations(_jc);
+        assertTrue(annotations >= 2);
+        assertEquals(annotations, counted.getPerformancePoints().get(0).getNumberOfAnnotations());
+
+        DUUIPipelineDocumentPerformance skipped = compact(false);
+        skipped.addData(1, 2, 3, 4, 5, hash(0), 6, _jc, null);
+        assertEquals(0L, skipped.getPerformancePoints().get(0).getNumberOfAnnotations());
+        // The document size is still recorded
+        assertEquals(10L, skipped.getPerformancePoints().get(0).getDocumentSize());
+    }
+}